@@ -57,6 +57,14 @@ public class RequestContext
      */
     public static final String CTX_AUTH_CHECK_ONLY = "request.auth.check.only";
 
+    /**
+     * Context flag to mark a listing as lightweight, so items are listed without loading their attributes, that are
+     * loaded on demand instead.
+     * 
+     * @since 2.0
+     */
+    public static final String CTX_LIGHTWEIGHT_LISTING_FLAG = "request.lightweightListing";
+
     private RequestContext parent;
 
     public RequestContext()
@@ -220,6 +228,35 @@ public class RequestContext
         put( CTX_GROUP_LOCAL_ONLY_FLAG, requestGroupLocal );
     }
 
+    /**
+     * Checks if is request a lightweight listing.
+     * 
+     * @return true, if is request a lightweight listing
+     * @since 2.0
+     */
+    public boolean isRequestLightweightListing()
+    {
+        if ( containsKey( CTX_LIGHTWEIGHT_LISTING_FLAG ) )
+        {
+            return (Boolean) get( CTX_LIGHTWEIGHT_LISTING_FLAG );
+        }
+        else
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Sets the request lightweight listing.
+     * 
+     * @param requestLightweightListing the new request lightweight listing
+     * @since 2.0
+     */
+    public void setRequestLightweightListing( boolean requestLightweightListing )
+    {
+        put( CTX_LIGHTWEIGHT_LISTING_FLAG, requestLightweightListing );
+    }
+
     /**
      * Returns true if the request is conditional.
      * 
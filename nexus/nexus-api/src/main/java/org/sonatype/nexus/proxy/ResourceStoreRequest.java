@@ -222,6 +222,29 @@ public class ResourceStoreRequest
         getRequestContext().setRequestGroupLocalOnly( requestGroupLocal );
     }
 
+    /**
+     * Checks if is request a lightweight listing.
+     * 
+     * @return true, if is request a lightweight listing
+     * @since 2.0
+     */
+    public boolean isRequestLightweightListing()
+    {
+        return getRequestContext().isRequestLightweightListing();
+    }
+
+    /**
+     * Sets the request lightweight listing. Items listed by such requests have their attributes loaded on demand,
+     * useful for walks that do not need them for (most of) the walked items.
+     * 
+     * @param requestLightweightListing the new request lightweight listing
+     * @since 2.0
+     */
+    public void setRequestLightweightListing( boolean requestLightweightListing )
+    {
+        getRequestContext().setRequestLightweightListing( requestLightweightListing );
+    }
+
     /**
      * Returns the list of processed repositories.
      * 
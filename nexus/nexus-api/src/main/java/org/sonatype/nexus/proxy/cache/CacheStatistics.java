@@ -26,7 +26,14 @@ public class CacheStatistics
 
     private final long hits;
 
+    private final long evictions;
+
     public CacheStatistics( long size, long misses, long hits )
+    {
+        this( size, misses, hits, 0 );
+    }
+
+    public CacheStatistics( long size, long misses, long hits, long evictions )
     {
         super();
 
@@ -35,6 +42,8 @@ public class CacheStatistics
         this.misses = misses;
 
         this.hits = hits;
+
+        this.evictions = evictions;
     }
 
     public long getSize()
@@ -52,4 +61,9 @@ public class CacheStatistics
         return hits;
     }
 
+    public long getEvictions()
+    {
+        return evictions;
+    }
+
 }
@@ -18,8 +18,10 @@
  */
 package org.sonatype.nexus.proxy.item;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -69,56 +71,129 @@ public abstract class AbstractRepositoryItemUidFactory
     @Named( "${sisu-resource-locks:-disabled}" )
     private ResourceLockFactory sisuLockFactory;
 
-    private WeakHashMap<DefaultRepositoryItemUidLock, WeakReference<DefaultRepositoryItemUidLock>> locks =
-        new WeakHashMap<DefaultRepositoryItemUidLock, WeakReference<DefaultRepositoryItemUidLock>>();
+    /**
+     * The lock registry. Keys are UID keys, values are weak references to shared locks. Stale entries (whose lock got
+     * collected) are purged using the reference queue below, hence the map never holds on to locks not in use.
+     */
+    private final ConcurrentHashMap<String, LockWeakReference> locks =
+        new ConcurrentHashMap<String, LockWeakReference>( 1024, 0.75f, 64 );
+
+    private final ReferenceQueue<DefaultRepositoryItemUidLock> locksReferenceQueue =
+        new ReferenceQueue<DefaultRepositoryItemUidLock>();
+
+    private final UidLockStatistics lockStatistics = new UidLockStatistics();
 
     @Override
     public DefaultRepositoryItemUidLock createUidLock( final RepositoryItemUid uid )
     {
-        final String key = new String( uid.getKey() );
-
-        return doCreateUidLockForKey( key );
+        return doCreateUidLockForKey( uid.getKey() );
     }
 
     @Override
     public DefaultRepositoryItemUidLock createUidAttributeLock( final RepositoryItemUid uid )
     {
-        final String key = new String( "attribute:" + uid.getKey() );
-
-        return doCreateUidLockForKey( key );
+        return doCreateUidLockForKey( "attribute:" + uid.getKey() );
     }
 
     // ==
 
-    protected synchronized DefaultRepositoryItemUidLock doCreateUidLockForKey( final String key )
+    protected DefaultRepositoryItemUidLock doCreateUidLockForKey( final String key )
     {
-        final LockResource lockResource;
-        if ( sisuLockFactory != null )
-        {
-            lockResource = new SisuLockResource( sisuLockFactory.getResourceLock( key ) );
-        }
-        else
+        // hit path: no locking and no allocation
+        final LockWeakReference existingRef = locks.get( key );
+
+        if ( existingRef != null )
         {
-            lockResource = new SimpleLockResource();
+            final DefaultRepositoryItemUidLock existingLock = existingRef.get();
+
+            if ( existingLock != null )
+            {
+                return existingLock;
+            }
         }
 
-        final DefaultRepositoryItemUidLock newLock = new DefaultRepositoryItemUidLock( key, lockResource );
+        // miss path: purge stale entries and race for the slot
+        expungeStaleLocks();
+
+        final DefaultRepositoryItemUidLock newLock =
+            new DefaultRepositoryItemUidLock( key, createLockResource( key ), lockStatistics );
 
-        final WeakReference<DefaultRepositoryItemUidLock> oldLockRef = locks.get( newLock );
+        final LockWeakReference newRef = new LockWeakReference( key, newLock, locksReferenceQueue );
 
-        if ( oldLockRef != null )
+        while ( true )
         {
-            final RepositoryItemUidLock oldLock = oldLockRef.get();
+            final LockWeakReference oldRef = locks.putIfAbsent( key, newRef );
+
+            if ( oldRef == null )
+            {
+                lockStatistics.lockCreated();
+
+                return newLock;
+            }
+
+            final DefaultRepositoryItemUidLock oldLock = oldRef.get();
 
             if ( oldLock != null )
             {
-                return oldLockRef.get();
+                // somebody else won the race, use theirs
+                return oldLock;
+            }
+
+            // stale reference not yet expunged, try to replace it
+            if ( locks.replace( key, oldRef, newRef ) )
+            {
+                lockStatistics.lockCreated();
+
+                return newLock;
             }
         }
+    }
 
-        locks.put( newLock, new WeakReference<DefaultRepositoryItemUidLock>( newLock ) );
+    protected LockResource createLockResource( final String key )
+    {
+        if ( sisuLockFactory != null )
+        {
+            return new SisuLockResource( sisuLockFactory.getResourceLock( key ) );
+        }
+        else
+        {
+            return new SimpleLockResource();
+        }
+    }
 
-        return newLock;
+    protected void expungeStaleLocks()
+    {
+        Reference<? extends DefaultRepositoryItemUidLock> ref;
+
+        while ( ( ref = locksReferenceQueue.poll() ) != null )
+        {
+            final LockWeakReference lockRef = (LockWeakReference) ref;
+
+            // remove only if mapping still points to the collected reference
+            locks.remove( lockRef.getKey(), lockRef );
+        }
+    }
+
+    /**
+     * Returns the count of live (not yet garbage collected) locks in registry.
+     * 
+     * @return
+     */
+    public int getLiveLockCount()
+    {
+        expungeStaleLocks();
+
+        return locks.size();
+    }
+
+    /**
+     * Returns the lock statistics of locks created by this factory.
+     * 
+     * @return
+     */
+    public UidLockStatistics getLockStatistics()
+    {
+        return lockStatistics;
     }
 
     /**
@@ -128,7 +203,7 @@ public abstract class AbstractRepositoryItemUidFactory
      */
     protected int locksInMap()
     {
-        return locks.size();
+        return getLiveLockCount();
     }
 
     @Override
@@ -139,4 +214,25 @@ public abstract class AbstractRepositoryItemUidFactory
             sisuLockFactory.shutdown();
         }
     }
+
+    // ==
+
+    private static final class LockWeakReference
+        extends WeakReference<DefaultRepositoryItemUidLock>
+    {
+        private final String key;
+
+        public LockWeakReference( final String key, final DefaultRepositoryItemUidLock referent,
+                                  final ReferenceQueue<DefaultRepositoryItemUidLock> queue )
+        {
+            super( referent, queue );
+
+            this.key = key;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+    }
 }
@@ -139,6 +139,18 @@ public abstract class AbstractStorageItem
         return itemAttributes;
     }
 
+    /**
+     * Replaces the attributes of this item. Meant for storages only, that may hand out items with attributes loaded on
+     * demand.
+     *
+     * @param itemAttributes
+     * @since 2.0
+     */
+    public void setRepositoryItemAttributes( final Attributes itemAttributes )
+    {
+        this.itemAttributes = itemAttributes;
+    }
+
     /**
      * This method should be called ONLY when you load up a _legacy_ attribute using _legacy_ attribute store!
      */
@@ -18,102 +18,23 @@
  */
 package org.sonatype.nexus.proxy.item;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.security.DigestInputStream;
 import java.security.MessageDigest;
+import java.util.Collections;
 
 import org.sonatype.nexus.proxy.RequestContext;
-import org.sonatype.nexus.util.DigesterUtils;
 
 /**
  * A content locator that wraps another content locator, but also calculates hash of it while reading it and putting the
- * result into passed in Context.
+ * result into passed in Context. A single digest flavor of {@link MultiChecksummingContentLocator}.
  * 
  * @author cstamas
  */
 public class ChecksummingContentLocator
-    extends AbstractWrappingContentLocator
+    extends MultiChecksummingContentLocator
 {
-    private final MessageDigest messageDigest;
-
-    private final String contextKey;
-
-    private final RequestContext context;
-
     public ChecksummingContentLocator( final ContentLocator content, final MessageDigest messageDigest,
                                        final String contextKey, final RequestContext context )
     {
-        super( content );
-
-        this.messageDigest = messageDigest;
-
-        this.contextKey = contextKey;
-
-        this.context = context;
+        super( content, Collections.singletonMap( contextKey, messageDigest ), context );
     }
-
-    @Override
-    public InputStream getContent()
-        throws IOException
-    {
-        return new DigestCalculatingInputStream( getTarget().getContent(), messageDigest, contextKey, context );
-    }
-
-    private static class DigestCalculatingInputStream
-        extends DigestInputStream
-    {
-        private final String contextKey;
-
-        private final RequestContext context;
-
-        public DigestCalculatingInputStream( final InputStream source, final MessageDigest messageDigest,
-                                             final String contextKey, final RequestContext context )
-            throws IllegalArgumentException
-        {
-            super( source, messageDigest );
-
-            this.contextKey = contextKey;
-
-            this.context = context;
-        }
-
-        public int read()
-            throws IOException
-        {
-            int result = super.read();
-
-            if ( result == -1 )
-            {
-                setHash();
-            }
-
-            return result;
-        }
-
-        public int read( byte[] b, int off, int len )
-            throws IOException
-        {
-            int result = super.read( b, off, len );
-
-            if ( result == -1 )
-            {
-                setHash();
-            }
-
-            return result;
-        }
-
-        // ==
-
-        protected synchronized void setHash()
-            throws IOException
-        {
-            if ( !context.containsKey( contextKey, false ) )
-            {
-                context.put( contextKey, DigesterUtils.getDigestAsString( getMessageDigest().digest() ) );
-            }
-        }
-    }
-
 }
@@ -27,17 +27,43 @@ public class DefaultRepositoryItemUidLock
 
     private final LockResource contentLock;
 
+    private final UidLockStatistics statistics;
+
     protected DefaultRepositoryItemUidLock( final String key, final LockResource contentLock )
+    {
+        this( key, contentLock, null );
+    }
+
+    protected DefaultRepositoryItemUidLock( final String key, final LockResource contentLock,
+                                            final UidLockStatistics statistics )
     {
         super();
 
         this.key = key;
 
         this.contentLock = contentLock;
+
+        this.statistics = statistics;
     }
 
     @Override
     public void lock( final Action action )
+    {
+        if ( statistics == null )
+        {
+            doLock( action );
+        }
+        else
+        {
+            final long start = System.nanoTime();
+
+            doLock( action );
+
+            statistics.lockAcquired( System.nanoTime() - start );
+        }
+    }
+
+    protected void doLock( final Action action )
     {
         if ( action.isReadAction() )
         {
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.item;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Map;
+
+import org.sonatype.nexus.proxy.RequestContext;
+import org.sonatype.nexus.util.DigesterUtils;
+
+/**
+ * A content locator that wraps another content locator, and calculates multiple hashes of it in one pass while reading
+ * it, putting the results into passed in Context once the content is fully read. As with
+ * {@link ChecksummingContentLocator}, values already present in context (ie. provided by caller or by remote peer) are
+ * kept.
+ */
+public class MultiChecksummingContentLocator
+    extends AbstractWrappingContentLocator
+{
+    private final Map<String, MessageDigest> messageDigests;
+
+    private final RequestContext context;
+
+    /**
+     * @param content the content to wrap
+     * @param messageDigests the digests to calculate, keyed by context keys where to put results
+     * @param context the context to put results into
+     */
+    public MultiChecksummingContentLocator( final ContentLocator content,
+                                            final Map<String, MessageDigest> messageDigests,
+                                            final RequestContext context )
+    {
+        super( content );
+
+        this.messageDigests = messageDigests;
+
+        this.context = context;
+    }
+
+    @Override
+    public InputStream getContent()
+        throws IOException
+    {
+        for ( MessageDigest messageDigest : messageDigests.values() )
+        {
+            messageDigest.reset();
+        }
+
+        return new MultiDigestCalculatingInputStream( getTarget().getContent(), messageDigests, context );
+    }
+
+    private static class MultiDigestCalculatingInputStream
+        extends FilterInputStream
+    {
+        private final Map<String, MessageDigest> messageDigests;
+
+        private final RequestContext context;
+
+        private boolean done;
+
+        public MultiDigestCalculatingInputStream( final InputStream source,
+                                                  final Map<String, MessageDigest> messageDigests,
+                                                  final RequestContext context )
+        {
+            super( source );
+
+            this.messageDigests = messageDigests;
+
+            this.context = context;
+        }
+
+        @Override
+        public int read()
+            throws IOException
+        {
+            final int result = super.read();
+
+            if ( result == -1 )
+            {
+                setHashes();
+            }
+            else
+            {
+                for ( MessageDigest messageDigest : messageDigests.values() )
+                {
+                    messageDigest.update( (byte) result );
+                }
+            }
+
+            return result;
+        }
+
+        @Override
+        public int read( byte[] b, int off, int len )
+            throws IOException
+        {
+            final int result = super.read( b, off, len );
+
+            if ( result == -1 )
+            {
+                setHashes();
+            }
+            else if ( result > 0 )
+            {
+                for ( MessageDigest messageDigest : messageDigests.values() )
+                {
+                    messageDigest.update( b, off, result );
+                }
+            }
+
+            return result;
+        }
+
+        @Override
+        public long skip( long n )
+            throws IOException
+        {
+            // skipped bytes would not be digested
+            throw new IOException( "Skip is not supported on digest calculating stream!" );
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+
+        // ==
+
+        protected void setHashes()
+        {
+            if ( !done )
+            {
+                done = true;
+
+                for ( Map.Entry<String, MessageDigest> entry : messageDigests.entrySet() )
+                {
+                    if ( !context.containsKey( entry.getKey(), false ) )
+                    {
+                        context.put( entry.getKey(), DigesterUtils.getDigestAsString( entry.getValue().digest() ) );
+                    }
+                }
+            }
+        }
+    }
+}
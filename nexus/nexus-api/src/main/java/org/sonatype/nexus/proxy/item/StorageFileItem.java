@@ -34,6 +34,12 @@ public interface StorageFileItem
     @Deprecated
     public static final String DIGEST_MD5_KEY = "digest.md5";
 
+    /** The remote "Last-Modified" header value key used in attributes, to revalidate proxied items. @since 2.0 */
+    public static final String REMOTE_LAST_MODIFIED_KEY = "remote.lastModified";
+
+    /** The remote "ETag" header value key used in attributes, to revalidate proxied items. @since 2.0 */
+    public static final String REMOTE_ETAG_KEY = "remote.etag";
+
     /**
      * Gets the length.
      * 
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.item;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simple counters about UID locks created by {@link AbstractRepositoryItemUidFactory}. All the methods are thread safe
+ * and lock free.
+ */
+public class UidLockStatistics
+{
+    private final AtomicLong createdLocks = new AtomicLong();
+
+    private final AtomicLong lockAcquisitions = new AtomicLong();
+
+    private final AtomicLong lockWaitNanos = new AtomicLong();
+
+    void lockCreated()
+    {
+        createdLocks.incrementAndGet();
+    }
+
+    void lockAcquired( final long waitNanos )
+    {
+        lockAcquisitions.incrementAndGet();
+
+        lockWaitNanos.addAndGet( waitNanos );
+    }
+
+    /**
+     * Returns the count of lock instances created so far (a lock is created when no live one exists for given key).
+     * 
+     * @return
+     */
+    public long getCreatedLockCount()
+    {
+        return createdLocks.get();
+    }
+
+    /**
+     * Returns the count of lock acquisitions (both shared and exclusive).
+     * 
+     * @return
+     */
+    public long getLockAcquisitionCount()
+    {
+        return lockAcquisitions.get();
+    }
+
+    /**
+     * Returns the total time spent by threads waiting to acquire UID locks, in milliseconds.
+     * 
+     * @return
+     */
+    public long getTotalLockWaitTimeMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( lockWaitNanos.get() );
+    }
+}
@@ -115,4 +115,13 @@ public interface RepositoryRegistry
      * @return list of group's where the repo appears as member
      */
     List<GroupRepository> getGroupsOfRepository( Repository repository);
+
+    /**
+     * Collect the groupIds where repository is member, directly or through other groups (groups of groups).
+     *
+     * @param repositoryId the repository id
+     * @return list of groupId's where the repo appears as direct or indirect member
+     * @since 2.0
+     */
+    List<String> getTransitiveGroupsOfRepository( String repositoryId );
 }
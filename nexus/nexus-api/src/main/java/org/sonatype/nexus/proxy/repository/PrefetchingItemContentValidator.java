@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.repository;
+
+import java.util.concurrent.Future;
+
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.AbstractStorageItem;
+
+/**
+ * Item content validator component that is able to fetch what it needs for validation (like remote checksums) while
+ * the content of item itself is being retrieved from remote storage.
+ * 
+ * @since 2.0
+ */
+public interface PrefetchingItemContentValidator
+    extends ItemContentValidator
+{
+    /**
+     * Invoked by Proxy repository once remote storage responded successfully to the retrieval of item, but before the
+     * content of item is read (and cached). The implementation should not block, but start the prefetch in background
+     * and keep its state in the context of passed in item, to pick it up when {@code isRemoteItemContentValid} is
+     * invoked with the cached item. The prefetch may be dropped if the implementation is too busy.
+     * 
+     * @param proxy repository that retrieves the item
+     * @param request request used to retrieve the item
+     * @param item the remote item, which content is not yet read
+     * @return the prefetch started, that repository cancels once item validation is done (if still not done), or null
+     *         if no prefetch was started
+     */
+    Future<?> prefetchRemoteItemContentValidation( ProxyRepository proxy, ResourceStoreRequest request,
+                                                   AbstractStorageItem item );
+}
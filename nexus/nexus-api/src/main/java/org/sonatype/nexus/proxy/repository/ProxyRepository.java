@@ -41,8 +41,36 @@ public interface ProxyRepository
      */
     RemoteStatus getRemoteStatus( ResourceStoreRequest request, boolean forceCheck );
 
+    /**
+     * Checks the remote peer health on the caller thread, auto blocking or unblocking this repository as needed, and
+     * returns the resulting remote status.
+     * 
+     * @param request
+     * @return
+     * @since 2.0
+     */
+    RemoteStatus checkRemoteStatus( ResourceStoreRequest request );
+
+    /**
+     * Applies remote status checked by someone else (ie. by checking another repository having same remote peer), auto
+     * blocking or unblocking this repository as needed.
+     * 
+     * @param request
+     * @param remoteStatus
+     * @since 2.0
+     */
+    void applyRemoteStatus( ResourceStoreRequest request, RemoteStatus remoteStatus );
+
+    /**
+     * @deprecated Remote status is checked by the shared {@code RepositoryStatusChecker}, no thread is set anymore.
+     */
+    @Deprecated
     Thread getRepositoryStatusCheckerThread();
 
+    /**
+     * @deprecated Remote status is checked by the shared {@code RepositoryStatusChecker}, no thread is set anymore.
+     */
+    @Deprecated
     void setRepositoryStatusCheckerThread(Thread thread);
     
     /**
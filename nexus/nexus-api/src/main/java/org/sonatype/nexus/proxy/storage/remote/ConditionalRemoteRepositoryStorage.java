@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.storage.remote;
+
+import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.RemoteAccessException;
+import org.sonatype.nexus.proxy.RemoteStorageException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.AbstractStorageItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.repository.ProxyRepository;
+
+/**
+ * Remote storage able to revalidate a locally cached item in a single round trip, by performing a conditional
+ * retrieval. Implementing this is optional, proxy repositories fall back to "check, then retrieve" when remote storage
+ * does not implement it.
+ * 
+ * @since 2.0
+ */
+public interface ConditionalRemoteRepositoryStorage
+    extends RemoteRepositoryStorage
+{
+    /**
+     * Retrieve item only if it was modified on remote since the passed in local item was cached. The local item
+     * attributes (like {@link org.sonatype.nexus.proxy.item.StorageFileItem#REMOTE_LAST_MODIFIED_KEY} and
+     * {@link org.sonatype.nexus.proxy.item.StorageFileItem#REMOTE_ETAG_KEY}) are used to build the condition.
+     * 
+     * @return the retrieved item, or {@code null} if remote item is not modified.
+     * @throws ItemNotFoundException the item not found exception
+     * @throws RemoteStorageException the storage exception
+     */
+    AbstractStorageItem retrieveItemIfModified( ProxyRepository repository, ResourceStoreRequest request,
+                                                String baseUrl, StorageItem localItem )
+        throws ItemNotFoundException, RemoteAccessException, RemoteStorageException;
+}
@@ -19,6 +19,7 @@
 package org.sonatype.nexus.proxy.walker;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,11 +40,11 @@ public class DefaultWalkerContext
 
     private final ResourceStoreRequest request;
 
-    private Map<String, Object> context;
+    private final Map<String, Object> context;
 
     private List<WalkerProcessor> processors;
 
-    private Throwable stopCause;
+    private volatile Throwable stopCause;
 
     private volatile boolean running;
 
@@ -70,6 +71,9 @@ public class DefaultWalkerContext
 
         this.collectionsOnly = collectionsOnly;
 
+        // synchronized, as parallel walks share this context among threads
+        this.context = Collections.synchronizedMap( new HashMap<String, Object>() );
+
         this.running = true;
     }
 
@@ -85,10 +89,6 @@ public class DefaultWalkerContext
 
     public Map<String, Object> getContext()
     {
-        if ( context == null )
-        {
-            context = new HashMap<String, Object>();
-        }
         return context;
     }
 
@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.walker;
+
+/**
+ * A {@link WalkerProcessor} that is able to take part in a parallel walk. In parallel walk, subtrees of the walked
+ * repository are walked concurrently by multiple threads, each thread having it's own "fork" of the processor. A fork
+ * gets only the collection and item callbacks for the subtree it walks (including enter and exit of the subtree root
+ * collection), but not {@link #beforeWalk(WalkerContext)} and {@link #afterWalk(WalkerContext)}. Once a subtree is
+ * walked, the fork is joined into the processor of the parent collection, before it's
+ * {@link #onCollectionExit(WalkerContext, org.sonatype.nexus.proxy.item.StorageCollectionItem)} is invoked.
+ * <p>
+ * The walker will walk in parallel only if parallel walking is enabled, and all the active processors of the walk
+ * implement this interface.
+ * 
+ * @since 2.0
+ */
+public interface ParallelWalkerProcessor
+    extends WalkerProcessor
+{
+    /**
+     * Creates a fork of this processor, to be used by another thread to walk a subtree. Invoked on the thread that
+     * uses this processor. Processors that are thread safe may return themselves.
+     * 
+     * @param context
+     * @return the fork of this processor.
+     * @throws Exception
+     */
+    ParallelWalkerProcessor fork( WalkerContext context )
+        throws Exception;
+
+    /**
+     * Joins (merges the state of) the fork, that finished walking a subtree, into this processor. Invoked on the thread
+     * that uses this processor. Never invoked when the fork is this same instance.
+     * 
+     * @param context
+     * @param fork the fork created by {@link #fork(WalkerContext)} of this processor or one of it's forks.
+     * @throws Exception
+     */
+    void join( WalkerContext context, ParallelWalkerProcessor fork )
+        throws Exception;
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.item;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sonatype.nexus.proxy.RequestContext;
+import org.sonatype.nexus.util.DigesterUtils;
+
+public class MultiChecksummingContentLocatorTest
+{
+    private static final String CONTENT = "Some content to be digested in single pass.";
+
+    @Test
+    public void testDigestsCalculated()
+        throws Exception
+    {
+        RequestContext context = new RequestContext();
+
+        readFully( createLocator( context ), false );
+
+        Assert.assertEquals( digest( "SHA1" ), context.get( StorageFileItem.DIGEST_SHA1_KEY ) );
+        Assert.assertEquals( digest( "MD5" ), context.get( StorageFileItem.DIGEST_MD5_KEY ) );
+    }
+
+    @Test
+    public void testDigestsCalculatedReadingByteByByte()
+        throws Exception
+    {
+        RequestContext context = new RequestContext();
+
+        readFully( createLocator( context ), true );
+
+        Assert.assertEquals( digest( "SHA1" ), context.get( StorageFileItem.DIGEST_SHA1_KEY ) );
+        Assert.assertEquals( digest( "MD5" ), context.get( StorageFileItem.DIGEST_MD5_KEY ) );
+    }
+
+    @Test
+    public void testExistingContextValuesKept()
+        throws Exception
+    {
+        RequestContext context = new RequestContext();
+        context.put( StorageFileItem.DIGEST_SHA1_KEY, "provided" );
+
+        ContentLocator locator = createLocator( context );
+
+        readFully( locator, false );
+
+        Assert.assertEquals( "provided", context.get( StorageFileItem.DIGEST_SHA1_KEY ) );
+        Assert.assertEquals( digest( "MD5" ), context.get( StorageFileItem.DIGEST_MD5_KEY ) );
+
+        // once set, the values are not replaced by subsequent reads either
+        context.put( StorageFileItem.DIGEST_MD5_KEY, "provided" );
+
+        readFully( locator, false );
+
+        Assert.assertEquals( "provided", context.get( StorageFileItem.DIGEST_SHA1_KEY ) );
+        Assert.assertEquals( "provided", context.get( StorageFileItem.DIGEST_MD5_KEY ) );
+    }
+
+    @Test
+    public void testParentContextValuesNotConsidered()
+        throws Exception
+    {
+        RequestContext parent = new RequestContext();
+        parent.put( StorageFileItem.DIGEST_SHA1_KEY, "of-parent" );
+        RequestContext context = new RequestContext( parent );
+
+        readFully( createLocator( context ), false );
+
+        Assert.assertEquals( digest( "SHA1" ), context.get( StorageFileItem.DIGEST_SHA1_KEY, false ) );
+    }
+
+    @Test
+    public void testSingleDigestLocator()
+        throws Exception
+    {
+        RequestContext context = new RequestContext();
+
+        readFully( new ChecksummingContentLocator( new StringContentLocator( CONTENT ),
+            MessageDigest.getInstance( "SHA1" ), StorageFileItem.DIGEST_SHA1_KEY, context ), false );
+
+        Assert.assertEquals( digest( "SHA1" ), context.get( StorageFileItem.DIGEST_SHA1_KEY ) );
+        Assert.assertFalse( context.containsKey( StorageFileItem.DIGEST_MD5_KEY ) );
+    }
+
+    // ==
+
+    protected ContentLocator createLocator( final RequestContext context )
+        throws Exception
+    {
+        Map<String, MessageDigest> digests = new LinkedHashMap<String, MessageDigest>();
+        digests.put( StorageFileItem.DIGEST_SHA1_KEY, MessageDigest.getInstance( "SHA1" ) );
+        digests.put( StorageFileItem.DIGEST_MD5_KEY, MessageDigest.getInstance( "MD5" ) );
+
+        return new MultiChecksummingContentLocator( new StringContentLocator( CONTENT ), digests, context );
+    }
+
+    protected void readFully( final ContentLocator locator, final boolean byteByByte )
+        throws IOException
+    {
+        InputStream is = locator.getContent();
+
+        try
+        {
+            if ( byteByByte )
+            {
+                while ( is.read() != -1 )
+                {
+                    // nothing
+                }
+            }
+            else
+            {
+                byte[] buffer = new byte[7];
+
+                while ( is.read( buffer, 0, buffer.length ) != -1 )
+                {
+                    // nothing
+                }
+            }
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
+    protected String digest( final String algorithm )
+        throws Exception
+    {
+        return DigesterUtils.getDigestAsString( MessageDigest.getInstance( algorithm ).digest(
+            StringContentLocator.toByteArray( CONTENT ) ) );
+    }
+}
@@ -18,13 +18,18 @@
  */
 package org.sonatype.nexus.events;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
@@ -32,15 +37,22 @@ import org.codehaus.plexus.personality.plexus.lifecycle.phase.Startable;
 import org.codehaus.plexus.personality.plexus.lifecycle.phase.StartingException;
 import org.codehaus.plexus.personality.plexus.lifecycle.phase.StoppingException;
 import org.slf4j.Logger;
+import org.sonatype.nexus.plugins.events.PluginActivatedEvent;
+import org.sonatype.nexus.plugins.events.PluginDeactivatedEvent;
 import org.sonatype.nexus.proxy.events.AsynchronousEventInspector;
 import org.sonatype.nexus.proxy.events.EventInspector;
 import org.sonatype.nexus.threads.NexusThreadFactory;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 import org.sonatype.plexus.appevents.Event;
 
 /**
  * A default implementation of EventInspectorHost, a component simply collecting all EventInspectors and re-emitting
- * events towards them in they wants to receive it. TODO: count inspector exceptions, and stop using them after some
- * threshold (like 3 exceptions).
+ * events towards them in they wants to receive it. Synchronous inspectors are asked and invoked on the thread firing
+ * the event, while each asynchronous inspector is handed over as a task of its own to a bounded thread pool, where it
+ * is asked whether it accepts the event and invoked, so inspectors of same event run in parallel and the thread firing
+ * the event does not evaluate them. When the pool queue is full, the rejected task is run by the thread firing the
+ * event, slowing down the producer. TODO: count inspector exceptions, and stop using them after some threshold (like 3
+ * exceptions).
  * 
  * @author cstamas
  */
@@ -48,13 +60,58 @@ import org.sonatype.plexus.appevents.Event;
 public class DefaultEventInspectorHost
     implements EventInspectorHost, Startable
 {
+    /**
+     * Key of system property setting the count of threads invoking asynchronous event inspectors.
+     * 
+     * @since 2.0
+     */
+    public static final String ASYNC_THREAD_COUNT_KEY = "nexus.eventInspectorHost.asyncThreadCount";
+
+    /**
+     * Key of system property setting the count of events that may wait for asynchronous event inspectors.
+     * 
+     * @since 2.0
+     */
+    public static final String ASYNC_QUEUE_SIZE_KEY = "nexus.eventInspectorHost.asyncQueueSize";
+
+    private static final int ASYNC_THREAD_COUNT = SystemPropertiesHelper.getInteger( ASYNC_THREAD_COUNT_KEY,
+        Math.max( 4, Runtime.getRuntime().availableProcessors() * 2 ) );
+
+    private static final int ASYNC_QUEUE_SIZE = SystemPropertiesHelper.getInteger( ASYNC_QUEUE_SIZE_KEY, 10000 );
+
     @Requirement
     private Logger logger;
 
     @Requirement( role = EventInspector.class )
     private Map<String, EventInspector> eventInspectors;
 
-    private ExecutorService executor;
+    private ThreadPoolExecutor executor;
+
+    private volatile EventInspectorRoutes routes;
+
+    private final AtomicLong asyncDispatchCount = new AtomicLong();
+
+    private final AtomicLong asyncCallerRunCount = new AtomicLong();
+
+    private final AtomicLong asyncTotalLag = new AtomicLong();
+
+    private final AtomicLong asyncMaxLag = new AtomicLong();
+
+    public DefaultEventInspectorHost()
+    {
+        // used by container
+    }
+
+    /**
+     * Constructor used in tests.
+     * 
+     * @since 2.0
+     */
+    protected DefaultEventInspectorHost( final Logger logger, final Map<String, EventInspector> eventInspectors )
+    {
+        this.logger = logger;
+        this.eventInspectors = eventInspectors;
+    }
 
     protected Logger getLogger()
     {
@@ -66,13 +123,38 @@ public class DefaultEventInspectorHost
         return new HashSet<EventInspector>( eventInspectors.values() );
     }
 
+    /**
+     * Returns the inspectors split by the way they are invoked. The split is computed once, and recomputed after a
+     * plugin (that may contribute or take away inspectors) is activated or deactivated, or when the count of inspectors
+     * changes.
+     * 
+     * @since 2.0
+     */
+    protected EventInspectorRoutes getEventInspectorRoutes()
+    {
+        EventInspectorRoutes result = routes;
+
+        if ( result == null || result.getSourceSize() != eventInspectors.size() )
+        {
+            result = new EventInspectorRoutes( eventInspectors.size(), getEventInspectors() );
+
+            routes = result;
+        }
+
+        return result;
+    }
+
     // == Startable iface, to manage ExecutorService lifecycle
 
     public void start()
         throws StartingException
     {
-        // set up executor
-        executor = Executors.newCachedThreadPool( new NexusThreadFactory( "nxevthost", "Event Inspector Host" ) );
+        // set up executor, bounded in both threads and queued events
+        executor =
+            new ThreadPoolExecutor( ASYNC_THREAD_COUNT, ASYNC_THREAD_COUNT, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>( ASYNC_QUEUE_SIZE ), new NexusThreadFactory( "nxevthost",
+                    "Event Inspector Host" ) );
+        executor.allowCoreThreadTimeOut( true );
     }
 
     public void stop()
@@ -85,57 +167,246 @@ public class DefaultEventInspectorHost
 
     public void shutdown()
     {
+        if ( getLogger().isDebugEnabled() )
+        {
+            getLogger().debug(
+                "Shutting down, dispatched " + getAsyncDispatchCount() + " events asynchronously, of which "
+                    + getAsyncCallerRunCount() + " were run by caller, with average lag " + getAsyncAverageLag()
+                    + "ms and max lag " + getAsyncMaxLag() + "ms." );
+        }
+
         // we need clean shutdown, wait all bg event inspectors to finish to have consistent state
         executor.shutdown();
     }
 
     public boolean isCalmPeriod()
     {
-        final ThreadPoolExecutor tpe = (ThreadPoolExecutor) executor;
-
         // "calm period" is when we have no queued nor active threads
-        return tpe.getQueue().isEmpty() && tpe.getActiveCount() == 0;
+        return executor.getQueue().isEmpty() && executor.getActiveCount() == 0;
+    }
+
+    // == Stats of asynchronous dispatch
+
+    /**
+     * Returns the count of inspections waiting for asynchronous event inspectors.
+     * 
+     * @since 2.0
+     */
+    public int getAsyncQueueDepth()
+    {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns the count of inspections run by the pool of asynchronous event inspectors (one per asynchronous inspector
+     * and event). Inspections run by the thread firing the event are not counted here, see
+     * {@link #getAsyncCallerRunCount()}.
+     * 
+     * @since 2.0
+     */
+    public long getAsyncDispatchCount()
+    {
+        return asyncDispatchCount.get();
+    }
+
+    /**
+     * Returns the count of inspections that was run on the thread firing the event, as the queue was full (or host was
+     * shut down).
+     * 
+     * @since 2.0
+     */
+    public long getAsyncCallerRunCount()
+    {
+        return asyncCallerRunCount.get();
+    }
+
+    /**
+     * Returns the average time in milliseconds an inspection waited in queue before asynchronous event inspector got
+     * it.
+     * 
+     * @since 2.0
+     */
+    public long getAsyncAverageLag()
+    {
+        final long count = asyncDispatchCount.get();
+
+        return count == 0 ? 0 : asyncTotalLag.get() / count;
+    }
+
+    /**
+     * Returns the maximum time in milliseconds an inspection waited in queue before asynchronous event inspector got
+     * it.
+     * 
+     * @since 2.0
+     */
+    public long getAsyncMaxLag()
+    {
+        return asyncMaxLag.get();
     }
 
     // ==
 
+    /**
+     * Drops the computed routes, they are recomputed on next event.
+     * 
+     * @since 2.0
+     */
+    protected void invalidateEventInspectorRoutes()
+    {
+        routes = null;
+    }
+
     public void processEvent( final Event<?> evt )
     {
-        final Set<EventInspector> inspectors = getEventInspectors();
+        if ( evt instanceof PluginActivatedEvent || evt instanceof PluginDeactivatedEvent )
+        {
+            // the plugin may have brought in or took away inspectors, and activated plugin inspectors should get this
+            // event too
+            invalidateEventInspectorRoutes();
+        }
+
+        final EventInspectorRoutes currentRoutes = getEventInspectorRoutes();
+
+        for ( EventInspector ei : currentRoutes.getSynchronousInspectors() )
+        {
+            new EventInspectorHandler( getLogger(), ei, evt ).run();
+        }
+
+        for ( EventInspector ei : currentRoutes.getAsynchronousInspectors() )
+        {
+            // acceptance is evaluated by the task
+            dispatchAsynchronously( new EventInspectorHandler( getLogger(), ei, evt ) );
+        }
+    }
+
+    /**
+     * Hands over the handler to the pool, or runs it in caller thread if pool is full (or shut down).
+     * 
+     * @since 2.0
+     */
+    protected void dispatchAsynchronously( final EventInspectorHandler handler )
+    {
+        final AsynchronousEventDispatch dispatch = new AsynchronousEventDispatch( handler );
+
+        if ( executor != null && !executor.isShutdown() )
+        {
+            try
+            {
+                executor.execute( dispatch );
+
+                return;
+            }
+            catch ( RejectedExecutionException e )
+            {
+                // execute it in sync mode, executor is either full or shutdown (?)
+                // in case executor is full, this "slowdown" will make it able consume and build up
+            }
+        }
+
+        asyncCallerRunCount.incrementAndGet();
+
+        if ( getLogger().isDebugEnabled() )
+        {
+            getLogger().debug( "Asynchronous event inspectors are busy, running " + handler + " in caller thread." );
+        }
+
+        handler.run();
+    }
+
+    public void onEvent( final Event<?> evt )
+    {
+        processEvent( evt );
+    }
+
+    // ==
+
+    /**
+     * Inspectors split by the way they are invoked.
+     * 
+     * @since 2.0
+     */
+    protected static class EventInspectorRoutes
+    {
+        private final int sourceSize;
 
-        for ( EventInspector ei : inspectors )
+        private final List<EventInspector> synchronousInspectors;
+
+        private final List<EventInspector> asynchronousInspectors;
+
+        public EventInspectorRoutes( final int sourceSize, final Collection<EventInspector> inspectors )
         {
-            EventInspectorHandler handler = new EventInspectorHandler( getLogger(), ei, evt );
+            final List<EventInspector> sync = new ArrayList<EventInspector>();
+            final List<EventInspector> async = new ArrayList<EventInspector>();
 
-            if ( handler.accepts() )
+            for ( EventInspector ei : inspectors )
             {
-                if ( ei instanceof AsynchronousEventInspector && executor != null && !executor.isShutdown() )
+                if ( ei instanceof AsynchronousEventInspector )
                 {
-                    try
-                    {
-                        executor.execute( handler );
-                    }
-                    catch ( RejectedExecutionException e )
-                    {
-                        // execute it in sync mode, executor is either full or shutdown (?)
-                        // in case executor is full, this "slowdown" will make it able consume and build up
-                        handler.run();
-                    }
+                    async.add( ei );
                 }
                 else
                 {
-                    handler.run();
+                    sync.add( ei );
                 }
             }
+
+            this.sourceSize = sourceSize;
+            this.synchronousInspectors = Collections.unmodifiableList( sync );
+            this.asynchronousInspectors = Collections.unmodifiableList( async );
+        }
+
+        public int getSourceSize()
+        {
+            return sourceSize;
+        }
+
+        public List<EventInspector> getSynchronousInspectors()
+        {
+            return synchronousInspectors;
+        }
+
+        public List<EventInspector> getAsynchronousInspectors()
+        {
+            return asynchronousInspectors;
         }
     }
 
-    public void onEvent( final Event<?> evt )
+    /**
+     * Task of the pool handing one event to one asynchronous inspector, and recording the time the task waited in
+     * queue.
+     * 
+     * @since 2.0
+     */
+    protected class AsynchronousEventDispatch
+        implements Runnable
     {
-        processEvent( evt );
-    }
+        private final EventInspectorHandler handler;
 
-    // ==
+        private final long created;
+
+        public AsynchronousEventDispatch( final EventInspectorHandler handler )
+        {
+            this.handler = handler;
+            this.created = System.currentTimeMillis();
+        }
+
+        public void run()
+        {
+            final long lag = System.currentTimeMillis() - created;
+
+            asyncDispatchCount.incrementAndGet();
+            asyncTotalLag.addAndGet( lag );
+
+            long maxLag = asyncMaxLag.get();
+
+            while ( lag > maxLag && !asyncMaxLag.compareAndSet( maxLag, lag ) )
+            {
+                maxLag = asyncMaxLag.get();
+            }
+
+            handler.run();
+        }
+    }
 
     public static class EventInspectorHandler
         implements Runnable
@@ -146,29 +417,35 @@ public class DefaultEventInspectorHost
 
         private final Event<?> evt;
 
-        private boolean accepts;
+        private Boolean accepts;
 
         public EventInspectorHandler( final Logger logger, final EventInspector ei, final Event<?> evt )
         {
             this.logger = logger;
             this.ei = ei;
             this.evt = evt;
+        }
 
-            try
-            {
-                this.accepts = this.ei.accepts( this.evt );
-            }
-            catch ( Exception e )
+        /**
+         * Asks the inspector whether it accepts the event, on first invocation, by the invoking thread.
+         */
+        public boolean accepts()
+        {
+            if ( accepts == null )
             {
-                logger.warn( "EventInspector implementation='" + ei.getClass().getName()
-                    + "' had problem accepting an event='" + evt.getClass() + "'", e );
+                try
+                {
+                    accepts = ei.accepts( evt );
+                }
+                catch ( Exception e )
+                {
+                    logger.warn( "EventInspector implementation='" + ei.getClass().getName()
+                        + "' had problem accepting an event='" + evt.getClass() + "'", e );
 
-                this.accepts = false;
+                    accepts = Boolean.FALSE;
+                }
             }
-        }
 
-        public boolean accepts()
-        {
             return accepts;
         }
 
@@ -187,5 +464,11 @@ public class DefaultEventInspectorHost
                     + "' had problem inspecting an event='" + evt.getClass() + "'", e );
             }
         }
+
+        @Override
+        public String toString()
+        {
+            return "EventInspectorHandler(inspector='" + ei.getClass().getName() + "', event='" + evt.getClass() + "')";
+        }
     }
 }
@@ -25,9 +25,13 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonatype.nexus.logging.AbstractLoggingComponent;
 import org.sonatype.nexus.logging.Slf4jPlexusLogger;
 import org.sonatype.nexus.proxy.IllegalOperationException;
@@ -58,6 +62,7 @@ import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.proxy.walker.AbstractWalkerProcessor;
 import org.sonatype.nexus.proxy.walker.DefaultWalkerContext;
 import org.sonatype.nexus.proxy.walker.DottedStoreWalkerFilter;
+import org.sonatype.nexus.proxy.walker.ParallelWalkerProcessor;
 import org.sonatype.nexus.proxy.walker.ParentOMatic;
 import org.sonatype.nexus.proxy.walker.Walker;
 import org.sonatype.nexus.proxy.walker.WalkerContext;
@@ -103,11 +108,14 @@ public class DefaultSnapshotRemover
 
         logDetails( request );
 
+        // shared by all the processed repositories, as they look up the same release repositories
+        final ReleaseIndex releaseIndex = new ReleaseIndex( getRepositoryRegistry() );
+
         if ( request.getRepositoryId() != null )
         {
             Repository repository = getRepositoryRegistry().getRepository( request.getRepositoryId() );
 
-            if ( !process( request, result, repository ) )
+            if ( !process( request, result, repository, releaseIndex ) )
             {
                 throw new IllegalArgumentException( "The repository with ID=" + repository.getId()
                     + " is not valid for Snapshot Removal Task!" );
@@ -117,22 +125,24 @@ public class DefaultSnapshotRemover
         {
             for ( Repository repository : getRepositoryRegistry().getRepositories() )
             {
-                process( request, result, repository );
+                process( request, result, repository, releaseIndex );
             }
         }
 
         return result;
     }
 
-    private void process( SnapshotRemovalRequest request, SnapshotRemovalResult result, GroupRepository group )
+    private void process( SnapshotRemovalRequest request, SnapshotRemovalResult result, GroupRepository group,
+                          ReleaseIndex releaseIndex )
     {
         for ( Repository repository : group.getMemberRepositories() )
         {
-            process( request, result, repository );
+            process( request, result, repository, releaseIndex );
         }
     }
 
-    private boolean process( SnapshotRemovalRequest request, SnapshotRemovalResult result, Repository repository )
+    private boolean process( SnapshotRemovalRequest request, SnapshotRemovalResult result, Repository repository,
+                             ReleaseIndex releaseIndex )
     {
         // only from maven repositories, stay silent for others and simply skip
         if ( !repository.getRepositoryContentClass().isCompatible( contentClass ) )
@@ -149,12 +159,12 @@ public class DefaultSnapshotRemover
 
         if ( repository.getRepositoryKind().isFacetAvailable( GroupRepository.class ) )
         {
-            process( request, result, repository.adaptToFacet( GroupRepository.class ) );
+            process( request, result, repository.adaptToFacet( GroupRepository.class ), releaseIndex );
         }
         else if ( repository.getRepositoryKind().isFacetAvailable( MavenRepository.class ) )
         {
             result.addResult( removeSnapshotsFromMavenRepository( repository.adaptToFacet( MavenRepository.class ),
-                request ) );
+                request, releaseIndex ) );
         }
 
         return true;
@@ -168,6 +178,13 @@ public class DefaultSnapshotRemover
      */
     protected SnapshotRemovalRepositoryResult removeSnapshotsFromMavenRepository( MavenRepository repository,
                                                                                   SnapshotRemovalRequest request )
+    {
+        return removeSnapshotsFromMavenRepository( repository, request, new ReleaseIndex( getRepositoryRegistry() ) );
+    }
+
+    private SnapshotRemovalRepositoryResult removeSnapshotsFromMavenRepository( MavenRepository repository,
+                                                                                SnapshotRemovalRequest request,
+                                                                                ReleaseIndex releaseIndex )
     {
         TaskUtil.checkInterruption();
 
@@ -203,10 +220,15 @@ public class DefaultSnapshotRemover
 
         // create a walker to collect deletables and let it loose on collections only
         SnapshotRemoverWalkerProcessor snapshotRemoveProcessor =
-            new SnapshotRemoverWalkerProcessor( repository, request, parentOMatic );
+            new SnapshotRemoverWalkerProcessor( repository, request, parentOMatic, releaseIndex );
+
+        // the processor needs only names and timestamps of the listed items, not their attributes
+        final ResourceStoreRequest mainRequest = new ResourceStoreRequest( "/" );
+
+        mainRequest.setRequestLightweightListing( true );
 
         DefaultWalkerContext ctxMain =
-            new DefaultWalkerContext( repository, new ResourceStoreRequest( "/" ), new DottedStoreWalkerFilter() );
+            new DefaultWalkerContext( repository, mainRequest, new DottedStoreWalkerFilter() );
 
         ctxMain.getContext().put( DeleteOperation.DELETE_OPERATION_CTX_KEY, getDeleteOperation( request ) );
 
@@ -270,6 +292,20 @@ public class DefaultSnapshotRemover
         return result;
     }
 
+    private long getDateThreshold( final SnapshotRemovalRequest request )
+    {
+        int days = request.getRemoveSnapshotsOlderThanDays();
+
+        if ( days > 0 )
+        {
+            return System.currentTimeMillis() - ( days * 86400000L );
+        }
+        else
+        {
+            return -1;
+        }
+    }
+
     private DeleteOperation getDeleteOperation( final SnapshotRemovalRequest request )
     {
         return request.isDeleteImmediately() ? DeleteOperation.DELETE_PERMANENTLY : DeleteOperation.MOVE_TO_TRASH;
@@ -298,6 +334,7 @@ public class DefaultSnapshotRemover
 
     private class SnapshotRemoverWalkerProcessor
         extends AbstractWalkerProcessor
+        implements ParallelWalkerProcessor
     {
 
         private final MavenRepository repository;
@@ -314,6 +351,8 @@ public class DefaultSnapshotRemover
 
         private final long dateThreshold;
 
+        private final ReleaseIndex releaseIndex;
+
         private boolean shouldProcessCollection;
 
         private boolean removeWholeGAV;
@@ -323,21 +362,42 @@ public class DefaultSnapshotRemover
         private int deletedFiles = 0;
 
         public SnapshotRemoverWalkerProcessor( MavenRepository repository, SnapshotRemovalRequest request,
-                                               final ParentOMatic collectionNodes )
+                                               final ParentOMatic collectionNodes, final ReleaseIndex releaseIndex )
+        {
+            this( repository, request, collectionNodes, getDateThreshold( request ), releaseIndex );
+        }
+
+        private SnapshotRemoverWalkerProcessor( MavenRepository repository, SnapshotRemovalRequest request,
+                                                final ParentOMatic collectionNodes, final long dateThreshold,
+                                                final ReleaseIndex releaseIndex )
         {
             this.repository = repository;
             this.request = request;
             this.collectionNodes = collectionNodes;
+            this.dateThreshold = dateThreshold;
+            this.releaseIndex = releaseIndex;
+        }
 
-            int days = request.getRemoveSnapshotsOlderThanDays();
+        @Override
+        public ParallelWalkerProcessor fork( WalkerContext context )
+        {
+            // forks collect the paths into their own ParentOMatic, that is not thread safe
+            return new SnapshotRemoverWalkerProcessor( repository, request, new ParentOMatic(), dateThreshold,
+                releaseIndex );
+        }
 
-            if ( days > 0 )
-            {
-                this.dateThreshold = System.currentTimeMillis() - ( days * 86400000L );
-            }
-            else
+        @Override
+        public void join( WalkerContext context, ParallelWalkerProcessor fork )
+        {
+            final SnapshotRemoverWalkerProcessor other = (SnapshotRemoverWalkerProcessor) fork;
+
+            deletedSnapshots += other.deletedSnapshots;
+
+            deletedFiles += other.deletedFiles;
+
+            for ( String path : other.collectionNodes.getMarkedPaths() )
             {
-                this.dateThreshold = -1;
+                collectionNodes.addAndMarkPath( path );
             }
         }
 
@@ -644,74 +704,7 @@ public class DefaultSnapshotRemover
 
         public boolean releaseExistsForSnapshot( Gav snapshotGav, Map<String, Object> context )
         {
-            for ( Repository repository : repositoryRegistry.getRepositories() )
-            {
-                // we need to filter for:
-                // repository that is MavenRepository and is hosted or proxy
-                // repository that has release policy
-                if ( repository.getRepositoryKind().isFacetAvailable( MavenHostedRepository.class )
-                    || repository.getRepositoryKind().isFacetAvailable( MavenProxyRepository.class ) )
-                {
-                    // actually, we don't care is it proxy or hosted, we only need to filter out groups and other
-                    // "composite" reposes like shadows
-                    MavenRepository mrepository = repository.adaptToFacet( MavenRepository.class );
-
-                    // look in release reposes only
-                    if ( mrepository.isUserManaged()
-                        && RepositoryPolicy.RELEASE.equals( mrepository.getRepositoryPolicy() ) )
-                    {
-                        try
-                        {
-                            String releaseVersion = null;
-
-                            // NEXUS-3148
-                            if ( snapshotGav.getBaseVersion().endsWith( "-SNAPSHOT" ) )
-                            {
-                                // "-SNAPSHOT" :== 9 chars
-                                releaseVersion =
-                                    snapshotGav.getBaseVersion().substring( 0,
-                                        snapshotGav.getBaseVersion().length() - 9 );
-                            }
-                            else
-                            {
-                                // "SNAPSHOT" :== 8 chars
-                                releaseVersion =
-                                    snapshotGav.getBaseVersion().substring( 0,
-                                        snapshotGav.getBaseVersion().length() - 8 );
-                            }
-
-                            Gav releaseGav =
-                                new Gav( snapshotGav.getGroupId(), snapshotGav.getArtifactId(), releaseVersion,
-                                    snapshotGav.getClassifier(), snapshotGav.getExtension(), null, null, null, false,
-                                    null, false, null );
-
-                            String path = mrepository.getGavCalculator().gavToPath( releaseGav );
-
-                            ResourceStoreRequest req = new ResourceStoreRequest( path, true );
-
-                            req.getRequestContext().putAll( context );
-
-                            getLogger().debug( "Checking for release counterpart in repository '{}' and path '{}'",
-                                mrepository.getId(), req.toString() );
-
-                            mrepository.retrieveItem( false, req );
-
-                            return true;
-                        }
-                        catch ( ItemNotFoundException e )
-                        {
-                            // nothing
-                        }
-                        catch ( Exception e )
-                        {
-                            // nothing
-                            getLogger().debug( "Unexpected exception!", e );
-                        }
-                    }
-                }
-            }
-
-            return false;
+            return releaseIndex.releaseExists( snapshotGav, context );
         }
 
         private ResourceStoreRequest createResourceStoreRequest( final StorageItem item, final WalkerContext ctx )
@@ -747,4 +740,135 @@ public class DefaultSnapshotRemover
 
     }
 
+    /**
+     * Index of release counterparts of snapshots, living for one snapshot removal run. The release repositories to look
+     * into are collected once, and answers are remembered per release GAV, as all the builds of a snapshot share the
+     * same release counterpart. Lookups check the local storage of release repositories, to not construct an
+     * ItemNotFoundException for every miss, like a retrieval would. Is thread safe, as parallel walks query it
+     * concurrently.
+     */
+    static class ReleaseIndex
+    {
+        private final Logger logger = LoggerFactory.getLogger( ReleaseIndex.class );
+
+        private final RepositoryRegistry repositoryRegistry;
+
+        private final ConcurrentMap<String, Boolean> releases = new ConcurrentHashMap<String, Boolean>();
+
+        private volatile List<MavenRepository> releaseRepositories;
+
+        ReleaseIndex( final RepositoryRegistry repositoryRegistry )
+        {
+            this.repositoryRegistry = repositoryRegistry;
+        }
+
+        public boolean releaseExists( final Gav snapshotGav, final Map<String, Object> context )
+        {
+            final Gav releaseGav = getReleaseGav( snapshotGav );
+
+            final String key =
+                releaseGav.getGroupId() + ":" + releaseGav.getArtifactId() + ":" + releaseGav.getVersion() + ":"
+                    + releaseGav.getClassifier() + ":" + releaseGav.getExtension();
+
+            Boolean result = releases.get( key );
+
+            if ( result == null )
+            {
+                // concurrent lookups of same GAV may happen, but they give same answer
+                result = lookupRelease( releaseGav, context );
+
+                releases.put( key, result );
+            }
+
+            return result;
+        }
+
+        protected Gav getReleaseGav( final Gav snapshotGav )
+        {
+            String releaseVersion = null;
+
+            // NEXUS-3148
+            if ( snapshotGav.getBaseVersion().endsWith( "-SNAPSHOT" ) )
+            {
+                // "-SNAPSHOT" :== 9 chars
+                releaseVersion = snapshotGav.getBaseVersion().substring( 0, snapshotGav.getBaseVersion().length() - 9 );
+            }
+            else
+            {
+                // "SNAPSHOT" :== 8 chars
+                releaseVersion = snapshotGav.getBaseVersion().substring( 0, snapshotGav.getBaseVersion().length() - 8 );
+            }
+
+            return new Gav( snapshotGav.getGroupId(), snapshotGav.getArtifactId(), releaseVersion,
+                snapshotGav.getClassifier(), snapshotGav.getExtension(), null, null, null, false, null, false, null );
+        }
+
+        protected boolean lookupRelease( final Gav releaseGav, final Map<String, Object> context )
+        {
+            for ( MavenRepository mrepository : getReleaseRepositories() )
+            {
+                if ( !mrepository.getLocalStatus().shouldServiceRequest() )
+                {
+                    continue;
+                }
+
+                try
+                {
+                    String path = mrepository.getGavCalculator().gavToPath( releaseGav );
+
+                    ResourceStoreRequest req = new ResourceStoreRequest( path, true );
+
+                    req.getRequestContext().putAll( context );
+
+                    logger.debug( "Checking for release counterpart in repository '{}' and path '{}'",
+                        mrepository.getId(), req.toString() );
+
+                    if ( mrepository.getLocalStorage().containsItem( mrepository, req ) )
+                    {
+                        return true;
+                    }
+                }
+                catch ( Exception e )
+                {
+                    // nothing
+                    logger.debug( "Unexpected exception!", e );
+                }
+            }
+
+            return false;
+        }
+
+        protected List<MavenRepository> getReleaseRepositories()
+        {
+            if ( releaseRepositories == null )
+            {
+                final List<MavenRepository> result = new ArrayList<MavenRepository>();
+
+                for ( Repository repository : repositoryRegistry.getRepositories() )
+                {
+                    // we need to filter for:
+                    // repository that is MavenRepository and is hosted or proxy
+                    // repository that has release policy
+                    if ( repository.getRepositoryKind().isFacetAvailable( MavenHostedRepository.class )
+                        || repository.getRepositoryKind().isFacetAvailable( MavenProxyRepository.class ) )
+                    {
+                        // actually, we don't care is it proxy or hosted, we only need to filter out groups and other
+                        // "composite" reposes like shadows
+                        MavenRepository mrepository = repository.adaptToFacet( MavenRepository.class );
+
+                        // look in release reposes only
+                        if ( mrepository.isUserManaged()
+                            && RepositoryPolicy.RELEASE.equals( mrepository.getRepositoryPolicy() ) )
+                        {
+                            result.add( mrepository );
+                        }
+                    }
+                }
+
+                releaseRepositories = result;
+            }
+
+            return releaseRepositories;
+        }
+    }
 }
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.events;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.sonatype.nexus.plugins.events.PluginActivatedEvent;
+import org.sonatype.nexus.proxy.events.AsynchronousEventInspector;
+import org.sonatype.nexus.proxy.events.EventInspector;
+import org.sonatype.plexus.appevents.AbstractEvent;
+import org.sonatype.plexus.appevents.Event;
+
+public class DefaultEventInspectorHostTest
+{
+    private Map<String, EventInspector> inspectors;
+
+    private DefaultEventInspectorHost host;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        inspectors = Collections.synchronizedMap( new LinkedHashMap<String, EventInspector>() );
+
+        host = new DefaultEventInspectorHost( LoggerFactory.getLogger( DefaultEventInspectorHost.class ), inspectors );
+        host.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        host.shutdown();
+    }
+
+    @Test
+    public void testAsynchronousInspectorsOfSameEventRunInParallel()
+        throws Exception
+    {
+        // both inspectors wait for each other: if they would be run serially, none of them would complete
+        final CountDownLatch started = new CountDownLatch( 2 );
+        final CountDownLatch done = new CountDownLatch( 2 );
+
+        inspectors.put( "first", new RendezvousInspector( started, done ) );
+        inspectors.put( "second", new RendezvousInspector( started, done ) );
+
+        host.processEvent( new TestEvent() );
+
+        Assert.assertTrue( "Inspectors of one event were not run in parallel", done.await( 5, TimeUnit.SECONDS ) );
+        Assert.assertEquals( 2, host.getAsyncDispatchCount() );
+        Assert.assertEquals( 0, host.getAsyncCallerRunCount() );
+    }
+
+    @Test
+    public void testAcceptsIsEvaluatedOffPublishingThread()
+        throws Exception
+    {
+        final RecordingInspector accepting = new RecordingInspector( true );
+        final RecordingInspector refusing = new RecordingInspector( false );
+
+        inspectors.put( "accepting", accepting );
+        inspectors.put( "refusing", refusing );
+
+        host.processEvent( new TestEvent() );
+
+        Assert.assertTrue( accepting.inspected.await( 5, TimeUnit.SECONDS ) );
+        Assert.assertTrue( refusing.accepted.await( 5, TimeUnit.SECONDS ) );
+
+        Assert.assertNotSame( Thread.currentThread(), accepting.acceptingThread );
+        Assert.assertNotSame( Thread.currentThread(), refusing.acceptingThread );
+        Assert.assertNotSame( Thread.currentThread(), accepting.inspectingThread );
+        Assert.assertNull( refusing.inspectingThread );
+    }
+
+    @Test
+    public void testCallerRunsAreNotCountedAsDispatched()
+        throws Exception
+    {
+        final RecordingInspector inspector = new RecordingInspector( true );
+
+        inspectors.put( "inspector", inspector );
+
+        // pool does not take tasks anymore
+        host.shutdown();
+
+        host.processEvent( new TestEvent() );
+
+        Assert.assertSame( Thread.currentThread(), inspector.inspectingThread );
+        Assert.assertEquals( 0, host.getAsyncDispatchCount() );
+        Assert.assertEquals( 1, host.getAsyncCallerRunCount() );
+    }
+
+    @Test
+    public void testRoutesAreRecomputedOnPluginEvents()
+        throws Exception
+    {
+        final RecordingInspector removed = new RecordingInspector( true );
+
+        inspectors.put( "inspector", removed );
+
+        host.processEvent( new TestEvent() );
+
+        Assert.assertTrue( removed.inspected.await( 5, TimeUnit.SECONDS ) );
+
+        // swap the inspector, keeping the count of them same
+        final RecordingInspector added = new RecordingInspector( true );
+
+        inspectors.remove( "inspector" );
+        inspectors.put( "other", added );
+
+        host.processEvent( new PluginActivatedEvent( null, null ) );
+
+        Assert.assertTrue( "Added inspector did not get the event", added.inspected.await( 5, TimeUnit.SECONDS ) );
+        Assert.assertTrue( added.event instanceof PluginActivatedEvent );
+        Assert.assertTrue( removed.event instanceof TestEvent );
+    }
+
+    // ==
+
+    private static class TestEvent
+        extends AbstractEvent<Object>
+    {
+        public TestEvent()
+        {
+            super( new Object() );
+        }
+    }
+
+    private static class RendezvousInspector
+        implements EventInspector, AsynchronousEventInspector
+    {
+        private final CountDownLatch started;
+
+        private final CountDownLatch done;
+
+        public RendezvousInspector( final CountDownLatch started, final CountDownLatch done )
+        {
+            this.started = started;
+            this.done = done;
+        }
+
+        public boolean accepts( final Event<?> evt )
+        {
+            return true;
+        }
+
+        public void inspect( final Event<?> evt )
+        {
+            started.countDown();
+
+            try
+            {
+                if ( started.await( 5, TimeUnit.SECONDS ) )
+                {
+                    done.countDown();
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class RecordingInspector
+        implements EventInspector, AsynchronousEventInspector
+    {
+        private final boolean accepts;
+
+        private final CountDownLatch accepted = new CountDownLatch( 1 );
+
+        private final CountDownLatch inspected = new CountDownLatch( 1 );
+
+        private volatile Thread acceptingThread;
+
+        private volatile Thread inspectingThread;
+
+        private volatile Event<?> event;
+
+        public RecordingInspector( final boolean accepts )
+        {
+            this.accepts = accepts;
+        }
+
+        public boolean accepts( final Event<?> evt )
+        {
+            acceptingThread = Thread.currentThread();
+            accepted.countDown();
+
+            return accepts;
+        }
+
+        public void inspect( final Event<?> evt )
+        {
+            inspectingThread = Thread.currentThread();
+            event = evt;
+            inspected.countDown();
+        }
+    }
+}
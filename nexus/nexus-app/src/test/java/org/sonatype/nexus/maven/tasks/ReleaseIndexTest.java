@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.maven.tasks;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.same;
+import static org.easymock.EasyMock.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.easymock.IArgumentMatcher;
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+import org.sonatype.nexus.maven.tasks.DefaultSnapshotRemover.ReleaseIndex;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.maven.MavenHostedRepository;
+import org.sonatype.nexus.proxy.maven.MavenRepository;
+import org.sonatype.nexus.proxy.maven.RepositoryPolicy;
+import org.sonatype.nexus.proxy.maven.gav.GavCalculator;
+import org.sonatype.nexus.proxy.maven.gav.M2GavCalculator;
+import org.sonatype.nexus.proxy.registry.RepositoryRegistry;
+import org.sonatype.nexus.proxy.repository.DefaultRepositoryKind;
+import org.sonatype.nexus.proxy.repository.LocalStatus;
+import org.sonatype.nexus.proxy.repository.Repository;
+import org.sonatype.nexus.proxy.storage.local.LocalRepositoryStorage;
+
+/**
+ * Tests the release counterpart lookups done by snapshot removal.
+ */
+public class ReleaseIndexTest
+{
+    private final GavCalculator gavCalculator = new M2GavCalculator();
+
+    private final Map<String, Object> context = new HashMap<String, Object>();
+
+    @Test
+    public void testReleaseLookedUpOncePerVersion()
+        throws Exception
+    {
+        final LocalRepositoryStorage releasesStorage = createMock( LocalRepositoryStorage.class );
+        final MavenRepository releases =
+            createRepository( "releases", RepositoryPolicy.RELEASE, true, releasesStorage );
+        final LocalRepositoryStorage snapshotsStorage = createMock( LocalRepositoryStorage.class );
+        final MavenRepository snapshots =
+            createRepository( "snapshots", RepositoryPolicy.SNAPSHOT, true, snapshotsStorage );
+
+        // only the release repository is asked, once per release version
+        expect( releasesStorage.containsItem( same( releases ), requestFor( "/org/test/a/1.0/a-1.0.pom" ) ) ).andReturn(
+            true ).once();
+        expect( releasesStorage.containsItem( same( releases ), requestFor( "/org/test/a/2.0/a-2.0.pom" ) ) ).andReturn(
+            false ).once();
+
+        final ReleaseIndex releaseIndex = createReleaseIndex( releases, snapshots );
+
+        replay( releasesStorage, snapshotsStorage );
+
+        Assert.assertTrue( releaseExists( releaseIndex, "/org/test/a/1.0-SNAPSHOT/a-1.0-20120101.101010-1.pom" ) );
+        Assert.assertTrue( releaseExists( releaseIndex, "/org/test/a/1.0-SNAPSHOT/a-1.0-20120102.101010-2.pom" ) );
+        Assert.assertTrue( releaseExists( releaseIndex, "/org/test/a/1.0-SNAPSHOT/a-1.0-SNAPSHOT.pom" ) );
+        Assert.assertFalse( releaseExists( releaseIndex, "/org/test/a/2.0-SNAPSHOT/a-2.0-20120101.101010-1.pom" ) );
+        Assert.assertFalse( releaseExists( releaseIndex, "/org/test/a/2.0-SNAPSHOT/a-2.0-20120102.101010-2.pom" ) );
+
+        verify( releasesStorage, snapshotsStorage );
+    }
+
+    @Test
+    public void testOutOfServiceRepositoryIsSkipped()
+        throws Exception
+    {
+        final LocalRepositoryStorage storage1 = createMock( LocalRepositoryStorage.class );
+        final MavenRepository releases1 = createRepository( "releases1", RepositoryPolicy.RELEASE, false, storage1 );
+        final LocalRepositoryStorage storage2 = createMock( LocalRepositoryStorage.class );
+        final MavenRepository releases2 = createRepository( "releases2", RepositoryPolicy.RELEASE, true, storage2 );
+
+        expect( storage2.containsItem( same( releases2 ), requestFor( "/org/test/a/1.0/a-1.0.pom" ) ) ).andReturn(
+            true ).once();
+
+        final ReleaseIndex releaseIndex = createReleaseIndex( releases1, releases2 );
+
+        replay( storage1, storage2 );
+
+        Assert.assertTrue( releaseExists( releaseIndex, "/org/test/a/1.0-SNAPSHOT/a-1.0-20120101.101010-1.pom" ) );
+
+        verify( storage1, storage2 );
+    }
+
+    // ==
+
+    protected boolean releaseExists( final ReleaseIndex releaseIndex, final String snapshotPath )
+    {
+        return releaseIndex.releaseExists( gavCalculator.pathToGav( snapshotPath ), context );
+    }
+
+    protected ReleaseIndex createReleaseIndex( final MavenRepository... repositories )
+    {
+        final RepositoryRegistry repositoryRegistry = createMock( RepositoryRegistry.class );
+
+        expect( repositoryRegistry.getRepositories() ).andReturn(
+            Collections.unmodifiableList( new ArrayList<Repository>( Arrays.asList( repositories ) ) ) ).once();
+
+        replay( repositoryRegistry );
+
+        for ( MavenRepository repository : repositories )
+        {
+            replay( repository );
+        }
+
+        return new ReleaseIndex( repositoryRegistry );
+    }
+
+    protected MavenRepository createRepository( final String id, final RepositoryPolicy policy,
+                                                final boolean inService, final LocalRepositoryStorage localStorage )
+    {
+        final MavenRepository repository = createMock( MavenRepository.class );
+
+        final List<Class<?>> facets = new ArrayList<Class<?>>();
+        facets.add( MavenRepository.class );
+        facets.add( MavenHostedRepository.class );
+
+        expect( repository.getId() ).andReturn( id ).anyTimes();
+        expect( repository.getRepositoryKind() ).andReturn(
+            new DefaultRepositoryKind( MavenHostedRepository.class, facets ) ).anyTimes();
+        expect( repository.adaptToFacet( eq( MavenRepository.class ) ) ).andReturn( repository ).anyTimes();
+        expect( repository.isUserManaged() ).andReturn( true ).anyTimes();
+        expect( repository.getRepositoryPolicy() ).andReturn( policy ).anyTimes();
+        expect( repository.getGavCalculator() ).andReturn( gavCalculator ).anyTimes();
+        expect( repository.getLocalStorage() ).andReturn( localStorage ).anyTimes();
+        expect( repository.getLocalStatus() ).andReturn(
+            inService ? LocalStatus.IN_SERVICE : LocalStatus.OUT_OF_SERVICE ).anyTimes();
+
+        return repository;
+    }
+
+    protected static ResourceStoreRequest requestFor( final String path )
+    {
+        EasyMock.reportMatcher( new IArgumentMatcher()
+        {
+            public boolean matches( final Object argument )
+            {
+                return argument instanceof ResourceStoreRequest
+                    && path.equals( ( (ResourceStoreRequest) argument ).getRequestPath() );
+            }
+
+            public void appendTo( final StringBuffer buffer )
+            {
+                buffer.append( "requestFor(" ).append( path ).append( ")" );
+            }
+        } );
+
+        return null;
+    }
+}
@@ -27,12 +27,28 @@ import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -116,6 +132,7 @@ import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.repository.ShadowRepository;
 import org.sonatype.nexus.proxy.storage.local.fs.DefaultFSLocalRepositoryStorage;
 import org.sonatype.nexus.proxy.utils.RepositoryStringUtils;
+import org.sonatype.nexus.threads.NexusThreadFactory;
 import org.sonatype.nexus.util.SystemPropertiesHelper;
 import org.sonatype.scheduling.TaskInterruptedException;
 import org.sonatype.scheduling.TaskUtil;
@@ -149,7 +166,51 @@ public class DefaultIndexerManager
     /** Path prefix where index publishing happens */
     public static final String PUBLISHING_PATH_PREFIX = "/.index";
 
-    private static final Map<String, ReadWriteLock> locks = new HashMap<String, ReadWriteLock>();
+    /**
+     * Key of system property setting the interval in milliseconds of applying queued index updates in batches. When
+     * zero (the default), items are added to and removed from index synchronously, as they are reported.
+     * 
+     * @since 2.0
+     */
+    public static final String INDEXING_PIPELINE_INTERVAL_KEY = "nexus.indexer.pipeline.interval";
+
+    private static final long INDEXING_PIPELINE_INTERVAL = SystemPropertiesHelper.getLong(
+        INDEXING_PIPELINE_INTERVAL_KEY, 0 );
+
+    /**
+     * Key of system property setting the count of threads searching contexts in parallel, when a flat search spans
+     * all contexts. When set to 1 or less, contexts are searched sequentially.
+     * 
+     * @since 2.0
+     */
+    public static final String SEARCH_THREAD_COUNT_KEY = "nexus.indexer.search.threadCount";
+
+    private static final int SEARCH_THREAD_COUNT = SystemPropertiesHelper.getInteger( SEARCH_THREAD_COUNT_KEY,
+        Runtime.getRuntime().availableProcessors() );
+
+    /**
+     * Key of system property setting the count of context searches that may wait for a search thread. When the queue
+     * is full, the context is searched by the thread performing the flat search.
+     * 
+     * @since 2.0
+     */
+    public static final String SEARCH_QUEUE_SIZE_KEY = "nexus.indexer.search.queueSize";
+
+    private static final int SEARCH_QUEUE_SIZE = SystemPropertiesHelper.getInteger( SEARCH_QUEUE_SIZE_KEY,
+        Math.max( 1, SEARCH_THREAD_COUNT ) * 16 );
+
+    /**
+     * Key of system property setting the time budget in milliseconds of a flat search spanning all contexts. Contexts
+     * not searched within the budget are left out of the result, that is then a {@link PartialFlatSearchResponse}.
+     * 
+     * @since 2.0
+     */
+    public static final String SEARCH_TIMEOUT_KEY = "nexus.indexer.search.timeout";
+
+    private static final long SEARCH_TIMEOUT = SystemPropertiesHelper.getLong( SEARCH_TIMEOUT_KEY, 30000 );
+
+    private static final ConcurrentMap<String, ReadWriteLock> locks =
+        new ConcurrentHashMap<String, ReadWriteLock>();
 
     private Logger logger = Slf4jPlexusLogger.getPlexusLogger( getClass() );
 
@@ -190,6 +251,45 @@ public class DefaultIndexerManager
 
     private File tempDirectory;
 
+    private long indexingPipelineInterval = INDEXING_PIPELINE_INTERVAL;
+
+    /**
+     * Pending index updates, coalesced per item (last one wins), in order of last update.
+     */
+    private final LinkedHashMap<String, PendingIndexUpdate> pendingIndexUpdates =
+        new LinkedHashMap<String, PendingIndexUpdate>();
+
+    /**
+     * Lock serializing the application of pending index updates.
+     */
+    private final Object indexingPipelineLock = new Object();
+
+    private ScheduledExecutorService indexingPipelineExecutor;
+
+    /**
+     * Set once pipeline is shut down, updates are applied synchronously from then on.
+     */
+    private boolean indexingPipelineShutdown;
+
+    private volatile long indexingLag;
+
+    private int searchThreadCount = SEARCH_THREAD_COUNT;
+
+    private long searchTimeout = SEARCH_TIMEOUT;
+
+    private ExecutorService searchExecutor;
+
+    private final AtomicLong indexGeneration = new AtomicLong();
+
+    private final ConcurrentMap<String, AtomicLong> repositoryIndexGenerations =
+        new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * Immutable snapshot of managed indexing contexts keyed by repository ID, replaced as a whole when a context is
+     * added or removed, hence lookups need no locking.
+     */
+    private volatile Map<String, IndexingContext> indexingContexts = Collections.emptyMap();
+
     public DefaultIndexerManager()
     {
         // Note: this is needed and used in ITs only!
@@ -233,11 +333,28 @@ public class DefaultIndexerManager
     {
         getLogger().info( "Shutting down Nexus IndexerManager" );
 
+        shutdownIndexingPipeline();
+
+        synchronized ( this )
+        {
+            if ( searchExecutor != null )
+            {
+                searchExecutor.shutdown();
+
+                searchExecutor = null;
+            }
+        }
+
         for ( IndexingContext ctx : nexusIndexer.getIndexingContexts().values() )
         {
             nexusIndexer.removeIndexingContext( ctx, false );
         }
 
+        synchronized ( this )
+        {
+            indexingContexts = Collections.emptyMap();
+        }
+
         locks.clear();
     }
 
@@ -374,10 +491,13 @@ public class DefaultIndexerManager
                 ctx.setSearchable( repository.isSearchable() );
             }
 
+            putRepositoryIndexContext( repository.getId(), ctx );
         }
         finally
         {
             lock.unlock();
+
+            indexChanged( repository.getId() );
         }
     }
 
@@ -402,7 +522,11 @@ public class DefaultIndexerManager
 
             if ( ctx != null )
             {
+                putRepositoryIndexContext( repository.getId(), null );
+
                 nexusIndexer.removeIndexingContext( ctx, deleteFiles );
+
+                indexChanged( repository.getId() );
             }
         }
         finally
@@ -484,11 +608,31 @@ public class DefaultIndexerManager
     public IndexingContext getRepositoryIndexContext( Repository repository )
     {
         // get context for repository
-        IndexingContext ctx = nexusIndexer.getIndexingContexts().get( getContextId( repository.getId() ) );
+        IndexingContext ctx = indexingContexts.get( repository.getId() );
 
         return ctx;
     }
 
+    /**
+     * Replaces the snapshot of managed contexts with one having the given context registered for the repository, or
+     * unregistered if context is null.
+     */
+    protected synchronized void putRepositoryIndexContext( final String repositoryId, final IndexingContext ctx )
+    {
+        final HashMap<String, IndexingContext> newContexts = new HashMap<String, IndexingContext>( indexingContexts );
+
+        if ( ctx != null )
+        {
+            newContexts.put( repositoryId, ctx );
+        }
+        else
+        {
+            newContexts.remove( repositoryId );
+        }
+
+        indexingContexts = Collections.unmodifiableMap( newContexts );
+    }
+
     public void setRepositoryIndexContextSearchable( String repositoryId, boolean searchable )
         throws IOException, NoSuchRepositoryException
     {
@@ -515,9 +659,76 @@ public class DefaultIndexerManager
             }
 
             ctx.setSearchable( searchable );
+
+            indexChanged( repositoryId );
         }
     }
 
+    public long getIndexGeneration( final String repositoryId )
+    {
+        if ( repositoryId == null )
+        {
+            return indexGeneration.get();
+        }
+
+        try
+        {
+            return getIndexGeneration( repositoryRegistry.getRepository( repositoryId ), new HashSet<String>() );
+        }
+        catch ( NoSuchRepositoryException e )
+        {
+            // no repo, no index, the global generation is as good as any
+            return indexGeneration.get();
+        }
+    }
+
+    protected long getIndexGeneration( final Repository repository, final Set<String> processedRepositoryIds )
+    {
+        if ( !processedRepositoryIds.add( repository.getId() ) )
+        {
+            return 0;
+        }
+
+        final AtomicLong generation = repositoryIndexGenerations.get( repository.getId() );
+
+        long result = generation != null ? generation.get() : 0;
+
+        // merged contexts of groups change with their members
+        if ( repository.getRepositoryKind().isFacetAvailable( GroupRepository.class ) )
+        {
+            for ( Repository member : repository.adaptToFacet( GroupRepository.class ).getMemberRepositories() )
+            {
+                result += getIndexGeneration( member, processedRepositoryIds );
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Marks the index of the given repository as changed, by bumping its generation (and the global one).
+     */
+    protected void indexChanged( final String repositoryId )
+    {
+        AtomicLong generation = repositoryIndexGenerations.get( repositoryId );
+
+        if ( generation == null )
+        {
+            final AtomicLong newGeneration = new AtomicLong();
+
+            generation = repositoryIndexGenerations.putIfAbsent( repositoryId, newGeneration );
+
+            if ( generation == null )
+            {
+                generation = newGeneration;
+            }
+        }
+
+        generation.incrementAndGet();
+
+        indexGeneration.incrementAndGet();
+    }
+
     /**
      * Extracts the repo root on local FS as File. It may return null!
      * 
@@ -611,60 +822,82 @@ public class DefaultIndexerManager
                 return;
             }
 
+            if ( isIndexingPipelineEnabled() && enqueueIndexUpdate( new PendingIndexUpdate( repository, item, null ) ) )
+            {
+                // will be indexed with others in next batch
+                return;
+            }
+
             final RepositoryItemUidLock uidLock = item.getRepositoryItemUid().getLock();
 
             uidLock.lock( Action.read );
 
             try
             {
+                final ArtifactContext ac = createArtifactContext( repository, item, context );
+
+                // and finally: index it
+                getNexusIndexer().addArtifactToIndex( ac, context );
+            }
+            finally
+            {
+                uidLock.unlock();
+
+                indexChanged( repository.getId() );
+            }
+        }
+    }
+
+    /**
+     * Creates the artifact context of item that is to be added to index, or {@code null} if it cannot be created. The
+     * caller should hold the read lock of item.
+     * 
+     * @since 2.0
+     */
+    protected ArtifactContext createArtifactContext( final Repository repository, final StorageItem item,
+                                                     final IndexingContext context )
+        throws LocalStorageException
+    {
+        ArtifactContext ac = null;
 
-                ArtifactContext ac = null;
+        // if we have a valid indexing context and have access to a File
+        if ( DefaultFSLocalRepositoryStorage.class.isAssignableFrom( repository.getLocalStorage().getClass() ) )
+        {
+            File file =
+                ( (DefaultFSLocalRepositoryStorage) repository.getLocalStorage() ).getFileFromBase( repository,
+                    new ResourceStoreRequest( item ) );
 
-                // if we have a valid indexing context and have access to a File
-                if ( DefaultFSLocalRepositoryStorage.class.isAssignableFrom( repository.getLocalStorage().getClass() ) )
+            if ( file.exists() )
+            {
+                try
+                {
+                    ac = artifactContextProducer.getArtifactContext( context, file );
+                }
+                catch ( IllegalArgumentException e )
                 {
-                    File file =
-                        ( (DefaultFSLocalRepositoryStorage) repository.getLocalStorage() ).getFileFromBase( repository,
-                            new ResourceStoreRequest( item ) );
+                    // cannot create artifact context, forget it
+                    return null;
+                }
 
-                    if ( file.exists() )
+                if ( ac != null )
+                {
+                    if ( getLogger().isDebugEnabled() )
                     {
-                        try
-                        {
-                            ac = artifactContextProducer.getArtifactContext( context, file );
-                        }
-                        catch ( IllegalArgumentException e )
-                        {
-                            // cannot create artifact context, forget it
-                            return;
-                        }
-
-                        if ( ac != null )
-                        {
-                            if ( getLogger().isDebugEnabled() )
-                            {
-                                getLogger().debug( "The ArtifactContext created from file is fine, continuing." );
-                            }
+                        getLogger().debug( "The ArtifactContext created from file is fine, continuing." );
+                    }
 
-                            ArtifactInfo ai = ac.getArtifactInfo();
+                    ArtifactInfo ai = ac.getArtifactInfo();
 
-                            if ( ai.sha1 == null )
-                            {
-                                // if repo has no sha1 checksum, odd nexus one
-                                ai.sha1 = item.getRepositoryItemAttributes().get( DigestCalculatingInspector.DIGEST_SHA1_KEY );
-                            }
-                        }
+                    if ( ai.sha1 == null )
+                    {
+                        // if repo has no sha1 checksum, odd nexus one
+                        ai.sha1 = item.getRepositoryItemAttributes().get( DigestCalculatingInspector.DIGEST_SHA1_KEY );
                     }
                 }
-
-                // and finally: index it
-                getNexusIndexer().addArtifactToIndex( ac, context );
-            }
-            finally
-            {
-                uidLock.unlock();
             }
         }
+
+        return ac;
     }
 
     public void removeItemFromIndex( Repository repository, StorageItem item )
@@ -750,6 +983,13 @@ public class DefaultIndexerManager
             // NEXUS-814: we should not delete always
             if ( !item.getItemContext().containsKey( SnapshotRemover.MORE_TS_SNAPSHOTS_EXISTS_FOR_GAV ) )
             {
+                if ( isIndexingPipelineEnabled()
+                    && enqueueIndexUpdate( new PendingIndexUpdate( repository, item, ac ) ) )
+                {
+                    // will be removed with others in next batch
+                    return;
+                }
+
                 final RepositoryItemUidLock uidLock = item.getRepositoryItemUid().getLock();
 
                 uidLock.lock( Action.read );
@@ -761,6 +1001,8 @@ public class DefaultIndexerManager
                 finally
                 {
                     uidLock.unlock();
+
+                    indexChanged( repository.getId() );
                 }
             }
             else
@@ -777,6 +1019,311 @@ public class DefaultIndexerManager
         }
     }
 
+    // ----------------------------------------------------------------------------
+    // Indexing pipeline
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Returns true if index updates are queued and applied in batches, instead of applying them synchronously.
+     * 
+     * @since 2.0
+     */
+    public boolean isIndexingPipelineEnabled()
+    {
+        return indexingPipelineInterval > 0;
+    }
+
+    /**
+     * Sets the interval in milliseconds of applying queued index updates, zero disables the queueing. Meant for tests,
+     * the interval is set by system property otherwise.
+     * 
+     * @since 2.0
+     */
+    public void setIndexingPipelineInterval( final long indexingPipelineInterval )
+    {
+        if ( indexingPipelineInterval <= 0 )
+        {
+            // apply what was queued before disabling
+            flushIndexingPipeline();
+        }
+
+        synchronized ( pendingIndexUpdates )
+        {
+            this.indexingPipelineInterval = indexingPipelineInterval;
+
+            if ( indexingPipelineExecutor != null )
+            {
+                indexingPipelineExecutor.shutdown();
+
+                indexingPipelineExecutor = null;
+            }
+        }
+    }
+
+    public int getPendingIndexUpdateCount()
+    {
+        synchronized ( pendingIndexUpdates )
+        {
+            return pendingIndexUpdates.size();
+        }
+    }
+
+    public long getIndexingLag()
+    {
+        return indexingLag;
+    }
+
+    public void flushIndexingPipeline()
+    {
+        applyPendingIndexUpdates();
+    }
+
+    /**
+     * Queues the update to be applied with others in next batch. Returns false if the pipeline is shut down, and the
+     * update should be applied synchronously by caller.
+     */
+    protected boolean enqueueIndexUpdate( final PendingIndexUpdate update )
+    {
+        synchronized ( pendingIndexUpdates )
+        {
+            if ( indexingPipelineShutdown )
+            {
+                return false;
+            }
+
+            // remove first, to have it ordered by last update
+            pendingIndexUpdates.remove( update.getKey() );
+            pendingIndexUpdates.put( update.getKey(), update );
+
+            if ( indexingPipelineExecutor == null )
+            {
+                indexingPipelineExecutor =
+                    Executors.newSingleThreadScheduledExecutor( new NexusThreadFactory( "nxindexer",
+                        "Indexing Pipeline" ) );
+
+                indexingPipelineExecutor.scheduleWithFixedDelay( new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        applyPendingIndexUpdates();
+                    }
+                }, indexingPipelineInterval, indexingPipelineInterval, TimeUnit.MILLISECONDS );
+            }
+
+            return true;
+        }
+    }
+
+    protected void shutdownIndexingPipeline()
+    {
+        final ScheduledExecutorService executor;
+
+        synchronized ( pendingIndexUpdates )
+        {
+            executor = indexingPipelineExecutor;
+
+            indexingPipelineExecutor = null;
+
+            indexingPipelineShutdown = true;
+        }
+
+        if ( executor != null )
+        {
+            executor.shutdown();
+        }
+
+        flushIndexingPipeline();
+    }
+
+    /**
+     * Applies pending index updates. Subsequent updates of same kind against same context are applied as one batch,
+     * hence with one index commit.
+     */
+    protected void applyPendingIndexUpdates()
+    {
+        synchronized ( indexingPipelineLock )
+        {
+            final List<PendingIndexUpdate> updates;
+
+            synchronized ( pendingIndexUpdates )
+            {
+                if ( pendingIndexUpdates.isEmpty() )
+                {
+                    return;
+                }
+
+                updates = new ArrayList<PendingIndexUpdate>( pendingIndexUpdates.values() );
+
+                pendingIndexUpdates.clear();
+            }
+
+            long oldestQueued = Long.MAX_VALUE;
+
+            IndexingContext batchContext = null;
+
+            boolean batchDeletes = false;
+
+            final List<ArtifactContext> batch = new ArrayList<ArtifactContext>();
+
+            for ( PendingIndexUpdate update : updates )
+            {
+                oldestQueued = Math.min( oldestQueued, update.getQueued() );
+
+                try
+                {
+                    final IndexingContext context = getRepositoryIndexContext( update.getRepository() );
+
+                    if ( context == null )
+                    {
+                        // context is gone since, nothing to update
+                        continue;
+                    }
+
+                    final ArtifactContext ac;
+
+                    if ( update.isDelete() )
+                    {
+                        ac = update.getArtifactContext();
+                    }
+                    else
+                    {
+                        final RepositoryItemUidLock uidLock = update.getItem().getRepositoryItemUid().getLock();
+
+                        uidLock.lock( Action.read );
+
+                        try
+                        {
+                            ac = createArtifactContext( update.getRepository(), update.getItem(), context );
+                        }
+                        finally
+                        {
+                            uidLock.unlock();
+                        }
+                    }
+
+                    if ( ac == null )
+                    {
+                        continue;
+                    }
+
+                    if ( batchContext != context || batchDeletes != update.isDelete() )
+                    {
+                        applyIndexUpdateBatch( batchContext, batchDeletes, batch );
+
+                        batchContext = context;
+
+                        batchDeletes = update.isDelete();
+                    }
+
+                    batch.add( ac );
+                }
+                catch ( Exception e )
+                {
+                    getLogger().error( "Could not maintain index for item " + update.getItem().getRepositoryItemUid(),
+                        e );
+                }
+            }
+
+            applyIndexUpdateBatch( batchContext, batchDeletes, batch );
+
+            indexingLag = System.currentTimeMillis() - oldestQueued;
+
+            if ( getLogger().isDebugEnabled() )
+            {
+                getLogger().debug(
+                    "Applied " + updates.size() + " pending index updates, with indexing lag " + indexingLag + "ms." );
+            }
+        }
+    }
+
+    private void applyIndexUpdateBatch( final IndexingContext context, final boolean deletes,
+                                        final List<ArtifactContext> batch )
+    {
+        if ( batch.isEmpty() )
+        {
+            return;
+        }
+
+        try
+        {
+            if ( deletes )
+            {
+                getNexusIndexer().deleteArtifactsFromIndex( batch, context );
+            }
+            else
+            {
+                getNexusIndexer().addArtifactsToIndex( batch, context );
+            }
+        }
+        catch ( IOException e )
+        {
+            getLogger().error( "Could not maintain index of context " + context.getId(), e );
+        }
+        finally
+        {
+            batch.clear();
+
+            indexChanged( context.getRepositoryId() );
+        }
+    }
+
+    /**
+     * Index update waiting to be applied.
+     */
+    protected static class PendingIndexUpdate
+    {
+        private final Repository repository;
+
+        private final StorageItem item;
+
+        private final ArtifactContext artifactContext;
+
+        private final long queued;
+
+        /**
+         * Creates an update adding item to index, or removing it if artifact context to remove is given.
+         */
+        public PendingIndexUpdate( final Repository repository, final StorageItem item,
+                                   final ArtifactContext artifactContext )
+        {
+            this.repository = repository;
+            this.item = item;
+            this.artifactContext = artifactContext;
+            this.queued = System.currentTimeMillis();
+        }
+
+        public String getKey()
+        {
+            return repository.getId() + ":" + item.getRepositoryItemUid().getPath();
+        }
+
+        public Repository getRepository()
+        {
+            return repository;
+        }
+
+        public StorageItem getItem()
+        {
+            return item;
+        }
+
+        public boolean isDelete()
+        {
+            return artifactContext != null;
+        }
+
+        public ArtifactContext getArtifactContext()
+        {
+            return artifactContext;
+        }
+
+        public long getQueued()
+        {
+            return queued;
+        }
+    }
+
     // ----------------------------------------------------------------------------
     // TODO: NEXUS-4052 and NEXUS-4053
     // when sorted out, these constants will help the change, just remove them
@@ -880,6 +1427,14 @@ public class DefaultIndexerManager
         {
             IndexingContext context = getRepositoryIndexContext( repository );
 
+            if ( fullReindex && !repository.getRepositoryKind().isFacetAvailable( GroupRepository.class ) )
+            {
+                // build the new index aside, searches keep using the current one until it is swapped in
+                reindexRepositoryFully( repository, context, fromPath );
+
+                return;
+            }
+
             if ( fullReindex )
             {
                 TaskUtil.checkInterruption();
@@ -907,6 +1462,58 @@ public class DefaultIndexerManager
         finally
         {
             lock.unlock();
+
+            indexChanged( repository.getId() );
+        }
+    }
+
+    /**
+     * Fully reindexes a non-group repository by scanning it into a temporary context, and swapping the result into the
+     * existing context at the end. Hence, searches are served from the last good index while the scan is running.
+     * Proxy repositories get the remote index downloaded first, with the scan result merged into it. Must be invoked
+     * with repository write lock held.
+     */
+    protected void reindexRepositoryFully( final Repository repository, final IndexingContext context,
+                                           final String fromPath )
+        throws IOException
+    {
+        TaskUtil.checkInterruption();
+
+        final IndexingContext tmpContext = getTempContext( context );
+
+        try
+        {
+            getNexusIndexer().scan( tmpContext, fromPath, null, true );
+
+            TaskUtil.checkInterruption();
+
+            deleteIndexItems( repository );
+
+            boolean hasRemoteIndex = false;
+
+            if ( repository.getRepositoryKind().isFacetAvailable( ProxyRepository.class ) )
+            {
+                // full update of remote index replaces the context content
+                hasRemoteIndex = downloadRepositoryIndex( repository.adaptToFacet( ProxyRepository.class ), true );
+            }
+
+            if ( hasRemoteIndex )
+            {
+                context.merge( tmpContext.getIndexDirectory() );
+            }
+            else
+            {
+                context.replace( tmpContext.getIndexDirectory() );
+            }
+        }
+        finally
+        {
+            tmpContext.close( true );
+
+            if ( tmpContext.getIndexDirectoryFile() != null )
+            {
+                FileUtils.deleteDirectory( tmpContext.getIndexDirectoryFile() );
+            }
         }
     }
 
@@ -1054,6 +1661,8 @@ public class DefaultIndexerManager
         finally
         {
             lock.unlock();
+
+            indexChanged( repository.getId() );
         }
     }
 
@@ -1231,6 +1840,9 @@ public class DefaultIndexerManager
             return;
         }
 
+        // published index should contain the updates still waiting in pipeline
+        flushIndexingPipeline();
+
         // is indexing supported at all?
         if ( !isIndexingSupported( repository ) )
         {
@@ -1479,6 +2091,199 @@ public class DefaultIndexerManager
     // Combined searching
     // ----------------------------------------------------------------------------
 
+    /**
+     * Sets the count of threads searching contexts in parallel, and the time budget in milliseconds of a flat search
+     * spanning all contexts. Meant for tests, these are set by system properties otherwise.
+     * 
+     * @since 2.0
+     */
+    public synchronized void setSearchParallelism( final int searchThreadCount, final long searchTimeout )
+    {
+        this.searchThreadCount = searchThreadCount;
+        this.searchTimeout = searchTimeout;
+
+        if ( searchExecutor != null )
+        {
+            searchExecutor.shutdown();
+
+            searchExecutor = null;
+        }
+    }
+
+    /**
+     * Performs the flat search. When the request targets no context (hence all of them), searchable contexts are
+     * searched in parallel, each for the top hits only, and the hits are merged keeping the top ones by the request
+     * comparator. Contexts not searched within the time budget are left out of the result, and a
+     * {@link PartialFlatSearchResponse} telling which ones were left out is returned.
+     */
+    protected FlatSearchResponse searchFlat( final FlatSearchRequest req )
+        throws IOException
+    {
+        final int threadCount;
+
+        final long timeout;
+
+        synchronized ( this )
+        {
+            threadCount = searchThreadCount;
+
+            timeout = searchTimeout;
+        }
+
+        if ( !req.getContexts().isEmpty() || threadCount <= 1 )
+        {
+            return getNexusIndexer().searchFlat( req );
+        }
+
+        final List<IndexingContext> contexts = new ArrayList<IndexingContext>();
+
+        for ( IndexingContext ctx : getNexusIndexer().getIndexingContexts().values() )
+        {
+            if ( ctx.isSearchable() )
+            {
+                contexts.add( ctx );
+            }
+        }
+
+        if ( contexts.size() < 2 )
+        {
+            return getNexusIndexer().searchFlat( req );
+        }
+
+        final ExecutorService executor = getSearchExecutor();
+
+        final List<Future<FlatSearchResponse>> futures = new ArrayList<Future<FlatSearchResponse>>( contexts.size() );
+
+        final long deadline = System.currentTimeMillis() + timeout;
+
+        final TreeSet<ArtifactInfo> hits = new TreeSet<ArtifactInfo>( req.getArtifactInfoComparator() );
+
+        final List<String> skippedContextIds = new ArrayList<String>();
+
+        int totalHits = 0;
+
+        boolean tooManyHits = false;
+
+        try
+        {
+            for ( IndexingContext ctx : contexts )
+            {
+                final FlatSearchRequest ctxReq =
+                    new FlatSearchRequest( req.getQuery(), req.getArtifactInfoComparator() );
+                ctxReq.getContexts().add( ctx );
+                ctxReq.setCount( req.getCount() );
+                ctxReq.setArtifactInfoFilter( req.getArtifactInfoFilter() );
+                ctxReq.setArtifactInfoPostprocessor( req.getArtifactInfoPostprocessor() );
+
+                // when the queue is full, the context is searched by this thread
+                futures.add( executor.submit( new Callable<FlatSearchResponse>()
+                {
+                    public FlatSearchResponse call()
+                        throws IOException
+                    {
+                        return getNexusIndexer().searchFlat( ctxReq );
+                    }
+                } ) );
+            }
+
+            for ( int i = 0; i < futures.size(); i++ )
+            {
+                final FlatSearchResponse response;
+
+                try
+                {
+                    response =
+                        futures.get( i ).get( Math.max( 0, deadline - System.currentTimeMillis() ),
+                            TimeUnit.MILLISECONDS );
+                }
+                catch ( TimeoutException e )
+                {
+                    getLogger().warn(
+                        "Search of context " + contexts.get( i ).getId() + " exceeded the time budget of " + timeout
+                            + "ms, leaving it out of result." );
+
+                    skippedContextIds.add( contexts.get( i ).getId() );
+
+                    continue;
+                }
+
+                if ( response.getTotalHits() < 0 )
+                {
+                    // too many hits in this context, but the hits of others are still merged
+                    tooManyHits = true;
+                }
+                else
+                {
+                    totalHits += response.getTotalHits();
+                }
+
+                for ( ArtifactInfo ai : response.getResults() )
+                {
+                    hits.add( ai );
+
+                    // keep the top hits only
+                    if ( req.getCount() > 0 && hits.size() > req.getCount() )
+                    {
+                        hits.pollLast();
+                    }
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new IOException( "Search interrupted", e );
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof BooleanQuery.TooManyClauses )
+            {
+                throw (BooleanQuery.TooManyClauses) e.getCause();
+            }
+            else if ( e.getCause() instanceof IOException )
+            {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException( "Search failed", e.getCause() );
+        }
+        finally
+        {
+            // do not interrupt running searches, interrupting NIO backed Lucene directories closes them
+            for ( Future<FlatSearchResponse> future : futures )
+            {
+                future.cancel( false );
+            }
+        }
+
+        if ( tooManyHits )
+        {
+            totalHits = -1;
+        }
+
+        if ( !skippedContextIds.isEmpty() )
+        {
+            return new PartialFlatSearchResponse( req.getQuery(), totalHits, hits, skippedContextIds );
+        }
+
+        return new FlatSearchResponse( req.getQuery(), totalHits, hits );
+    }
+
+    protected synchronized ExecutorService getSearchExecutor()
+    {
+        if ( searchExecutor == null )
+        {
+            // bounded in both threads and queued context searches
+            searchExecutor =
+                new ThreadPoolExecutor( searchThreadCount, searchThreadCount, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>( SEARCH_QUEUE_SIZE ), new NexusThreadFactory( "nxsearch",
+                        "Indexer Search" ), new ThreadPoolExecutor.CallerRunsPolicy() );
+        }
+
+        return searchExecutor;
+    }
+
     @Deprecated
     public FlatSearchResponse searchArtifactFlat( String term, String repositoryId, Integer from, Integer count,
                                                   Integer hitLimit )
@@ -1538,7 +2343,7 @@ public class DefaultIndexerManager
 
         try
         {
-            FlatSearchResponse result = nexusIndexer.searchFlat( req );
+            FlatSearchResponse result = searchFlat( req );
 
             postprocessResults( result.getResults() );
 
@@ -1618,7 +2423,7 @@ public class DefaultIndexerManager
 
         try
         {
-            FlatSearchResponse result = nexusIndexer.searchFlat( req );
+            FlatSearchResponse result = searchFlat( req );
 
             postprocessResults( result.getResults() );
 
@@ -1722,7 +2527,7 @@ public class DefaultIndexerManager
 
         try
         {
-            FlatSearchResponse result = nexusIndexer.searchFlat( req );
+            FlatSearchResponse result = searchFlat( req );
 
             postprocessResults( result.getResults() );
 
@@ -2296,14 +3101,23 @@ public class DefaultIndexerManager
 
     // Lock management
 
-    protected synchronized ReadWriteLock getLock( String repositoryId )
+    protected ReadWriteLock getLock( String repositoryId )
     {
-        if ( !locks.containsKey( repositoryId ) )
+        ReadWriteLock lock = locks.get( repositoryId );
+
+        if ( lock == null )
         {
-            locks.put( repositoryId, new ReentrantReadWriteLock() );
+            final ReadWriteLock newLock = new ReentrantReadWriteLock();
+
+            lock = locks.putIfAbsent( repositoryId, newLock );
+
+            if ( lock == null )
+            {
+                lock = newLock;
+            }
         }
 
-        return locks.get( repositoryId );
+        return lock;
     }
 
     protected boolean isAlreadyBeingIndexed( String repositoryId )
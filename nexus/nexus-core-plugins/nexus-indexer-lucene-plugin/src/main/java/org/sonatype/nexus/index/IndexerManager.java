@@ -107,6 +107,17 @@ public interface IndexerManager
     void setRepositoryIndexContextSearchable( String repositoryId, boolean searchable )
         throws IOException, NoSuchRepositoryException;
 
+    /**
+     * Returns the generation of the index of repository (including the indexes of members, if repository is a group),
+     * or the generation of all the indexes if repositoryId is null. The generation changes whenever the index content
+     * or its searchability changes, hence is usable to invalidate cached search results.
+     *
+     * @param repositoryId
+     * @return
+     * @since 2.0
+     */
+    long getIndexGeneration( String repositoryId );
+
     // ----------------------------------------------------------------------------
     // adding/removing on the fly
     // ----------------------------------------------------------------------------
@@ -131,6 +142,29 @@ public interface IndexerManager
     void removeItemFromIndex( Repository repository, StorageItem item )
         throws IOException;
 
+    /**
+     * Applies all the index updates queued by {@link #addItemToIndex(Repository, StorageItem)} and
+     * {@link #removeItemFromIndex(Repository, StorageItem)}, and returns once they, and those being applied at the
+     * moment of the call, are in index. Does nothing if updates are not queued.
+     * 
+     * @since 2.0
+     */
+    void flushIndexingPipeline();
+
+    /**
+     * Returns the count of index updates waiting to be applied.
+     * 
+     * @since 2.0
+     */
+    int getPendingIndexUpdateCount();
+
+    /**
+     * Returns the time in milliseconds the oldest index update waited for, when pending updates were last applied.
+     * 
+     * @since 2.0
+     */
+    long getIndexingLag();
+
     // ----------------------------------------------------------------------------
     // Reindexing related (will do local-scan, remote-download, merge, publish)
     // ----------------------------------------------------------------------------
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.search.Query;
+import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.FlatSearchResponse;
+
+/**
+ * Flat search response lacking the hits of some contexts, that were not searched within the time budget of search.
+ * 
+ * @since 2.0
+ */
+public class PartialFlatSearchResponse
+    extends FlatSearchResponse
+{
+    private final List<String> skippedContextIds;
+
+    public PartialFlatSearchResponse( final Query query, final int totalHits, final Set<ArtifactInfo> results,
+                                      final List<String> skippedContextIds )
+    {
+        super( query, totalHits, results );
+
+        this.skippedContextIds = Collections.unmodifiableList( new ArrayList<String>( skippedContextIds ) );
+    }
+
+    /**
+     * Returns the IDs of the contexts left out of this response.
+     */
+    public List<String> getSkippedContextIds()
+    {
+        return skippedContextIds;
+    }
+}
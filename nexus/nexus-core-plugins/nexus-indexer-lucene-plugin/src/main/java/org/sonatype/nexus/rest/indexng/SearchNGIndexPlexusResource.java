@@ -24,6 +24,8 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -41,6 +43,8 @@ import org.codehaus.enunciate.contract.jaxrs.ResourceMethodSignature;
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.util.StringUtils;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.Subject;
 import org.restlet.Context;
 import org.restlet.data.Form;
 import org.restlet.data.Parameter;
@@ -51,6 +55,7 @@ import org.restlet.resource.ResourceException;
 import org.restlet.resource.Variant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonatype.nexus.index.IndexerManager;
 import org.sonatype.nexus.index.KeywordSearcher;
 import org.sonatype.nexus.index.MavenCoordinatesSearcher;
 import org.sonatype.nexus.index.Searcher;
@@ -69,10 +74,12 @@ import org.sonatype.nexus.rest.model.NexusNGArtifactLink;
 import org.sonatype.nexus.rest.model.NexusNGRepositoryDetail;
 import org.sonatype.nexus.rest.model.SearchNGResponse;
 import org.sonatype.nexus.rest.model.SearchResponse;
+import org.sonatype.nexus.util.LruCache;
 import org.sonatype.nexus.util.SystemPropertiesHelper;
 import org.sonatype.plexus.rest.resource.PathProtectionDescriptor;
 import org.sonatype.plexus.rest.resource.PlexusResource;
 import org.sonatype.plexus.rest.resource.PlexusResourceException;
+import org.sonatype.security.SecuritySystem;
 
 @Component( role = PlexusResource.class, hint = "SearchNGIndexPlexusResource" )
 @Path( SearchNGIndexPlexusResource.RESOURCE_URI )
@@ -144,6 +151,21 @@ public class SearchNGIndexPlexusResource
     private static final int COLLAPSE_OVERRIDE_TRESHOLD = SystemPropertiesHelper.getInteger(
         "plexus.search.ga.collapseOverrideThreshold", DEFAULT_COLLAPSE_OVERRIDE_TRESHOLD );
 
+    /**
+     * The count of search results to cache, that may be overridden by users using Java System Properties. Cached
+     * results are reused until the generation of involved indexes changes. Setting it to 0 disables caching.
+     */
+    private static final int SEARCH_RESULT_CACHE_SIZE = SystemPropertiesHelper.getInteger(
+        "plexus.search.ga.cache.size", 200 );
+
+    /**
+     * The time in milliseconds a search result is cached for at most, that may be overridden by users using Java System
+     * Properties. It bounds the staleness of results in respect to security changes, as results are filtered by user
+     * permissions.
+     */
+    private static final long SEARCH_RESULT_CACHE_TTL = SystemPropertiesHelper.getLong(
+        "plexus.search.ga.cache.ttl", 60000 );
+
     // doing "plain search" 3 times in case of AlreadyClosedExce
     private final int RETRIES = 3;
 
@@ -154,6 +176,16 @@ public class SearchNGIndexPlexusResource
     @Requirement( role = Searcher.class )
     private List<Searcher> searchers;
 
+    @Requirement
+    private IndexerManager indexerManager;
+
+    @Requirement
+    private SecuritySystem securitySystem;
+
+    private final LruCache<String, SearchNGResponse> searchResultCache =
+        SEARCH_RESULT_CACHE_SIZE > 0 ? new LruCache<String, SearchNGResponse>( SEARCH_RESULT_CACHE_SIZE,
+            SEARCH_RESULT_CACHE_TTL ) : null;
+
     @Override
     public String getResourceUri()
     {
@@ -278,6 +310,26 @@ public class SearchNGIndexPlexusResource
             collapseResults = !( true && expandVersion ); // && expandColA && expandColB;
         }
 
+        final String cacheKey = getSearchResultCacheKey( request, terms, repositoryId );
+
+        if ( cacheKey != null )
+        {
+            final SearchNGResponse cachedResult = searchResultCache.get( cacheKey );
+
+            if ( getSearchDiagnosticLogger().isDebugEnabled() )
+            {
+                getSearchDiagnosticLogger().debug(
+                    "Search result cache " + ( cachedResult != null ? "hit" : "miss" ) + ", hit ratio "
+                        + searchResultCache.getHitRatio() + ", size " + searchResultCache.size() );
+            }
+
+            if ( cachedResult != null )
+            {
+                // cached result is shared, hand out a copy
+                return copySearchNGResponse( cachedResult );
+            }
+        }
+
         IteratorSearchResponse searchResult = null;
 
         SearchNGResponse result = new SearchNGResponse();
@@ -366,6 +418,11 @@ public class SearchNGIndexPlexusResource
             }
         }
 
+        if ( result.getData() != null && cacheKey != null )
+        {
+            searchResultCache.put( cacheKey, copySearchNGResponse( result ) );
+        }
+
         if ( result.getData() == null )
         {
             try
@@ -396,6 +453,170 @@ public class SearchNGIndexPlexusResource
         return searchDiagnosticLogger;
     }
 
+    /**
+     * Returns the search result cache (for it's metrics), or null if caching is disabled.
+     * 
+     * @return
+     */
+    public LruCache<String, SearchNGResponse> getSearchResultCache()
+    {
+        return searchResultCache;
+    }
+
+    /**
+     * Builds the key of search result cache, made of the (sorted) query parameters, the user principals of all realms
+     * (as results are filtered by permissions), the base URL (as results contain links), and the generation of involved
+     * indexes. Returns null if caching is disabled.
+     * 
+     * @param request
+     * @param terms
+     * @param repositoryId
+     * @return
+     */
+    protected String getSearchResultCacheKey( final Request request, final Map<String, String> terms,
+                                              final String repositoryId )
+    {
+        if ( searchResultCache == null )
+        {
+            return null;
+        }
+
+        final StringBuilder key = new StringBuilder();
+
+        // generation first, the index may change while we search, and then we need to cache under old generation
+        key.append( indexerManager.getIndexGeneration( repositoryId ) );
+
+        key.append( '|' ).append( getPrincipalsKey( securitySystem.getSubject() ) );
+
+        key.append( '|' ).append( request.getRootRef() );
+
+        for ( Map.Entry<String, String> term : new TreeMap<String, String>( terms ).entrySet() )
+        {
+            key.append( '|' ).append( term.getKey() ).append( '=' ).append( term.getValue() );
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Returns the principals of subject, with the realms they come from, in a stable form. Same principal name may
+     * denote different users (with different permissions) in different realms.
+     * 
+     * @param subject
+     * @return
+     */
+    /* UT */ static String getPrincipalsKey( final Subject subject )
+    {
+        final PrincipalCollection principals = subject != null ? subject.getPrincipals() : null;
+
+        if ( principals == null || principals.isEmpty() )
+        {
+            return "anonymous";
+        }
+
+        final StringBuilder key = new StringBuilder();
+
+        for ( String realmName : new TreeSet<String>( principals.getRealmNames() ) )
+        {
+            key.append( realmName ).append( principals.fromRealm( realmName ) ).append( ';' );
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Returns a deep copy of the response, as cached responses are shared between requests.
+     * 
+     * @param response
+     * @return
+     */
+    /* UT */ static SearchNGResponse copySearchNGResponse( final SearchNGResponse response )
+    {
+        final SearchNGResponse copy = new SearchNGResponse();
+
+        copy.setTotalCount( response.getTotalCount() );
+        copy.setFrom( response.getFrom() );
+        copy.setCount( response.getCount() );
+        copy.setTooManyResults( response.isTooManyResults() );
+        copy.setCollapsed( response.isCollapsed() );
+
+        final List<NexusNGRepositoryDetail> repoDetails = new ArrayList<NexusNGRepositoryDetail>();
+
+        for ( NexusNGRepositoryDetail repoDetail : response.getRepoDetails() )
+        {
+            final NexusNGRepositoryDetail repoDetailCopy = new NexusNGRepositoryDetail();
+            repoDetailCopy.setRepositoryId( repoDetail.getRepositoryId() );
+            repoDetailCopy.setRepositoryName( repoDetail.getRepositoryName() );
+            repoDetailCopy.setRepositoryContentClass( repoDetail.getRepositoryContentClass() );
+            repoDetailCopy.setRepositoryKind( repoDetail.getRepositoryKind() );
+            repoDetailCopy.setRepositoryPolicy( repoDetail.getRepositoryPolicy() );
+            repoDetailCopy.setRepositoryURL( repoDetail.getRepositoryURL() );
+
+            repoDetails.add( repoDetailCopy );
+        }
+
+        copy.setRepoDetails( repoDetails );
+
+        if ( response.getData() != null )
+        {
+            final List<NexusNGArtifact> data = new ArrayList<NexusNGArtifact>();
+
+            for ( NexusNGArtifact artifact : response.getData() )
+            {
+                data.add( copyNexusNGArtifact( artifact ) );
+            }
+
+            copy.setData( data );
+        }
+        else
+        {
+            copy.setData( null );
+        }
+
+        return copy;
+    }
+
+    private static NexusNGArtifact copyNexusNGArtifact( final NexusNGArtifact artifact )
+    {
+        final NexusNGArtifact copy = new NexusNGArtifact();
+
+        copy.setGroupId( artifact.getGroupId() );
+        copy.setArtifactId( artifact.getArtifactId() );
+        copy.setVersion( artifact.getVersion() );
+        copy.setLatestSnapshot( artifact.getLatestSnapshot() );
+        copy.setLatestSnapshotRepositoryId( artifact.getLatestSnapshotRepositoryId() );
+        copy.setLatestRelease( artifact.getLatestRelease() );
+        copy.setLatestReleaseRepositoryId( artifact.getLatestReleaseRepositoryId() );
+        copy.setHighlightedFragment( artifact.getHighlightedFragment() );
+
+        final List<NexusNGArtifactHit> hits = new ArrayList<NexusNGArtifactHit>();
+
+        for ( NexusNGArtifactHit hit : artifact.getArtifactHits() )
+        {
+            final NexusNGArtifactHit hitCopy = new NexusNGArtifactHit();
+            hitCopy.setRepositoryId( hit.getRepositoryId() );
+
+            final List<NexusNGArtifactLink> links = new ArrayList<NexusNGArtifactLink>();
+
+            for ( NexusNGArtifactLink link : hit.getArtifactLinks() )
+            {
+                final NexusNGArtifactLink linkCopy = new NexusNGArtifactLink();
+                linkCopy.setClassifier( link.getClassifier() );
+                linkCopy.setExtension( link.getExtension() );
+
+                links.add( linkCopy );
+            }
+
+            hitCopy.setArtifactLinks( links );
+
+            hits.add( hitCopy );
+        }
+
+        copy.setArtifactHits( hits );
+
+        return copy;
+    }
+
     /* UT */ IteratorSearchResponse searchByTerms( final Map<String, String> terms, final String repositoryId,
                                                   final Integer from, final int count, final Boolean exact,
                                                   final Boolean expandVersion, final Boolean collapseResults,
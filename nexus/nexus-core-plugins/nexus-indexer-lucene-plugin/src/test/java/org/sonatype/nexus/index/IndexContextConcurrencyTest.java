@@ -0,0 +1,245 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.index;
+
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.lucene.store.Directory;
+import org.apache.maven.index.NexusIndexer;
+import org.apache.maven.index.context.IndexingContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonatype.nexus.proxy.repository.ProxyRepository;
+import org.sonatype.nexus.proxy.repository.Repository;
+import org.sonatype.nexus.proxy.repository.RepositoryKind;
+
+/**
+ * Tests the lock table, the context lookup and the full reindex of {@link DefaultIndexerManager}, with indexer and
+ * contexts mocked.
+ */
+public class IndexContextConcurrencyTest
+{
+    private NexusIndexer nexusIndexer;
+
+    private IndexingContext tmpContext;
+
+    private TestIndexerManager indexerManager;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp()
+    {
+        nexusIndexer = mock( NexusIndexer.class );
+
+        tmpContext = mock( IndexingContext.class );
+
+        indexerManager = new TestIndexerManager();
+
+        executor = Executors.newFixedThreadPool( 8 );
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentCallersGetSameLock()
+        throws Exception
+    {
+        final CountDownLatch start = new CountDownLatch( 1 );
+
+        final List<Future<ReadWriteLock>> futures = new ArrayList<Future<ReadWriteLock>>();
+
+        for ( int i = 0; i < 8; i++ )
+        {
+            futures.add( executor.submit( new Callable<ReadWriteLock>()
+            {
+                public ReadWriteLock call()
+                    throws Exception
+                {
+                    start.await();
+
+                    return indexerManager.getLock( "concurrent-lock" );
+                }
+            } ) );
+        }
+
+        start.countDown();
+
+        final ReadWriteLock lock = futures.get( 0 ).get( 5, TimeUnit.SECONDS );
+
+        for ( Future<ReadWriteLock> future : futures )
+        {
+            Assert.assertSame( lock, future.get( 5, TimeUnit.SECONDS ) );
+        }
+
+        Assert.assertNotSame( lock, indexerManager.getLock( "other-lock" ) );
+    }
+
+    @Test
+    public void testContextLookupSeesAddedAndRemovedContexts()
+        throws Exception
+    {
+        final IndexingContext context = mock( IndexingContext.class );
+
+        Assert.assertNull( indexerManager.getRepositoryIndexContext( repository( "repo", false ) ) );
+
+        indexerManager.putRepositoryIndexContext( "repo", context );
+
+        Assert.assertSame( context, indexerManager.getRepositoryIndexContext( repository( "repo", false ) ) );
+        Assert.assertNull( indexerManager.getRepositoryIndexContext( repository( "other", false ) ) );
+
+        indexerManager.putRepositoryIndexContext( "repo", null );
+
+        Assert.assertNull( indexerManager.getRepositoryIndexContext( repository( "repo", false ) ) );
+    }
+
+    @Test
+    public void testContextLookupDuringContextChanges()
+        throws Exception
+    {
+        final IndexingContext context = mock( IndexingContext.class );
+
+        indexerManager.putRepositoryIndexContext( "stable", context );
+
+        final Repository stable = repository( "stable", false );
+
+        final AtomicBoolean stop = new AtomicBoolean();
+
+        // readers never block nor fail, and always see the context that is not changed
+        final Future<Integer> reader = executor.submit( new Callable<Integer>()
+        {
+            public Integer call()
+            {
+                int lookups = 0;
+
+                do
+                {
+                    Assert.assertSame( context, indexerManager.getRepositoryIndexContext( stable ) );
+
+                    lookups++;
+                }
+                while ( !stop.get() );
+
+                return lookups;
+            }
+        } );
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            indexerManager.putRepositoryIndexContext( "changing-" + ( i % 10 ), i % 2 == 0 ? context : null );
+        }
+
+        stop.set( true );
+
+        Assert.assertTrue( reader.get( 5, TimeUnit.SECONDS ) > 0 );
+        Assert.assertSame( context, indexerManager.getRepositoryIndexContext( stable ) );
+    }
+
+    @Test
+    public void testFullReindexScansAsideAndReplacesContextContent()
+        throws Exception
+    {
+        final IndexingContext context = mock( IndexingContext.class );
+
+        final Directory tmpDirectory = mock( Directory.class );
+
+        when( tmpContext.getIndexDirectory() ).thenReturn( tmpDirectory );
+
+        doAnswer( new Answer<Object>()
+        {
+            public Object answer( final InvocationOnMock invocation )
+                throws Throwable
+            {
+                // while scanning, the live context is left alone and keeps serving searches
+                verify( context, never() ).replace( tmpDirectory );
+
+                return null;
+            }
+        } ).when( nexusIndexer ).scan( tmpContext, "/", null, true );
+
+        indexerManager.reindexRepositoryFully( repository( "repo", false ), context, "/" );
+
+        final InOrder order = inOrder( nexusIndexer, context, tmpContext );
+
+        order.verify( nexusIndexer ).scan( tmpContext, "/", null, true );
+        order.verify( context ).replace( tmpDirectory );
+        order.verify( tmpContext ).close( true );
+    }
+
+    // ==
+
+    private Repository repository( final String id, final boolean proxy )
+    {
+        final RepositoryKind kind = mock( RepositoryKind.class );
+        when( kind.isFacetAvailable( ProxyRepository.class ) ).thenReturn( proxy );
+
+        final Repository repository = mock( Repository.class );
+        when( repository.getId() ).thenReturn( id );
+        when( repository.getRepositoryKind() ).thenReturn( kind );
+
+        return repository;
+    }
+
+    private class TestIndexerManager
+        extends DefaultIndexerManager
+    {
+        @Override
+        protected NexusIndexer getNexusIndexer()
+        {
+            return nexusIndexer;
+        }
+
+        @Override
+        protected IndexingContext getTempContext( final IndexingContext baseContext )
+        {
+            return tmpContext;
+        }
+
+        @Override
+        protected void deleteIndexItems( final Repository repository )
+        {
+            // nothing to delete
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.index;
+
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.index.ArtifactContext;
+import org.apache.maven.index.NexusIndexer;
+import org.apache.maven.index.context.IndexingContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.RepositoryItemUidLock;
+import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+/**
+ * Tests the queueing of index updates of {@link DefaultIndexerManager}, with indexer and contexts mocked.
+ */
+public class IndexingPipelineTest
+{
+    private NexusIndexer nexusIndexer;
+
+    private IndexingContext context;
+
+    private Repository repository;
+
+    private PipelineIndexerManager indexerManager;
+
+    /**
+     * The applied batches, as "add:path,path" and "delete:path,path" strings.
+     */
+    private List<String> batches;
+
+    /**
+     * Paths of the artifact contexts handed to indexer.
+     */
+    private Map<ArtifactContext, String> paths;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        batches = new ArrayList<String>();
+
+        paths = new HashMap<ArtifactContext, String>();
+
+        context = mock( IndexingContext.class );
+        when( context.getRepositoryId() ).thenReturn( "repo" );
+
+        nexusIndexer = mock( NexusIndexer.class );
+        doAnswer( new BatchRecorder( "add" ) ).when( nexusIndexer ).addArtifactsToIndex( anyList(), eq( context ) );
+        doAnswer( new BatchRecorder( "delete" ) ).when( nexusIndexer ).deleteArtifactsFromIndex( anyList(),
+            eq( context ) );
+
+        repository = mock( Repository.class );
+        when( repository.getId() ).thenReturn( "repo" );
+
+        indexerManager = new PipelineIndexerManager();
+        indexerManager.setIndexingPipelineInterval( 60 * 60 * 1000 );
+    }
+
+    @After
+    public void tearDown()
+    {
+        indexerManager.shutdownIndexingPipeline();
+    }
+
+    @Test
+    public void testUpdatesOfSameItemAreCoalesced()
+    {
+        Assert.assertTrue( indexerManager.enqueueIndexUpdate( add( "/a/1.0/a-1.0.jar" ) ) );
+        Assert.assertTrue( indexerManager.enqueueIndexUpdate( add( "/b/1.0/b-1.0.jar" ) ) );
+        Assert.assertTrue( indexerManager.enqueueIndexUpdate( delete( "/a/1.0/a-1.0.jar" ) ) );
+
+        Assert.assertEquals( 2, indexerManager.getPendingIndexUpdateCount() );
+
+        indexerManager.flushIndexingPipeline();
+
+        // last update of item wins, and updates are ordered by last update
+        Assert.assertEquals( "[add:/b/1.0/b-1.0.jar, delete:/a/1.0/a-1.0.jar]", batches.toString() );
+    }
+
+    @Test
+    public void testSubsequentUpdatesOfSameKindAreBatched()
+    {
+        indexerManager.enqueueIndexUpdate( add( "/a/1.0/a-1.0.jar" ) );
+        indexerManager.enqueueIndexUpdate( add( "/b/1.0/b-1.0.jar" ) );
+        indexerManager.enqueueIndexUpdate( delete( "/c/1.0/c-1.0.jar" ) );
+        indexerManager.enqueueIndexUpdate( delete( "/d/1.0/d-1.0.jar" ) );
+        indexerManager.enqueueIndexUpdate( add( "/e/1.0/e-1.0.jar" ) );
+
+        indexerManager.flushIndexingPipeline();
+
+        Assert.assertEquals(
+            "[add:/a/1.0/a-1.0.jar,/b/1.0/b-1.0.jar, delete:/c/1.0/c-1.0.jar,/d/1.0/d-1.0.jar, add:/e/1.0/e-1.0.jar]",
+            batches.toString() );
+    }
+
+    @Test
+    public void testFlushAppliesPendingUpdates()
+    {
+        indexerManager.enqueueIndexUpdate( add( "/a/1.0/a-1.0.jar" ) );
+
+        Assert.assertTrue( batches.isEmpty() );
+        Assert.assertEquals( 1, indexerManager.getPendingIndexUpdateCount() );
+
+        indexerManager.flushIndexingPipeline();
+
+        Assert.assertEquals( 1, batches.size() );
+        Assert.assertEquals( 0, indexerManager.getPendingIndexUpdateCount() );
+        Assert.assertTrue( indexerManager.getIndexingLag() >= 0 );
+
+        // nothing left to apply
+        indexerManager.flushIndexingPipeline();
+
+        Assert.assertEquals( 1, batches.size() );
+    }
+
+    @Test
+    public void testShutdownAppliesPendingUpdatesAndRejectsNewOnes()
+    {
+        indexerManager.enqueueIndexUpdate( add( "/a/1.0/a-1.0.jar" ) );
+
+        indexerManager.shutdownIndexingPipeline();
+
+        Assert.assertEquals( 1, batches.size() );
+
+        // caller is to apply the update synchronously
+        Assert.assertFalse( indexerManager.enqueueIndexUpdate( add( "/b/1.0/b-1.0.jar" ) ) );
+        Assert.assertEquals( 0, indexerManager.getPendingIndexUpdateCount() );
+    }
+
+    // ==
+
+    private DefaultIndexerManager.PendingIndexUpdate add( final String path )
+    {
+        return new DefaultIndexerManager.PendingIndexUpdate( repository, item( path ), null );
+    }
+
+    private DefaultIndexerManager.PendingIndexUpdate delete( final String path )
+    {
+        return new DefaultIndexerManager.PendingIndexUpdate( repository, item( path ), artifactContext( path ) );
+    }
+
+    private StorageItem item( final String path )
+    {
+        final RepositoryItemUid uid = mock( RepositoryItemUid.class );
+        when( uid.getPath() ).thenReturn( path );
+        when( uid.getLock() ).thenReturn( mock( RepositoryItemUidLock.class ) );
+
+        final StorageItem item = mock( StorageItem.class );
+        when( item.getRepositoryItemUid() ).thenReturn( uid );
+
+        return item;
+    }
+
+    private ArtifactContext artifactContext( final String path )
+    {
+        final ArtifactContext ac = mock( ArtifactContext.class );
+        paths.put( ac, path );
+
+        return ac;
+    }
+
+    private class PipelineIndexerManager
+        extends DefaultIndexerManager
+    {
+        @Override
+        protected NexusIndexer getNexusIndexer()
+        {
+            return nexusIndexer;
+        }
+
+        @Override
+        public IndexingContext getRepositoryIndexContext( final Repository repository )
+        {
+            return context;
+        }
+
+        @Override
+        protected ArtifactContext createArtifactContext( final Repository repository, final StorageItem item,
+                                                         final IndexingContext context )
+        {
+            return artifactContext( item.getRepositoryItemUid().getPath() );
+        }
+    }
+
+    private class BatchRecorder
+        implements Answer<Object>
+    {
+        private final String kind;
+
+        public BatchRecorder( final String kind )
+        {
+            this.kind = kind;
+        }
+
+        public Object answer( final InvocationOnMock invocation )
+        {
+            // batch is cleared once applied, record it now
+            final StringBuilder batch = new StringBuilder( kind ).append( ":" );
+
+            for ( Object ac : (Collection<?>) invocation.getArguments()[0] )
+            {
+                if ( batch.charAt( batch.length() - 1 ) != ':' )
+                {
+                    batch.append( "," );
+                }
+
+                batch.append( paths.get( ac ) );
+            }
+
+            batches.add( batch.toString() );
+
+            return null;
+        }
+    }
+}
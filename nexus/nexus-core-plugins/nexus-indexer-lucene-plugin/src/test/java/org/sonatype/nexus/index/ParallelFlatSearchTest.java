@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.index;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.FlatSearchRequest;
+import org.apache.maven.index.FlatSearchResponse;
+import org.apache.maven.index.NexusIndexer;
+import org.apache.maven.index.context.IndexingContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests the flat search of {@link DefaultIndexerManager} fanned out to contexts, against the search of all contexts at
+ * once, with indexer and contexts mocked.
+ */
+public class ParallelFlatSearchTest
+{
+    private static final Comparator<ArtifactInfo> COMPARATOR = new Comparator<ArtifactInfo>()
+    {
+        public int compare( final ArtifactInfo o1, final ArtifactInfo o2 )
+        {
+            final int result = o1.artifactId.compareTo( o2.artifactId );
+
+            return result != 0 ? result : o1.repository.compareTo( o2.repository );
+        }
+    };
+
+    private Map<String, IndexingContext> contexts;
+
+    private Map<IndexingContext, List<ArtifactInfo>> hits;
+
+    private Set<IndexingContext> overflowing;
+
+    private CountDownLatch slowContextRelease;
+
+    private IndexingContext slowContext;
+
+    private TestIndexerManager indexerManager;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        contexts = new LinkedHashMap<String, IndexingContext>();
+        hits = new HashMap<IndexingContext, List<ArtifactInfo>>();
+        overflowing = new HashSet<IndexingContext>();
+        slowContextRelease = new CountDownLatch( 1 );
+
+        addContext( "central", "a", "c", "e", "g" );
+        addContext( "releases", "b", "c", "f" );
+        addContext( "thirdparty", "a", "d", "h", "i" );
+
+        final NexusIndexer nexusIndexer = mock( NexusIndexer.class );
+        when( nexusIndexer.getIndexingContexts() ).thenReturn( contexts );
+        when( nexusIndexer.searchFlat( any( FlatSearchRequest.class ) ) ).thenAnswer( new SearchAnswer() );
+
+        indexerManager = new TestIndexerManager( nexusIndexer );
+    }
+
+    @After
+    public void tearDown()
+    {
+        slowContextRelease.countDown();
+
+        indexerManager.getSearchExecutor().shutdown();
+    }
+
+    @Test
+    public void testParallelSearchMatchesSerialSearch()
+        throws Exception
+    {
+        for ( int count : new int[] { 1, 3, 5, 100 } )
+        {
+            indexerManager.setSearchParallelism( 1, 30000 );
+
+            final FlatSearchResponse serial = indexerManager.searchFlat( request( count ) );
+
+            indexerManager.setSearchParallelism( 4, 30000 );
+
+            final FlatSearchResponse parallel = indexerManager.searchFlat( request( count ) );
+
+            Assert.assertEquals( "count " + count, ids( serial.getResults() ), ids( parallel.getResults() ) );
+            Assert.assertEquals( "count " + count, serial.getTotalHits(), parallel.getTotalHits() );
+            Assert.assertFalse( parallel instanceof PartialFlatSearchResponse );
+        }
+    }
+
+    @Test
+    public void testTooManyHitsInOneContextKeepsHitsOfOthers()
+        throws Exception
+    {
+        overflowing.add( contexts.get( "releases" ) );
+
+        indexerManager.setSearchParallelism( 4, 30000 );
+
+        final FlatSearchResponse response = indexerManager.searchFlat( request( 100 ) );
+
+        Assert.assertEquals( -1, response.getTotalHits() );
+        Assert.assertEquals( Arrays.asList( "central:a", "thirdparty:a", "releases:b", "central:c", "releases:c",
+            "thirdparty:d", "central:e", "releases:f", "central:g", "thirdparty:h", "thirdparty:i" ),
+            ids( response.getResults() ) );
+    }
+
+    @Test
+    public void testContextsExceedingTimeBudgetAreReported()
+        throws Exception
+    {
+        slowContext = contexts.get( "releases" );
+
+        indexerManager.setSearchParallelism( 4, 200 );
+
+        final FlatSearchResponse response = indexerManager.searchFlat( request( 100 ) );
+
+        Assert.assertTrue( response instanceof PartialFlatSearchResponse );
+        Assert.assertEquals( Collections.singletonList( "releases" ),
+            ( (PartialFlatSearchResponse) response ).getSkippedContextIds() );
+        Assert.assertEquals( Arrays.asList( "central:a", "thirdparty:a", "central:c", "thirdparty:d", "central:e",
+            "central:g", "thirdparty:h", "thirdparty:i" ), ids( response.getResults() ) );
+        Assert.assertEquals( 8, response.getTotalHits() );
+    }
+
+    // ==
+
+    private void addContext( final String id, final String... artifactIds )
+    {
+        final IndexingContext context = mock( IndexingContext.class );
+        when( context.getId() ).thenReturn( id );
+        when( context.isSearchable() ).thenReturn( true );
+
+        final List<ArtifactInfo> contextHits = new ArrayList<ArtifactInfo>();
+
+        for ( String artifactId : artifactIds )
+        {
+            contextHits.add( new ArtifactInfo( id, "org.test", artifactId, "1.0", null ) );
+        }
+
+        contexts.put( id, context );
+        hits.put( context, contextHits );
+    }
+
+    private FlatSearchRequest request( final int count )
+    {
+        final FlatSearchRequest req = new FlatSearchRequest( new TermQuery( new Term( "u", "test" ) ), COMPARATOR );
+        req.setCount( count );
+
+        return req;
+    }
+
+    private List<String> ids( final Collection<ArtifactInfo> results )
+    {
+        final List<String> ids = new ArrayList<String>();
+
+        for ( ArtifactInfo ai : results )
+        {
+            ids.add( ai.repository + ":" + ai.artifactId );
+        }
+
+        return ids;
+    }
+
+    /**
+     * Searches the requested contexts (all of them if none requested) at once, like indexer does.
+     */
+    private class SearchAnswer
+        implements Answer<FlatSearchResponse>
+    {
+        public FlatSearchResponse answer( final InvocationOnMock invocation )
+            throws Throwable
+        {
+            final FlatSearchRequest req = (FlatSearchRequest) invocation.getArguments()[0];
+
+            final Collection<IndexingContext> searched =
+                req.getContexts().isEmpty() ? contexts.values() : req.getContexts();
+
+            final TreeSet<ArtifactInfo> results = new TreeSet<ArtifactInfo>( req.getArtifactInfoComparator() );
+
+            int totalHits = 0;
+
+            for ( IndexingContext context : searched )
+            {
+                if ( context == slowContext )
+                {
+                    slowContextRelease.await( 5, TimeUnit.SECONDS );
+                }
+
+                results.addAll( hits.get( context ) );
+
+                if ( overflowing.contains( context ) || totalHits < 0 )
+                {
+                    totalHits = -1;
+                }
+                else
+                {
+                    totalHits += hits.get( context ).size();
+                }
+            }
+
+            while ( req.getCount() > 0 && results.size() > req.getCount() )
+            {
+                results.pollLast();
+            }
+
+            return new FlatSearchResponse( req.getQuery(), totalHits, results );
+        }
+    }
+
+    private static class TestIndexerManager
+        extends DefaultIndexerManager
+    {
+        private final NexusIndexer nexusIndexer;
+
+        public TestIndexerManager( final NexusIndexer nexusIndexer )
+        {
+            this.nexusIndexer = nexusIndexer;
+        }
+
+        @Override
+        protected NexusIndexer getNexusIndexer()
+        {
+            return nexusIndexer;
+        }
+    }
+}
@@ -24,6 +24,7 @@ import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -33,11 +34,18 @@ import java.util.Map;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.maven.index.ArtifactInfoFilter;
 import org.apache.maven.index.SearchType;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.apache.shiro.subject.Subject;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.sonatype.nexus.AbstractNexusTestCase;
 import org.sonatype.nexus.index.Searcher;
+import org.sonatype.nexus.rest.model.NexusNGArtifact;
+import org.sonatype.nexus.rest.model.NexusNGArtifactHit;
+import org.sonatype.nexus.rest.model.NexusNGArtifactLink;
+import org.sonatype.nexus.rest.model.NexusNGRepositoryDetail;
+import org.sonatype.nexus.rest.model.SearchNGResponse;
 import org.sonatype.plexus.rest.resource.PlexusResourceException;
 import org.sonatype.plexus.rest.resource.error.ErrorMessage;
 import org.sonatype.plexus.rest.resource.error.ErrorResponse;
@@ -88,4 +96,74 @@ public class SearchNGIndexPlexusResourceTest
             assertThat( errorMessage.getMsg(), containsString( "mock" ) );
         }
     }
+
+    @Test
+    public void testCacheKeyTellsRealmsApart()
+    {
+        final String admin =
+            SearchNGIndexPlexusResource.getPrincipalsKey( subject( "admin", "XmlAuthenticatingRealm" ) );
+
+        assertThat( SearchNGIndexPlexusResource.getPrincipalsKey( subject( "admin", "XmlAuthenticatingRealm" ) ),
+            equalTo( admin ) );
+        assertThat( SearchNGIndexPlexusResource.getPrincipalsKey( subject( "admin", "LdapAuthenticatingRealm" ) ),
+            not( equalTo( admin ) ) );
+        assertThat( SearchNGIndexPlexusResource.getPrincipalsKey( subject( "deployment", "XmlAuthenticatingRealm" ) ),
+            not( equalTo( admin ) ) );
+        assertThat( SearchNGIndexPlexusResource.getPrincipalsKey( null ), not( equalTo( admin ) ) );
+    }
+
+    @Test
+    public void testCachedResponseIsCopied()
+    {
+        final NexusNGArtifactLink link = new NexusNGArtifactLink();
+        link.setExtension( "jar" );
+
+        final NexusNGArtifactHit hit = new NexusNGArtifactHit();
+        hit.setRepositoryId( "releases" );
+        hit.setArtifactLinks( new ArrayList<NexusNGArtifactLink>( Arrays.asList( link ) ) );
+
+        final NexusNGArtifact artifact = new NexusNGArtifact();
+        artifact.setGroupId( "org.test" );
+        artifact.setArtifactId( "test" );
+        artifact.setVersion( "1.0" );
+        artifact.setArtifactHits( new ArrayList<NexusNGArtifactHit>( Arrays.asList( hit ) ) );
+
+        final NexusNGRepositoryDetail repoDetail = new NexusNGRepositoryDetail();
+        repoDetail.setRepositoryId( "releases" );
+
+        final SearchNGResponse response = new SearchNGResponse();
+        response.setTotalCount( 1 );
+        response.setCollapsed( true );
+        response.setData( new ArrayList<NexusNGArtifact>( Arrays.asList( artifact ) ) );
+        response.setRepoDetails( new ArrayList<NexusNGRepositoryDetail>( Arrays.asList( repoDetail ) ) );
+
+        final SearchNGResponse copy = SearchNGIndexPlexusResource.copySearchNGResponse( response );
+
+        assertThat( copy.getTotalCount(), equalTo( 1 ) );
+        assertThat( copy.isCollapsed(), equalTo( true ) );
+        assertThat( copy.getData().get( 0 ).getArtifactId(), equalTo( "test" ) );
+        assertThat( copy.getData().get( 0 ).getArtifactHits().get( 0 ).getArtifactLinks().get( 0 ).getExtension(),
+            equalTo( "jar" ) );
+        assertThat( copy.getRepoDetails().get( 0 ).getRepositoryId(), equalTo( "releases" ) );
+
+        // changing the copy leaves the original intact
+        copy.getData().get( 0 ).setVersion( "2.0" );
+        copy.getData().get( 0 ).getArtifactHits().get( 0 ).getArtifactLinks().get( 0 ).setExtension( "pom" );
+        copy.getData().add( new NexusNGArtifact() );
+        copy.getRepoDetails().clear();
+
+        assertThat( response.getData(), hasSize( 1 ) );
+        assertThat( response.getData().get( 0 ).getVersion(), equalTo( "1.0" ) );
+        assertThat( link.getExtension(), equalTo( "jar" ) );
+        assertThat( response.getRepoDetails(), hasSize( 1 ) );
+    }
+
+    private Subject subject( final String principal, final String realmName )
+    {
+        final Subject subject = mock( Subject.class );
+        when( subject.getPrincipal() ).thenReturn( principal );
+        when( subject.getPrincipals() ).thenReturn( new SimplePrincipalCollection( principal, realmName ) );
+
+        return subject;
+    }
 }
@@ -18,6 +18,7 @@
  */
 package org.sonatype.security.ldap.dao;
 
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.SortedSet;
@@ -29,8 +30,11 @@ import javax.naming.directory.Attributes;
 import javax.naming.directory.BasicAttributes;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
 import javax.naming.ldap.LdapContext;
 import javax.naming.ldap.LdapName;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
 
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
@@ -47,8 +51,17 @@ import org.sonatype.security.ldap.dao.password.PasswordEncoderManager;
 public class DefaultLdapUserDAO
     implements LdapUserDAO
 {
+    /**
+     * Page size used while listing users, 0 disables paging.
+     * 
+     * @since 2.0
+     */
+    public static final int PAGE_SIZE = Integer.getInteger( "nexus.ldap.pageSize", 500 );
+
     private Logger logger = LoggerFactory.getLogger( getClass() );
 
+    private int pageSize = PAGE_SIZE;
+
     @Requirement
     private PasswordEncoderManager passwordEncoderManager;
 
@@ -57,6 +70,11 @@ public class DefaultLdapUserDAO
         return logger;
     }
 
+    /* UT */ void setPageSize( int pageSize )
+    {
+        this.pageSize = pageSize;
+    }
+
     public PasswordEncoderManager getPasswordEncoderManager()
     {
         return passwordEncoderManager;
@@ -314,6 +332,11 @@ public class DefaultLdapUserDAO
                                          long limitCount )
         throws LdapDAOException
     {
+        if ( pageSize > 0 && ( limitCount <= 0 || limitCount > pageSize ) )
+        {
+            return this.getUsersPaged( username, context, configuration, limitCount );
+        }
+
         try
         {
             NamingEnumeration<SearchResult> results = searchUsers( username, context, configuration, limitCount );
@@ -335,6 +358,86 @@ public class DefaultLdapUserDAO
         }
     }
 
+    /**
+     * Retrieves users in pages of {@link #PAGE_SIZE} (by default) using the (non critical) paged results control,
+     * hence large directories are listed without hitting the server side size limit. Servers not supporting the
+     * control return all the results at once.
+     */
+    protected SortedSet<LdapUser> getUsersPaged( String username, LdapContext context,
+                                                 LdapAuthConfiguration configuration, long limitCount )
+        throws LdapDAOException
+    {
+        SortedSet<LdapUser> users = new TreeSet<LdapUser>();
+
+        try
+        {
+            byte[] cookie = null;
+
+            do
+            {
+                context.setRequestControls( new Control[] { new PagedResultsControl( pageSize, cookie,
+                    Control.NONCRITICAL ) } );
+
+                NamingEnumeration<SearchResult> results = searchUsers( username, context, configuration, -1 );
+
+                try
+                {
+                    while ( results.hasMoreElements() && ( limitCount <= 0 || users.size() < limitCount ) )
+                    {
+                        SearchResult result = results.nextElement();
+                        users.add( createUser( result, configuration ) );
+                    }
+                }
+                finally
+                {
+                    results.close();
+                }
+
+                cookie = null;
+
+                Control[] controls = context.getResponseControls();
+
+                if ( controls != null )
+                {
+                    for ( Control control : controls )
+                    {
+                        if ( control instanceof PagedResultsResponseControl )
+                        {
+                            cookie = ( (PagedResultsResponseControl) control ).getCookie();
+                        }
+                    }
+                }
+            }
+            while ( cookie != null && cookie.length > 0 && ( limitCount <= 0 || users.size() < limitCount ) );
+
+            return users;
+        }
+        catch ( IOException e )
+        {
+            String message = "Failed to create paged results control.";
+
+            throw new LdapDAOException( message, e );
+        }
+        catch ( NamingException e )
+        {
+            String message = "Failed to retrieve ldap information for users.";
+
+            throw new LdapDAOException( message, e );
+        }
+        finally
+        {
+            try
+            {
+                // the context may be reused, do not leave paging on
+                context.setRequestControls( null );
+            }
+            catch ( NamingException e )
+            {
+                getLogger().debug( "Failed to reset request controls.", e );
+            }
+        }
+    }
+
     public void createUser( LdapUser user, LdapContext context, LdapAuthConfiguration configuration )
         throws LdapDAOException
     {
@@ -18,15 +18,28 @@
  */
 package org.sonatype.security.ldap.realms.connector;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.naming.NamingException;
 import javax.naming.ldap.LdapContext;
 
 import org.apache.shiro.realm.ldap.LdapContextFactory;
+import org.codehaus.plexus.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonatype.security.ldap.dao.LdapAuthConfiguration;
@@ -41,6 +54,16 @@ import org.sonatype.security.ldap.dao.NoSuchLdapUserException;
 public class DefaultLdapConnector
     implements LdapConnector
 {
+    /**
+     * Maximum count of group membership lookups performed concurrently while listing users, each using it's own
+     * (pooled by JNDI) context.
+     * 
+     * @since 2.0
+     */
+    public static final int GROUP_RESOLVER_THREADS = Integer.getInteger( "nexus.ldap.groupResolverThreads", 4 );
+
+    private static final AtomicInteger GROUP_RESOLVER_THREAD_COUNT = new AtomicInteger();
+
     private Logger logger = LoggerFactory.getLogger( getClass() );
     
     private LdapUserDAO ldapUserManager;
@@ -52,9 +75,27 @@ public class DefaultLdapConnector
     private LdapAuthConfiguration ldapAuthConfiguration;
     
     private String identifier;
+
+    private final ThreadPoolExecutor groupResolver;
+
+    private final AtomicLong contextCount = new AtomicLong();
+
+    private final AtomicLong contextTime = new AtomicLong();
+
+    private final AtomicLong queryTime = new AtomicLong();
     
     public DefaultLdapConnector( String identifier, LdapUserDAO ldapUserManager, LdapGroupDAO ldapGroupManager,
         LdapContextFactory ldapContextFactory, LdapAuthConfiguration ldapAuthConfiguration )
+    {
+        this( identifier, ldapUserManager, ldapGroupManager, ldapContextFactory, ldapAuthConfiguration,
+            GROUP_RESOLVER_THREADS );
+    }
+
+    /**
+     * Meant for tests.
+     */
+    protected DefaultLdapConnector( String identifier, LdapUserDAO ldapUserManager, LdapGroupDAO ldapGroupManager,
+        LdapContextFactory ldapContextFactory, LdapAuthConfiguration ldapAuthConfiguration, int groupResolverThreads )
     {
         super();
         this.identifier = identifier;
@@ -62,15 +103,31 @@ public class DefaultLdapConnector
         this.ldapGroupManager = ldapGroupManager;
         this.ldapContextFactory = ldapContextFactory;
         this.ldapAuthConfiguration = ldapAuthConfiguration;
+        // caps the fan-out of listings, lookups of single users do not wait for it
+        this.groupResolver =
+            new ThreadPoolExecutor( groupResolverThreads, groupResolverThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+                {
+                    public Thread newThread( Runnable r )
+                    {
+                        Thread thread =
+                            new Thread( r, "LDAP Group Resolver #" + GROUP_RESOLVER_THREAD_COUNT.incrementAndGet() );
+                        thread.setDaemon( true );
+                        return thread;
+                    }
+                } );
+        this.groupResolver.allowCoreThreadTimeOut( true );
     }
 
     public Set<String> getUserRoles( String userId )
         throws LdapDAOException, NoLdapUserRolesFoundException
     {
         LdapContext context = null;
+        long queryStart = 0;
         try
         {
-            context = this.getLdapContextFactory().getSystemLdapContext();
+            context = this.openContext();
+            queryStart = System.nanoTime();
             return this.getUserRoles( userId, context, this
                 .getLdapAuthConfiguration() );
         }
@@ -81,7 +138,7 @@ public class DefaultLdapConnector
         }
         finally
         {
-            this.closeContext( context );
+            this.closeContext( context, queryStart );
         }
     }
 
@@ -107,29 +164,17 @@ public class DefaultLdapConnector
     public SortedSet<LdapUser> getUsers( int count )
         throws LdapDAOException
     {
+        SortedSet<LdapUser> users;
+
         LdapContext context = null;
+        long queryStart = 0;
         try
         {
-            context = this.getLdapContextFactory().getSystemLdapContext();
+            context = this.openContext();
+            queryStart = System.nanoTime();
             LdapAuthConfiguration conf = this.getLdapAuthConfiguration();
 
-            SortedSet<LdapUser> users = this.ldapUserManager.getUsers( context, conf, count );
-
-            for ( LdapUser ldapUser : users )
-            {
-                if ( this.getLdapAuthConfiguration().isLdapGroupsAsRoles() )
-                {
-                    try
-                    {
-                        ldapUser.setMembership( this.getGroupMembership( ldapUser.getUsername(), context, conf ) );
-                    }
-                    catch ( NoLdapUserRolesFoundException e )
-                    {
-                        this.logger.debug( "No roles found for user: "+ ldapUser.getUsername() );
-                    }
-                }
-            }
-            return users;
+            users = this.ldapUserManager.getUsers( context, conf, count );
         }
         catch ( NamingException e )
         {
@@ -138,8 +183,12 @@ public class DefaultLdapConnector
         }
         finally
         {
-            this.closeContext( context );
+            this.closeContext( context, queryStart );
         }
+
+        this.resolveGroupMembership( users );
+
+        return users;
     }
 
     public LdapUser getUser( String username )
@@ -147,9 +196,11 @@ public class DefaultLdapConnector
             LdapDAOException
     {
         LdapContext context = null;
+        long queryStart = 0;
         try
         {
-            context = this.getLdapContextFactory().getSystemLdapContext();    
+            context = this.openContext();
+            queryStart = System.nanoTime();
             LdapAuthConfiguration conf = this.getLdapAuthConfiguration();
 
             LdapUser ldapUser = this.ldapUserManager.getUser( username, context, conf );
@@ -175,17 +226,21 @@ public class DefaultLdapConnector
         }
         finally
         {
-            this.closeContext( context );
+            this.closeContext( context, queryStart );
         }
     }
 
     public SortedSet<LdapUser> searchUsers( String username )
         throws LdapDAOException
     {
+        SortedSet<LdapUser> users;
+
         LdapContext context = null;
+        long queryStart = 0;
         try
         {
-            context = this.getLdapContextFactory().getSystemLdapContext();
+            context = this.openContext();
+            queryStart = System.nanoTime();
             LdapAuthConfiguration conf = this.getLdapAuthConfiguration();
 
             // make sure the username is at least an empty string
@@ -194,23 +249,7 @@ public class DefaultLdapConnector
                 username = "";
             }
 
-            SortedSet<LdapUser> users = this.ldapUserManager.getUsers( username + "*", context, conf, -1 );
-
-            for ( LdapUser ldapUser : users )
-            {
-                if ( this.getLdapAuthConfiguration().isLdapGroupsAsRoles() )
-                {
-                    try
-                    {
-                        ldapUser.setMembership( this.getGroupMembership( ldapUser.getUsername(), context, conf ) );
-                    }
-                    catch ( NoLdapUserRolesFoundException e )
-                    {
-                       this.logger.debug( "No roles found for user: "+ username );
-                    }
-                }
-            }
-            return users;
+            users = this.ldapUserManager.getUsers( username + "*", context, conf, -1 );
         }
         catch ( NamingException e )
         {
@@ -219,8 +258,12 @@ public class DefaultLdapConnector
         }
         finally
         {
-            this.closeContext( context );
+            this.closeContext( context, queryStart );
         }
+
+        this.resolveGroupMembership( users );
+
+        return users;
     }
 
     private Set<String> getGroupMembership( String username, LdapContext context, LdapAuthConfiguration conf )
@@ -229,16 +272,114 @@ public class DefaultLdapConnector
         return this.ldapGroupManager.getGroupMembership( username, context, conf );
     }
 
+    /**
+     * Resolves group membership of listed users. With dynamic groups the membership is read from the user entries
+     * already, while with static groups each user needs a group search, that are performed concurrently (by at most
+     * {@link #GROUP_RESOLVER_THREADS} threads), each using it's own context.
+     */
+    private void resolveGroupMembership( Collection<LdapUser> users )
+        throws LdapDAOException
+    {
+        final LdapAuthConfiguration conf = this.getLdapAuthConfiguration();
+
+        if ( !conf.isLdapGroupsAsRoles() || StringUtils.isNotEmpty( conf.getUserMemberOfAttribute() ) )
+        {
+            return;
+        }
+
+        if ( users.size() < 2 )
+        {
+            for ( LdapUser ldapUser : users )
+            {
+                this.resolveGroupMembership( ldapUser, conf );
+            }
+
+            return;
+        }
+
+        List<Future<Object>> futures = new ArrayList<Future<Object>>( users.size() );
+
+        for ( final LdapUser ldapUser : users )
+        {
+            futures.add( this.groupResolver.submit( new Callable<Object>()
+            {
+                public Object call()
+                    throws Exception
+                {
+                    resolveGroupMembership( ldapUser, conf );
+                    return null;
+                }
+            } ) );
+        }
+
+        try
+        {
+            for ( Future<Object> future : futures )
+            {
+                future.get();
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new LdapDAOException( "Interrupted while retrieving ldap group membership of users." );
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof LdapDAOException )
+            {
+                throw (LdapDAOException) e.getCause();
+            }
+            throw new LdapDAOException( "Failed to retrieve ldap group membership of users.", e.getCause() );
+        }
+        finally
+        {
+            for ( Future<Object> future : futures )
+            {
+                future.cancel( false );
+            }
+        }
+    }
+
+    private void resolveGroupMembership( LdapUser ldapUser, LdapAuthConfiguration conf )
+        throws LdapDAOException
+    {
+        LdapContext context = null;
+        long queryStart = 0;
+        try
+        {
+            context = this.openContext();
+            queryStart = System.nanoTime();
+
+            ldapUser.setMembership( this.getGroupMembership( ldapUser.getUsername(), context, conf ) );
+        }
+        catch ( NoLdapUserRolesFoundException e )
+        {
+            this.logger.debug( "No roles found for user: "+ ldapUser.getUsername() );
+        }
+        catch ( NamingException e )
+        {
+            String message = "Failed to retrieve ldap user roles for user" + ldapUser.getUsername();
+            throw new LdapDAOException( message, e );
+        }
+        finally
+        {
+            this.closeContext( context, queryStart );
+        }
+    }
+
     public SortedSet<String> getAllGroups()
         throws LdapDAOException
     {
         LdapContext context = null;
+        long queryStart = 0;
         
         try
         {
             SortedSet<String> results = new TreeSet<String>();
 
-            context = this.getLdapContextFactory().getSystemLdapContext();
+            context = this.openContext();
+            queryStart = System.nanoTime();
             LdapAuthConfiguration conf = this.getLdapAuthConfiguration();
 
             results.addAll( this.ldapGroupManager.getAllGroups( context, conf ) );
@@ -252,7 +393,7 @@ public class DefaultLdapConnector
         }
         finally
         {
-            this.closeContext( context );
+            this.closeContext( context, queryStart );
         }
     }
 
@@ -261,10 +402,12 @@ public class DefaultLdapConnector
             NoSuchLdapGroupException
     {
         LdapContext context = null;
+        long queryStart = 0;
         
         try
         {
-            context = this.getLdapContextFactory().getSystemLdapContext();
+            context = this.openContext();
+            queryStart = System.nanoTime();
             LdapAuthConfiguration conf = this.getLdapAuthConfiguration();
 
             return this.ldapGroupManager.getGroupName( groupId, context, conf );
@@ -276,7 +419,7 @@ public class DefaultLdapConnector
         }
         finally
         {
-            this.closeContext( context );
+            this.closeContext( context, queryStart );
         }
     }
     
@@ -285,6 +428,59 @@ public class DefaultLdapConnector
         return ldapContextFactory;
     }
 
+    /**
+     * Returns the count of system contexts this connector opened (one per LDAP operation).
+     * 
+     * @since 2.0
+     */
+    public long getContextCount()
+    {
+        return contextCount.get();
+    }
+
+    /**
+     * Returns the average time in milliseconds spent getting a system context, that is waiting for a context pooled by
+     * JNDI or connecting and binding a new one.
+     * 
+     * @since 2.0
+     */
+    public double getAverageContextTime()
+    {
+        final long count = contextCount.get();
+
+        return count == 0 ? 0 : contextTime.get() / 1000000.0 / count;
+    }
+
+    /**
+     * Returns the average time in milliseconds a system context was used for, that is the latency of the LDAP queries
+     * of one operation.
+     * 
+     * @since 2.0
+     */
+    public double getAverageQueryTime()
+    {
+        final long count = contextCount.get();
+
+        return count == 0 ? 0 : queryTime.get() / 1000000.0 / count;
+    }
+
+    /**
+     * Stops the group resolver threads. To be called once connector is not used anymore.
+     * 
+     * @since 2.0
+     */
+    public void close()
+    {
+        if ( this.logger.isDebugEnabled() )
+        {
+            this.logger.debug( "Closing LDAP connector " + this.identifier + ", opened " + getContextCount()
+                + " contexts, with average context time " + getAverageContextTime() + "ms and average query time "
+                + getAverageQueryTime() + "ms." );
+        }
+
+        this.groupResolver.shutdown();
+    }
+
     private LdapAuthConfiguration getLdapAuthConfiguration()
     {
         return ldapAuthConfiguration;
@@ -294,9 +490,27 @@ public class DefaultLdapConnector
     {
         return this.identifier;
     }
-    
-    private void closeContext( LdapContext context )
+
+    private LdapContext openContext()
+        throws NamingException
     {
+        final long start = System.nanoTime();
+
+        final LdapContext context = this.getLdapContextFactory().getSystemLdapContext();
+
+        this.contextTime.addAndGet( System.nanoTime() - start );
+        this.contextCount.incrementAndGet();
+
+        return context;
+    }
+
+    private void closeContext( LdapContext context, long queryStart )
+    {
+        if ( context != null )
+        {
+            this.queryTime.addAndGet( System.nanoTime() - queryStart );
+        }
+
         try
         {
             if( context != null)
@@ -21,6 +21,7 @@ package org.sonatype.security.ldap.dao;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.SortedSet;
 
 import javax.naming.Context;
 import javax.naming.ldap.InitialLdapContext;
@@ -99,4 +100,48 @@ public class LdapUserDAOTest
         }
     }
 
+    @Test
+    public void testPagedListing()
+        throws Exception
+    {
+        Map<String, Object> env = new HashMap<String, Object>();
+        env.put( Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory" );
+        env.put( Context.PROVIDER_URL, "ldap://localhost:" + this.getLdapServer().getPort() + "/o=sonatype" );
+        env.put( Context.SECURITY_PRINCIPAL, "uid=admin,ou=system" );
+        env.put( Context.SECURITY_CREDENTIALS, "secret" );
+        env.put( Context.SECURITY_AUTHENTICATION, "simple" );
+
+        InitialLdapContext initialContext = new InitialLdapContext( new Hashtable<String, Object>( env ), null );
+
+        LdapAuthConfiguration configuration = new LdapAuthConfiguration();
+        configuration.setUserBaseDn( "ou=people" );
+        configuration.setGroupBaseDn( "ou=groups" );
+        configuration.setGroupObjectClass( "groupOfUniqueNames" );
+        configuration.setGroupMemberAttribute( "uniqueMember" );
+        configuration.setUserRealNameAttribute( "cn" );
+
+        DefaultLdapUserDAO lum = (DefaultLdapUserDAO) lookup( LdapUserDAO.class.getName() );
+
+        try
+        {
+            // unpaged
+            lum.setPageSize( 0 );
+            SortedSet<LdapUser> users = lum.getUsers( initialContext, configuration, -1 );
+            assertEquals( 3, users.size() );
+
+            // 3 users in pages of 2
+            lum.setPageSize( 2 );
+            assertEquals( users, lum.getUsers( initialContext, configuration, -1 ) );
+
+            // limit is honored across pages
+            lum.setPageSize( 1 );
+            assertEquals( 2, lum.getUsers( initialContext, configuration, 2 ).size() );
+            assertEquals( users, lum.getUsers( initialContext, configuration, 5 ) );
+        }
+        finally
+        {
+            lum.setPageSize( DefaultLdapUserDAO.PAGE_SIZE );
+        }
+    }
+
 }
@@ -24,6 +24,7 @@ import java.util.SortedSet;
 
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
 import org.codehaus.plexus.util.StringUtils;
 import org.apache.shiro.realm.ldap.LdapContextFactory;
 import org.slf4j.Logger;
@@ -46,7 +47,7 @@ import org.sonatype.security.ldap.realms.tools.LdapURL;
 
 @Component( role = LdapManager.class )
 public class SimpleLdapManager
-    implements LdapManager
+    implements LdapManager, Disposable
 {
 
     private Logger logger = LoggerFactory.getLogger( getClass() );
@@ -123,6 +124,15 @@ public class SimpleLdapManager
         return this.ldapManagerStrategy;
     }
 
+    public void dispose()
+    {
+        if ( this.ldapManagerStrategy instanceof DefaultLdapConnector )
+        {
+            ( (DefaultLdapConnector) this.ldapManagerStrategy ).close();
+        }
+        this.ldapManagerStrategy = null;
+    }
+
     protected LdapConfiguration getLdapConfiguration()
     {
         return this.ldapConfiguration;
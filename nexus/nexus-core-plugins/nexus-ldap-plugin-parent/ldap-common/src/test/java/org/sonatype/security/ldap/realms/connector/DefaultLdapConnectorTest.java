@@ -0,0 +1,281 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.security.ldap.realms.connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.naming.ldap.LdapContext;
+
+import org.apache.shiro.realm.ldap.LdapContextFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.security.ldap.dao.LdapAuthConfiguration;
+import org.sonatype.security.ldap.dao.LdapDAOException;
+import org.sonatype.security.ldap.dao.LdapGroupDAO;
+import org.sonatype.security.ldap.dao.LdapUser;
+import org.sonatype.security.ldap.dao.LdapUserDAO;
+
+public class DefaultLdapConnectorTest
+{
+    private static final int THREADS = 3;
+
+    private static final int USERS = 10;
+
+    private final AtomicInteger openedContexts = new AtomicInteger();
+
+    private final AtomicInteger closedContexts = new AtomicInteger();
+
+    private final AtomicInteger runningLookups = new AtomicInteger();
+
+    private final AtomicInteger maximumRunningLookups = new AtomicInteger();
+
+    private final CountDownLatch releaseLookups = new CountDownLatch( 1 );
+
+    private volatile String failingUser;
+
+    private DefaultLdapConnector connector;
+
+    @Before
+    public void setUp()
+    {
+        LdapAuthConfiguration conf = new LdapAuthConfiguration();
+        conf.setLdapGroupsAsRoles( true );
+        // static groups, every user needs a group search
+        conf.setUserMemberOfAttribute( null );
+
+        connector =
+            new DefaultLdapConnector( "test", createUserDAO(), createGroupDAO(), createContextFactory(), conf,
+                THREADS );
+    }
+
+    @After
+    public void tearDown()
+    {
+        releaseLookups.countDown();
+        connector.close();
+    }
+
+    @Test
+    public void testListingResolvesGroupsConcurrentlyWithinThreadCap()
+        throws Exception
+    {
+        final AtomicReference<SortedSet<LdapUser>> listed = new AtomicReference<SortedSet<LdapUser>>();
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+        Thread listing = new Thread( "listing" )
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    listed.set( connector.getAllUsers() );
+                }
+                catch ( Exception e )
+                {
+                    failure.set( e );
+                }
+            }
+        };
+        listing.start();
+
+        // wait for the listing to occupy all the resolver threads
+        long deadline = System.currentTimeMillis() + 10000;
+        while ( runningLookups.get() < THREADS && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 10 );
+        }
+        assertEquals( THREADS, runningLookups.get() );
+
+        // lookups of single users are not queued behind the listing
+        assertEquals( Collections.singleton( "single-role" ), connector.getUserRoles( "single" ) );
+
+        releaseLookups.countDown();
+        listing.join( 10000 );
+
+        if ( failure.get() != null )
+        {
+            throw failure.get();
+        }
+
+        SortedSet<LdapUser> users = listed.get();
+        assertEquals( USERS, users.size() );
+        for ( LdapUser user : users )
+        {
+            assertEquals( Collections.singleton( "group-" + user.getUsername() ), user.getMembership() );
+        }
+
+        assertEquals( THREADS, maximumRunningLookups.get() );
+
+        // a context for the listing, one per user, and one for the single lookup, all closed (returned to the pool)
+        assertEquals( 1 + USERS + 1, openedContexts.get() );
+        assertEquals( openedContexts.get(), closedContexts.get() );
+
+        // and all of them timed, the lookups were held until released
+        assertEquals( openedContexts.get(), connector.getContextCount() );
+        assertTrue( connector.getAverageQueryTime() > 0 );
+    }
+
+    @Test
+    public void testListingReportsFailedResolution()
+        throws Exception
+    {
+        failingUser = "user5";
+        releaseLookups.countDown();
+
+        try
+        {
+            connector.getAllUsers();
+            fail( "LdapDAOException expected" );
+        }
+        catch ( LdapDAOException e )
+        {
+            assertTrue( e.getMessage().contains( "user5" ) );
+        }
+
+        // lookups already running when the failure was reported still close their contexts
+        long deadline = System.currentTimeMillis() + 10000;
+        while ( openedContexts.get() != closedContexts.get() && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 10 );
+        }
+        assertEquals( openedContexts.get(), closedContexts.get() );
+    }
+
+    // ==
+
+    private LdapContextFactory createContextFactory()
+    {
+        return proxy( LdapContextFactory.class, new InvocationHandler()
+        {
+            public Object invoke( Object proxy, Method method, Object[] args )
+            {
+                if ( "getSystemLdapContext".equals( method.getName() ) )
+                {
+                    openedContexts.incrementAndGet();
+                    return createContext();
+                }
+                throw new UnsupportedOperationException( method.getName() );
+            }
+        } );
+    }
+
+    private LdapContext createContext()
+    {
+        return proxy( LdapContext.class, new InvocationHandler()
+        {
+            public Object invoke( Object proxy, Method method, Object[] args )
+            {
+                if ( "close".equals( method.getName() ) )
+                {
+                    closedContexts.incrementAndGet();
+                }
+                return null;
+            }
+        } );
+    }
+
+    private LdapUserDAO createUserDAO()
+    {
+        return proxy( LdapUserDAO.class, new InvocationHandler()
+        {
+            public Object invoke( Object proxy, Method method, Object[] args )
+            {
+                if ( "getUsers".equals( method.getName() ) )
+                {
+                    SortedSet<LdapUser> users = new TreeSet<LdapUser>();
+                    for ( int i = 0; i < USERS; i++ )
+                    {
+                        LdapUser user = new LdapUser();
+                        user.setUsername( "user" + i );
+                        users.add( user );
+                    }
+                    return users;
+                }
+                throw new UnsupportedOperationException( method.getName() );
+            }
+        } );
+    }
+
+    private LdapGroupDAO createGroupDAO()
+    {
+        return proxy( LdapGroupDAO.class, new InvocationHandler()
+        {
+            public Object invoke( Object proxy, Method method, Object[] args )
+                throws Exception
+            {
+                if ( !"getGroupMembership".equals( method.getName() ) )
+                {
+                    throw new UnsupportedOperationException( method.getName() );
+                }
+
+                String username = (String) args[0];
+
+                if ( !username.startsWith( "user" ) )
+                {
+                    return Collections.singleton( "single-role" );
+                }
+
+                int running = runningLookups.incrementAndGet();
+                try
+                {
+                    int maximum;
+                    do
+                    {
+                        maximum = maximumRunningLookups.get();
+                    }
+                    while ( running > maximum && !maximumRunningLookups.compareAndSet( maximum, running ) );
+
+                    releaseLookups.await( 10, TimeUnit.SECONDS );
+
+                    if ( username.equals( failingUser ) )
+                    {
+                        throw new LdapDAOException( "Failed to search groups of " + username );
+                    }
+
+                    return Collections.singleton( "group-" + username );
+                }
+                finally
+                {
+                    runningLookups.decrementAndGet();
+                }
+            }
+        } );
+    }
+
+    private static <T> T proxy( Class<T> type, InvocationHandler handler )
+    {
+        return type.cast( Proxy.newProxyInstance( DefaultLdapConnectorTest.class.getClassLoader(),
+            new Class<?>[] { type }, handler ) );
+    }
+}
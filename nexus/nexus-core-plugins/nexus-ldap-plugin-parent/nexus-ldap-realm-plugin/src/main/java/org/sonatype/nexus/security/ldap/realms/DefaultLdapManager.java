@@ -18,8 +18,14 @@
  */
 package org.sonatype.nexus.security.ldap.realms;
 
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
@@ -33,10 +39,14 @@ import org.codehaus.plexus.util.StringUtils;
 import org.apache.shiro.realm.ldap.LdapContextFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonatype.nexus.auth.NexusAuthorizationCacheClearEvent;
+import org.sonatype.nexus.util.LruCache;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 import org.sonatype.plexus.appevents.ApplicationEventMulticaster;
 import org.sonatype.plexus.appevents.Event;
 import org.sonatype.plexus.appevents.EventListener;
 import org.sonatype.security.authentication.AuthenticationException;
+import org.sonatype.security.events.SecurityConfigurationChangedEvent;
 import org.sonatype.security.ldap.LdapAuthenticator;
 import org.sonatype.security.ldap.dao.LdapAuthConfiguration;
 import org.sonatype.security.ldap.dao.LdapDAOException;
@@ -60,6 +70,20 @@ public class DefaultLdapManager
     implements LdapManager, EventListener, Initializable, Disposable
 {
 
+    /**
+     * The count of users whose successful authentication and LDAP roles are cached, that may be overridden by users
+     * using Java System Properties. Setting it to 0 disables caching.
+     */
+    private static final int CACHE_SIZE = SystemPropertiesHelper.getInteger( "nexus.ldap.cache.size", 1000 );
+
+    /**
+     * The time in milliseconds an authentication or LDAP roles are cached for at most, that may be overridden by users
+     * using Java System Properties. It bounds the time a changed password or group membership takes effect.
+     */
+    private static final long CACHE_TTL = SystemPropertiesHelper.getLong( "nexus.ldap.cache.ttl", 60000 );
+
+    private static final SecureRandom SALT_RANDOM = new SecureRandom();
+
     private Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Requirement
@@ -79,6 +103,12 @@ public class DefaultLdapManager
 
     private LdapConnector ldapConnector;
 
+    private final LruCache<String, CachedAuthentication> authenticationCache =
+        CACHE_SIZE > 0 ? new LruCache<String, CachedAuthentication>( CACHE_SIZE, CACHE_TTL ) : null;
+
+    private final LruCache<String, Set<String>> userRolesCache =
+        CACHE_SIZE > 0 ? new LruCache<String, Set<String>>( CACHE_SIZE, CACHE_TTL ) : null;
+
     public SortedSet<String> getAllGroups()
         throws LdapDAOException
     {
@@ -109,7 +139,33 @@ public class DefaultLdapManager
         throws LdapDAOException,
             NoLdapUserRolesFoundException
     {
-        return this.getLdapConnector().getUserRoles( userId );
+        if ( this.userRolesCache == null )
+        {
+            return this.getLdapConnector().getUserRoles( userId );
+        }
+
+        Set<String> roles = this.userRolesCache.get( userId );
+
+        if ( roles == null )
+        {
+            try
+            {
+                roles = new HashSet<String>( this.getLdapConnector().getUserRoles( userId ) );
+            }
+            catch ( NoLdapUserRolesFoundException e )
+            {
+                roles = Collections.emptySet();
+            }
+
+            this.userRolesCache.put( userId, Collections.unmodifiableSet( roles ) );
+        }
+
+        if ( roles.isEmpty() )
+        {
+            throw new NoLdapUserRolesFoundException( userId );
+        }
+
+        return new HashSet<String>( roles );
     }
 
     public SortedSet<LdapUser> getUsers( int userCount )
@@ -192,8 +248,38 @@ public class DefaultLdapManager
         return defaultLdapContextFactory;
     }
 
+    /**
+     * Returns the cache of successful authentications (for it's metrics), or null if caching is disabled.
+     * 
+     * @return
+     */
+    public LruCache<String, CachedAuthentication> getAuthenticationCache()
+    {
+        return this.authenticationCache;
+    }
+
+    /**
+     * Returns the cache of user LDAP roles (for it's metrics), or null if caching is disabled.
+     * 
+     * @return
+     */
+    public LruCache<String, Set<String>> getUserRolesCache()
+    {
+        return this.userRolesCache;
+    }
+
     public LdapUser authenticateUser( String userId, String password ) throws AuthenticationException
     {
+        if ( this.authenticationCache != null )
+        {
+            CachedAuthentication cachedAuthentication = this.authenticationCache.get( userId );
+
+            if ( cachedAuthentication != null && cachedAuthentication.matches( password ) )
+            {
+                return cachedAuthentication.getLdapUser();
+            }
+        }
+
         try
         {
             LdapUser ldapUser = this.getUser( userId );
@@ -218,6 +304,11 @@ public class DefaultLdapManager
             }
 
             // everything was successful
+            if ( this.authenticationCache != null )
+            {
+                this.authenticationCache.put( userId, new CachedAuthentication( ldapUser, password ) );
+            }
+
             return ldapUser;
         }
         catch ( Exception e )
@@ -235,7 +326,42 @@ public class DefaultLdapManager
         if ( evt instanceof LdapClearCacheEvent )
         {
             // clear the connectors
-            this.ldapConnector = null;
+            closeLdapConnector();
+
+            clearCaches();
+
+            // LDAP roles of users may have changed too
+            this.applicationEventMulticaster.notifyEventListeners( new NexusAuthorizationCacheClearEvent( this ) );
+        }
+        else if ( evt instanceof SecurityConfigurationChangedEvent )
+        {
+            clearCaches();
+        }
+    }
+
+    protected void closeLdapConnector()
+    {
+        LdapConnector connector = this.ldapConnector;
+
+        this.ldapConnector = null;
+
+        // stop the group resolver threads of the connector
+        if ( connector instanceof DefaultLdapConnector )
+        {
+            ( (DefaultLdapConnector) connector ).close();
+        }
+    }
+
+    protected void clearCaches()
+    {
+        if ( this.authenticationCache != null )
+        {
+            this.authenticationCache.clear();
+        }
+
+        if ( this.userRolesCache != null )
+        {
+            this.userRolesCache.clear();
         }
     }
 
@@ -248,6 +374,58 @@ public class DefaultLdapManager
     public void dispose()
     {
         this.applicationEventMulticaster.removeEventListener( this );
+
+        closeLdapConnector();
     }
 
+    // ==
+
+    /**
+     * A successful authentication of an LDAP user. The password is not kept, only it's salted hash, to be able to tell
+     * whether the same password is presented again.
+     */
+    public static class CachedAuthentication
+    {
+        private final LdapUser ldapUser;
+
+        private final byte[] salt;
+
+        private final byte[] passwordHash;
+
+        public CachedAuthentication( final LdapUser ldapUser, final String password )
+        {
+            this.ldapUser = ldapUser;
+            this.salt = new byte[16];
+            SALT_RANDOM.nextBytes( this.salt );
+            this.passwordHash = hash( this.salt, password );
+        }
+
+        public LdapUser getLdapUser()
+        {
+            return ldapUser;
+        }
+
+        public boolean matches( final String password )
+        {
+            return MessageDigest.isEqual( passwordHash, hash( salt, password ) );
+        }
+
+        private static byte[] hash( final byte[] salt, final String password )
+        {
+            try
+            {
+                MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+                digest.update( salt );
+                return digest.digest( String.valueOf( password ).getBytes( "UTF-8" ) );
+            }
+            catch ( NoSuchAlgorithmException e )
+            {
+                throw new IllegalStateException( "SHA-256 digest is not available", e );
+            }
+            catch ( UnsupportedEncodingException e )
+            {
+                throw new IllegalStateException( "UTF-8 encoding is not available", e );
+            }
+        }
+    }
 }
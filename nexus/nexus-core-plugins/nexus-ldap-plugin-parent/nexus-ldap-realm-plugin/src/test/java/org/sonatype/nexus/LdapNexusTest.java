@@ -23,11 +23,15 @@ import org.junit.Test;
 
 import org.apache.shiro.authc.UsernamePasswordToken;
 import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.sonatype.nexus.security.ldap.realms.DefaultLdapManager;
 import org.sonatype.nexus.security.ldap.realms.NexusLdapAuthenticationRealm;
+import org.sonatype.plexus.appevents.ApplicationEventMulticaster;
 import org.sonatype.security.SecuritySystem;
 import org.sonatype.security.authentication.AuthenticationException;
 
 import org.sonatype.security.ldap.realms.AbstractLdapAuthenticatingRealm;
+import org.sonatype.security.ldap.realms.LdapManager;
+import org.sonatype.security.ldap.realms.persist.LdapClearCacheEvent;
 
 public class LdapNexusTest
     extends AbstractNexusLdapTestCase
@@ -60,6 +64,36 @@ public class LdapNexusTest
         }
     }
 
+    @Test
+    public void testAuthenticationCache()
+        throws Exception
+    {
+        SecuritySystem security = lookup( SecuritySystem.class );
+        security.start();
+
+        DefaultLdapManager ldapManager = (DefaultLdapManager) lookup( LdapManager.class );
+
+        Assert.assertNotNull( security.authenticate( new UsernamePasswordToken( "cstamas", "cstamas123" ) ) );
+        Assert.assertNotNull( security.authenticate( new UsernamePasswordToken( "cstamas", "cstamas123" ) ) );
+
+        Assert.assertEquals( 1, ldapManager.getAuthenticationCache().size() );
+        Assert.assertTrue( ldapManager.getAuthenticationCache().getHitCount() > 0 );
+
+        // cached authentication must not let in other password
+        try
+        {
+            Assert.assertNull( security.authenticate( new UsernamePasswordToken( "cstamas", "INVALID" ) ) );
+        }
+        catch ( AuthenticationException e )
+        {
+            // expected
+        }
+
+        lookup( ApplicationEventMulticaster.class ).notifyEventListeners( new LdapClearCacheEvent( null ) );
+
+        Assert.assertEquals( 0, ldapManager.getAuthenticationCache().size() );
+    }
+
     @Test
     public void testAuthorization()
         throws Exception
@@ -21,10 +21,19 @@ package org.sonatype.nexus.proxy.access;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.apache.shiro.subject.PrincipalCollection;
 import org.apache.shiro.subject.Subject;
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Initializable;
+import org.sonatype.nexus.auth.NexusAuthorizationCacheClearEvent;
+import org.sonatype.nexus.configuration.ConfigurationChangeEvent;
 import org.sonatype.nexus.logging.AbstractLoggingComponent;
 import org.sonatype.nexus.proxy.NoSuchRepositoryException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
@@ -32,7 +41,12 @@ import org.sonatype.nexus.proxy.registry.RepositoryRegistry;
 import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.target.TargetMatch;
 import org.sonatype.nexus.proxy.target.TargetSet;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
+import org.sonatype.plexus.appevents.ApplicationEventMulticaster;
+import org.sonatype.plexus.appevents.Event;
+import org.sonatype.plexus.appevents.EventListener;
 import org.sonatype.security.SecuritySystem;
+import org.sonatype.security.events.SecurityConfigurationChangedEvent;
 
 /**
  * Default implementation of Nexus Authorizer, that relies onto JSecurity.
@@ -40,14 +54,87 @@ import org.sonatype.security.SecuritySystem;
 @Component( role = NexusItemAuthorizer.class )
 public class DefaultNexusItemAuthorizer
     extends AbstractLoggingComponent
-    implements NexusItemAuthorizer
+    implements NexusItemAuthorizer, EventListener, Initializable, Disposable
 {
+    /**
+     * The max count of cached (principals, permission) decisions, once reached the cache is emptied.
+     */
+    private static final int DECISION_CACHE_SIZE = SystemPropertiesHelper.getInteger(
+        "nexus.itemAuthorizer.decisionCacheSize", 20000 );
+
+    /**
+     * The max time a cached decision is used, to bound staleness of decisions depending on external realms (like LDAP
+     * group membership), whose changes does not emit events.
+     */
+    private static final long DECISION_CACHE_TTL = SystemPropertiesHelper.getLong(
+        "nexus.itemAuthorizer.decisionCacheTtl", 60000L );
+
     @Requirement
     private SecuritySystem securitySystem;
 
     @Requirement
     private RepositoryRegistry repoRegistry;
-    
+
+    @Requirement
+    private ApplicationEventMulticaster applicationEventMulticaster;
+
+    /**
+     * Cache of decisions, keyed by principals of the subject (that includes the realm names too) and the permission.
+     * Not an LRU, as reordering entries on every read would serialize all the authorization checks on one lock.
+     */
+    private final ConcurrentHashMap<DecisionKey, Decision> decisionCache =
+        new ConcurrentHashMap<DecisionKey, Decision>();
+
+    /**
+     * Generation of the decision cache, decisions made in previous generations are not used, even if they were put
+     * into cache after it was cleared.
+     */
+    private final AtomicInteger decisionGeneration = new AtomicInteger();
+
+    /**
+     * Interned permission instances, keyed by {@link TargetPermissionKey} or by permission string, to not build and
+     * parse the same permission over and over again. Bounded by the count of targets, repositories and actions, and is
+     * cleared on configuration changes.
+     */
+    private final ConcurrentHashMap<Object, Permission> permissions = new ConcurrentHashMap<Object, Permission>();
+
+    // == Events to keep cache in sync
+
+    public void initialize()
+    {
+        applicationEventMulticaster.addEventListener( this );
+    }
+
+    public void dispose()
+    {
+        applicationEventMulticaster.removeEventListener( this );
+    }
+
+    public void onEvent( final Event<?> evt )
+    {
+        // security changes (users, roles, privileges), changes of external realms (like LDAP) and nexus config
+        // changes (targets, repositories) may all affect decisions
+        if ( evt instanceof SecurityConfigurationChangedEvent || evt instanceof NexusAuthorizationCacheClearEvent )
+        {
+            clearDecisionCache();
+        }
+        else if ( evt instanceof ConfigurationChangeEvent )
+        {
+            clearDecisionCache();
+
+            permissions.clear();
+        }
+    }
+
+    public void clearDecisionCache()
+    {
+        decisionGeneration.incrementAndGet();
+
+        decisionCache.clear();
+    }
+
+    // ==
+
     public boolean authorizePath( Repository repository, ResourceStoreRequest request, Action action )
     {
         TargetSet matched = repository.getTargetsForRequest( request );
@@ -74,19 +161,10 @@ public class DefaultNexusItemAuthorizer
     {
         TargetSet targetSet = new TargetSet();
 
-        for ( Repository group : getListOfGroups( repository.getId() ) )
+        // perms are transitively inherited from the groups where it is member, directly or through groups of groups
+        for ( Repository group : getListOfGroups( repoRegistry.getTransitiveGroupsOfRepository( repository.getId() ) ) )
         {
-            // are the perms transitively inherited from the groups where it is member?
-            // !group.isExposed()
-            if ( true )
-            {
-                TargetSet groupMatched = group.getTargetsForRequest( request );
-
-                targetSet.addTargetSet( groupMatched );
-                
-                // now that we have groups of groups, this needs to be a recursive check
-                targetSet.addTargetSet( getGroupsTargetSet( group, request ) );
-            }
+            targetSet.addTargetSet( group.getTargetsForRequest( request ) );
         }
 
         return targetSet;
@@ -94,9 +172,12 @@ public class DefaultNexusItemAuthorizer
 
     protected List<Repository> getListOfGroups( String repositoryId )
     {
-        List<Repository> groups = new ArrayList<Repository>();
+        return getListOfGroups( repoRegistry.getGroupsOfRepository( repositoryId ) );
+    }
 
-        List<String> groupIds = repoRegistry.getGroupsOfRepository( repositoryId );
+    protected List<Repository> getListOfGroups( List<String> groupIds )
+    {
+        List<Repository> groups = new ArrayList<Repository>( groupIds.size() );
 
         for ( String groupId : groupIds )
         {
@@ -120,7 +201,7 @@ public class DefaultNexusItemAuthorizer
         {
             // we had reposes affected, check the targets
             // make perms from TargetSet
-            return isPermitted( getTargetPerms( matched, action ) );
+            return isPermitted( getTargetPermissionKeys( matched, action ) );
         }
         else
         {
@@ -129,21 +210,20 @@ public class DefaultNexusItemAuthorizer
         }
     }
 
-    protected List<String> getTargetPerms( TargetSet matched, Action action )
+    protected List<TargetPermissionKey> getTargetPermissionKeys( TargetSet matched, Action action )
     {
-        List<String> perms = new ArrayList<String>( matched.getMatches().size() );
+        List<TargetPermissionKey> keys = new ArrayList<TargetPermissionKey>( matched.getMatches().size() );
 
         // nexus : 'target' + targetId : repoId : read
         for ( TargetMatch match : matched.getMatches() )
         {
-            perms
-                .add( "nexus:target:" + match.getTarget().getId() + ":" + match.getRepository().getId() + ":" + action );
+            keys.add( new TargetPermissionKey( match.getTarget().getId(), match.getRepository().getId(), action ) );
         }
 
-        return perms;
+        return keys;
     }
 
-    protected boolean isPermitted( List<String> perms )
+    protected boolean isPermitted( List<?> perms )
     {
         // Get the current user
         Subject subject = this.securitySystem.getSubject();
@@ -159,9 +239,9 @@ public class DefaultNexusItemAuthorizer
 
                 // And finally check each of the target permissions and see if the user
                 // has access, all it takes is one
-                for ( String perm : perms )
+                for ( Object perm : perms )
                 {
-                    if ( subject.isPermitted( perm ) )
+                    if ( isPermitted( subject, perm ) )
                     {
                         return true;
                     }
@@ -192,8 +272,189 @@ public class DefaultNexusItemAuthorizer
         }
     }
 
+    /**
+     * Checks the permission, given either as permission string or as {@link TargetPermissionKey}.
+     * 
+     * @param subject
+     * @param perm
+     * @return
+     */
+    protected boolean isPermitted( final Subject subject, final Object perm )
+    {
+        final Permission permission = getPermission( perm );
+
+        final PrincipalCollection principals = subject.getPrincipals();
+
+        if ( principals == null || principals.isEmpty() )
+        {
+            // nothing to key the decision on
+            return subject.isPermitted( permission );
+        }
+
+        // principals are realm aware, so same named users of different realms does not share decisions
+        final DecisionKey key = new DecisionKey( principals, perm );
+
+        final int generation = decisionGeneration.get();
+
+        final long now = System.currentTimeMillis();
+
+        Decision decision = decisionCache.get( key );
+
+        if ( decision == null || !decision.isValid( generation, now ) )
+        {
+            decision = new Decision( subject.isPermitted( permission ), generation, now );
+
+            if ( decisionCache.size() >= DECISION_CACHE_SIZE )
+            {
+                // rarely happens, as the count of users and permissions in use is usually way lower
+                decisionCache.clear();
+            }
+
+            decisionCache.put( key, decision );
+        }
+
+        return decision.isPermitted();
+    }
+
+    protected Permission getPermission( final Object perm )
+    {
+        Permission permission = permissions.get( perm );
+
+        if ( permission == null )
+        {
+            // creating it twice in case of a race is harmless, they are equal
+            permission = new WildcardPermission( perm.toString() );
+
+            permissions.put( perm, permission );
+        }
+
+        return permission;
+    }
+
     public boolean isViewable( String objectType, String objectId )
     {
         return authorizePermission( "nexus:view:" + objectType + ":" + objectId );
     }
+
+    // ==
+
+    /**
+     * The (target, repository, action) triplet of a target permission, that is {@code
+     * nexus:target:<targetId>:<repositoryId>:<action>}, usable as key without building the permission string.
+     */
+    public static final class TargetPermissionKey
+    {
+        private final String targetId;
+
+        private final String repositoryId;
+
+        private final Action action;
+
+        public TargetPermissionKey( final String targetId, final String repositoryId, final Action action )
+        {
+            this.targetId = targetId;
+            this.repositoryId = repositoryId;
+            this.action = action;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return ( 31 * targetId.hashCode() + repositoryId.hashCode() ) * 31 + action.hashCode();
+        }
+
+        @Override
+        public boolean equals( final Object obj )
+        {
+            if ( this == obj )
+            {
+                return true;
+            }
+
+            if ( !( obj instanceof TargetPermissionKey ) )
+            {
+                return false;
+            }
+
+            final TargetPermissionKey other = (TargetPermissionKey) obj;
+
+            return targetId.equals( other.targetId ) && repositoryId.equals( other.repositoryId )
+                && action == other.action;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "nexus:target:" + targetId + ":" + repositoryId + ":" + action;
+        }
+    }
+
+    /**
+     * Key of a cached decision: the principals of the subject and the permission.
+     */
+    public static final class DecisionKey
+    {
+        private final PrincipalCollection principals;
+
+        private final Object permission;
+
+        public DecisionKey( final PrincipalCollection principals, final Object permission )
+        {
+            this.principals = principals;
+            this.permission = permission;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * principals.hashCode() + permission.hashCode();
+        }
+
+        @Override
+        public boolean equals( final Object obj )
+        {
+            if ( this == obj )
+            {
+                return true;
+            }
+
+            if ( !( obj instanceof DecisionKey ) )
+            {
+                return false;
+            }
+
+            final DecisionKey other = (DecisionKey) obj;
+
+            return principals.equals( other.principals ) && permission.equals( other.permission );
+        }
+    }
+
+    /**
+     * A cached decision, valid until the cache generation changes or the decision expires.
+     */
+    private static final class Decision
+    {
+        private final boolean permitted;
+
+        private final int generation;
+
+        private final long expires;
+
+        public Decision( final boolean permitted, final int generation, final long now )
+        {
+            this.permitted = permitted;
+            this.generation = generation;
+            this.expires = DECISION_CACHE_TTL > 0 ? now + DECISION_CACHE_TTL : Long.MAX_VALUE;
+        }
+
+        public boolean isPermitted()
+        {
+            return permitted;
+        }
+
+        public boolean isValid( final int currentGeneration, final long now )
+        {
+            return generation == currentGeneration && now < expires;
+        }
+    }
 }
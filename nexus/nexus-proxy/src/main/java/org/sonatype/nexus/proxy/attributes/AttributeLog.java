@@ -0,0 +1,917 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.Closeables;
+
+/**
+ * Append-only, log structured store of binary attribute blobs keyed by item path, backing one repository. Every put and
+ * delete appends a record to the log file, while an in-memory index maps each path to the position of its latest
+ * payload, hence a read is one positional read. Superseded and deleted records are garbage, reclaimed by compaction
+ * once garbage outweighs live data. Compaction runs on the executor passed in, copying live records without holding
+ * the lock, and blocks readers and writers only to copy records appended meanwhile and to swap the files.
+ * <p>
+ * Record layout is {@code [int length][int crc32][byte type][short pathLength][path][payload]}, where length and
+ * checksum cover everything after the checksum. A torn or corrupt tail (ie. after a crash) is truncated on open, and a
+ * log left moved aside by a crash during compaction is restored on open.
+ * 
+ * @since 2.0
+ */
+public class AttributeLog
+{
+    /**
+     * Magic bytes marking attribute log: "NXAL".
+     */
+    private static final int MAGIC = 0x4e58414c;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 5;
+
+    /**
+     * Record length and CRC32.
+     */
+    private static final int RECORD_HEADER_LENGTH = 8;
+
+    /**
+     * Type and path length.
+     */
+    private static final int RECORD_PREAMBLE_LENGTH = 3;
+
+    private static final byte TYPE_PUT = 1;
+
+    private static final byte TYPE_DELETE = 2;
+
+    /**
+     * Payload length is packed into lower 24 bits of index entries, so records are limited to 16MB.
+     */
+    private static final int MAX_RECORD_LENGTH = ( 1 << 24 ) - 1;
+
+    private static final int MAX_PATH_LENGTH = 0xFFFF;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final File file;
+
+    private final long minCompactionLength;
+
+    private final Executor compactionExecutor;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Serializes compactions, held while copying records without holding the lock.
+     */
+    private final Object compactionLock = new Object();
+
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean( false );
+
+    /**
+     * Path to packed payload position: offset in upper 40 bits, length in lower 24 bits. Guarded by lock.
+     */
+    private HashMap<String, Long> index;
+
+    private RandomAccessFile randomAccessFile;
+
+    private FileChannel channel;
+
+    /**
+     * Length of the log file.
+     */
+    private long length;
+
+    /**
+     * Total length of records that are still referenced from index.
+     */
+    private long liveLength;
+
+    /**
+     * Creates a log compacted by the thread whose write triggered it, once it released the lock.
+     * 
+     * @param file the log file, created if not exists
+     * @param minCompactionLength the log length below which the log is never compacted
+     */
+    public AttributeLog( final File file, final long minCompactionLength )
+    {
+        this( file, minCompactionLength, new Executor()
+        {
+            @Override
+            public void execute( final Runnable command )
+            {
+                command.run();
+            }
+        } );
+    }
+
+    /**
+     * @param file the log file, created if not exists
+     * @param minCompactionLength the log length below which the log is never compacted
+     * @param compactionExecutor the executor to run compactions on
+     */
+    public AttributeLog( final File file, final long minCompactionLength, final Executor compactionExecutor )
+    {
+        this.file = file;
+        this.minCompactionLength = minCompactionLength;
+        this.compactionExecutor = compactionExecutor;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public void open()
+        throws IOException
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            if ( channel != null )
+            {
+                return;
+            }
+
+            file.getParentFile().mkdirs();
+
+            recover();
+
+            openChannel();
+
+            if ( channel.size() == 0 )
+            {
+                final ByteBuffer header = ByteBuffer.allocate( HEADER_LENGTH );
+                header.putInt( MAGIC );
+                header.put( (byte) VERSION );
+                header.flip();
+                writeFully( channel, header, 0 );
+            }
+
+            load();
+        }
+        catch ( IOException e )
+        {
+            closeChannel();
+
+            throw e;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void close()
+        throws IOException
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            if ( channel != null )
+            {
+                channel.force( true );
+            }
+        }
+        finally
+        {
+            closeChannel();
+
+            index = null;
+
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Closes and deletes the log.
+     */
+    public void delete()
+        throws IOException
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            closeChannel();
+
+            index = null;
+
+            file.delete();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the latest payload stored for given path, or {@code null} if none.
+     */
+    public byte[] get( final String path )
+        throws IOException
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            checkOpen();
+
+            final Long entry = index.get( path );
+
+            if ( entry == null )
+            {
+                return null;
+            }
+
+            return readPayload( channel, entry.longValue() );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put( final String path, final byte[] payload )
+        throws IOException
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            checkOpen();
+
+            final byte[] pathBytes = getPathBytes( path );
+
+            final long recordOffset = append( channel, length, TYPE_PUT, pathBytes, payload );
+
+            applyPut( path, pathBytes.length, recordOffset, payload.length );
+
+            length = recordOffset + getRecordLength( pathBytes.length, payload.length );
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+
+        maybeCompact();
+    }
+
+    /**
+     * Removes the payload of given path, returns {@code true} if there was one.
+     */
+    public boolean remove( final String path )
+        throws IOException
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            checkOpen();
+
+            if ( !index.containsKey( path ) )
+            {
+                return false;
+            }
+
+            final byte[] pathBytes = getPathBytes( path );
+
+            final long recordOffset = append( channel, length, TYPE_DELETE, pathBytes, new byte[0] );
+
+            applyDelete( path, pathBytes.length );
+
+            length = recordOffset + getRecordLength( pathBytes.length, 0 );
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+
+        maybeCompact();
+
+        return true;
+    }
+
+    /**
+     * Rewrites live records into a new log file, dropping all garbage. Live records are copied without holding the lock,
+     * only records appended during the copy are copied while holding it.
+     */
+    public void compact()
+        throws IOException
+    {
+        synchronized ( compactionLock )
+        {
+            doCompact();
+        }
+    }
+
+    public int getEntryCount()
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            return index == null ? 0 : index.size();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getLength()
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            return length;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getGarbageLength()
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            return length - HEADER_LENGTH - liveLength;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==
+
+    /**
+     * Schedules a compaction if garbage outweighs live data and none is scheduled yet. Must be called without holding
+     * the lock.
+     */
+    protected void maybeCompact()
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            final long garbageLength = length - HEADER_LENGTH - liveLength;
+
+            if ( channel == null || length <= minCompactionLength || garbageLength <= liveLength )
+            {
+                return;
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
+        if ( compactionScheduled.compareAndSet( false, true ) )
+        {
+            try
+            {
+                compactionExecutor.execute( new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        compactionScheduled.set( false );
+
+                        try
+                        {
+                            compact();
+                        }
+                        catch ( IOException e )
+                        {
+                            logger.warn( "Could not compact attribute log " + file.getAbsolutePath(), e );
+                        }
+                    }
+                } );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                // executor is shut down, we are being closed
+                compactionScheduled.set( false );
+            }
+        }
+    }
+
+    protected void doCompact()
+        throws IOException
+    {
+        final long started = System.currentTimeMillis();
+
+        final HashMap<String, Long> snapshotIndex;
+
+        final long snapshotLength;
+
+        final FileChannel source;
+
+        lock.readLock().lock();
+
+        try
+        {
+            if ( channel == null )
+            {
+                // closed or deleted meanwhile
+                return;
+            }
+
+            snapshotIndex = new HashMap<String, Long>( index );
+            snapshotLength = length;
+            source = channel;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
+        final File compactFile = getCompactFile();
+
+        compactFile.delete();
+
+        final HashMap<String, Long> newIndex = new HashMap<String, Long>( snapshotIndex.size() * 2 );
+
+        long newLength = HEADER_LENGTH;
+
+        RandomAccessFile compactRandomAccessFile = null;
+
+        boolean swapped = false;
+
+        try
+        {
+            compactRandomAccessFile = new RandomAccessFile( compactFile, "rw" );
+
+            final FileChannel compactChannel = compactRandomAccessFile.getChannel();
+
+            final ByteBuffer header = ByteBuffer.allocate( HEADER_LENGTH );
+            header.putInt( MAGIC );
+            header.put( (byte) VERSION );
+            header.flip();
+            writeFully( compactChannel, header, 0 );
+
+            // records below snapshot length are never modified, and the channel is swapped only by compaction, so
+            // they are copied without holding the lock
+            for ( Map.Entry<String, Long> entry : snapshotIndex.entrySet() )
+            {
+                final byte[] pathBytes = getPathBytes( entry.getKey() );
+
+                final byte[] payload = readPayload( source, entry.getValue().longValue() );
+
+                final long recordOffset = append( compactChannel, newLength, TYPE_PUT, pathBytes, payload );
+
+                newIndex.put( entry.getKey(),
+                    pack( getPayloadOffset( recordOffset, pathBytes.length ), payload.length ) );
+
+                newLength = recordOffset + getRecordLength( pathBytes.length, payload.length );
+            }
+
+            lock.writeLock().lock();
+
+            try
+            {
+                if ( channel != source )
+                {
+                    // closed or deleted meanwhile
+                    return;
+                }
+
+                final long oldLength = length;
+
+                // catch up with records appended during the copy
+                final ByteBuffer tail = ByteBuffer.allocate( (int) ( oldLength - snapshotLength ) );
+
+                while ( tail.hasRemaining() )
+                {
+                    if ( channel.read( tail, snapshotLength + tail.position() ) == -1 )
+                    {
+                        throw new IOException( "Unexpected end of attribute log!" );
+                    }
+                }
+
+                tail.flip();
+
+                writeFully( compactChannel, tail, newLength );
+
+                compactChannel.force( true );
+
+                compactRandomAccessFile.close();
+
+                compactRandomAccessFile = null;
+
+                closeChannel();
+
+                try
+                {
+                    replaceFile( compactFile );
+                }
+                finally
+                {
+                    openChannel();
+                }
+
+                swapped = true;
+
+                index = newIndex;
+                liveLength = newLength - HEADER_LENGTH;
+                length = newLength;
+
+                replay( tail.array(), newLength );
+
+                length = newLength + tail.capacity();
+
+                if ( logger.isDebugEnabled() )
+                {
+                    logger.debug( "Compacted attribute log " + file.getAbsolutePath() + " from " + oldLength
+                        + " to " + length + " bytes in " + ( System.currentTimeMillis() - started ) + " ms." );
+                }
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+        }
+        finally
+        {
+            Closeables.closeQuietly( compactRandomAccessFile );
+
+            if ( !swapped )
+            {
+                compactFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Replaces the log file with the compacted one. Where rename cannot replace an existing file, the log is moved aside
+     * first, and {@link #recover()} restores it if we crash before the compacted one is in place.
+     */
+    protected void replaceFile( final File compactFile )
+        throws IOException
+    {
+        if ( compactFile.renameTo( file ) )
+        {
+            // atomic replace
+            return;
+        }
+
+        final File backupFile = getBackupFile();
+
+        backupFile.delete();
+
+        if ( !file.renameTo( backupFile ) )
+        {
+            throw new IOException( "Could not move aside attribute log " + file.getAbsolutePath() );
+        }
+
+        if ( !compactFile.renameTo( file ) )
+        {
+            backupFile.renameTo( file );
+
+            throw new IOException( "Could not replace attribute log " + file.getAbsolutePath() );
+        }
+
+        backupFile.delete();
+    }
+
+    /**
+     * Cleans up after a compaction interrupted by a crash: restores the log if it was moved aside, and drops the leftover
+     * files.
+     */
+    protected void recover()
+        throws IOException
+    {
+        final File backupFile = getBackupFile();
+
+        if ( !file.exists() && backupFile.exists() )
+        {
+            logger.warn( "Attribute log " + file.getAbsolutePath()
+                + " was moved aside by an interrupted compaction, restoring it." );
+
+            if ( !backupFile.renameTo( file ) )
+            {
+                throw new IOException( "Could not restore attribute log " + file.getAbsolutePath() + " from "
+                    + backupFile.getAbsolutePath() );
+            }
+        }
+
+        backupFile.delete();
+
+        getCompactFile().delete();
+    }
+
+    /**
+     * Applies records appended to the log, starting at given log offset.
+     */
+    protected void replay( final byte[] records, final long offset )
+        throws IOException
+    {
+        int position = 0;
+
+        while ( position < records.length )
+        {
+            final ByteBuffer record = ByteBuffer.wrap( records, position, records.length - position );
+
+            final int recordLength = record.getInt();
+
+            record.getInt();
+
+            final byte type = record.get();
+
+            final int pathLength = record.getShort() & 0xFFFF;
+
+            final String path =
+                new String( records, position + RECORD_HEADER_LENGTH + RECORD_PREAMBLE_LENGTH, pathLength, "UTF-8" );
+
+            if ( type == TYPE_PUT )
+            {
+                applyPut( path, pathLength, offset + position, recordLength - RECORD_PREAMBLE_LENGTH - pathLength );
+            }
+            else
+            {
+                applyDelete( path, pathLength );
+            }
+
+            position += RECORD_HEADER_LENGTH + recordLength;
+        }
+    }
+
+    protected void load()
+        throws IOException
+    {
+        index = new HashMap<String, Long>();
+        liveLength = 0;
+
+        final long fileLength = channel.size();
+
+        DataInputStream dis = null;
+
+        long position = HEADER_LENGTH;
+
+        try
+        {
+            dis = new DataInputStream( new BufferedInputStream( new FileInputStream( file ), 64 * 1024 ) );
+
+            if ( fileLength < HEADER_LENGTH || dis.readInt() != MAGIC || dis.readUnsignedByte() != VERSION )
+            {
+                throw new IOException( "File " + file.getAbsolutePath() + " is not an attribute log!" );
+            }
+
+            final CRC32 crc = new CRC32();
+
+            while ( fileLength - position >= RECORD_HEADER_LENGTH )
+            {
+                final int recordLength = dis.readInt();
+
+                final int recordCrc = dis.readInt();
+
+                if ( recordLength < RECORD_PREAMBLE_LENGTH || recordLength > MAX_RECORD_LENGTH
+                    || position + RECORD_HEADER_LENGTH + recordLength > fileLength )
+                {
+                    break;
+                }
+
+                final byte[] record = new byte[recordLength];
+
+                dis.readFully( record );
+
+                crc.reset();
+                crc.update( record );
+
+                final int pathLength = ( ( record[1] & 0xFF ) << 8 ) | ( record[2] & 0xFF );
+
+                if ( (int) crc.getValue() != recordCrc || RECORD_PREAMBLE_LENGTH + pathLength > recordLength )
+                {
+                    break;
+                }
+
+                final String path = new String( record, RECORD_PREAMBLE_LENGTH, pathLength, "UTF-8" );
+
+                if ( record[0] == TYPE_PUT )
+                {
+                    applyPut( path, pathLength, position, recordLength - RECORD_PREAMBLE_LENGTH - pathLength );
+                }
+                else if ( record[0] == TYPE_DELETE )
+                {
+                    applyDelete( path, pathLength );
+                }
+                else
+                {
+                    break;
+                }
+
+                position += RECORD_HEADER_LENGTH + recordLength;
+            }
+        }
+        finally
+        {
+            Closeables.closeQuietly( dis );
+        }
+
+        if ( position < fileLength )
+        {
+            logger.warn( "Attribute log " + file.getAbsolutePath() + " has torn or corrupt tail at offset "
+                + position + ", truncating it (" + ( fileLength - position ) + " bytes dropped)." );
+
+            channel.truncate( position );
+        }
+
+        length = position;
+    }
+
+    protected void applyPut( final String path, final int pathLength, final long recordOffset, final int payloadLength )
+    {
+        final Long previous =
+            index.put( path, pack( getPayloadOffset( recordOffset, pathLength ), payloadLength ) );
+
+        if ( previous != null )
+        {
+            liveLength -= getRecordLength( pathLength, unpackLength( previous.longValue() ) );
+        }
+
+        liveLength += getRecordLength( pathLength, payloadLength );
+    }
+
+    protected void applyDelete( final String path, final int pathLength )
+    {
+        final Long previous = index.remove( path );
+
+        if ( previous != null )
+        {
+            liveLength -= getRecordLength( pathLength, unpackLength( previous.longValue() ) );
+        }
+    }
+
+    // ==
+
+    private File getCompactFile()
+    {
+        return new File( file.getParentFile(), file.getName() + ".compact" );
+    }
+
+    private File getBackupFile()
+    {
+        return new File( file.getParentFile(), file.getName() + ".old" );
+    }
+
+    private void checkOpen()
+        throws IOException
+    {
+        if ( channel == null )
+        {
+            throw new IOException( "Attribute log " + file.getAbsolutePath() + " is not open!" );
+        }
+    }
+
+    private void openChannel()
+        throws IOException
+    {
+        randomAccessFile = new RandomAccessFile( file, "rw" );
+
+        channel = randomAccessFile.getChannel();
+    }
+
+    private void closeChannel()
+    {
+        Closeables.closeQuietly( randomAccessFile );
+
+        randomAccessFile = null;
+
+        channel = null;
+    }
+
+    private static long append( final FileChannel target, final long offset, final byte type,
+                                final byte[] pathBytes, final byte[] payload )
+        throws IOException
+    {
+        final int recordLength = RECORD_PREAMBLE_LENGTH + pathBytes.length + payload.length;
+
+        if ( recordLength > MAX_RECORD_LENGTH )
+        {
+            throw new IOException( "Attribute record too big: " + recordLength + " bytes!" );
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate( RECORD_HEADER_LENGTH + recordLength );
+        buffer.putInt( recordLength );
+        buffer.putInt( 0 );
+        buffer.put( type );
+        buffer.putShort( (short) pathBytes.length );
+        buffer.put( pathBytes );
+        buffer.put( payload );
+
+        final CRC32 crc = new CRC32();
+        crc.update( buffer.array(), RECORD_HEADER_LENGTH, recordLength );
+        buffer.putInt( 4, (int) crc.getValue() );
+
+        buffer.flip();
+
+        writeFully( target, buffer, offset );
+
+        return offset;
+    }
+
+    private static byte[] readPayload( final FileChannel source, final long entry )
+        throws IOException
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate( unpackLength( entry ) );
+
+        final long offset = unpackOffset( entry );
+
+        while ( buffer.hasRemaining() )
+        {
+            if ( source.read( buffer, offset + buffer.position() ) == -1 )
+            {
+                throw new IOException( "Unexpected end of attribute log!" );
+            }
+        }
+
+        return buffer.array();
+    }
+
+    private static void writeFully( final FileChannel target, final ByteBuffer buffer, final long offset )
+        throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            target.write( buffer, offset + buffer.position() );
+        }
+    }
+
+    private static byte[] getPathBytes( final String path )
+        throws IOException
+    {
+        final byte[] pathBytes = path.getBytes( "UTF-8" );
+
+        if ( pathBytes.length > MAX_PATH_LENGTH )
+        {
+            throw new IOException( "Path too long for attribute log: " + path );
+        }
+
+        return pathBytes;
+    }
+
+    private static long getPayloadOffset( final long recordOffset, final int pathLength )
+    {
+        return recordOffset + RECORD_HEADER_LENGTH + RECORD_PREAMBLE_LENGTH + pathLength;
+    }
+
+    private static long getRecordLength( final int pathLength, final int payloadLength )
+    {
+        return RECORD_HEADER_LENGTH + RECORD_PREAMBLE_LENGTH + pathLength + payloadLength;
+    }
+
+    private static Long pack( final long offset, final int length )
+    {
+        return Long.valueOf( ( offset << 24 ) | length );
+    }
+
+    private static long unpackOffset( final long entry )
+    {
+        return entry >>> 24;
+    }
+
+    private static int unpackLength( final long entry )
+    {
+        return (int) ( entry & MAX_RECORD_LENGTH );
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.proxy.attributes.internal.DefaultAttributes;
+
+/**
+ * Compact binary marshaller: writes the attribute map as length prefixed UTF-8 key-value pairs. Is several times
+ * smaller and faster to (un)marshal than {@link XStreamMarshaller}, but is not human readable.
+ * 
+ * @since 2.0
+ */
+@Singleton
+@Named( "binary" )
+public class BinaryMarshaller
+    implements Marshaller
+{
+    /**
+     * Magic bytes marking binary attributes: "NXAB".
+     */
+    private static final int MAGIC = 0x4e584142;
+
+    private static final int VERSION = 1;
+
+    /**
+     * Sanity limit for entry count and string lengths, to not blow up on corrupt input.
+     */
+    private static final int MAX_LENGTH = 16 * 1024 * 1024;
+
+    @Override
+    public void marshal( final Attributes attributes, final OutputStream outputStream )
+        throws IOException
+    {
+        final Map<String, String> attrs = attributes.asMap();
+
+        final DataOutputStream dos = new DataOutputStream( outputStream );
+
+        dos.writeInt( MAGIC );
+        dos.writeByte( VERSION );
+        dos.writeInt( attrs.size() );
+
+        for ( Map.Entry<String, String> entry : attrs.entrySet() )
+        {
+            writeString( dos, entry.getKey() );
+            writeString( dos, entry.getValue() );
+        }
+
+        dos.flush();
+    }
+
+    @Override
+    public Attributes unmarshal( final InputStream inputStream )
+        throws IOException, InvalidInputException
+    {
+        final DataInputStream dis = new DataInputStream( inputStream );
+
+        try
+        {
+            if ( dis.readInt() != MAGIC )
+            {
+                throw new InvalidInputException( "Input is not binary attributes (magic mismatch)." );
+            }
+
+            final int version = dis.readUnsignedByte();
+
+            if ( version != VERSION )
+            {
+                throw new InvalidInputException( "Unsupported binary attributes version " + version + "." );
+            }
+
+            final int count = dis.readInt();
+
+            if ( count < 0 || count > MAX_LENGTH )
+            {
+                throw new InvalidInputException( "Binary attributes claim invalid entry count " + count + "." );
+            }
+
+            final Map<String, String> attrs = new HashMap<String, String>( Math.min( count, 64 ) * 2 );
+
+            for ( int i = 0; i < count; i++ )
+            {
+                final String key = readString( dis );
+                final String value = readString( dis );
+
+                attrs.put( key, value );
+            }
+
+            return new DefaultAttributes( attrs );
+        }
+        catch ( EOFException e )
+        {
+            throw new InvalidInputException( "Binary attributes are truncated.", e );
+        }
+    }
+
+    // ==
+
+    protected void writeString( final DataOutputStream dos, final String str )
+        throws IOException
+    {
+        if ( str == null )
+        {
+            dos.writeInt( -1 );
+        }
+        else
+        {
+            final byte[] bytes = str.getBytes( "UTF-8" );
+
+            dos.writeInt( bytes.length );
+            dos.write( bytes );
+        }
+    }
+
+    protected String readString( final DataInputStream dis )
+        throws IOException
+    {
+        final int length = dis.readInt();
+
+        if ( length == -1 )
+        {
+            return null;
+        }
+        else if ( length < 0 || length > MAX_LENGTH )
+        {
+            throw new InvalidInputException( "Binary attributes claim invalid string length " + length + "." );
+        }
+
+        final byte[] bytes = new byte[length];
+
+        dis.readFully( bytes );
+
+        return new String( bytes, "UTF-8" );
+    }
+}
@@ -0,0 +1,358 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.enterprise.inject.Typed;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Initializable;
+import org.sonatype.nexus.configuration.application.ApplicationConfiguration;
+import org.sonatype.nexus.proxy.access.Action;
+import org.sonatype.nexus.proxy.events.RepositoryRegistryEventRemove;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.RepositoryItemUidLock;
+import org.sonatype.nexus.threads.NexusThreadFactory;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
+import org.sonatype.plexus.appevents.ApplicationEventMulticaster;
+import org.sonatype.plexus.appevents.Event;
+import org.sonatype.plexus.appevents.EventListener;
+
+/**
+ * AttributeStorage implementation that keeps attributes of each repository in a single append-only log file (see
+ * {@link AttributeLog}) using compact binary encoding, instead of one XML file per item. Reads are served by an
+ * in-memory index and a single positional read, writes are appends, hence no per-item file is opened, created or
+ * deleted. Nothing is created on disk until the first log is opened, so the component costs nothing while
+ * {@link TransitioningAttributeStorage} does not use it.
+ * 
+ * @since 2.0
+ */
+@Typed( AttributeStorage.class )
+@Named( "log" )
+@Singleton
+public class DefaultLogAttributeStorage
+    extends AbstractAttributeStorage
+    implements AttributeStorage, EventListener, Initializable, Disposable
+{
+    /**
+     * Logs shorter than this are never compacted.
+     */
+    private static final long MIN_COMPACTION_LENGTH = SystemPropertiesHelper.getLong(
+        "nexus.attributes.log.minCompactionLength", 8L * 1024L * 1024L );
+
+    private final ApplicationEventMulticaster applicationEventMulticaster;
+
+    private final ApplicationConfiguration applicationConfiguration;
+
+    private final Marshaller marshaller;
+
+    private final ConcurrentHashMap<String, AttributeLog> attributeLogs;
+
+    /**
+     * Compacts the logs, one at a time, off the request threads.
+     */
+    private final ExecutorService compactionExecutor = Executors.newSingleThreadExecutor( new NexusThreadFactory(
+        "nxattrlog", "Attribute Log Compaction" ) );
+
+    /**
+     * The base dir.
+     */
+    private volatile File workingDirectory;
+
+    @Inject
+    public DefaultLogAttributeStorage( final ApplicationEventMulticaster applicationEventMulticaster,
+                                       final ApplicationConfiguration applicationConfiguration,
+                                       @Named( "binary" ) final Marshaller marshaller )
+    {
+        this.applicationEventMulticaster = applicationEventMulticaster;
+        this.applicationConfiguration = applicationConfiguration;
+        this.marshaller = marshaller;
+        this.attributeLogs = new ConcurrentHashMap<String, AttributeLog>();
+    }
+
+    // == Events to keep logs in sync
+
+    public void initialize()
+    {
+        applicationEventMulticaster.addEventListener( this );
+    }
+
+    public void dispose()
+    {
+        applicationEventMulticaster.removeEventListener( this );
+
+        compactionExecutor.shutdownNow();
+
+        for ( AttributeLog attributeLog : new ArrayList<AttributeLog>( attributeLogs.values() ) )
+        {
+            try
+            {
+                attributeLog.close();
+            }
+            catch ( IOException e )
+            {
+                getLogger().warn( "Could not close attribute log " + attributeLog.getFile().getAbsolutePath(), e );
+            }
+        }
+
+        attributeLogs.clear();
+    }
+
+    public void onEvent( final Event<?> evt )
+    {
+        if ( evt instanceof RepositoryRegistryEventRemove )
+        {
+            final AttributeLog attributeLog =
+                attributeLogs.remove( ( (RepositoryRegistryEventRemove) evt ).getRepository().getId() );
+
+            if ( attributeLog != null )
+            {
+                try
+                {
+                    // attributes are not preserved
+                    attributeLog.delete();
+                }
+                catch ( IOException e )
+                {
+                    getLogger().warn( "Could not delete attribute log " + attributeLog.getFile().getAbsolutePath(),
+                        e );
+                }
+            }
+        }
+    }
+
+    // == Config
+
+    public File getWorkingDirectory()
+    {
+        return initializeWorkingDirectory();
+    }
+
+    public synchronized File initializeWorkingDirectory()
+    {
+        if ( workingDirectory == null )
+        {
+            workingDirectory = applicationConfiguration.getWorkingDirectory( "proxy/attributes-log" );
+
+            if ( !workingDirectory.isDirectory() && !workingDirectory.mkdirs() && !workingDirectory.isDirectory() )
+            {
+                throw new IllegalArgumentException( "Could not create the attribute storage directory on path "
+                    + workingDirectory.getAbsolutePath() );
+            }
+
+            getLogger().info( "Default Log AttributeStorage in place." );
+        }
+
+        return workingDirectory;
+    }
+
+    // == Main iface: AttributeStorage
+
+    public boolean deleteAttributes( final RepositoryItemUid uid )
+        throws IOException
+    {
+        final RepositoryItemUidLock uidLock = uid.getAttributeLock();
+
+        uidLock.lock( Action.delete );
+
+        try
+        {
+            if ( getLogger().isDebugEnabled() )
+            {
+                getLogger().debug( "Deleting attributes on UID=" + uid.toString() );
+            }
+
+            return getAttributeLog( uid ).remove( uid.getPath() );
+        }
+        finally
+        {
+            uidLock.unlock();
+        }
+    }
+
+    public Attributes getAttributes( final RepositoryItemUid uid )
+        throws IOException
+    {
+        final RepositoryItemUidLock uidLock = uid.getAttributeLock();
+
+        uidLock.lock( Action.read );
+
+        try
+        {
+            if ( getLogger().isDebugEnabled() )
+            {
+                getLogger().debug( "Loading attributes on UID=" + uid.toString() );
+            }
+
+            return doGetAttributes( uid );
+        }
+        finally
+        {
+            uidLock.unlock();
+        }
+    }
+
+    public void putAttributes( final RepositoryItemUid uid, Attributes attributes )
+        throws IOException
+    {
+        final RepositoryItemUidLock uidLock = uid.getAttributeLock();
+
+        uidLock.lock( Action.create );
+
+        try
+        {
+            if ( getLogger().isDebugEnabled() )
+            {
+                getLogger().debug( "Storing attributes on UID=" + uid.toString() );
+            }
+
+            Attributes onDisk = doGetAttributes( uid );
+
+            if ( onDisk != null && ( onDisk.getGeneration() > attributes.getGeneration() ) )
+            {
+                // change detected, overlay the to be saved onto the newer one and swap
+                onDisk.overlayAttributes( attributes );
+
+                // and overlay other things too
+                onDisk.setRepositoryId( uid.getRepository().getId() );
+                onDisk.setPath( uid.getPath() );
+                onDisk.setReadable( attributes.isReadable() );
+                onDisk.setWritable( attributes.isWritable() );
+
+                attributes = onDisk;
+            }
+
+            attributes.incrementGeneration();
+
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream( 512 );
+
+            marshaller.marshal( attributes, bos );
+
+            getAttributeLog( uid ).put( uid.getPath(), bos.toByteArray() );
+        }
+        finally
+        {
+            uidLock.unlock();
+        }
+    }
+
+    // ==
+
+    /**
+     * Returns the opened log of the repository of the UID, opening it if needed.
+     */
+    protected AttributeLog getAttributeLog( final RepositoryItemUid uid )
+        throws IOException
+    {
+        final String repositoryId = uid.getRepository().getId();
+
+        AttributeLog attributeLog = attributeLogs.get( repositoryId );
+
+        if ( attributeLog == null )
+        {
+            synchronized ( attributeLogs )
+            {
+                attributeLog = attributeLogs.get( repositoryId );
+
+                if ( attributeLog == null )
+                {
+                    attributeLog =
+                        new AttributeLog( new File( getWorkingDirectory(), repositoryId + ".log" ),
+                            MIN_COMPACTION_LENGTH, compactionExecutor );
+
+                    attributeLog.open();
+
+                    attributeLogs.put( repositoryId, attributeLog );
+                }
+            }
+        }
+
+        return attributeLog;
+    }
+
+    /**
+     * Gets the attributes.
+     * 
+     * @param uid the uid
+     * @return the attributes
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected Attributes doGetAttributes( final RepositoryItemUid uid )
+        throws IOException
+    {
+        final AttributeLog attributeLog = getAttributeLog( uid );
+
+        final byte[] payload = attributeLog.get( uid.getPath() );
+
+        if ( payload == null )
+        {
+            return null;
+        }
+
+        try
+        {
+            final Attributes result = marshaller.unmarshal( new ByteArrayInputStream( payload ) );
+
+            result.setRepositoryId( uid.getRepository().getId() );
+            result.setPath( uid.getPath() );
+
+            // fixing remoteChecked
+            if ( result.getCheckedRemotely() == 0 || result.getCheckedRemotely() == 1 )
+            {
+                result.setCheckedRemotely( System.currentTimeMillis() );
+                result.setExpired( true );
+            }
+
+            // fixing lastRequested
+            if ( result.getLastRequested() == 0 )
+            {
+                result.setLastRequested( System.currentTimeMillis() );
+            }
+
+            return result;
+        }
+        catch ( InvalidInputException e )
+        {
+            if ( getLogger().isDebugEnabled() )
+            {
+                // we log the stacktrace
+                getLogger().info( "Attributes of " + uid + " are corrupt, ignoring it.", e );
+            }
+            else
+            {
+                // just remark about this
+                getLogger().info( "Attributes of " + uid + " are corrupt, ignoring it." );
+            }
+
+            // not removed, as we may hold only the read lock, the next put supersedes it
+            return null;
+        }
+    }
+}
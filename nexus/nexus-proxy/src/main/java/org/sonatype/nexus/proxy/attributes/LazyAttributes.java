@@ -0,0 +1,338 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Attributes wrapper that loads the stored attributes of an item from {@link AttributeStorage} only when they are
+ * first needed. Until then, only the values known from the storage itself (path, repository ID, created, modified and
+ * length) are served, and these values are kept over the stored ones once loaded, same as for eagerly loaded items.
+ * Used for lightweight listings, where most of the listed items never have their attributes looked at. Loading is
+ * thread safe, the stored attributes are loaded once even if items are shared between threads.
+ * 
+ * @since 2.0
+ */
+public class LazyAttributes
+    implements Attributes
+{
+    private static final Logger logger = LoggerFactory.getLogger( LazyAttributes.class );
+
+    private final Attributes attributes;
+
+    private final AttributeStorage attributeStorage;
+
+    private final RepositoryItemUid uid;
+
+    private volatile boolean loaded;
+
+    public LazyAttributes( final Attributes attributes, final AttributeStorage attributeStorage,
+                           final RepositoryItemUid uid )
+    {
+        this.attributes = Preconditions.checkNotNull( attributes );
+        this.attributeStorage = Preconditions.checkNotNull( attributeStorage );
+        this.uid = uid;
+        this.loaded = false;
+    }
+
+    /**
+     * Returns true if the stored attributes were loaded (or tried to be loaded) already.
+     * 
+     * @return true if stored attributes were loaded.
+     */
+    public boolean isLoaded()
+    {
+        return loaded;
+    }
+
+    protected Attributes getLoadedAttributes()
+    {
+        if ( !loaded )
+        {
+            load();
+        }
+
+        return attributes;
+    }
+
+    /**
+     * Loads the stored attributes, once. The flag is set only after the attributes are overlaid, so other threads
+     * either wait here or see them complete.
+     */
+    protected synchronized void load()
+    {
+        if ( loaded )
+        {
+            return;
+        }
+
+        try
+        {
+            final Attributes storedAttributes = attributeStorage.getAttributes( uid );
+
+            if ( storedAttributes != null )
+            {
+                final String path = attributes.getPath();
+                final String repositoryId = attributes.getRepositoryId();
+                final long created = attributes.getCreated();
+                final long modified = attributes.getModified();
+                final long length = attributes.getLength();
+
+                attributes.overlayAttributes( storedAttributes );
+
+                attributes.setPath( path );
+                attributes.setRepositoryId( repositoryId );
+                attributes.setCreated( created );
+                attributes.setModified( modified );
+                attributes.setLength( length );
+            }
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Could not load attributes of item " + uid + ", using the basic ones only.", e );
+        }
+        finally
+        {
+            loaded = true;
+        }
+    }
+
+    // == needing stored attributes
+
+    @Override
+    public boolean containsKey( final String key )
+    {
+        return getLoadedAttributes().containsKey( key );
+    }
+
+    @Override
+    public String get( final String key )
+    {
+        return getLoadedAttributes().get( key );
+    }
+
+    @Override
+    public String put( final String key, final String value )
+    {
+        return getLoadedAttributes().put( key, value );
+    }
+
+    @Override
+    public String remove( final String key )
+    {
+        return getLoadedAttributes().remove( key );
+    }
+
+    @Override
+    public void putAll( final Map<? extends String, ? extends String> map )
+    {
+        getLoadedAttributes().putAll( map );
+    }
+
+    @Override
+    public void overlayAttributes( final Attributes repositoryItemAttributes )
+    {
+        getLoadedAttributes().overlayAttributes( repositoryItemAttributes );
+    }
+
+    @Override
+    public int getGeneration()
+    {
+        return getLoadedAttributes().getGeneration();
+    }
+
+    @Override
+    public void setGeneration( final int value )
+    {
+        getLoadedAttributes().setGeneration( value );
+    }
+
+    @Override
+    public void incrementGeneration()
+    {
+        getLoadedAttributes().incrementGeneration();
+    }
+
+    @Override
+    public boolean isReadable()
+    {
+        return getLoadedAttributes().isReadable();
+    }
+
+    @Override
+    public void setReadable( final boolean value )
+    {
+        getLoadedAttributes().setReadable( value );
+    }
+
+    @Override
+    public boolean isWritable()
+    {
+        return getLoadedAttributes().isWritable();
+    }
+
+    @Override
+    public void setWritable( final boolean value )
+    {
+        getLoadedAttributes().setWritable( value );
+    }
+
+    @Override
+    public long getStoredLocally()
+    {
+        return getLoadedAttributes().getStoredLocally();
+    }
+
+    @Override
+    public void setStoredLocally( final long value )
+    {
+        getLoadedAttributes().setStoredLocally( value );
+    }
+
+    @Override
+    public long getCheckedRemotely()
+    {
+        return getLoadedAttributes().getCheckedRemotely();
+    }
+
+    @Override
+    public void setCheckedRemotely( final long value )
+    {
+        getLoadedAttributes().setCheckedRemotely( value );
+    }
+
+    @Override
+    public long getLastRequested()
+    {
+        return getLoadedAttributes().getLastRequested();
+    }
+
+    @Override
+    public void setLastRequested( final long value )
+    {
+        getLoadedAttributes().setLastRequested( value );
+    }
+
+    @Override
+    public boolean isExpired()
+    {
+        return getLoadedAttributes().isExpired();
+    }
+
+    @Override
+    public void setExpired( final boolean value )
+    {
+        getLoadedAttributes().setExpired( value );
+    }
+
+    @Override
+    public String getRemoteUrl()
+    {
+        return getLoadedAttributes().getRemoteUrl();
+    }
+
+    @Override
+    public void setRemoteUrl( final String value )
+    {
+        getLoadedAttributes().setRemoteUrl( value );
+    }
+
+    @Override
+    public Map<String, String> asMap()
+    {
+        return getLoadedAttributes().asMap();
+    }
+
+    // == basic ones, known without stored attributes
+
+    @Override
+    public String getPath()
+    {
+        return attributes.getPath();
+    }
+
+    @Override
+    public void setPath( final String value )
+    {
+        attributes.setPath( value );
+    }
+
+    @Override
+    public String getRepositoryId()
+    {
+        return attributes.getRepositoryId();
+    }
+
+    @Override
+    public void setRepositoryId( final String value )
+    {
+        attributes.setRepositoryId( value );
+    }
+
+    @Override
+    public long getCreated()
+    {
+        return attributes.getCreated();
+    }
+
+    @Override
+    public void setCreated( final long value )
+    {
+        attributes.setCreated( value );
+    }
+
+    @Override
+    public long getModified()
+    {
+        return attributes.getModified();
+    }
+
+    @Override
+    public void setModified( final long value )
+    {
+        attributes.setModified( value );
+    }
+
+    @Override
+    public long getLength()
+    {
+        return attributes.getLength();
+    }
+
+    @Override
+    public void setLength( final long value )
+    {
+        attributes.setLength( value );
+    }
+
+    // ==
+
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName() + "(loaded=" + loaded + ", " + attributes + ")";
+    }
+}
@@ -29,6 +29,7 @@ import org.sonatype.nexus.logging.AbstractLoggingComponent;
 import org.sonatype.nexus.proxy.access.Action;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.item.RepositoryItemUidLock;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 
 /**
  * AttributeStorage that actually delegates the work to other instance of AttributeStorage, and having an option of
@@ -47,13 +48,33 @@ public class TransitioningAttributeStorage
     implements AttributeStorage
 {
 
+    /**
+     * Key of system property enabling the "log" attribute storage. When enabled, attributes are moved into "log" storage
+     * from "ls" storage, and from "legacy" storage (through "ls" storage), as they are requested.
+     * 
+     * @since 2.0
+     */
+    public static final String LOG_ATTRIBUTE_STORAGE_ENABLED_KEY = "nexus.attributes.log.enabled";
+
+    private static final boolean LOG_ATTRIBUTE_STORAGE_ENABLED = SystemPropertiesHelper.getBoolean(
+        LOG_ATTRIBUTE_STORAGE_ENABLED_KEY, false );
+
     private final AttributeStorage mainAttributeStorage;
 
     private final AttributeStorage fallbackAttributeStorage;
 
     @Inject
-    public TransitioningAttributeStorage( @Named( "ls" ) final AttributeStorage mainAttributeStorage,
-                                          @Named( "legacy" ) final AttributeStorage fallbackAttributeStorage )
+    public TransitioningAttributeStorage( @Named( "log" ) final AttributeStorage logAttributeStorage,
+                                          @Named( "ls" ) final AttributeStorage lsAttributeStorage,
+                                          @Named( "legacy" ) final AttributeStorage legacyAttributeStorage )
+    {
+        this( LOG_ATTRIBUTE_STORAGE_ENABLED ? logAttributeStorage : lsAttributeStorage,
+            LOG_ATTRIBUTE_STORAGE_ENABLED ? new TransitioningAttributeStorage( lsAttributeStorage,
+                legacyAttributeStorage ) : legacyAttributeStorage );
+    }
+
+    public TransitioningAttributeStorage( final AttributeStorage mainAttributeStorage,
+                                          final AttributeStorage fallbackAttributeStorage )
     {
         super();
         this.mainAttributeStorage = mainAttributeStorage;
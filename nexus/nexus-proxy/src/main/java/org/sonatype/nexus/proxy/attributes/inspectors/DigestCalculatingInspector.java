@@ -87,7 +87,7 @@ public class DigestCalculatingInspector
         InputStream fis = new FileInputStream( file );
         try
         {
-            byte[] buffer = new byte[1024];
+            byte[] buffer = new byte[8192];
             MessageDigest md5 = MessageDigest.getInstance( "MD5" );
             MessageDigest sha1 = MessageDigest.getInstance( "SHA1" );
             int numRead;
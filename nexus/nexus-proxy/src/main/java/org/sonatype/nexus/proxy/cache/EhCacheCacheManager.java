@@ -24,11 +24,12 @@ import org.sonatype.nexus.logging.AbstractLoggingComponent;
 import org.sonatype.plexus.components.ehcache.PlexusEhCacheWrapper;
 
 /**
- * The Class EhCacheCacheManager is a thin wrapper around EhCache, just to make things going.
+ * The Class EhCacheCacheManager is a thin wrapper around EhCache, just to make things going. Not the default anymore,
+ * see {@link TriePathCacheManager}.
  * 
  * @author cstamas
  */
-@Component( role = CacheManager.class )
+@Component( role = CacheManager.class, hint = "ehcache" )
 public class EhCacheCacheManager
     extends AbstractLoggingComponent
     implements CacheManager
@@ -0,0 +1,543 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A native path cache, backed by a path trie (one node per path segment) of a single repository. Nodes holding values
+ * are also linked into a doubly linked list in access order, used for LRU eviction when the caches grow beyond their
+ * maximum size. Every cache is guarded by it's own lock, while the size bound may be shared by all the caches of a
+ * {@link TriePathCacheManager} (see {@link SizeBound}), as it was with the single shared EHCache instance. Locating a
+ * node costs O(depth) of the path, so removing a subtree ({@link #removeWithChildren(String)}, {@link #purge()}) does
+ * not depend on the count of entries cached for other paths or other repositories, as it did with the shared EHCache
+ * instance.
+ */
+public class TriePathCache
+    extends AbstractPathCache
+{
+    private final String repositoryId;
+
+    private final SizeBound bound;
+
+    private final long defaultTimeToLiveMillis;
+
+    private final Node root;
+
+    /**
+     * The LRU list sentinel: head.lruNext is the most recently used, head.lruPrev is the least recently used.
+     */
+    private final Node head;
+
+    private int size;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * Creates a cache having it's own size bound.
+     * 
+     * @param repositoryId
+     * @param maximumSize
+     * @param defaultTimeToLiveSeconds
+     */
+    public TriePathCache( final String repositoryId, final int maximumSize, final int defaultTimeToLiveSeconds )
+    {
+        this( repositoryId, maximumSize, defaultTimeToLiveSeconds, new CopyOnWriteArrayList<TriePathCache>() );
+    }
+
+    private TriePathCache( final String repositoryId, final int maximumSize, final int defaultTimeToLiveSeconds,
+                           final List<TriePathCache> caches )
+    {
+        this( repositoryId, new SizeBound( maximumSize, caches ), defaultTimeToLiveSeconds );
+
+        caches.add( this );
+    }
+
+    /**
+     * Creates a cache sharing the size bound with other caches. The caches of the bound are expected to contain this
+     * cache, to have it's entries evicted.
+     * 
+     * @param repositoryId
+     * @param bound
+     * @param defaultTimeToLiveSeconds
+     */
+    public TriePathCache( final String repositoryId, final SizeBound bound, final int defaultTimeToLiveSeconds )
+    {
+        this.repositoryId = repositoryId;
+        this.bound = bound;
+        this.defaultTimeToLiveMillis = defaultTimeToLiveSeconds * 1000L;
+        this.root = new Node( null, "" );
+        this.head = new Node( null, "" );
+        this.head.lruNext = head;
+        this.head.lruPrev = head;
+    }
+
+    protected String getRepositoryId()
+    {
+        return repositoryId;
+    }
+
+    @Override
+    protected synchronized boolean doContains( final String key )
+    {
+        final Node node = findNode( key, false );
+
+        if ( node == null || !node.hasValue )
+        {
+            misses++;
+
+            return false;
+        }
+
+        final long now = System.currentTimeMillis();
+
+        if ( node.isExpired( now ) )
+        {
+            removeValue( node );
+
+            misses++;
+
+            return false;
+        }
+
+        unlink( node );
+        linkFirst( node, now );
+
+        hits++;
+
+        return true;
+    }
+
+    @Override
+    protected synchronized boolean doIsExpired( final String key )
+    {
+        final Node node = findNode( key, false );
+
+        if ( node != null && node.hasValue && node.isExpired( System.currentTimeMillis() ) )
+        {
+            removeValue( node );
+
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    protected void doPut( final String key, final Object element, final int expiration )
+    {
+        synchronized ( this )
+        {
+            final Node node = findNode( key, true );
+
+            if ( node.hasValue )
+            {
+                unlink( node );
+            }
+            else
+            {
+                node.hasValue = true;
+
+                size++;
+                bound.size.incrementAndGet();
+            }
+
+            final long now = System.currentTimeMillis();
+
+            linkFirst( node, now );
+
+            node.value = element;
+
+            if ( expiration > 0 )
+            {
+                node.expires = now + expiration * 1000L;
+            }
+            else if ( expiration == 0 )
+            {
+                // eternal, as with EHCache
+                node.expires = 0;
+            }
+            else if ( defaultTimeToLiveMillis > 0 )
+            {
+                node.expires = now + defaultTimeToLiveMillis;
+            }
+            else
+            {
+                node.expires = 0;
+            }
+        }
+
+        // outside of the lock of this cache, as eviction locks the other caches too
+        bound.evictIfNeeded();
+    }
+
+    @Override
+    protected synchronized boolean doRemove( final String key )
+    {
+        final Node node = findNode( key, false );
+
+        if ( node != null && node.hasValue )
+        {
+            removeValue( node );
+
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public synchronized boolean removeWithChildren( final String path )
+    {
+        final Node node = findNode( makeKeyFromPath( path ), false );
+
+        if ( node == null )
+        {
+            return false;
+        }
+
+        final boolean result = removeSubtree( node );
+
+        if ( node != root )
+        {
+            node.parent.children.remove( node.name );
+
+            prune( node.parent );
+        }
+
+        return result;
+    }
+
+    @Override
+    protected void doPurge()
+    {
+        removeWithChildren( "/" );
+    }
+
+    public synchronized CacheStatistics getStatistics()
+    {
+        return new CacheStatistics( size, misses, hits, evictions );
+    }
+
+    public synchronized Collection<String> listKeysInCache()
+    {
+        final List<String> keys = new ArrayList<String>( size );
+
+        collectKeys( root, "", System.currentTimeMillis(), keys );
+
+        return keys;
+    }
+
+    // ==
+
+    /**
+     * Returns the last access time of the least recently used entry, or {@link Long#MAX_VALUE} if cache is empty.
+     */
+    protected synchronized long getEldestAccess()
+    {
+        return head.lruPrev != head ? head.lruPrev.lastAccess : Long.MAX_VALUE;
+    }
+
+    /**
+     * Evicts at most count least recently used entries, returns the count of evicted entries.
+     */
+    protected synchronized int evictEldest( final int count )
+    {
+        int evicted = 0;
+
+        while ( evicted < count && head.lruPrev != head )
+        {
+            removeValue( head.lruPrev );
+
+            evicted++;
+        }
+
+        evictions += evicted;
+
+        return evicted;
+    }
+
+    /**
+     * Locates the node for key (a path without leading and trailing slashes), optionally creating the missing nodes.
+     */
+    protected Node findNode( final String key, final boolean create )
+    {
+        Node node = root;
+
+        int start = 0;
+
+        while ( start < key.length() )
+        {
+            int end = key.indexOf( '/', start );
+
+            if ( end < 0 )
+            {
+                end = key.length();
+            }
+
+            if ( end > start )
+            {
+                final String name = key.substring( start, end );
+
+                Node child = node.children != null ? node.children.get( name ) : null;
+
+                if ( child == null )
+                {
+                    if ( !create )
+                    {
+                        return null;
+                    }
+
+                    child = new Node( node, name );
+
+                    if ( node.children == null )
+                    {
+                        node.children = new HashMap<String, Node>( 4 );
+                    }
+
+                    node.children.put( name, child );
+                }
+
+                node = child;
+            }
+
+            start = end + 1;
+        }
+
+        return node;
+    }
+
+    protected void removeValue( final Node node )
+    {
+        unlink( node );
+
+        node.hasValue = false;
+        node.value = null;
+
+        size--;
+        bound.size.decrementAndGet();
+
+        prune( node );
+    }
+
+    protected boolean removeSubtree( final Node node )
+    {
+        boolean result = false;
+
+        if ( node.hasValue )
+        {
+            unlink( node );
+
+            node.hasValue = false;
+            node.value = null;
+
+            size--;
+            bound.size.decrementAndGet();
+
+            result = true;
+        }
+
+        if ( node.children != null )
+        {
+            for ( Node child : node.children.values() )
+            {
+                result = removeSubtree( child ) || result;
+            }
+
+            node.children = null;
+        }
+
+        return result;
+    }
+
+    /**
+     * Removes the node and it's ancestors from trie as long as they hold no value and have no children.
+     */
+    protected void prune( Node node )
+    {
+        while ( node != root && !node.hasValue && ( node.children == null || node.children.isEmpty() ) )
+        {
+            node.parent.children.remove( node.name );
+
+            node = node.parent;
+        }
+    }
+
+    protected void collectKeys( final Node node, final String key, final long now, final List<String> keys )
+    {
+        if ( node.hasValue && !node.isExpired( now ) )
+        {
+            keys.add( key );
+        }
+
+        if ( node.children != null )
+        {
+            for ( Node child : node.children.values() )
+            {
+                collectKeys( child, key.length() == 0 ? child.name : key + "/" + child.name, now, keys );
+            }
+        }
+    }
+
+    protected void linkFirst( final Node node, final long now )
+    {
+        node.lastAccess = now;
+        node.lruPrev = head;
+        node.lruNext = head.lruNext;
+        head.lruNext.lruPrev = node;
+        head.lruNext = node;
+    }
+
+    protected void unlink( final Node node )
+    {
+        if ( node.lruPrev != null )
+        {
+            node.lruPrev.lruNext = node.lruNext;
+            node.lruNext.lruPrev = node.lruPrev;
+            node.lruPrev = null;
+            node.lruNext = null;
+        }
+    }
+
+    // ==
+
+    /**
+     * The size bound, that may be shared by multiple caches. Once the total size of caches goes beyond the maximum, the
+     * least recently used entries of the cache having the eldest entry are evicted, until the total size drops 5% below
+     * the maximum. The eviction is hence approximate LRU across the caches (exact within one cache), but it does not
+     * need a lock shared by all the caches, and it runs rarely. One thread evicts at a time, others do not wait for it.
+     */
+    public static class SizeBound
+    {
+        private static final int EVICTION_BATCH = 100;
+
+        private final int maximumSize;
+
+        private final int lowWatermark;
+
+        private final Collection<? extends TriePathCache> caches;
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        private final AtomicBoolean evicting = new AtomicBoolean();
+
+        /**
+         * @param maximumSize the max count of entries of all the caches
+         * @param caches the (live) collection of caches sharing this bound
+         */
+        public SizeBound( final int maximumSize, final Collection<? extends TriePathCache> caches )
+        {
+            this.maximumSize = maximumSize;
+            this.lowWatermark = maximumSize - maximumSize / 20;
+            this.caches = caches;
+        }
+
+        public int getMaximumSize()
+        {
+            return maximumSize;
+        }
+
+        public int getSize()
+        {
+            return size.get();
+        }
+
+        protected void evictIfNeeded()
+        {
+            if ( size.get() <= maximumSize || !evicting.compareAndSet( false, true ) )
+            {
+                return;
+            }
+
+            try
+            {
+                int excess;
+
+                while ( ( excess = size.get() - lowWatermark ) > 0 )
+                {
+                    TriePathCache eldest = null;
+
+                    long eldestAccess = Long.MAX_VALUE;
+
+                    for ( TriePathCache cache : caches )
+                    {
+                        final long access = cache.getEldestAccess();
+
+                        if ( access < eldestAccess )
+                        {
+                            eldest = cache;
+                            eldestAccess = access;
+                        }
+                    }
+
+                    if ( eldest == null || eldest.evictEldest( Math.min( excess, EVICTION_BATCH ) ) == 0 )
+                    {
+                        break;
+                    }
+                }
+            }
+            finally
+            {
+                evicting.set( false );
+            }
+        }
+    }
+
+    protected static class Node
+    {
+        private final Node parent;
+
+        private final String name;
+
+        private HashMap<String, Node> children;
+
+        private boolean hasValue;
+
+        private Object value;
+
+        private long expires;
+
+        private long lastAccess;
+
+        private Node lruPrev;
+
+        private Node lruNext;
+
+        public Node( final Node parent, final String name )
+        {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        public boolean isExpired( final long now )
+        {
+            return expires > 0 && expires <= now;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codehaus.plexus.component.annotations.Component;
+import org.sonatype.nexus.logging.AbstractLoggingComponent;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
+
+/**
+ * The default cache manager, handing out {@link TriePathCache} instances, one per repository. Asking for the same cache
+ * repeatedly returns the same instance. The caches share a single size bound, as the caches did with the single EHCache
+ * instance.
+ */
+@Component( role = CacheManager.class )
+public class TriePathCacheManager
+    extends AbstractLoggingComponent
+    implements CacheManager
+{
+    /**
+     * The max count of paths cached, in total of all repositories.
+     */
+    private static final int PATH_CACHE_MAX_SIZE = SystemPropertiesHelper.getInteger( "nexus.pathCache.maxSize",
+        100000 );
+
+    /**
+     * The TTL of cached paths when not specified by caller, mimics the defaults of "path-cache" of ehcache.xml.
+     */
+    private static final int PATH_CACHE_DEFAULT_TTL = SystemPropertiesHelper.getInteger(
+        "nexus.pathCache.defaultTimeToLive", 120 );
+
+    private final ConcurrentHashMap<String, TriePathCache> caches = new ConcurrentHashMap<String, TriePathCache>();
+
+    private final TriePathCache.SizeBound bound = new TriePathCache.SizeBound( PATH_CACHE_MAX_SIZE, caches.values() );
+
+    public PathCache getPathCache( String cache )
+    {
+        TriePathCache pathCache = caches.get( cache );
+
+        if ( pathCache == null )
+        {
+            // the loser of a race is simply dropped, it is not yet in use
+            final TriePathCache newPathCache = new TriePathCache( cache, bound, PATH_CACHE_DEFAULT_TTL );
+
+            pathCache = caches.putIfAbsent( cache, newPathCache );
+
+            if ( pathCache == null )
+            {
+                pathCache = newPathCache;
+            }
+        }
+
+        return pathCache;
+    }
+}
@@ -219,7 +219,13 @@ public abstract class AbstractMavenRepository
     {
         RecreateMavenMetadataWalkerProcessor wp = new RecreateMavenMetadataWalkerProcessor( this.getLogger() );
 
-        DefaultWalkerContext ctx = new DefaultWalkerContext( this, request );
+        // the processor needs only the paths of the walked items, not their attributes
+        // the flag is set on a copy, as the passed in request is reused by callers (ie. for all group members)
+        final ResourceStoreRequest walkRequest = new ResourceStoreRequest( request );
+
+        walkRequest.setRequestLightweightListing( true );
+
+        DefaultWalkerContext ctx = new DefaultWalkerContext( this, walkRequest );
 
         ctx.getProcessors().add( wp );
 
@@ -451,6 +457,18 @@ public abstract class AbstractMavenRepository
         return super.doRetrieveRemoteItem( request );
     }
 
+    @Override
+    protected void doRemoteItemChanged( ResourceStoreRequest request )
+        throws StorageException
+    {
+        if ( !request.getRequestPath().endsWith( ".sha1" ) && !request.getRequestPath().endsWith( ".md5" ) )
+        {
+            // a newer artifact is about to be cached from remote repository
+            // lets clean any existing (stale) checksum files
+            removeLocalChecksum( request );
+        }
+    }
+
     private void removeLocalChecksum( ResourceStoreRequest request )
         throws StorageException
     {
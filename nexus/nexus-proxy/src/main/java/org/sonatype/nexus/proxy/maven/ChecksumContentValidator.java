@@ -19,8 +19,20 @@
 package org.sonatype.nexus.proxy.maven;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
+import org.codehaus.plexus.util.IOUtil;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.RemoteAccessException;
@@ -28,22 +40,131 @@ import org.sonatype.nexus.proxy.RemoteStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.attributes.inspectors.DigestCalculatingInspector;
 import org.sonatype.nexus.proxy.item.AbstractStorageItem;
+import org.sonatype.nexus.proxy.item.ByteArrayContentLocator;
 import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.repository.ItemContentValidator;
+import org.sonatype.nexus.proxy.repository.PrefetchingItemContentValidator;
 import org.sonatype.nexus.proxy.repository.ProxyRepository;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
+import org.sonatype.nexus.threads.NexusThreadFactory;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 
 /**
- * Maven checksum content validator.
+ * Maven checksum content validator. The remote checksum is fetched in parallel with the item being validated (see
+ * {@link #prefetchRemoteItemContentValidation(ProxyRepository, ResourceStoreRequest, AbstractStorageItem)}), while the
+ * digest of item content is calculated by local storage as the item is being cached. Prefetches run on a small
+ * dedicated pool, and are simply not done (checksum is fetched when validating) when the pool is busy.
  * 
  * @author cstamas
  */
 @Component( role = ItemContentValidator.class, hint = "ChecksumContentValidator" )
 public class ChecksumContentValidator
     extends AbstractChecksumContentValidator
-    implements ItemContentValidator
+    implements PrefetchingItemContentValidator, Disposable
 {
+    /**
+     * Key of system property that, when set to {@code true}, makes validator reuse the checksum file already present
+     * in local storage (next to the item being validated) instead of fetching it from remote.
+     * 
+     * @since 2.0
+     */
+    public static final String REUSE_CACHED_CHECKSUM_KEY = "nexus.checksumContentValidator.reuseCachedChecksum";
+
+    private static final boolean REUSE_CACHED_CHECKSUM = SystemPropertiesHelper.getBoolean(
+        REUSE_CACHED_CHECKSUM_KEY, false );
+
+    /**
+     * Key of system property that sets the count of threads prefetching remote checksums.
+     * 
+     * @since 2.0
+     */
+    public static final String PREFETCH_THREAD_COUNT_KEY = "nexus.checksumContentValidator.prefetchThreadCount";
+
+    private static final int PREFETCH_THREAD_COUNT = SystemPropertiesHelper.getInteger( PREFETCH_THREAD_COUNT_KEY, 10 );
+
+    private static final String PREFETCHED_CHECKSUM_KEY = ChecksumContentValidator.class.getName()
+        + ".prefetchedChecksum";
+
+    private final ThreadPoolExecutor prefetchExecutor;
+
+    public ChecksumContentValidator()
+    {
+        this( PREFETCH_THREAD_COUNT );
+    }
+
+    /**
+     * Meant for tests.
+     */
+    protected ChecksumContentValidator( final int prefetchThreadCount )
+    {
+        // no queue: when all threads are busy, the prefetch is rejected and the checksum fetched on validation
+        this.prefetchExecutor =
+            new ThreadPoolExecutor( prefetchThreadCount, prefetchThreadCount, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new NexusThreadFactory( "nxchecksum", "Checksum Prefetch" ),
+                new ThreadPoolExecutor.AbortPolicy() );
+        this.prefetchExecutor.allowCoreThreadTimeOut( true );
+    }
+
+    @Override
+    public void dispose()
+    {
+        prefetchExecutor.shutdownNow();
+    }
+
+    @Override
+    public Future<?> prefetchRemoteItemContentValidation( final ProxyRepository proxy,
+                                                          final ResourceStoreRequest request,
+                                                          final AbstractStorageItem item )
+    {
+        if ( isChecksum( request.getRequestPath() ) || getChecksumPolicy( proxy, item ) == null )
+        {
+            return null;
+        }
+
+        try
+        {
+            if ( REUSE_CACHED_CHECKSUM && retrieveCachedChecksum( proxy, request.getRequestPath() ) != null )
+            {
+                // no need to go remote at all
+                return null;
+            }
+        }
+        catch ( LocalStorageException e )
+        {
+            // just prefetch it then
+            getLogger().debug( "Cannot check cached checksums of " + request.getRequestPath(), e );
+        }
+
+        final ResourceStoreRequest checksumRequest = new ResourceStoreRequest( request );
+
+        final Future<FetchedChecksum> future;
+
+        try
+        {
+            future = prefetchExecutor.submit( new Callable<FetchedChecksum>()
+            {
+                @Override
+                public FetchedChecksum call()
+                    throws Exception
+                {
+                    return retrieveRemoteChecksum( proxy, checksumRequest, true );
+                }
+            } );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            // busy (or shut down), checksum will be fetched when validating
+            getLogger().debug( "Prefetch of checksums dropped for " + request.getRequestPath() );
+
+            return null;
+        }
+
+        // kept in item context (copied over to cached item), and not in request context, that is shared by retries
+        item.getItemContext().put( PREFETCHED_CHECKSUM_KEY, new AtomicReference<Future<FetchedChecksum>>( future ) );
+
+        return future;
+    }
 
     @Override
     protected void cleanup( ProxyRepository proxy, RemoteHashResponse remoteHash, boolean contentValid )
@@ -77,6 +198,17 @@ public class ChecksumContentValidator
             return null;
         }
 
+        if ( !( item instanceof DefaultStorageFileItem ) )
+        {
+            // we can't validate the item content
+            return null;
+        }
+
+        return getChecksumPolicy( proxy );
+    }
+
+    protected ChecksumPolicy getChecksumPolicy( ProxyRepository proxy )
+    {
         if ( !proxy.getRepositoryKind().isFacetAvailable( MavenProxyRepository.class ) )
         {
             // we work only with maven proxy reposes, all others are neglected
@@ -87,10 +219,9 @@ public class ChecksumContentValidator
 
         ChecksumPolicy checksumPolicy = mpr.getChecksumPolicy();
 
-        if ( checksumPolicy == null || !checksumPolicy.shouldCheckChecksum()
-            || !( item instanceof DefaultStorageFileItem ) )
+        if ( checksumPolicy == null || !checksumPolicy.shouldCheckChecksum() )
         {
-            // there is either no need to validate or we can't validate the item content
+            // there is no need to validate
             return null;
         }
 
@@ -103,7 +234,131 @@ public class ChecksumContentValidator
     {
         RepositoryItemUid uid = item.getRepositoryItemUid();
 
-        ResourceStoreRequest request = new ResourceStoreRequest( item );
+        FetchedChecksum checksum = null;
+
+        if ( REUSE_CACHED_CHECKSUM )
+        {
+            checksum = retrieveCachedChecksum( proxy, uid.getPath() );
+        }
+
+        if ( checksum == null )
+        {
+            checksum = retrievePrefetchedChecksum( item );
+        }
+
+        if ( checksum == null )
+        {
+            checksum = retrieveRemoteChecksum( proxy, new ResourceStoreRequest( item ), false );
+        }
+
+        if ( checksum == null )
+        {
+            getLogger().debug( "Item checksums (SHA1, MD5) remotely unavailable " + uid.toString() );
+
+            return null;
+        }
+
+        DefaultStorageFileItem hashItem = checksum.getHashItem();
+
+        if ( !checksum.isCached() )
+        {
+            // store checksum file locally
+            hashItem = (DefaultStorageFileItem) proxy.doCacheItem( hashItem );
+        }
+
+        String remoteHash = null;
+
+        // read checksum
+        try
+        {
+            remoteHash = MUtils.readDigestFromFileItem( hashItem );
+        }
+        catch ( IOException e )
+        {
+            getLogger().warn( "Cannot read hash string for remotely fetched StorageFileItem: " + uid.toString(), e );
+        }
+
+        if ( remoteHash == null )
+        {
+            return null;
+        }
+
+        return new RemoteHashResponse( checksum.getInspector(), remoteHash, hashItem );
+    }
+
+    /**
+     * Returns the checksum prefetched for the item, if any. The prefetched checksum is handed out only once, as the
+     * item might be retrieved again (from other mirror, or retried) if found invalid.
+     */
+    @SuppressWarnings( "unchecked" )
+    private FetchedChecksum retrievePrefetchedChecksum( final AbstractStorageItem item )
+    {
+        final Object ref = item.getItemContext().remove( PREFETCHED_CHECKSUM_KEY );
+
+        if ( !( ref instanceof AtomicReference ) )
+        {
+            return null;
+        }
+
+        final Future<FetchedChecksum> future = ( (AtomicReference<Future<FetchedChecksum>>) ref ).getAndSet( null );
+
+        if ( future == null )
+        {
+            return null;
+        }
+
+        try
+        {
+            return future.get();
+        }
+        catch ( CancellationException e )
+        {
+            // fetch it then
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch ( ExecutionException e )
+        {
+            getLogger().debug( "Prefetch of checksums failed for " + item.getRepositoryItemUid().toString(),
+                e.getCause() );
+        }
+
+        return null;
+    }
+
+    private FetchedChecksum retrieveCachedChecksum( final ProxyRepository proxy, final String path )
+        throws LocalStorageException
+    {
+        final ResourceStoreRequest request = new ResourceStoreRequest( path + ".sha1", true );
+
+        try
+        {
+            if ( proxy.getLocalStorage().containsItem( proxy, request ) )
+            {
+                final AbstractStorageItem hashItem = proxy.getLocalStorage().retrieveItem( proxy, request );
+
+                if ( hashItem instanceof DefaultStorageFileItem )
+                {
+                    return new FetchedChecksum( DigestCalculatingInspector.DIGEST_SHA1_KEY,
+                        (DefaultStorageFileItem) hashItem, true );
+                }
+            }
+        }
+        catch ( ItemNotFoundException e )
+        {
+            // gone meanwhile
+        }
+
+        return null;
+    }
+
+    private FetchedChecksum retrieveRemoteChecksum( final ProxyRepository proxy, final ResourceStoreRequest request,
+                                                    final boolean buffered )
+        throws LocalStorageException
+    {
+        final String path = request.getRequestPath();
 
         DefaultStorageFileItem hashItem = null;
 
@@ -113,7 +368,7 @@ public class ChecksumContentValidator
         {
             inspector = DigestCalculatingInspector.DIGEST_SHA1_KEY;
 
-            request.pushRequestPath( uid.getPath() + ".sha1" );
+            request.pushRequestPath( path + ".sha1" );
 
             hashItem = doRetriveRemoteChecksumItem( proxy, request );
         }
@@ -125,40 +380,44 @@ public class ChecksumContentValidator
             {
                 request.popRequestPath();
 
-                request.pushRequestPath( uid.getPath() + ".md5" );
+                request.pushRequestPath( path + ".md5" );
 
                 hashItem = doRetriveRemoteChecksumItem( proxy, request );
             }
             catch ( ItemNotFoundException md5e )
             {
-                getLogger().debug( "Item checksums (SHA1, MD5) remotely unavailable " + uid.toString() );
+                return null;
             }
         }
 
-        String remoteHash = null;
-
-        if ( hashItem != null )
+        if ( buffered )
         {
-            // store checksum file locally
-            hashItem = (DefaultStorageFileItem) proxy.doCacheItem( hashItem );
-
-            // read checksum
+            // read up the content, to not keep the connection occupied until the checksum is needed
             try
             {
-                remoteHash = MUtils.readDigestFromFileItem( hashItem );
+                final InputStream is = hashItem.getInputStream();
+
+                try
+                {
+                    final ByteArrayContentLocator content =
+                        new ByteArrayContentLocator( IOUtil.toByteArray( is ), hashItem.getMimeType() );
+
+                    hashItem.setContentLocator( content );
+                    hashItem.setLength( content.getLength() );
+                }
+                finally
+                {
+                    IOUtil.close( is );
+                }
             }
             catch ( IOException e )
             {
-                getLogger().warn( "Cannot read hash string for remotely fetched StorageFileItem: " + uid.toString(), e );
+                throw new LocalStorageException( "Cannot read remotely fetched checksum " + request.getRequestPath(),
+                    e );
             }
         }
 
-        if ( remoteHash == null )
-        {
-            return null;
-        }
-
-        return new RemoteHashResponse( inspector, remoteHash, hashItem );
+        return new FetchedChecksum( inspector, hashItem, false );
     }
 
     private boolean isChecksum( String path )
@@ -182,4 +441,37 @@ public class ChecksumContentValidator
             throw new ItemNotFoundException( request, proxy, e );
         }
     }
+
+    // ==
+
+    private static class FetchedChecksum
+    {
+        private final String inspector;
+
+        private final DefaultStorageFileItem hashItem;
+
+        private final boolean cached;
+
+        public FetchedChecksum( final String inspector, final DefaultStorageFileItem hashItem, final boolean cached )
+        {
+            this.inspector = inspector;
+            this.hashItem = hashItem;
+            this.cached = cached;
+        }
+
+        public String getInspector()
+        {
+            return inspector;
+        }
+
+        public DefaultStorageFileItem getHashItem()
+        {
+            return hashItem;
+        }
+
+        public boolean isCached()
+        {
+            return cached;
+        }
+    }
 }
@@ -27,6 +27,7 @@ import org.sonatype.nexus.proxy.maven.metadata.AbstractMetadataHelper;
 import org.sonatype.nexus.proxy.maven.metadata.DefaultMetadataHelper;
 import org.sonatype.nexus.proxy.repository.HostedRepository;
 import org.sonatype.nexus.proxy.walker.AbstractWalkerProcessor;
+import org.sonatype.nexus.proxy.walker.ParallelWalkerProcessor;
 import org.sonatype.nexus.proxy.walker.WalkerContext;
 import org.sonatype.nexus.proxy.wastebasket.DeleteOperation;
 
@@ -35,6 +36,7 @@ import org.sonatype.nexus.proxy.wastebasket.DeleteOperation;
  */
 public class RecreateMavenMetadataWalkerProcessor
     extends AbstractWalkerProcessor
+    implements ParallelWalkerProcessor
 {
     private boolean isHostedRepo;
 
@@ -76,6 +78,29 @@ public class RecreateMavenMetadataWalkerProcessor
         setActive( isHostedRepo );
     }
 
+    @Override
+    public ParallelWalkerProcessor fork( WalkerContext context )
+    {
+        RecreateMavenMetadataWalkerProcessor fork = new RecreateMavenMetadataWalkerProcessor( logger, deleteOperation );
+
+        fork.repository = repository;
+
+        fork.isHostedRepo = isHostedRepo;
+
+        fork.mdHelper = new DefaultMetadataHelper( logger, repository, deleteOperation );
+
+        fork.setActive( isActive() );
+
+        return fork;
+    }
+
+    @Override
+    public void join( WalkerContext context, ParallelWalkerProcessor fork )
+    {
+        // the metadata of parent collections is built from data gathered in fork
+        mdHelper.join( ( (RecreateMavenMetadataWalkerProcessor) fork ).mdHelper );
+    }
+
     @Override
     public void onCollectionEnter( WalkerContext context, StorageCollectionItem coll )
     {
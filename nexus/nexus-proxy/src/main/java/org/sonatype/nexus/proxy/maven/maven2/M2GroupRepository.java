@@ -38,6 +38,13 @@ import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.StorageException;
+import org.sonatype.nexus.proxy.events.RepositoryConfigurationUpdatedEvent;
+import org.sonatype.nexus.proxy.events.RepositoryEventExpireCaches;
+import org.sonatype.nexus.proxy.events.RepositoryGroupMembersChangedEvent;
+import org.sonatype.nexus.proxy.events.RepositoryItemEvent;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventCache;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventDelete;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventStore;
 import org.sonatype.nexus.proxy.events.RepositoryItemValidationEvent;
 import org.sonatype.nexus.proxy.item.ByteArrayContentLocator;
 import org.sonatype.nexus.proxy.item.ContentLocator;
@@ -62,6 +69,9 @@ import org.sonatype.nexus.proxy.registry.ContentClass;
 import org.sonatype.nexus.proxy.repository.GroupRepository;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.util.DigesterUtils;
+import org.sonatype.nexus.util.LruCache;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
+import org.sonatype.plexus.appevents.Event;
 
 @Component( role = GroupRepository.class, hint = M2GroupRepository.ID, instantiationStrategy = "per-lookup", description = "Maven2 Repository Group" )
 public class M2GroupRepository
@@ -85,6 +95,53 @@ public class M2GroupRepository
     @Requirement
     private M2GroupRepositoryConfigurator m2GroupRepositoryConfigurator;
 
+    /**
+     * The max count of merged metadata kept in memory per group.
+     */
+    private static final int MERGED_METADATA_CACHE_SIZE = SystemPropertiesHelper.getInteger(
+        "nexus.m2GroupRepository.mergedMetadataCacheSize", 1000 );
+
+    /**
+     * Cache of merged metadata, keyed by request path. Entries are valid only if the member items they were merged
+     * from are unchanged, see {@link #getMergedMetadataKey(List)}.
+     */
+    private final LruCache<String, MergedMetadata> mergedMetadataCache = new LruCache<String, MergedMetadata>(
+        MERGED_METADATA_CACHE_SIZE );
+
+    @Override
+    public void onEvent( Event<?> evt )
+    {
+        super.onEvent( evt );
+
+        if ( evt instanceof RepositoryItemEventStore || evt instanceof RepositoryItemEventCache
+            || evt instanceof RepositoryItemEventDelete )
+        {
+            // we don't check is the origin a member (maybe transitively), the key would not match anyway
+            final RepositoryItemEvent ievt = (RepositoryItemEvent) evt;
+
+            if ( M2ArtifactRecognizer.isMetadata( ievt.getItemUid().getPath() ) )
+            {
+                mergedMetadataCache.remove( ievt.getItemUid().getPath() );
+            }
+        }
+        else if ( evt instanceof RepositoryGroupMembersChangedEvent || evt instanceof RepositoryEventExpireCaches
+            || evt instanceof RepositoryConfigurationUpdatedEvent )
+        {
+            // member list or member policies might be changed
+            mergedMetadataCache.clear();
+        }
+    }
+
+    /**
+     * Returns the merged metadata cache, for statistics.
+     * 
+     * @return
+     */
+    public LruCache<String, MergedMetadata> getMergedMetadataCache()
+    {
+        return mergedMetadataCache;
+    }
+
     @Override
     protected M2GroupRepositoryConfiguration getExternalConfiguration( boolean forWrite )
     {
@@ -227,6 +284,29 @@ public class M2GroupRepository
             return items.get( 0 );
         }
 
+        final String mergedMetadataKey = getMergedMetadataKey( items );
+
+        try
+        {
+            final MergedMetadata cached = mergedMetadataCache.get( request.getRequestPath() );
+
+            if ( cached != null && cached.getKey().equals( mergedMetadataKey ) )
+            {
+                // members unchanged since last merge, serve the cached result
+                StorageItem item = createMergedMetadataItem( request, cached.getContent(), items );
+
+                storeMissingMergedMetadataItemDigest( request, cached.getMd5Digest(), items, "MD5" );
+
+                storeMissingMergedMetadataItemDigest( request, cached.getSha1Digest(), items, "SHA1" );
+
+                return item;
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new LocalStorageException( "Got IOException during M2 metadata merging.", e );
+        }
+
         List<Metadata> existingMetadatas = new ArrayList<Metadata>();
 
         try
@@ -304,6 +384,12 @@ public class M2GroupRepository
 
             resultOutputStream.close();
 
+            if ( mergedMetadataKey != null )
+            {
+                mergedMetadataCache.put( request.getRequestPath(), new MergedMetadata( mergedMetadataKey,
+                    resultOutputStream.toByteArray(), md5Digest, sha1Digest ) );
+            }
+
             if ( getLogger().isDebugEnabled() )
             {
                 getLogger().debug(
@@ -348,6 +434,43 @@ public class M2GroupRepository
         storeItem( false, digestFileItem );
     }
 
+    protected void storeMissingMergedMetadataItemDigest( ResourceStoreRequest request, String digest,
+                                                         List<StorageItem> sources, String algorithm )
+        throws IOException, UnsupportedStorageOperationException, IllegalOperationException
+    {
+        String digestFileName = request.getRequestPath() + "." + algorithm.toLowerCase();
+
+        if ( !getLocalStorage().containsItem( this, new ResourceStoreRequest( digestFileName ) ) )
+        {
+            storeMergedMetadataItemDigest( request, digest, sources, algorithm );
+        }
+    }
+
+    /**
+     * Builds a key identifying the state of member metadata items: their repository, modification timestamp, length and
+     * SHA1 (if known). Returns {@code null} if any of the items is not a file, as those are not cacheable.
+     */
+    protected String getMergedMetadataKey( List<StorageItem> items )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for ( StorageItem item : items )
+        {
+            if ( !( item instanceof StorageFileItem ) )
+            {
+                return null;
+            }
+
+            StorageFileItem fileItem = (StorageFileItem) item;
+
+            sb.append( fileItem.getRepositoryId() ).append( ':' ).append( fileItem.getModified() ).append( ':' ).append(
+                fileItem.getLength() ).append( ':' ).append( fileItem.getAttributes().get( StorageFileItem.DIGEST_SHA1_KEY ) ).append(
+                ';' );
+        }
+
+        return sb.toString();
+    }
+
     protected StorageCompositeFileItem createMergedMetadataItem( ResourceStoreRequest request, byte[] content,
                                                                  List<StorageItem> sources )
     {
@@ -385,4 +508,48 @@ public class M2GroupRepository
     {
         return new MavenRepositoryMetadataValidationEventFailed( this, item, msg );
     }
+
+    // ==
+
+    /**
+     * Merged metadata content with it's digests.
+     */
+    public static class MergedMetadata
+    {
+        private final String key;
+
+        private final byte[] content;
+
+        private final String md5Digest;
+
+        private final String sha1Digest;
+
+        public MergedMetadata( final String key, final byte[] content, final String md5Digest, final String sha1Digest )
+        {
+            this.key = key;
+            this.content = content;
+            this.md5Digest = md5Digest;
+            this.sha1Digest = sha1Digest;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+
+        public byte[] getContent()
+        {
+            return content;
+        }
+
+        public String getMd5Digest()
+        {
+            return md5Digest;
+        }
+
+        public String getSha1Digest()
+        {
+            return sha1Digest;
+        }
+    }
 }
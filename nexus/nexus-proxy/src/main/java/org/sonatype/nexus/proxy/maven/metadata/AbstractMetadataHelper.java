@@ -88,6 +88,39 @@ abstract public class AbstractMetadataHelper
         metadataProcessors.add( new ObsoleteMetadataProcessor( this ) );
     }
 
+    /**
+     * Merges the data gathered by other helper (that processed a subtree of this helper) into this helper, to have it
+     * used when exiting the parent directories.
+     * 
+     * @param other
+     * @since 2.0
+     */
+    public void join( AbstractMetadataHelper other )
+    {
+        joinData( gData, other.gData );
+
+        joinData( gaData, other.gaData );
+
+        joinData( gavData, other.gavData );
+    }
+
+    private <T> void joinData( Map<String, Collection<T>> data, Map<String, Collection<T>> otherData )
+    {
+        for ( Map.Entry<String, Collection<T>> entry : otherData.entrySet() )
+        {
+            if ( data.get( entry.getKey() ) == null )
+            {
+                data.put( entry.getKey(), entry.getValue() );
+            }
+            else
+            {
+                data.get( entry.getKey() ).addAll( entry.getValue() );
+            }
+        }
+
+        otherData.clear();
+    }
+
     public void onDirEnter( String path )
         throws IOException
     {
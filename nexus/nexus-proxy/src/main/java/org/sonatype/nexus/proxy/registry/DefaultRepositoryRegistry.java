@@ -23,21 +23,27 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Initializable;
 import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.sonatype.nexus.configuration.ConfigurationChangeEvent;
 import org.sonatype.nexus.proxy.NoSuchRepositoryException;
+import org.sonatype.nexus.proxy.events.RepositoryConfigurationUpdatedEvent;
+import org.sonatype.nexus.proxy.events.RepositoryGroupMembersChangedEvent;
+import org.sonatype.nexus.proxy.events.RepositoryRegistryEvent;
 import org.sonatype.nexus.proxy.events.RepositoryRegistryEventAdd;
 import org.sonatype.nexus.proxy.events.RepositoryRegistryEventPostRemove;
 import org.sonatype.nexus.proxy.events.RepositoryRegistryEventRemove;
 import org.sonatype.nexus.proxy.repository.GroupRepository;
 import org.sonatype.nexus.proxy.repository.ProxyRepository;
 import org.sonatype.nexus.proxy.repository.Repository;
-import org.sonatype.nexus.proxy.repository.RepositoryStatusCheckerThread;
+import org.sonatype.nexus.proxy.repository.RepositoryStatusChecker;
 import org.sonatype.plexus.appevents.ApplicationEventMulticaster;
+import org.sonatype.plexus.appevents.Event;
 import org.sonatype.plexus.appevents.EventListener;
 
 /**
@@ -56,7 +62,7 @@ import org.sonatype.plexus.appevents.EventListener;
  */
 @Component( role = RepositoryRegistry.class )
 public class DefaultRepositoryRegistry
-    implements RepositoryRegistry, Disposable
+    implements RepositoryRegistry, EventListener, Initializable, Disposable
 {
     @Requirement
     private Logger logger;
@@ -67,6 +73,9 @@ public class DefaultRepositoryRegistry
     @Requirement
     private RepositoryTypeRegistry repositoryTypeRegistry;
 
+    @Requirement
+    private RepositoryStatusChecker repositoryStatusChecker;
+
     protected Logger getLogger()
     {
         return logger;
@@ -157,43 +166,42 @@ public class DefaultRepositoryRegistry
 
     public List<String> getGroupsOfRepository( final String repositoryId )
     {
-        final ArrayList<String> result = new ArrayList<String>();
-
-        try
-        {
-            final Repository repository = getRepository( repositoryId );
+        return getRepositoryTopology().getGroupsOfRepository( repositoryId );
+    }
 
-            for ( GroupRepository group : getGroupsOfRepository( repository ) )
-            {
-                result.add( group.getId() );
-            }
-        }
-        catch ( NoSuchRepositoryException e )
-        {
-            // ignore, just return empty collection
-        }
+    public List<GroupRepository> getGroupsOfRepository( final Repository repository )
+    {
+        return getGroupRepositories( getRepositoryTopology().getGroupsOfRepository( repository.getId() ) );
+    }
 
-        return result;
+    public List<String> getTransitiveGroupsOfRepository( final String repositoryId )
+    {
+        return getRepositoryTopology().getTransitiveGroupsOfRepository( repositoryId );
     }
 
-    public List<GroupRepository> getGroupsOfRepository( final Repository repository )
+    /**
+     * Returns the current topology snapshot, building it if needed. The snapshot is discarded on any registry or group
+     * membership change, and is rebuilt lazily on first use.
+     * 
+     * @return the topology of currently registered repositories.
+     * @since 2.0
+     */
+    public RepositoryTopology getRepositoryTopology()
     {
-        final ArrayList<GroupRepository> result = new ArrayList<GroupRepository>();
+        RepositoryTopology result = topology;
 
-        for ( Repository repo : getRepositories() )
+        if ( result == null )
         {
-            if ( !repo.getId().equals( repository.getId() )
-                && repo.getRepositoryKind().isFacetAvailable( GroupRepository.class ) )
-            {
-                final GroupRepository group = repo.adaptToFacet( GroupRepository.class );
+            final long version = topologyVersion.get();
+
+            result = new RepositoryTopology( getRepositoriesMap() );
 
-                members: for ( Repository member : group.getMemberRepositories() )
+            synchronized ( topologyVersion )
+            {
+                // publish only if no change happened meanwhile, otherwise use it once and let next call rebuild
+                if ( topology == null && version == topologyVersion.get() )
                 {
-                    if ( repository.getId().equals( member.getId() ) )
-                    {
-                        result.add( group );
-                        break members;
-                    }
+                    topology = result;
                 }
             }
         }
@@ -201,14 +209,41 @@ public class DefaultRepositoryRegistry
         return result;
     }
 
+    // Initializable plexus iface
+
+    public void initialize()
+    {
+        applicationEventMulticaster.addEventListener( this );
+    }
+
+    // EventListener iface
+
+    public void onEvent( final Event<?> evt )
+    {
+        if ( evt instanceof RepositoryRegistryEvent || evt instanceof RepositoryGroupMembersChangedEvent
+            || evt instanceof ConfigurationChangeEvent )
+        {
+            invalidateRepositoryTopology();
+        }
+        else if ( evt instanceof RepositoryConfigurationUpdatedEvent
+            && ( (RepositoryConfigurationUpdatedEvent) evt ).getRepository().getRepositoryKind().isFacetAvailable(
+                GroupRepository.class ) )
+        {
+            // members are committed
+            invalidateRepositoryTopology();
+        }
+    }
+
     // Disposable plexus iface
 
     public void dispose()
     {
-        // kill the checker daemon threads
+        applicationEventMulticaster.removeEventListener( this );
+
+        // stop checking the proxies
         for ( Repository repository : getRepositoriesMap().values() )
         {
-            killMonitorThread( repository.adaptToFacet( ProxyRepository.class ) );
+            unregisterStatusCheck( repository.adaptToFacet( ProxyRepository.class ) );
         }
     }
 
@@ -216,27 +251,74 @@ public class DefaultRepositoryRegistry
     // priv
     //
 
-    /** The repository registry map */
-    private final Map<String, Repository> _repositories = new HashMap<String, Repository>();
+    /** The repository registry map, copy-on-write: is replaced as whole on every change */
+    private volatile Map<String, Repository> _repositories = Collections.emptyMap();
+
+    /** The topology snapshot, {@code null} if it needs to be rebuilt */
+    private volatile RepositoryTopology topology;
+
+    /** Incremented on every topology change, guards against publishing topology built from stale state */
+    private final AtomicLong topologyVersion = new AtomicLong();
 
     /**
-     * Returns a copy of map with repositories. Is synchronized method, to allow consistent-read access. Methods
-     * modifying this map are all also synchronized (see API Interface and above), while all the "reading" methods from
-     * public API will boil down to this single method.
+     * Returns the immutable map with repositories. Methods modifying this map are all synchronized (see API Interface
+     * and above) and replace the map as whole, while all the "reading" methods from public API will boil down to this
+     * single method, without locking.
      */
-    protected synchronized Map<String, Repository> getRepositoriesMap()
+    protected Map<String, Repository> getRepositoriesMap()
     {
-        return Collections.unmodifiableMap( new HashMap<String, Repository>( _repositories ) );
+        return _repositories;
     }
 
     protected synchronized void repositoriesMapPut( final Repository repository )
     {
-        _repositories.put( repository.getId(), repository );
+        final HashMap<String, Repository> repositories = new HashMap<String, Repository>( _repositories );
+
+        repositories.put( repository.getId(), repository );
+
+        _repositories = Collections.unmodifiableMap( repositories );
+
+        invalidateRepositoryTopology();
     }
 
     protected synchronized void repositoriesMapRemove( final String repositoryId )
     {
-        _repositories.remove( repositoryId );
+        final HashMap<String, Repository> repositories = new HashMap<String, Repository>( _repositories );
+
+        repositories.remove( repositoryId );
+
+        _repositories = Collections.unmodifiableMap( repositories );
+
+        invalidateRepositoryTopology();
+    }
+
+    protected void invalidateRepositoryTopology()
+    {
+        synchronized ( topologyVersion )
+        {
+            topologyVersion.incrementAndGet();
+
+            topology = null;
+        }
+    }
+
+    protected List<GroupRepository> getGroupRepositories( final List<String> groupIds )
+    {
+        final Map<String, Repository> repositories = getRepositoriesMap();
+
+        final ArrayList<GroupRepository> result = new ArrayList<GroupRepository>( groupIds.size() );
+
+        for ( String groupId : groupIds )
+        {
+            final Repository repository = repositories.get( groupId );
+
+            if ( repository != null )
+            {
+                result.add( repository.adaptToFacet( GroupRepository.class ) );
+            }
+        }
+
+        return result;
     }
 
     protected void doRemoveRepository( final String repoId, final boolean silently )
@@ -269,21 +351,7 @@ public class DefaultRepositoryRegistry
 
             if ( repository.getRepositoryKind().isFacetAvailable( ProxyRepository.class ) )
             {
-                final ProxyRepository proxy = repository.adaptToFacet( ProxyRepository.class );
-
-                killMonitorThread( proxy );
-
-                RepositoryStatusCheckerThread thread =
-                    new RepositoryStatusCheckerThread( LoggerFactory.getLogger( getClass().getName() + "-"
-                        + repository.getId() ), (ProxyRepository) repository );
-
-                proxy.setRepositoryStatusCheckerThread( thread );
-
-                thread.setRunning( true );
-
-                thread.setDaemon( true );
-
-                thread.start();
+                repositoryStatusChecker.register( repository.adaptToFacet( ProxyRepository.class ) );
             }
         }
 
@@ -310,7 +378,7 @@ public class DefaultRepositoryRegistry
 
             repositoriesMapRemove( repository.getId() );
 
-            killMonitorThread( repository.adaptToFacet( ProxyRepository.class ) );
+            unregisterStatusCheck( repository.adaptToFacet( ProxyRepository.class ) );
         }
 
         if ( !silently )
@@ -321,22 +389,13 @@ public class DefaultRepositoryRegistry
 
     // ==
 
-    protected void killMonitorThread( final ProxyRepository proxy )
+    protected void unregisterStatusCheck( final ProxyRepository proxy )
     {
         if ( null == proxy )
         {
             return;
         }
 
-        if ( null != proxy.getRepositoryStatusCheckerThread() )
-        {
-            RepositoryStatusCheckerThread thread =
-                (RepositoryStatusCheckerThread) proxy.getRepositoryStatusCheckerThread();
-
-            thread.setRunning( false );
-
-            // and now interrupt it to die
-            thread.interrupt();
-        }
+        repositoryStatusChecker.unregister( proxy );
     }
 }
@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.registry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.sonatype.nexus.proxy.repository.GroupRepository;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+/**
+ * Immutable snapshot of repository topology: group to members and member to groups relations, both direct and
+ * transitive (groups of groups). Is built once from the set of registered repositories, and is discarded as whole when
+ * topology changes, so lookups are plain map reads without any locking.
+ * 
+ * @since 2.0
+ */
+public class RepositoryTopology
+{
+    private final Map<String, List<String>> groupMembers;
+
+    private final Map<String, List<String>> memberGroups;
+
+    private final Map<String, List<String>> transitiveGroupMembers;
+
+    private final Map<String, List<String>> transitiveMemberGroups;
+
+    public RepositoryTopology( final Map<String, Repository> repositories )
+    {
+        final HashMap<String, List<String>> groupMembers = new HashMap<String, List<String>>();
+
+        final HashMap<String, List<String>> memberGroups = new HashMap<String, List<String>>();
+
+        for ( Repository repository : repositories.values() )
+        {
+            if ( repository.getRepositoryKind().isFacetAvailable( GroupRepository.class ) )
+            {
+                final GroupRepository group = repository.adaptToFacet( GroupRepository.class );
+
+                final ArrayList<String> members = new ArrayList<String>();
+
+                for ( String memberId : group.getMemberRepositoryIds() )
+                {
+                    // unregistered members are ignored, as are groups being member of themselves
+                    if ( repositories.containsKey( memberId ) && !memberId.equals( group.getId() )
+                        && !members.contains( memberId ) )
+                    {
+                        members.add( memberId );
+
+                        List<String> groups = memberGroups.get( memberId );
+
+                        if ( groups == null )
+                        {
+                            groups = new ArrayList<String>();
+
+                            memberGroups.put( memberId, groups );
+                        }
+
+                        groups.add( group.getId() );
+                    }
+                }
+
+                groupMembers.put( group.getId(), members );
+            }
+        }
+
+        this.groupMembers = freeze( groupMembers );
+        this.memberGroups = freeze( memberGroups );
+        this.transitiveGroupMembers = freeze( closure( groupMembers ) );
+        this.transitiveMemberGroups = freeze( closure( memberGroups ) );
+    }
+
+    /**
+     * Returns the IDs of groups having given repository as direct member.
+     */
+    public List<String> getGroupsOfRepository( final String repositoryId )
+    {
+        return get( memberGroups, repositoryId );
+    }
+
+    /**
+     * Returns the IDs of groups having given repository as direct or indirect (through other groups) member.
+     */
+    public List<String> getTransitiveGroupsOfRepository( final String repositoryId )
+    {
+        return get( transitiveMemberGroups, repositoryId );
+    }
+
+    /**
+     * Returns the IDs of registered direct members of given group.
+     */
+    public List<String> getMembersOfGroup( final String groupId )
+    {
+        return get( groupMembers, groupId );
+    }
+
+    /**
+     * Returns the IDs of registered direct and indirect (members of member groups) members of given group.
+     */
+    public List<String> getTransitiveMembersOfGroup( final String groupId )
+    {
+        return get( transitiveGroupMembers, groupId );
+    }
+
+    // ==
+
+    private static List<String> get( final Map<String, List<String>> map, final String key )
+    {
+        final List<String> result = map.get( key );
+
+        if ( result == null )
+        {
+            return Collections.emptyList();
+        }
+
+        return result;
+    }
+
+    /**
+     * Calculates transitive closure of relation, in breadth first order, guarding against cycles.
+     */
+    private static Map<String, List<String>> closure( final Map<String, List<String>> relation )
+    {
+        final HashMap<String, List<String>> result = new HashMap<String, List<String>>( relation.size() );
+
+        for ( String key : relation.keySet() )
+        {
+            final LinkedHashSet<String> reached = new LinkedHashSet<String>();
+
+            final LinkedList<String> queue = new LinkedList<String>( relation.get( key ) );
+
+            while ( !queue.isEmpty() )
+            {
+                final String current = queue.removeFirst();
+
+                if ( !current.equals( key ) && reached.add( current ) )
+                {
+                    final List<String> next = relation.get( current );
+
+                    if ( next != null )
+                    {
+                        queue.addAll( next );
+                    }
+                }
+            }
+
+            result.put( key, new ArrayList<String>( reached ) );
+        }
+
+        return result;
+    }
+
+    private static Map<String, List<String>> freeze( final Map<String, List<String>> map )
+    {
+        final HashMap<String, List<String>> result = new HashMap<String, List<String>>( map.size() );
+
+        for ( Map.Entry<String, List<String>> entry : map.entrySet() )
+        {
+            result.put( entry.getKey(), Collections.unmodifiableList( entry.getValue() ) );
+        }
+
+        return Collections.unmodifiableMap( result );
+    }
+}
@@ -27,6 +27,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.util.ExceptionUtils;
@@ -62,6 +65,7 @@ import org.sonatype.nexus.proxy.repository.EvictUnusedItemsWalkerProcessor.Evict
 import org.sonatype.nexus.proxy.repository.threads.ThreadPoolManager;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.proxy.storage.remote.AbstractHTTPRemoteRepositoryStorage;
+import org.sonatype.nexus.proxy.storage.remote.ConditionalRemoteRepositoryStorage;
 import org.sonatype.nexus.proxy.storage.remote.DefaultRemoteStorageContext;
 import org.sonatype.nexus.proxy.storage.remote.RemoteRepositoryStorage;
 import org.sonatype.nexus.proxy.storage.remote.RemoteStorageContext;
@@ -108,9 +112,10 @@ public abstract class AbstractProxyRepository
     private ThreadPoolManager poolManager;
 
     /**
-     * The remote status checker thread, used in Proxies for handling autoBlocking. Not to go into Pool above, is
-     * handled separately.
+     * The remote status checker thread, not used anymore, the remote status of proxies is checked by
+     * {@link RepositoryStatusChecker}.
      */
+    @Deprecated
     private Thread repositoryStatusCheckerThread;
 
     /**
@@ -159,6 +164,18 @@ public abstract class AbstractProxyRepository
      */
     private Map<String, ItemContentValidator> itemContentValidators;
 
+    /**
+     * Remote retrievals in progress, keyed by {@link #getRemoteRetrievalKey(ResourceStoreRequest)}. Used to coalesce
+     * concurrent requests for same item, so only one of them goes remote.
+     */
+    private final ConcurrentHashMap<String, RemoteRetrieval> remoteRetrievals =
+        new ConcurrentHashMap<String, RemoteRetrieval>();
+
+    /**
+     * Count of requests that were served by outcome of a concurrent remote retrieval.
+     */
+    private final AtomicLong coalescedRemoteRetrievals = new AtomicLong();
+
     @Override
     protected AbstractProxyRepositoryConfiguration getExternalConfiguration( boolean forModification )
     {
@@ -306,11 +323,13 @@ public abstract class AbstractProxyRepository
         getExternalConfiguration( true ).setAutoBlockActive( val );
     }
 
+    @Deprecated
     public Thread getRepositoryStatusCheckerThread()
     {
         return repositoryStatusCheckerThread;
     }
 
+    @Deprecated
     public void setRepositoryStatusCheckerThread( Thread repositoryStatusCheckerThread )
     {
         this.repositoryStatusCheckerThread = repositoryStatusCheckerThread;
@@ -403,11 +422,7 @@ public abstract class AbstractProxyRepository
                         // make it step one
                         this.remoteStatusRetainTimeSequence.next();
 
-                        // ping the monitor thread
-                        if ( this.repositoryStatusCheckerThread != null )
-                        {
-                            this.repositoryStatusCheckerThread.interrupt();
-                        }
+                        // the status checker reschedules the next check on RepositoryEventProxyModeChanged
                     }
                 }
                 else
@@ -713,6 +728,73 @@ public abstract class AbstractProxyRepository
         return remoteStatus;
     }
 
+    public RemoteStatus checkRemoteStatus( final ResourceStoreRequest request )
+    {
+        _remoteStatusChecking = true;
+
+        try
+        {
+            doCheckRemoteStatus( request );
+        }
+        finally
+        {
+            _remoteStatusChecking = false;
+        }
+
+        return remoteStatus;
+    }
+
+    public void applyRemoteStatus( final ResourceStoreRequest request, final RemoteStatus remoteStatus )
+    {
+        if ( !getProxyMode().shouldCheckRemoteStatus() )
+        {
+            setRemoteStatus( RemoteStatus.UNAVAILABLE, new ItemNotFoundException( request ) );
+        }
+        else if ( RemoteStatus.AVAILABLE.equals( remoteStatus ) )
+        {
+            autoUnBlockProxying();
+        }
+        else if ( RemoteStatus.UNAVAILABLE.equals( remoteStatus ) )
+        {
+            autoBlockProxying( new ItemNotFoundException( request ) );
+        }
+    }
+
+    /**
+     * Checks the remote peer, and auto blocks or unblocks this repository accordingly.
+     */
+    protected void doCheckRemoteStatus( final ResourceStoreRequest request )
+    {
+        try
+        {
+            if ( !getProxyMode().shouldCheckRemoteStatus() )
+            {
+                setRemoteStatus( RemoteStatus.UNAVAILABLE, new ItemNotFoundException( request ) );
+            }
+            else
+            {
+                if ( isRemoteStorageReachable( request ) )
+                {
+                    autoUnBlockProxying();
+                }
+                else
+                {
+                    autoBlockProxying( new ItemNotFoundException( request ) );
+                }
+            }
+        }
+        catch ( RemoteStorageException e )
+        {
+            // autoblock only when remote problems occur
+            autoBlockProxying( e );
+        }
+        catch ( StorageException e )
+        {
+            // local problems, keep the status as is
+            getLogger().debug( "Could not check the remote status of repository " + getId(), e );
+        }
+    }
+
     private void setRemoteStatus( RemoteStatus remoteStatus, Throwable cause )
     {
         this.remoteStatus = remoteStatus;
@@ -980,37 +1062,89 @@ public abstract class AbstractProxyRepository
                 // go remote and potentially check for new version of file, but we still don't know
                 // will we actually fetch it (since aging != remote file changed!)
                 // BUT, from this point on, we want to _serialize_ access, so upgrade to CREATE lock
+                // Also, register the retrieval: if one is already in progress, we will use it's outcome once
+                // we get the lock (the owner holds the lock as long as retrieval is in progress)
+
+                final String remoteRetrievalKey = getRemoteRetrievalKey( request );
+
+                final RemoteRetrieval ownRetrieval = new RemoteRetrieval();
+
+                final RemoteRetrieval pendingRetrieval = remoteRetrievals.putIfAbsent( remoteRetrievalKey, ownRetrieval );
 
                 itemUidLock.lock( Action.create );
 
                 try
                 {
-                    // check local copy again, we were maybe blocked for a download, and we need to
-                    // recheck local copy after we acquired exclusive lock
-                    if ( !request.isRequestRemoteOnly() )
+                    if ( pendingRetrieval != null && pendingRetrieval.isDone() )
                     {
-                        try
+                        final StorageItem coalescedItem = getRemoteRetrievalOutcome( request, pendingRetrieval );
+
+                        if ( coalescedItem != null )
                         {
-                            localItem = (AbstractStorageItem) super.doRetrieveItem( request );
+                            return coalescedItem;
+                        }
+                    }
 
-                            if ( localItem != null && !isOld( localItem ) )
+                    try
+                    {
+                        // check local copy again, we were maybe blocked for a download, and we need to
+                        // recheck local copy after we acquired exclusive lock
+                        if ( !request.isRequestRemoteOnly() )
+                        {
+                            try
                             {
-                                // local copy is just fine (downloaded by a thread holding us blocked on acquiring
-                                // exclusive lock)
-                                return localItem;
+                                localItem = (AbstractStorageItem) super.doRetrieveItem( request );
+
+                                if ( localItem != null && !isOld( localItem ) )
+                                {
+                                    // local copy is just fine (downloaded by a thread holding us blocked on
+                                    // acquiring exclusive lock)
+                                    ownRetrieval.succeeded();
+
+                                    return localItem;
+                                }
+                            }
+                            catch ( ItemNotFoundException e )
+                            {
+                                localItem = null;
                             }
                         }
-                        catch ( ItemNotFoundException e )
-                        {
-                            localItem = null;
-                        }
+
+                        // this whole method happens with exclusive lock on UID
+                        final StorageItem result = doRetrieveItem0( request, localItem );
+
+                        ownRetrieval.succeeded();
+
+                        return result;
+                    }
+                    catch ( ItemNotFoundException e )
+                    {
+                        ownRetrieval.failed( e );
+
+                        throw e;
                     }
+                    catch ( IllegalOperationException e )
+                    {
+                        ownRetrieval.failed( e );
 
-                    // this whole method happens with exclusive lock on UID
-                    return doRetrieveItem0( request, localItem );
+                        throw e;
+                    }
+                    catch ( StorageException e )
+                    {
+                        ownRetrieval.failed( e );
+
+                        throw e;
+                    }
                 }
                 finally
                 {
+                    if ( pendingRetrieval == null )
+                    {
+                        // we owned the retrieval, deregister it while still holding the lock, as any thread that
+                        // registered after this point would find our outcome stale
+                        remoteRetrievals.remove( remoteRetrievalKey, ownRetrieval );
+                    }
+
                     itemUidLock.unlock();
                 }
             }
@@ -1021,6 +1155,87 @@ public abstract class AbstractProxyRepository
         }
     }
 
+    /**
+     * Returns the count of requests served by outcome of a concurrent remote retrieval of the same item.
+     *
+     * @return
+     */
+    public long getCoalescedRemoteRetrievalCount()
+    {
+        return coalescedRemoteRetrievals.get();
+    }
+
+    /**
+     * Builds the key under which remote retrievals are coalesced. Only requests for same path with same local/remote
+     * flags are coalesced.
+     *
+     * @param request
+     * @return
+     */
+    protected String getRemoteRetrievalKey( ResourceStoreRequest request )
+    {
+        return request.getRequestPath() + ( request.isRequestLocalOnly() ? ":L" : ":" )
+            + ( request.isRequestRemoteOnly() ? "R" : "" );
+    }
+
+    /**
+     * Replays the outcome of a finished remote retrieval of the same item performed by another thread. Returns the item
+     * from local storage if retrieval succeeded, or throws the exception the retrieval failed with. Returns {@code null}
+     * when the outcome cannot be reused, and the caller should continue as usual.
+     *
+     * @param request
+     * @param retrieval
+     * @return
+     * @throws ItemNotFoundException
+     * @throws IllegalOperationException
+     * @throws StorageException
+     */
+    protected StorageItem getRemoteRetrievalOutcome( ResourceStoreRequest request, RemoteRetrieval retrieval )
+        throws ItemNotFoundException, IllegalOperationException, StorageException
+    {
+        final Exception failure = retrieval.getFailure();
+
+        if ( failure == null )
+        {
+            try
+            {
+                // the item was just cached (or found fresh), no need to age-check it again
+                final StorageItem result = super.doRetrieveItem( request );
+
+                coalescedRemoteRetrievals.incrementAndGet();
+
+                return result;
+            }
+            catch ( ItemNotFoundException e )
+            {
+                // was not cached (request processor vetoed caching?), continue as usual
+                return null;
+            }
+        }
+
+        coalescedRemoteRetrievals.incrementAndGet();
+
+        if ( getLogger().isDebugEnabled() )
+        {
+            getLogger().debug(
+                "Item " + request.toString() + " retrieval failed in concurrent request, not going remote again: "
+                    + failure.getMessage() );
+        }
+
+        if ( failure instanceof ItemNotFoundException )
+        {
+            throw new ItemNotFoundException( request, this );
+        }
+        else if ( failure instanceof IllegalOperationException )
+        {
+            throw (IllegalOperationException) failure;
+        }
+        else
+        {
+            throw (StorageException) failure;
+        }
+    }
+
     protected StorageItem doRetrieveItem0( ResourceStoreRequest request, AbstractStorageItem localItem )
         throws IllegalOperationException, ItemNotFoundException, StorageException
     {
@@ -1053,8 +1268,6 @@ public abstract class AbstractProxyRepository
                 // we should go remote coz we have no local copy or it is old
                 try
                 {
-                    boolean shouldGetRemote = false;
-
                     if ( localItem != null )
                     {
                         if ( getLogger().isDebugEnabled() )
@@ -1065,12 +1278,12 @@ public abstract class AbstractProxyRepository
                                     + new Date( localItem.getModified() ) );
                         }
 
-                        // check is the remote newer than the local one
+                        // revalidate it, and get it if remote is newer than the local one
                         try
                         {
-                            shouldGetRemote = doCheckRemoteItemExistence( localItem, request );
+                            remoteItem = doRevalidateRemoteItem( localItem, request );
 
-                            if ( !shouldGetRemote )
+                            if ( remoteItem == null )
                             {
                                 markItemRemotelyChecked( localItem );
 
@@ -1090,7 +1303,14 @@ public abstract class AbstractProxyRepository
                                             + " is found on remote storage." );
                                 }
                             }
+                        }
+                        catch ( ItemNotFoundException ex )
+                        {
+                            // not on remote (anymore), we stay with the local one: this is what a 404 on the
+                            // existence check always did, the conditional retrieval just answers it in one request
+                            remoteItem = null;
 
+                            markItemRemotelyCheckedQuietly( localItem );
                         }
                         catch ( RemoteAccessDeniedException ex )
                         {
@@ -1098,7 +1318,7 @@ public abstract class AbstractProxyRepository
 
                             // do not go remote, but we did not mark it as "remote checked" also.
                             // let the user do proper setup and probably it will try again
-                            shouldGetRemote = false;
+                            remoteItem = null;
                         }
                         catch ( RemoteStorageException ex )
                         {
@@ -1106,24 +1326,18 @@ public abstract class AbstractProxyRepository
 
                             // do not go remote, but we did not mark it as "remote checked" also.
                             // let the user do proper setup and probably it will try again
-                            shouldGetRemote = false;
+                            remoteItem = null;
                         }
                         catch ( IOException ex )
                         {
                             // do not go remote, but we did not mark it as "remote checked" also.
                             // let the user do proper setup and probably it will try again
-                            shouldGetRemote = false;
+                            remoteItem = null;
                         }
                     }
                     else
                     {
                         // we have no local copy of it, try to get it unconditionally
-                        shouldGetRemote = true;
-                    }
-
-                    if ( shouldGetRemote )
-                    {
-                        // this will GET it unconditionally
                         try
                         {
                             remoteItem = doRetrieveRemoteItem( request );
@@ -1147,10 +1361,7 @@ public abstract class AbstractProxyRepository
                             // cleanup if any remnant is here
                             try
                             {
-                                if ( localItem == null )
-                                {
-                                    deleteItem( false, request );
-                                }
+                                deleteItem( false, request );
                             }
                             catch ( ItemNotFoundException ex1 )
                             {
@@ -1162,10 +1373,6 @@ public abstract class AbstractProxyRepository
                             }
                         }
                     }
-                    else
-                    {
-                        remoteItem = null;
-                    }
                 }
                 catch ( ItemNotFoundException ex )
                 {
@@ -1263,6 +1470,22 @@ public abstract class AbstractProxyRepository
         getAttributesHandler().touchItemCheckedRemotely( System.currentTimeMillis(), item );
     }
 
+    private void markItemRemotelyCheckedQuietly( final StorageItem item )
+    {
+        try
+        {
+            markItemRemotelyChecked( item );
+        }
+        catch ( IOException e )
+        {
+            getLogger().debug( "Could not mark item " + item.getRepositoryItemUid() + " as remotely checked.", e );
+        }
+        catch ( ItemNotFoundException e )
+        {
+            // the local item is gone meanwhile, nothing to mark
+        }
+    }
+
     /**
      * Validates integrity of content of <code>item</code>. Retruns <code>true</code> if item content is valid and
      * <code>false</code> if item content is corrupted. Note that this method is called doRetrieveRemoteItem, so
@@ -1306,6 +1529,59 @@ public abstract class AbstractProxyRepository
         return isValid;
     }
 
+    /**
+     * Lets the {@link PrefetchingItemContentValidator}s start fetching what they need for validation, in parallel with
+     * the retrieval of the item content. Invoked once remote storage responded successfully, hence nothing is fetched
+     * for items not found remotely. Returns the started prefetches, to be cancelled once item is validated.
+     * 
+     * @since 2.0
+     */
+    protected List<Future<?>> doPrefetchRemoteItemContentValidation( ResourceStoreRequest req,
+                                                                     AbstractStorageItem remoteItem )
+    {
+        final List<Future<?>> prefetches = new ArrayList<Future<?>>();
+
+        for ( Map.Entry<String, ItemContentValidator> icventry : getItemContentValidators().entrySet() )
+        {
+            if ( icventry.getValue() instanceof PrefetchingItemContentValidator )
+            {
+                try
+                {
+                    final Future<?> prefetch =
+                        ( (PrefetchingItemContentValidator) icventry.getValue() ).prefetchRemoteItemContentValidation(
+                            this, req, remoteItem );
+
+                    if ( prefetch != null )
+                    {
+                        prefetches.add( prefetch );
+                    }
+                }
+                catch ( RuntimeException e )
+                {
+                    // prefetch is an optimization only, validator will fetch what it needs during validation
+                    getLogger().debug(
+                        String.format( "Prefetch of validation for %s failed (validator=%s)",
+                            req.getRequestPath(), icventry.getKey() ), e );
+                }
+            }
+        }
+
+        return prefetches;
+    }
+
+    /**
+     * Cancels the prefetches not used (or not completed) by validation.
+     * 
+     * @since 2.0
+     */
+    protected void cancelPrefetchRemoteItemContentValidation( final List<Future<?>> prefetches )
+    {
+        for ( Future<?> prefetch : prefetches )
+        {
+            prefetch.cancel( false );
+        }
+    }
+
     /**
      * Checks for remote existence of local item.
      *
@@ -1354,6 +1630,52 @@ public abstract class AbstractProxyRepository
      */
     protected AbstractStorageItem doRetrieveRemoteItem( ResourceStoreRequest request )
         throws ItemNotFoundException, RemoteAccessException, StorageException
+    {
+        return retrieveRemoteItem( request, null );
+    }
+
+    /**
+     * Revalidates the stale local item against remote storage, and retrieves the newer remote item if there is one.
+     * When remote storage is a {@link ConditionalRemoteRepositoryStorage}, this is done in one conditional retrieval
+     * (with same retry-fallback-blacklist rules as {@link #doRetrieveRemoteItem(ResourceStoreRequest)}), otherwise a
+     * check is followed by a retrieval. Unlike the unconditional retrieval, failures here do not remove the local
+     * item, unless it was already replaced with newly retrieved content.
+     * 
+     * @return the newer remote item, or {@code null} if local item is still fresh.
+     * @since 2.0
+     */
+    protected AbstractStorageItem doRevalidateRemoteItem( StorageItem localItem, ResourceStoreRequest request )
+        throws ItemNotFoundException, RemoteAccessException, StorageException
+    {
+        if ( getRemoteStorage() instanceof ConditionalRemoteRepositoryStorage )
+        {
+            return retrieveRemoteItem( request, localItem );
+        }
+        else
+        {
+            if ( !doCheckRemoteItemExistence( localItem, request ) )
+            {
+                return null;
+            }
+
+            return doRetrieveRemoteItem( request );
+        }
+    }
+
+    /**
+     * Invoked when a revalidation found a newer remote item, before it is cached. Subclasses may cleanup here the local
+     * content that depends on the item being replaced.
+     * 
+     * @since 2.0
+     */
+    protected void doRemoteItemChanged( ResourceStoreRequest request )
+        throws StorageException
+    {
+        // nothing
+    }
+
+    private AbstractStorageItem retrieveRemoteItem( final ResourceStoreRequest request, final StorageItem localItem )
+        throws ItemNotFoundException, RemoteAccessException, StorageException
     {
         final RepositoryItemUid itemUid = createUid( request.getRequestPath() );
 
@@ -1378,6 +1700,9 @@ public abstract class AbstractProxyRepository
 
             Exception lastException = null;
 
+            // did we overwrite the local copy with something retrieved
+            boolean localItemReplaced = false;
+
             try
             {
                 all_urls:
@@ -1416,24 +1741,57 @@ public abstract class AbstractProxyRepository
                         {
                             // events.clear();
 
-                            AbstractStorageItem remoteItem =
-                                getRemoteStorage().retrieveItem( this, request, mirror.getUrl() );
+                            AbstractStorageItem remoteItem;
+
+                            if ( localItem == null )
+                            {
+                                remoteItem = getRemoteStorage().retrieveItem( this, request, mirror.getUrl() );
+                            }
+                            else
+                            {
+                                remoteItem =
+                                    ( (ConditionalRemoteRepositoryStorage) getRemoteStorage() ).retrieveItemIfModified(
+                                        this, request, mirror.getUrl(), localItem );
+
+                                if ( remoteItem == null )
+                                {
+                                    // not modified, local copy is still good
+                                    selector.feedbackSuccess( mirror );
+
+                                    return null;
+                                }
+
+                                doRemoteItemChanged( request );
+                            }
 
                             remoteItem.getItemContext().putAll( request.getRequestContext() );
 
-                            remoteItem = doCacheItem( remoteItem );
+                            // remote peer responded with content, validators may fetch what they need meanwhile
+                            final List<Future<?>> prefetches =
+                                doPrefetchRemoteItemContentValidation( request, remoteItem );
 
-                            if ( doValidateRemoteItemContent( request, mirror.getUrl(), remoteItem, events ) )
+                            try
                             {
-                                sendContentValidationEvents( request, events, true );
+                                localItemReplaced = true;
 
-                                selector.feedbackSuccess( mirror );
+                                remoteItem = doCacheItem( remoteItem );
 
-                                return remoteItem;
+                                if ( doValidateRemoteItemContent( request, mirror.getUrl(), remoteItem, events ) )
+                                {
+                                    sendContentValidationEvents( request, events, true );
+
+                                    selector.feedbackSuccess( mirror );
+
+                                    return remoteItem;
+                                }
+                                else
+                                {
+                                    continue all_urls; // retry with next url
+                                }
                             }
-                            else
+                            finally
                             {
-                                continue all_urls; // retry with next url
+                                cancelPrefetchRemoteItemContentValidation( prefetches );
                             }
                         }
                         catch ( ItemNotFoundException e )
@@ -1539,17 +1897,21 @@ public abstract class AbstractProxyRepository
 
             sendContentValidationEvents( request, events, false );
 
-            try
+            // keep the stale local copy, unless we replaced it with something retrieved (and invalid)
+            if ( localItem == null || localItemReplaced )
             {
-                getLocalStorage().deleteItem( this, request );
-            }
-            catch ( ItemNotFoundException e )
-            {
-                // good, we want this item deleted
-            }
-            catch ( UnsupportedStorageOperationException e )
-            {
-                getLogger().warn( "Unexpected Exception", e );
+                try
+                {
+                    getLocalStorage().deleteItem( this, request );
+                }
+                catch ( ItemNotFoundException e )
+                {
+                    // good, we want this item deleted
+                }
+                catch ( UnsupportedStorageOperationException e )
+                {
+                    getLogger().warn( "Unexpected Exception", e );
+                }
             }
 
             if ( lastException instanceof StorageException )
@@ -1650,29 +2012,7 @@ public abstract class AbstractProxyRepository
         {
             try
             {
-                try
-                {
-                    if ( !getProxyMode().shouldCheckRemoteStatus() )
-                    {
-                        setRemoteStatus( RemoteStatus.UNAVAILABLE, new ItemNotFoundException( request ) );
-                    }
-                    else
-                    {
-                        if ( isRemoteStorageReachable( request ) )
-                        {
-                            autoUnBlockProxying();
-                        }
-                        else
-                        {
-                            autoBlockProxying( new ItemNotFoundException( request ) );
-                        }
-                    }
-                }
-                catch ( RemoteStorageException e )
-                {
-                    // autoblock only when remote problems occur
-                    autoBlockProxying( e );
-                }
+                doCheckRemoteStatus( request );
             }
             finally
             {
@@ -1719,4 +2059,34 @@ public abstract class AbstractProxyRepository
         return shouldAddToNFC;
     }
 
+    /**
+     * The outcome of a remote retrieval, shared with concurrent requests for same item.
+     */
+    protected static class RemoteRetrieval
+    {
+        private volatile boolean done;
+
+        private volatile Exception failure;
+
+        public boolean isDone()
+        {
+            return done;
+        }
+
+        public Exception getFailure()
+        {
+            return failure;
+        }
+
+        public void succeeded()
+        {
+            this.done = true;
+        }
+
+        public void failed( final Exception failure )
+        {
+            this.failure = failure;
+            this.done = true;
+        }
+    }
 }
@@ -309,7 +309,7 @@ public abstract class AbstractRepository
     {
         if ( notFoundCache == null )
         {
-            // getting it lazily
+            // getting it lazily, racing here is harmless as cache manager hands out one cache per repository
             notFoundCache = getCacheManager().getPathCache( getId() );
         }
 
@@ -0,0 +1,555 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.repository;
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.time.DurationFormatUtils;
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Requirement;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Initializable;
+import org.slf4j.Logger;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.events.RepositoryEventProxyModeChanged;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.threads.NexusThreadFactory;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
+import org.sonatype.plexus.appevents.ApplicationEventMulticaster;
+import org.sonatype.plexus.appevents.Event;
+import org.sonatype.plexus.appevents.EventListener;
+
+/**
+ * Default {@link RepositoryStatusChecker}, checking all the registered proxy repositories using a scheduled thread
+ * pool. Checks are scheduled per repository (following the remote status retain time sequence of repository, hence
+ * backing off while the repository is auto blocked), with some random jitter added to spread them. Probes are shared
+ * between repositories reaching the remote peer same way (same remote URL, storage, connection, authentication and
+ * proxy settings): a probe done recently (or in progress) for one repository is applied to the others, instead of
+ * probing the remote peer again. A probe in progress is waited for a bounded time only.
+ * 
+ * @since 2.0
+ */
+@Component( role = RepositoryStatusChecker.class )
+public class DefaultRepositoryStatusChecker
+    implements RepositoryStatusChecker, EventListener, Initializable, Disposable
+{
+    /**
+     * The count of threads checking repositories. Checks block on remote peers (up to their connection timeout), hence
+     * the pool is sized well above the count of processors.
+     */
+    private static final int THREAD_COUNT = SystemPropertiesHelper.getInteger(
+        "nexus.repositoryStatusChecker.threadCount", Math.max( 8, Runtime.getRuntime().availableProcessors() * 2 ) );
+
+    /**
+     * The time in milliseconds a completed probe of remote URL is reused for other repositories having same URL.
+     */
+    private static final long PROBE_REUSE_TIME = SystemPropertiesHelper.getLong(
+        "nexus.repositoryStatusChecker.probeReuseTime", 30000L );
+
+    /**
+     * The maximum time in milliseconds a probe in progress is waited for. Once elapsed, the repository is probed
+     * without waiting for the probe in progress.
+     */
+    private static final long PROBE_WAIT_TIME = SystemPropertiesHelper.getLong(
+        "nexus.repositoryStatusChecker.probeWaitTime", 60000L );
+
+    /**
+     * The maximum jitter added to check delays, in percents of the delay.
+     */
+    private static final int JITTER_PERCENT = SystemPropertiesHelper.getInteger(
+        "nexus.repositoryStatusChecker.jitterPercent", 10 );
+
+    /**
+     * The maximum delay of first check after registration, to not have all the repositories checked at once on boot.
+     */
+    private static final long FIRST_CHECK_MAX_DELAY = 5000L;
+
+    @Requirement
+    private Logger logger;
+
+    @Requirement
+    private ApplicationEventMulticaster applicationEventMulticaster;
+
+    private final ScheduledExecutorService executor;
+
+    private final ConcurrentMap<String, Check> checks = new ConcurrentHashMap<String, Check>();
+
+    private final ConcurrentMap<String, Probe> probes = new ConcurrentHashMap<String, Probe>();
+
+    private final Random random = new Random();
+
+    public DefaultRepositoryStatusChecker()
+    {
+        this.executor =
+            new ScheduledThreadPoolExecutor( THREAD_COUNT, new NexusThreadFactory( "nxstatus",
+                "Repository Status Checker" ) );
+    }
+
+    protected Logger getLogger()
+    {
+        return logger;
+    }
+
+    // Initializable plexus iface
+
+    public void initialize()
+    {
+        applicationEventMulticaster.addEventListener( this );
+    }
+
+    // Disposable plexus iface
+
+    public void dispose()
+    {
+        applicationEventMulticaster.removeEventListener( this );
+
+        executor.shutdownNow();
+
+        checks.clear();
+    }
+
+    // EventListener iface
+
+    public void onEvent( final Event<?> evt )
+    {
+        if ( evt instanceof RepositoryEventProxyModeChanged )
+        {
+            final RepositoryEventProxyModeChanged pmevt = (RepositoryEventProxyModeChanged) evt;
+
+            if ( ProxyMode.BLOCKED_AUTO.equals( pmevt.getNewProxyMode() ) )
+            {
+                final Check check = checks.get( pmevt.getRepository().getId() );
+
+                // repository just got auto blocked, do NOT try to unblock it immediately, it has to wait the 1st
+                // amount of time repository says, and THEN try to unblock it
+                if ( check != null )
+                {
+                    check.scheduleNext();
+                }
+            }
+        }
+    }
+
+    // RepositoryStatusChecker iface
+
+    public void register( final ProxyRepository repository )
+    {
+        final Check check = new Check( repository );
+
+        final Check oldCheck = checks.put( repository.getId(), check );
+
+        if ( oldCheck != null )
+        {
+            oldCheck.cancel();
+        }
+
+        check.schedule( (long) ( random.nextDouble() * FIRST_CHECK_MAX_DELAY ) );
+    }
+
+    public void unregister( final ProxyRepository repository )
+    {
+        final Check check = checks.remove( repository.getId() );
+
+        if ( check != null )
+        {
+            check.cancel();
+        }
+    }
+
+    public RepositoryStatusCheck getRepositoryStatusCheck( final String repositoryId )
+    {
+        final Check check = checks.get( repositoryId );
+
+        return check != null ? check.getRepositoryStatusCheck() : null;
+    }
+
+    // ==
+
+    protected long addJitter( final long delay )
+    {
+        return delay + (long) ( delay * JITTER_PERCENT / 100d * random.nextDouble() );
+    }
+
+    protected long getProbeWaitTime()
+    {
+        return PROBE_WAIT_TIME;
+    }
+
+    /**
+     * Returns the key of probes of repository, that is same for repositories reaching their remote peer same way, or
+     * null if repository has no remote URL.
+     */
+    protected String getProbeKey( final ProxyRepository repository )
+    {
+        final String remoteUrl = repository.getRemoteUrl();
+
+        if ( remoteUrl == null )
+        {
+            return null;
+        }
+
+        final StringBuilder key = new StringBuilder( remoteUrl );
+
+        if ( !remoteUrl.endsWith( "/" ) )
+        {
+            key.append( '/' );
+        }
+
+        key.append( "|storage=" ).append(
+            repository.getRemoteStorage() != null ? repository.getRemoteStorage().getProviderId() : null );
+
+        final RemoteConnectionSettings connectionSettings = repository.getRemoteConnectionSettings();
+
+        if ( connectionSettings != null )
+        {
+            key.append( "|connection=" ).append( connectionSettings.getConnectionTimeout() ).append( ',' ).append(
+                connectionSettings.getRetrievalRetryCount() ).append( ',' ).append(
+                connectionSettings.getQueryString() ).append( ',' ).append(
+                connectionSettings.getUserAgentCustomizationString() );
+        }
+
+        key.append( "|auth=" );
+
+        appendAuthenticationKey( key, repository, repository.getRemoteAuthenticationSettings() );
+
+        final RemoteProxySettings proxySettings = repository.getRemoteProxySettings();
+
+        if ( proxySettings != null && proxySettings.isEnabled() )
+        {
+            key.append( "|proxy=" ).append( proxySettings.getHostname() ).append( ':' ).append(
+                proxySettings.getPort() ).append( ',' );
+
+            if ( proxySettings.getNonProxyHosts() != null )
+            {
+                key.append( new TreeSet<String>( proxySettings.getNonProxyHosts() ) );
+            }
+
+            key.append( ',' );
+
+            appendAuthenticationKey( key, repository, proxySettings.getProxyAuthentication() );
+        }
+
+        return key.toString();
+    }
+
+    private void appendAuthenticationKey( final StringBuilder key, final ProxyRepository repository,
+                                          final RemoteAuthenticationSettings settings )
+    {
+        if ( settings == null )
+        {
+            key.append( "none" );
+        }
+        else if ( settings instanceof NtlmRemoteAuthenticationSettings )
+        {
+            final NtlmRemoteAuthenticationSettings ntlm = (NtlmRemoteAuthenticationSettings) settings;
+
+            key.append( "ntlm:" ).append( ntlm.getUsername() ).append( ':' ).append( ntlm.getPassword() ).append(
+                ':' ).append( ntlm.getNtlmDomain() ).append( ':' ).append( ntlm.getNtlmHost() );
+        }
+        else if ( settings instanceof UsernamePasswordRemoteAuthenticationSettings )
+        {
+            final UsernamePasswordRemoteAuthenticationSettings usernamePassword =
+                (UsernamePasswordRemoteAuthenticationSettings) settings;
+
+            key.append( "basic:" ).append( usernamePassword.getUsername() ).append( ':' ).append(
+                usernamePassword.getPassword() );
+        }
+        else if ( settings instanceof ClientSSLRemoteAuthenticationSettings )
+        {
+            final ClientSSLRemoteAuthenticationSettings clientSsl = (ClientSSLRemoteAuthenticationSettings) settings;
+
+            key.append( "ssl:" ).append( clientSsl.getKeyStore() ).append( ':' ).append(
+                clientSsl.getKeyStorePassword() );
+            key.append( ':' ).append( clientSsl.getTrustStore() ).append( ':' ).append(
+                clientSsl.getTrustStorePassword() );
+        }
+        else
+        {
+            // unknown kind of authentication, do not share the probe with other repositories
+            key.append( settings.getClass().getName() ).append( ':' ).append( repository.getId() );
+        }
+    }
+
+    /**
+     * Checks the remote status of repository, sharing the probe with other repositories having same remote URL.
+     * Returns the probe used.
+     */
+    protected Probe checkRemoteStatus( final ProxyRepository repository, final ResourceStoreRequest request )
+    {
+        final String key = getProbeKey( repository );
+
+        final Probe newProbe = new Probe();
+
+        if ( key != null && repository.getProxyMode().shouldCheckRemoteStatus() )
+        {
+            while ( true )
+            {
+                final Probe probe = probes.get( key );
+
+                if ( probe != null && !probe.isStale() )
+                {
+                    // someone probed (or is probing) same remote peer, just use the result
+                    final RemoteStatus remoteStatus = probe.await( getProbeWaitTime() );
+
+                    if ( remoteStatus != null )
+                    {
+                        repository.applyRemoteStatus( request, remoteStatus );
+
+                        return probe;
+                    }
+
+                    // the prober failed or is still waiting for the remote peer, probe it ourselves
+                    break;
+                }
+
+                if ( probe == null ? probes.putIfAbsent( key, newProbe ) == null : probes.replace( key, probe,
+                    newProbe ) )
+                {
+                    break;
+                }
+            }
+        }
+
+        final long started = System.currentTimeMillis();
+
+        RemoteStatus remoteStatus = null;
+
+        try
+        {
+            remoteStatus = repository.checkRemoteStatus( request );
+        }
+        finally
+        {
+            newProbe.complete( remoteStatus, System.currentTimeMillis() - started );
+        }
+
+        return newProbe;
+    }
+
+    // ==
+
+    /**
+     * A probe of remote peer, shared by repositories having same probe key.
+     */
+    protected static class Probe
+    {
+        private final CountDownLatch done = new CountDownLatch( 1 );
+
+        private volatile RemoteStatus remoteStatus;
+
+        private volatile long latency;
+
+        private volatile long completed;
+
+        public void complete( final RemoteStatus remoteStatus, final long latency )
+        {
+            this.remoteStatus = remoteStatus;
+            this.latency = latency;
+            this.completed = System.currentTimeMillis();
+
+            done.countDown();
+        }
+
+        /**
+         * Waits for the probe to complete, at most the given time in milliseconds. Returns null if the probe failed or
+         * did not complete in time.
+         */
+        public RemoteStatus await( final long timeout )
+        {
+            try
+            {
+                if ( !done.await( timeout, TimeUnit.MILLISECONDS ) )
+                {
+                    return null;
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+
+                return null;
+            }
+
+            return remoteStatus;
+        }
+
+        public boolean isStale()
+        {
+            return completed > 0 && System.currentTimeMillis() - completed > PROBE_REUSE_TIME;
+        }
+
+        public RemoteStatus getRemoteStatus()
+        {
+            return remoteStatus;
+        }
+
+        public long getLatency()
+        {
+            return latency;
+        }
+    }
+
+    /**
+     * Periodic check of one repository.
+     */
+    protected class Check
+        implements Runnable
+    {
+        private final ProxyRepository repository;
+
+        private ScheduledFuture<?> future;
+
+        private boolean cancelled;
+
+        private volatile RemoteStatus lastRemoteStatus;
+
+        private volatile long lastCheckTime;
+
+        private volatile long lastCheckLatency;
+
+        private volatile long nextCheckTime;
+
+        public Check( final ProxyRepository repository )
+        {
+            this.repository = repository;
+        }
+
+        public RepositoryStatusCheck getRepositoryStatusCheck()
+        {
+            return new RepositoryStatusCheck( lastRemoteStatus, lastCheckTime, lastCheckLatency, nextCheckTime );
+        }
+
+        public synchronized void schedule( final long delay )
+        {
+            if ( cancelled )
+            {
+                return;
+            }
+
+            if ( future != null )
+            {
+                future.cancel( false );
+            }
+
+            nextCheckTime = System.currentTimeMillis() + delay;
+
+            future = executor.schedule( this, delay, TimeUnit.MILLISECONDS );
+        }
+
+        public void scheduleNext()
+        {
+            if ( isCancelled() )
+            {
+                return;
+            }
+
+            final long delay = addJitter( repository.getNextRemoteStatusRetainTime() );
+
+            // say this message only if repository is auto-blocked, regardless of repositoryStatusCheckMode
+            if ( repository.getProxyMode().shouldAutoUnblock() )
+            {
+                getLogger().info(
+                    "Next attempt to auto-unblock the \"" + repository.getName() + "\" (id=" + repository.getId()
+                        + ") repository by checking its remote peer health will occur in "
+                        + DurationFormatUtils.formatDurationWords( delay, true, true ) + "." );
+            }
+
+            schedule( delay );
+        }
+
+        public synchronized boolean isCancelled()
+        {
+            return cancelled;
+        }
+
+        public synchronized void cancel()
+        {
+            cancelled = true;
+
+            nextCheckTime = 0;
+
+            if ( future != null )
+            {
+                future.cancel( false );
+            }
+        }
+
+        public void run()
+        {
+            if ( repository.getProxyMode() == null )
+            {
+                // not a proxy anymore
+                return;
+            }
+
+            try
+            {
+                if ( shouldCheck() )
+                {
+                    final Probe probe =
+                        checkRemoteStatus( repository, new ResourceStoreRequest( RepositoryItemUid.PATH_ROOT ) );
+
+                    lastRemoteStatus = probe.getRemoteStatus();
+                    lastCheckLatency = probe.getLatency();
+                    lastCheckTime = System.currentTimeMillis();
+                }
+            }
+            catch ( Exception e )
+            {
+                getLogger().warn( "Could not check remote status of repository " + repository.getId(), e );
+            }
+            finally
+            {
+                scheduleNext();
+            }
+        }
+
+        protected boolean shouldCheck()
+        {
+            // check only if repository is in service
+            if ( !repository.getLocalStatus().shouldServiceRequest() )
+            {
+                return false;
+            }
+
+            final RepositoryStatusCheckMode repositoryStatusCheckMode = repository.getRepositoryStatusCheckMode();
+
+            if ( RepositoryStatusCheckMode.ALWAYS.equals( repositoryStatusCheckMode ) )
+            {
+                // just do it, don't care for proxyMode
+                return true;
+            }
+            else if ( RepositoryStatusCheckMode.AUTO_BLOCKED_ONLY.equals( repositoryStatusCheckMode ) )
+            {
+                // do it only if auto blocked
+                return repository.getProxyMode().shouldAutoUnblock();
+            }
+
+            return false;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.repository;
+
+/**
+ * The outcome of the last remote status check of a proxy repository, and the time of next one.
+ * 
+ * @since 2.0
+ */
+public class RepositoryStatusCheck
+{
+    private final RemoteStatus lastRemoteStatus;
+
+    private final long lastCheckTime;
+
+    private final long lastCheckLatency;
+
+    private final long nextCheckTime;
+
+    public RepositoryStatusCheck( final RemoteStatus lastRemoteStatus, final long lastCheckTime,
+                                  final long lastCheckLatency, final long nextCheckTime )
+    {
+        this.lastRemoteStatus = lastRemoteStatus;
+        this.lastCheckTime = lastCheckTime;
+        this.lastCheckLatency = lastCheckLatency;
+        this.nextCheckTime = nextCheckTime;
+    }
+
+    /**
+     * The remote status resulting from last check, or {@code null} if not checked yet.
+     * 
+     * @return
+     */
+    public RemoteStatus getLastRemoteStatus()
+    {
+        return lastRemoteStatus;
+    }
+
+    /**
+     * The timestamp of last check, or 0 if not checked yet.
+     * 
+     * @return
+     */
+    public long getLastCheckTime()
+    {
+        return lastCheckTime;
+    }
+
+    /**
+     * The time in milliseconds the last check (probing the remote peer) took.
+     * 
+     * @return
+     */
+    public long getLastCheckLatency()
+    {
+        return lastCheckLatency;
+    }
+
+    /**
+     * The timestamp of next scheduled check, or 0 if none is scheduled.
+     * 
+     * @return
+     */
+    public long getNextCheckTime()
+    {
+        return nextCheckTime;
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.repository;
+
+/**
+ * Periodically checks the remote peer health of registered proxy repositories, auto blocking and unblocking them as
+ * needed. Replaces the former "one checker thread per proxy repository" approach.
+ * 
+ * @since 2.0
+ */
+public interface RepositoryStatusChecker
+{
+    /**
+     * Registers a proxy repository for periodic checks, replacing any previous registration of it.
+     * 
+     * @param repository
+     */
+    void register( ProxyRepository repository );
+
+    /**
+     * Unregisters the proxy repository, if registered.
+     * 
+     * @param repository
+     */
+    void unregister( ProxyRepository repository );
+
+    /**
+     * Returns the outcome of the last check of the repository, or {@code null} if repository is not registered.
+     * 
+     * @param repositoryId
+     * @return
+     */
+    RepositoryStatusCheck getRepositoryStatusCheck( String repositoryId );
+}
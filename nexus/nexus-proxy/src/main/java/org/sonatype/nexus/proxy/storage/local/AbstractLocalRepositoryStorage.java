@@ -25,6 +25,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -34,7 +35,7 @@ import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreIteratorRequest;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
-import org.sonatype.nexus.proxy.item.ChecksummingContentLocator;
+import org.sonatype.nexus.proxy.item.MultiChecksummingContentLocator;
 import org.sonatype.nexus.proxy.item.LinkPersister;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
@@ -197,17 +198,14 @@ public abstract class AbstractLocalRepositoryStorage
     {
         try
         {
-            // replace content locator
-            ChecksummingContentLocator sha1cl =
-                new ChecksummingContentLocator( item.getContentLocator(), MessageDigest.getInstance( "SHA1" ),
-                    StorageFileItem.DIGEST_SHA1_KEY, item.getItemContext() );
-
+            // replace content locator, both digests are calculated in single pass while content is being stored
+            final Map<String, MessageDigest> digests = new LinkedHashMap<String, MessageDigest>( 2 );
+            digests.put( StorageFileItem.DIGEST_SHA1_KEY, MessageDigest.getInstance( "SHA1" ) );
             // md5 is deprecated but still calculated
-            ChecksummingContentLocator md5cl =
-                new ChecksummingContentLocator( sha1cl, MessageDigest.getInstance( "MD5" ),
-                    StorageFileItem.DIGEST_MD5_KEY, item.getItemContext() );
+            digests.put( StorageFileItem.DIGEST_MD5_KEY, MessageDigest.getInstance( "MD5" ) );
 
-            item.setContentLocator( md5cl );
+            item.setContentLocator( new MultiChecksummingContentLocator( item.getContentLocator(), digests,
+                item.getItemContext() ) );
         }
         catch ( NoSuchAlgorithmException e )
         {
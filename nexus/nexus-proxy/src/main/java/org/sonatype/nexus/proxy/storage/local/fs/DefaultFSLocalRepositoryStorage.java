@@ -37,6 +37,7 @@ import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.NoSuchRepositoryException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.attributes.Attributes;
+import org.sonatype.nexus.proxy.attributes.LazyAttributes;
 import org.sonatype.nexus.proxy.item.AbstractStorageItem;
 import org.sonatype.nexus.proxy.item.ByteArrayContentLocator;
 import org.sonatype.nexus.proxy.item.ContentLocator;
@@ -211,6 +212,19 @@ public class DefaultFSLocalRepositoryStorage
      */
     protected AbstractStorageItem retrieveItemFromFile( Repository repository, ResourceStoreRequest request, File target )
         throws ItemNotFoundException, LocalStorageException
+    {
+        return retrieveItemFromFile( repository, request, target, false );
+    }
+
+    /**
+     * Retrieve item from file. If lightweight, the attributes of the item are not fetched, but are loaded on demand
+     * instead, and the item is not touched as requested either.
+     * 
+     * @since 2.0
+     */
+    protected AbstractStorageItem retrieveItemFromFile( Repository repository, ResourceStoreRequest request,
+                                                        File target, boolean lightweight )
+        throws ItemNotFoundException, LocalStorageException
     {
         String path = request.getRequestPath();
 
@@ -255,12 +269,16 @@ public class DefaultFSLocalRepositoryStorage
                         DefaultStorageLinkItem link =
                             new DefaultStorageLinkItem( repository, request, target.canRead(), target.canWrite(),
                                 getLinkPersister().readLinkContent( linkContent ) );
-                        repository.getAttributesHandler().fetchAttributes( link );
+                        fetchAttributes( repository, link, lightweight );
                         link.setModified( target.lastModified() );
                         link.setCreated( target.lastModified() );
                         result = link;
 
-                        repository.getAttributesHandler().touchItemLastRequested( System.currentTimeMillis(), link );
+                        if ( !lightweight )
+                        {
+                            repository.getAttributesHandler().touchItemLastRequested( System.currentTimeMillis(),
+                                link );
+                        }
                     }
                     catch ( NoSuchRepositoryException e )
                     {
@@ -277,13 +295,16 @@ public class DefaultFSLocalRepositoryStorage
                         new DefaultStorageFileItem( repository, request, target.canRead(), target.canWrite(),
                             new FileContentLocator( target, getMimeSupport().guessMimeTypeFromPath(
                                 repository.getMimeRulesSource(), target.getAbsolutePath() ) ) );
-                    repository.getAttributesHandler().fetchAttributes( file );
+                    fetchAttributes( repository, file, lightweight );
                     file.setModified( target.lastModified() );
                     file.setCreated( target.lastModified() );
                     file.setLength( target.length() );
                     result = file;
 
-                    repository.getAttributesHandler().touchItemLastRequested( System.currentTimeMillis(), file );
+                    if ( !lightweight )
+                    {
+                        repository.getAttributesHandler().touchItemLastRequested( System.currentTimeMillis(), file );
+                    }
                 }
             }
             catch ( FileNotFoundException e )
@@ -307,6 +328,26 @@ public class DefaultFSLocalRepositoryStorage
         return result;
     }
 
+    /**
+     * Fetches the attributes of item, or in case of lightweight retrieval, sets them up to be loaded on demand.
+     * 
+     * @since 2.0
+     */
+    protected void fetchAttributes( final Repository repository, final AbstractStorageItem item,
+                                    final boolean lightweight )
+        throws IOException
+    {
+        if ( lightweight )
+        {
+            item.setRepositoryItemAttributes( new LazyAttributes( item.getRepositoryItemAttributes(),
+                repository.getAttributesHandler().getAttributeStorage(), item.getRepositoryItemUid() ) );
+        }
+        else
+        {
+            repository.getAttributesHandler().fetchAttributes( item );
+        }
+    }
+
     public boolean isReachable( Repository repository, ResourceStoreRequest request )
         throws LocalStorageException
     {
@@ -455,6 +496,8 @@ public class DefaultFSLocalRepositoryStorage
 
         File target = getFileFromBase( repository, request );
 
+        final boolean lightweight = request.isRequestLightweightListing();
+
         Collection<File> files = getFSPeer().listItems( repository, request, target );
 
         if ( files != null )
@@ -469,7 +512,7 @@ public class DefaultFSLocalRepositoryStorage
 
                 try
                 {
-                    result.add( retrieveItemFromFile( repository, collMemberReq, file ) );
+                    result.add( retrieveItemFromFile( repository, collMemberReq, file, lightweight ) );
                 }
                 catch ( ItemNotFoundException e )
                 {
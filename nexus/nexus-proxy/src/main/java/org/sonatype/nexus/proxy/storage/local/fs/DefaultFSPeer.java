@@ -351,7 +351,7 @@ public class DefaultFSPeer
     {
         if ( copyStreamBufferSize == -1 )
         {
-            copyStreamBufferSize = SystemPropertiesHelper.getInteger( FILE_COPY_STREAM_BUFFER_SIZE_KEY, 4096 );
+            copyStreamBufferSize = SystemPropertiesHelper.getInteger( FILE_COPY_STREAM_BUFFER_SIZE_KEY, 8192 );
         }
 
         return this.copyStreamBufferSize;
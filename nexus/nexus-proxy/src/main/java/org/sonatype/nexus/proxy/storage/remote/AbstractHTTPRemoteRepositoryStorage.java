@@ -20,13 +20,22 @@ package org.sonatype.nexus.proxy.storage.remote;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
 
 import org.sonatype.nexus.ApplicationStatusSource;
 import org.sonatype.nexus.mime.MimeSupport;
+import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.RemoteAccessDeniedException;
+import org.sonatype.nexus.proxy.RemoteAccessException;
 import org.sonatype.nexus.proxy.RemoteStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.AbstractStorageItem;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.repository.ProxyRepository;
 import org.sonatype.nexus.proxy.utils.UserAgentBuilder;
 
@@ -37,9 +46,14 @@ import org.sonatype.nexus.proxy.utils.UserAgentBuilder;
  */
 public abstract class AbstractHTTPRemoteRepositoryStorage
     extends AbstractRemoteRepositoryStorage
-    implements RemoteRepositoryStorage
+    implements RemoteRepositoryStorage, ConditionalRemoteRepositoryStorage
 {
 
+    /**
+     * HTTP date format (RFC 1123), used when no remote "Last-Modified" value is recorded for an item.
+     */
+    private static final String HTTP_DATE_PATTERN = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
     protected AbstractHTTPRemoteRepositoryStorage( final UserAgentBuilder userAgentBuilder,
                                                    final ApplicationStatusSource applicationStatusSource,
                                                    final MimeSupport mimeSupport )
@@ -102,6 +116,85 @@ public abstract class AbstractHTTPRemoteRepositoryStorage
         return checkRemoteAvailability( newerThen, repository, request, true );
     }
 
+    /**
+     * Fallback implementation doing what proxy repositories did before: a check for a newer remote item followed by a
+     * retrieval. HTTP remote storages should override this with a single conditional GET.
+     */
+    @Override
+    public AbstractStorageItem retrieveItemIfModified( final ProxyRepository repository,
+                                                       final ResourceStoreRequest request, final String baseUrl,
+                                                       final StorageItem localItem )
+        throws ItemNotFoundException, RemoteAccessException, RemoteStorageException
+    {
+        if ( !containsItem( localItem.getModified(), repository, request ) )
+        {
+            return null;
+        }
+
+        return retrieveItem( repository, request, baseUrl );
+    }
+
+    /**
+     * Returns the value to be sent as "If-Modified-Since" header when revalidating the local item: the remote
+     * "Last-Modified" value recorded when item was retrieved, or the item modification timestamp for items cached
+     * before it was recorded.
+     * 
+     * @param localItem the cached item being revalidated.
+     * @return the header value, or {@code null} if none can be sent.
+     */
+    protected String getIfModifiedSinceValue( final StorageItem localItem )
+    {
+        final String lastModified =
+            localItem.getRepositoryItemAttributes().get( StorageFileItem.REMOTE_LAST_MODIFIED_KEY );
+
+        if ( lastModified != null )
+        {
+            return lastModified;
+        }
+        else if ( localItem.getModified() > 0 )
+        {
+            final SimpleDateFormat format = new SimpleDateFormat( HTTP_DATE_PATTERN, Locale.US );
+            format.setTimeZone( TimeZone.getTimeZone( "GMT" ) );
+            return format.format( new Date( localItem.getModified() ) );
+        }
+        else
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the value to be sent as "If-None-Match" header when revalidating the local item: the remote "ETag" value
+     * recorded when item was retrieved, if any.
+     * 
+     * @param localItem the cached item being revalidated.
+     * @return the header value, or {@code null} if none can be sent.
+     */
+    protected String getIfNoneMatchValue( final StorageItem localItem )
+    {
+        return localItem.getRepositoryItemAttributes().get( StorageFileItem.REMOTE_ETAG_KEY );
+    }
+
+    /**
+     * Records the remote "Last-Modified" and "ETag" values on retrieved item, to have them used as conditions when the
+     * item gets revalidated.
+     * 
+     * @param item the retrieved item.
+     * @param lastModified the "Last-Modified" header value, may be {@code null}.
+     * @param etag the "ETag" header value, may be {@code null}.
+     */
+    protected void setRemoteValidators( final AbstractStorageItem item, final String lastModified, final String etag )
+    {
+        if ( lastModified != null )
+        {
+            item.getRepositoryItemAttributes().put( StorageFileItem.REMOTE_LAST_MODIFIED_KEY, lastModified );
+        }
+        if ( etag != null )
+        {
+            item.getRepositoryItemAttributes().put( StorageFileItem.REMOTE_ETAG_KEY, etag );
+        }
+    }
+
     /**
      * Returns {@code true} if only and only if we are positive that remote peer (remote URL of passed in
      * ProxyRepository) points to a remote repository that is hosted by Amazon S3 Storage. This method will return false
@@ -21,6 +21,8 @@ package org.sonatype.nexus.proxy.storage.remote.ahc;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -91,6 +93,25 @@ public class AhcRemoteRepositoryStorage
     @Override
     public AbstractStorageItem retrieveItem( ProxyRepository repository, ResourceStoreRequest request, String baseUrl )
         throws ItemNotFoundException, RemoteStorageException
+    {
+        return retrieveItem( repository, request, baseUrl, null );
+    }
+
+    @Override
+    public AbstractStorageItem retrieveItemIfModified( ProxyRepository repository, ResourceStoreRequest request,
+                                                       String baseUrl, StorageItem localItem )
+        throws ItemNotFoundException, RemoteStorageException
+    {
+        return retrieveItem( repository, request, baseUrl, localItem );
+    }
+
+    /**
+     * Retrieves the item, conditionally if local item is passed in. Returns {@code null} if local item was passed in
+     * and remote responded with "304 Not Modified".
+     */
+    protected AbstractStorageItem retrieveItem( ProxyRepository repository, ResourceStoreRequest request,
+                                                String baseUrl, StorageItem localItem )
+        throws ItemNotFoundException, RemoteStorageException
     {
         final URL remoteURL = getAbsoluteUrlFromBase( baseUrl, request.getRequestPath() );
 
@@ -98,14 +119,39 @@ public class AhcRemoteRepositoryStorage
 
         final AsyncHttpClient client = getClient( repository );
 
+        final Map<String, String> headers = new HashMap<String, String>();
+
+        if ( localItem != null )
+        {
+            // single round trip revalidation, remote will tell is our copy still fresh
+            final String ifModifiedSince = getIfModifiedSinceValue( localItem );
+            if ( ifModifiedSince != null )
+            {
+                headers.put( "If-Modified-Since", ifModifiedSince );
+            }
+            final String ifNoneMatch = getIfNoneMatchValue( localItem );
+            if ( ifNoneMatch != null )
+            {
+                headers.put( "If-None-Match", ifNoneMatch );
+            }
+        }
+
         try
         {
 
-            BodyDeferringInputStream ris = AHCUtils.fetchContent( client, itemUrl );
+            BodyDeferringInputStream ris = AHCUtils.fetchContent( client, itemUrl, headers );
 
             // this blocks until response headers arrived
             Response response = ris.getAsapResponse();
 
+            if ( localItem != null && 304 == response.getStatusCode() )
+            {
+                // not modified, there is no body to consume
+                ris.close();
+
+                return null;
+            }
+
             // expected: 200 OK
             validateResponse( repository, request, "GET", itemUrl, response, 200 );
 
@@ -128,6 +174,8 @@ public class AhcRemoteRepositoryStorage
 
             result.setRemoteUrl( itemUrl );
 
+            setRemoteValidators( result, response.getHeader( "last-modified" ), response.getHeader( "etag" ) );
+
             result.getItemContext().setParentContext( request.getRequestContext() );
 
             return result;
@@ -131,88 +131,17 @@ class HttpClientRemoteStorage
                                              final String baseUrl )
         throws ItemNotFoundException, RemoteStorageException
     {
-        final URL remoteURL =
-            appendQueryString( getAbsoluteUrlFromBase( baseUrl, request.getRequestPath() ), repository );
-
-        final HttpGet method = new HttpGet( remoteURL.toExternalForm() );
-
-        final HttpResponse httpResponse = executeRequest( repository, request, method );
-
-        if ( httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_OK )
-        {
-
-            if ( method.getURI().getPath().endsWith( "/" ) )
-            {
-                // this is a collection and not a file!
-                // httpClient will follow redirections, and the getPath()
-                // _should_
-                // give us URL with ending "/"
-                release( httpResponse );
-                throw new ItemNotFoundException(
-                    "The remoteURL we got to looks like is a collection, and Nexus cannot fetch collections over plain HTTP (remoteUrl=\""
-                        + remoteURL.toString() + "\")", request, repository );
-            }
-
-            InputStream is;
-            try
-            {
-                is = httpResponse.getEntity().getContent();
-
-                String mimeType = EntityUtils.getContentMimeType( httpResponse.getEntity() );
-                if ( mimeType == null )
-                {
-                    mimeType = getMimeSupport().guessMimeTypeFromPath(
-                        repository.getMimeRulesSource(), request.getRequestPath()
-                    );
-                }
-
-                final DefaultStorageFileItem httpItem = new DefaultStorageFileItem(
-                    repository, request, CAN_READ, CAN_WRITE, new PreparedContentLocator( is, mimeType )
-                );
-
-                if ( httpResponse.getEntity().getContentLength() != -1 )
-                {
-                    httpItem.setLength( httpResponse.getEntity().getContentLength() );
-                }
-                httpItem.setRemoteUrl( remoteURL.toString() );
-                httpItem.setModified( makeDateFromHeader( httpResponse.getFirstHeader( "last-modified" ) ) );
-                httpItem.setCreated( httpItem.getModified() );
-                httpItem.getItemContext().putAll( request.getRequestContext() );
+        return retrieveItem( repository, request, baseUrl, null );
+    }
 
-                return httpItem;
-            }
-            catch ( IOException ex )
-            {
-                release( httpResponse );
-                throw new RemoteStorageException( "IO Error during response stream handling [repositoryId=\""
-                                                      + repository.getId() + "\", requestPath=\""
-                                                      + request.getRequestPath() + "\", remoteUrl=\""
-                                                      + remoteURL.toString() + "\"]!", ex );
-            }
-            catch ( RuntimeException ex )
-            {
-                release( httpResponse );
-                throw ex;
-            }
-        }
-        else
-        {
-            release( httpResponse );
-            if ( httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_FOUND )
-            {
-                throw new ItemNotFoundException(
-                    "The remoteURL we requested does not exists on remote server (remoteUrl=\"" + remoteURL.toString()
-                        + "\")", request, repository );
-            }
-            else
-            {
-                throw new RemoteStorageException( "The method execution returned result code "
-                                                      + httpResponse.getStatusLine().getStatusCode()
-                                                      + ". [repositoryId=\"" + repository.getId() + "\", requestPath=\""
-                                                      + request.getRequestPath()
-                                                      + "\", remoteUrl=\"" + remoteURL.toString() + "\"]" );
-            }
-        }
+    @Override
+    public AbstractStorageItem retrieveItemIfModified( final ProxyRepository repository,
+                                                       final ResourceStoreRequest request,
+                                                       final String baseUrl,
+                                                       final StorageItem localItem )
+        throws ItemNotFoundException, RemoteStorageException
+    {
+        return retrieveItem( repository, request, baseUrl, localItem );
     }
 
     @Override
@@ -512,6 +441,129 @@ class HttpClientRemoteStorage
         }
     }
 
+    /**
+     * Retrieves the item, conditionally if local item is passed in.
+     *
+     * @param repository to retrieve the item for
+     * @param request    resource store request that triggered the retrieval
+     * @param baseUrl    base URL to retrieve item from
+     * @param localItem  locally cached item to revalidate, or {@code null} to retrieve unconditionally
+     * @return retrieved item, or {@code null} if local item was passed in and remote responded "not modified"
+     * @throws ItemNotFoundException  If item does not exists on remote
+     * @throws RemoteStorageException If an error occurred during execution of HTTP request
+     */
+    private AbstractStorageItem retrieveItem( final ProxyRepository repository,
+                                              final ResourceStoreRequest request,
+                                              final String baseUrl,
+                                              final StorageItem localItem )
+        throws ItemNotFoundException, RemoteStorageException
+    {
+        final URL remoteURL =
+            appendQueryString( getAbsoluteUrlFromBase( baseUrl, request.getRequestPath() ), repository );
+
+        final HttpGet method = new HttpGet( remoteURL.toExternalForm() );
+
+        if ( localItem != null )
+        {
+            // single round trip revalidation, remote will tell is our copy still fresh
+            final String ifModifiedSince = getIfModifiedSinceValue( localItem );
+            if ( ifModifiedSince != null )
+            {
+                method.setHeader( "if-modified-since", ifModifiedSince );
+            }
+            final String ifNoneMatch = getIfNoneMatchValue( localItem );
+            if ( ifNoneMatch != null )
+            {
+                method.setHeader( "if-none-match", ifNoneMatch );
+            }
+        }
+
+        final HttpResponse httpResponse = executeRequest( repository, request, method );
+
+        if ( localItem != null && httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED )
+        {
+            release( httpResponse );
+            return null;
+        }
+        else if ( httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_OK )
+        {
+            if ( method.getURI().getPath().endsWith( "/" ) )
+            {
+                // this is a collection and not a file!
+                // httpClient will follow redirections, and the getPath()
+                // _should_
+                // give us URL with ending "/"
+                release( httpResponse );
+                throw new ItemNotFoundException(
+                    "The remoteURL we got to looks like is a collection, and Nexus cannot fetch collections over plain HTTP (remoteUrl=\""
+                        + remoteURL.toString() + "\")", request, repository );
+            }
+
+            InputStream is;
+            try
+            {
+                is = httpResponse.getEntity().getContent();
+
+                String mimeType = EntityUtils.getContentMimeType( httpResponse.getEntity() );
+                if ( mimeType == null )
+                {
+                    mimeType = getMimeSupport().guessMimeTypeFromPath(
+                        repository.getMimeRulesSource(), request.getRequestPath()
+                    );
+                }
+
+                final DefaultStorageFileItem httpItem = new DefaultStorageFileItem(
+                    repository, request, CAN_READ, CAN_WRITE, new PreparedContentLocator( is, mimeType )
+                );
+
+                if ( httpResponse.getEntity().getContentLength() != -1 )
+                {
+                    httpItem.setLength( httpResponse.getEntity().getContentLength() );
+                }
+                httpItem.setRemoteUrl( remoteURL.toString() );
+                httpItem.setModified( makeDateFromHeader( httpResponse.getFirstHeader( "last-modified" ) ) );
+                httpItem.setCreated( httpItem.getModified() );
+                setRemoteValidators(
+                    httpItem, getHeaderValue( httpResponse, "last-modified" ), getHeaderValue( httpResponse, "etag" )
+                );
+                httpItem.getItemContext().putAll( request.getRequestContext() );
+
+                return httpItem;
+            }
+            catch ( IOException ex )
+            {
+                release( httpResponse );
+                throw new RemoteStorageException( "IO Error during response stream handling [repositoryId=\""
+                                                      + repository.getId() + "\", requestPath=\""
+                                                      + request.getRequestPath() + "\", remoteUrl=\""
+                                                      + remoteURL.toString() + "\"]!", ex );
+            }
+            catch ( RuntimeException ex )
+            {
+                release( httpResponse );
+                throw ex;
+            }
+        }
+        else
+        {
+            release( httpResponse );
+            if ( httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_FOUND )
+            {
+                throw new ItemNotFoundException(
+                    "The remoteURL we requested does not exists on remote server (remoteUrl=\"" + remoteURL.toString()
+                        + "\")", request, repository );
+            }
+            else
+            {
+                throw new RemoteStorageException( "The method execution returned result code "
+                                                      + httpResponse.getStatusLine().getStatusCode()
+                                                      + ". [repositoryId=\"" + repository.getId() + "\", requestPath=\""
+                                                      + request.getRequestPath()
+                                                      + "\", remoteUrl=\"" + remoteURL.toString() + "\"]" );
+            }
+        }
+    }
+
     /**
      * Executes the HTTP request and automatically releases any related resources.
      *
@@ -531,6 +583,19 @@ class HttpClientRemoteStorage
         return httpResponse;
     }
 
+    /**
+     * Returns value of first header with given name.
+     *
+     * @param httpResponse response to get the header from
+     * @param name         header name
+     * @return header value, or {@code null} if header is not present
+     */
+    private String getHeaderValue( final HttpResponse httpResponse, final String name )
+    {
+        final Header header = httpResponse.getFirstHeader( name );
+        return header == null ? null : header.getValue();
+    }
+
     /**
      * Make date from header.
      *
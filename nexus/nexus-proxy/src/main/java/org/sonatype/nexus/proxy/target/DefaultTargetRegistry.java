@@ -20,7 +20,6 @@ package org.sonatype.nexus.proxy.target;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -68,7 +67,10 @@ public class DefaultTargetRegistry
     @Requirement
     private ApplicationConfigurationValidator validator;
 
-    private ArrayList<Target> targets;
+    /**
+     * The index built from current targets, lazily (re)built after configuration changes.
+     */
+    private volatile TargetMatcherIndex targetMatcherIndex;
 
     // ==
 
@@ -131,7 +133,7 @@ public class DefaultTargetRegistry
 
         if ( wasDirty )
         {
-            targets = null;
+            targetMatcherIndex = null;
         }
 
         return wasDirty;
@@ -183,13 +185,15 @@ public class DefaultTargetRegistry
 
     // ==
 
-    public Collection<Target> getRepositoryTargets()
+    protected TargetMatcherIndex getTargetMatcherIndex()
     {
-        if ( targets == null )
+        TargetMatcherIndex index = targetMatcherIndex;
+
+        if ( index == null )
         {
             List<CRepositoryTarget> ctargets = getCurrentConfiguration( false );
 
-            targets = new ArrayList<Target>( ctargets.size() );
+            ArrayList<Target> targets = new ArrayList<Target>( ctargets.size() );
 
             for ( CRepositoryTarget ctarget : ctargets )
             {
@@ -200,12 +204,19 @@ public class DefaultTargetRegistry
                     targets.add( target );
                 }
             }
+
+            index = new TargetMatcherIndex( targets );
+
+            targetMatcherIndex = index;
         }
 
-        // copy the list, since processing it may take longer
-        ArrayList<Target> result = new ArrayList<Target>( targets );
+        return index;
+    }
 
-        return Collections.unmodifiableCollection( result );
+    public Collection<Target> getRepositoryTargets()
+    {
+        // index holds an immutable snapshot, no need to copy it
+        return getTargetMatcherIndex().getTargets();
     }
 
     public Target getRepositoryTarget( String id )
@@ -301,13 +312,7 @@ public class DefaultTargetRegistry
                                    + "'" );
         }
 
-        for ( Target t : getRepositoryTargets() )
-        {
-            if ( t.isPathContained( contentClass, path ) )
-            {
-                result.add( t );
-            }
-        }
+        result.addAll( getTargetMatcherIndex().getTargetsForPath( contentClass, path ) );
 
         return result;
     }
@@ -321,12 +326,9 @@ public class DefaultTargetRegistry
             getLogger().debug( "Resolving targets for repository='" + repository.getId() + "' for path='" + path + "'" );
         }
 
-        for ( Target t : getRepositoryTargets() )
+        for ( Target t : getTargetMatcherIndex().getTargetsForPath( repository.getRepositoryContentClass(), path ) )
         {
-            if ( t.isPathContained( repository.getRepositoryContentClass(), path ) )
-            {
-                result.addTargetMatch( new TargetMatch( t, repository ) );
-            }
+            result.addTargetMatch( new TargetMatch( t, repository ) );
         }
 
         return result;
@@ -0,0 +1,316 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.target;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.codehaus.plexus.util.StringUtils;
+import org.sonatype.nexus.proxy.registry.ContentClass;
+
+/**
+ * Immutable index of repository target patterns, used to quickly resolve targets matching a path. Patterns are
+ * precompiled and grouped per content class: patterns having a literal prefix (like {@code /org/sonatype/.*}) are
+ * bucketed by the first path segment of it, and are evaluated only against paths in the same bucket starting with that
+ * prefix. The rest of patterns are evaluated one by one. Results are not cached, as matching against the index is cheap
+ * and this is on the (concurrent) authorization path. The index is built from a snapshot of targets, and is simply
+ * discarded and rebuilt when targets change.
+ */
+public class TargetMatcherIndex
+{
+    private final Collection<Target> targets;
+
+    private final Map<String, ContentClassIndex> contentClassIndexes;
+
+    public TargetMatcherIndex( final Collection<Target> targets )
+    {
+        this.targets = Collections.unmodifiableList( new ArrayList<Target>( targets ) );
+        this.contentClassIndexes = new ConcurrentHashMap<String, ContentClassIndex>();
+    }
+
+    /**
+     * Returns the snapshot of targets this index was built from.
+     * 
+     * @return
+     */
+    public Collection<Target> getTargets()
+    {
+        return targets;
+    }
+
+    /**
+     * Returns the targets having patterns matching the path for given content class. Equivalent of invoking
+     * {@link Target#isPathContained(ContentClass, String)} on all targets.
+     * 
+     * @param contentClass
+     * @param path
+     * @return
+     */
+    public List<Target> getTargetsForPath( final ContentClass contentClass, final String path )
+    {
+        return getContentClassIndex( contentClass ).match( path );
+    }
+
+    // ==
+
+    protected ContentClassIndex getContentClassIndex( final ContentClass contentClass )
+    {
+        ContentClassIndex index = contentClassIndexes.get( contentClass.getId() );
+
+        if ( index == null )
+        {
+            // building it twice in case of a race is harmless, the result is the same
+            index = new ContentClassIndex( contentClass, targets );
+
+            contentClassIndexes.put( contentClass.getId(), index );
+        }
+
+        return index;
+    }
+
+    /**
+     * Extracts the literal prefix from a regular expression, that every matching input must start with. Returns empty
+     * string if no such prefix can be determined (ie. pattern starts with a metacharacter or has alternation).
+     * 
+     * @param regex
+     * @return
+     */
+    protected static String getLiteralPrefix( final String regex )
+    {
+        if ( hasTopLevelAlternation( regex ) )
+        {
+            // alternation applies to the prefix too
+            return "";
+        }
+
+        final int start = regex.startsWith( "^" ) ? 1 : 0;
+
+        final StringBuilder prefix = new StringBuilder();
+
+        for ( int i = start; i < regex.length(); i++ )
+        {
+            final char c = regex.charAt( i );
+
+            if ( ".[]()\\^$".indexOf( c ) > -1 )
+            {
+                break;
+            }
+            else if ( "*+?{".indexOf( c ) > -1 )
+            {
+                // quantifier applies to previous char, so it is not part of the prefix
+                if ( prefix.length() > 0 )
+                {
+                    prefix.setLength( prefix.length() - 1 );
+                }
+
+                break;
+            }
+
+            prefix.append( c );
+        }
+
+        return prefix.toString();
+    }
+
+    /**
+     * Returns true if regular expression has an alternation outside of any group, ie. {@code /a/.*|/b/.*}.
+     * 
+     * @param regex
+     * @return
+     */
+    protected static boolean hasTopLevelAlternation( final String regex )
+    {
+        int depth = 0;
+
+        boolean inClass = false;
+
+        for ( int i = 0; i < regex.length(); i++ )
+        {
+            final char c = regex.charAt( i );
+
+            if ( c == '\\' )
+            {
+                // skip the escaped char
+                i++;
+            }
+            else if ( inClass )
+            {
+                inClass = c != ']';
+            }
+            else if ( c == '[' )
+            {
+                inClass = true;
+            }
+            else if ( c == '(' )
+            {
+                depth++;
+            }
+            else if ( c == ')' )
+            {
+                depth--;
+            }
+            else if ( c == '|' && depth <= 0 )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // ==
+
+    /**
+     * The per content class part of the index.
+     */
+    protected static class ContentClassIndex
+    {
+        private final Map<String, List<PatternEntry>> prefixBuckets;
+
+        private final List<PatternEntry> shortPrefixedPatterns;
+
+        private final List<PatternEntry> otherPatterns;
+
+        public ContentClassIndex( final ContentClass contentClass, final Collection<Target> targets )
+        {
+            this.prefixBuckets = new HashMap<String, List<PatternEntry>>();
+
+            this.shortPrefixedPatterns = new ArrayList<PatternEntry>();
+
+            this.otherPatterns = new ArrayList<PatternEntry>();
+
+            for ( Target target : targets )
+            {
+                // same condition as in Target.isPathContained()
+                if ( StringUtils.equals( target.getContentClass().getId(), contentClass.getId() )
+                    || target.getContentClass().isCompatible( contentClass )
+                    || contentClass.isCompatible( target.getContentClass() ) )
+                {
+                    for ( String patternText : target.getPatternTexts() )
+                    {
+                        final PatternEntry entry =
+                            new PatternEntry( target, Pattern.compile( patternText ), getLiteralPrefix( patternText ) );
+
+                        final String bucketKey = getBucketKey( entry.prefix );
+
+                        if ( bucketKey != null )
+                        {
+                            List<PatternEntry> bucket = prefixBuckets.get( bucketKey );
+
+                            if ( bucket == null )
+                            {
+                                bucket = new ArrayList<PatternEntry>();
+
+                                prefixBuckets.put( bucketKey, bucket );
+                            }
+
+                            bucket.add( entry );
+                        }
+                        else if ( entry.prefix.length() > 0 )
+                        {
+                            shortPrefixedPatterns.add( entry );
+                        }
+                        else
+                        {
+                            otherPatterns.add( entry );
+                        }
+                    }
+                }
+            }
+        }
+
+        public List<Target> match( final String path )
+        {
+            final ArrayList<Target> result = new ArrayList<Target>();
+
+            final String bucketKey = getBucketKey( path );
+
+            if ( bucketKey != null )
+            {
+                final List<PatternEntry> bucket = prefixBuckets.get( bucketKey );
+
+                if ( bucket != null )
+                {
+                    match( bucket, path, result );
+                }
+            }
+
+            match( shortPrefixedPatterns, path, result );
+
+            match( otherPatterns, path, result );
+
+            result.trimToSize();
+
+            return Collections.unmodifiableList( result );
+        }
+
+        protected void match( final List<PatternEntry> entries, final String path, final List<Target> result )
+        {
+            for ( PatternEntry entry : entries )
+            {
+                if ( !result.contains( entry.target ) && path.startsWith( entry.prefix )
+                    && entry.pattern.matcher( path ).matches() )
+                {
+                    result.add( entry.target );
+                }
+            }
+        }
+
+        /**
+         * Returns the bucket key, the first path segment of the string (like "/org/"), or {@code null} if the string
+         * does not contain a complete first segment.
+         */
+        protected static String getBucketKey( final String str )
+        {
+            if ( str.length() > 1 && str.charAt( 0 ) == '/' )
+            {
+                final int idx = str.indexOf( '/', 1 );
+
+                if ( idx > 0 )
+                {
+                    return str.substring( 0, idx + 1 );
+                }
+            }
+
+            return null;
+        }
+    }
+
+    protected static class PatternEntry
+    {
+        private final Target target;
+
+        private final Pattern pattern;
+
+        private final String prefix;
+
+        public PatternEntry( final Target target, final Pattern pattern, final String prefix )
+        {
+            this.target = target;
+            this.pattern = pattern;
+            this.prefix = prefix;
+        }
+    }
+}
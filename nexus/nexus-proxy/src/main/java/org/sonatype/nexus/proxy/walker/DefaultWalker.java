@@ -18,7 +18,18 @@
  */
 package org.sonatype.nexus.proxy.walker;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.codehaus.plexus.component.annotations.Component;
 import org.sonatype.nexus.logging.AbstractLoggingComponent;
@@ -31,6 +42,8 @@ import org.sonatype.nexus.proxy.item.StorageCollectionItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.repository.LocalStatus;
 import org.sonatype.nexus.proxy.utils.RepositoryStringUtils;
+import org.sonatype.nexus.threads.NexusThreadFactory;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 import org.sonatype.scheduling.TaskInterruptedException;
 
 /**
@@ -47,6 +60,24 @@ public class DefaultWalker
 
     public static final String WALKER_WALKED_FROM_PATH = Walker.class.getSimpleName() + ".fromPath";
 
+    /**
+     * Key of the walker context entry (an Integer) overriding the parallelism of a single walk.
+     * 
+     * @since 2.0
+     */
+    public static final String WALKER_PARALLELISM = Walker.class.getSimpleName() + ".parallelism";
+
+    /**
+     * Key of system property setting the parallelism of walks: the count of threads (including the one invoking the
+     * walk) walking the subtrees. Parallel walking is opt-in, the default of 1 walks on invoking thread only. Walks are
+     * parallel only if all their active processors are {@link ParallelWalkerProcessor}s.
+     * 
+     * @since 2.0
+     */
+    public static final String PARALLELISM_KEY = "nexus.walker.parallelism";
+
+    private static final int DEFAULT_PARALLELISM = SystemPropertiesHelper.getInteger( PARALLELISM_KEY, 1 );
+
     public void walk( WalkerContext context )
         throws WalkerException
     {
@@ -98,7 +129,16 @@ public class DefaultWalker
                         WalkerFilter filter =
                             context.getFilter() != null ? context.getFilter() : new DefaultStoreWalkerFilter();
 
-                        collCount = walkRecursive( 0, context, filter, (StorageCollectionItem) item );
+                        final int parallelism = getParallelism( context );
+
+                        if ( parallelism > 1 )
+                        {
+                            collCount = walkParallel( parallelism, context, filter, (StorageCollectionItem) item );
+                        }
+                        else
+                        {
+                            collCount = walkRecursive( 0, context, filter, (StorageCollectionItem) item );
+                        }
 
                         context.getContext().put( WALKER_WALKED_COLLECTION_COUNT, collCount );
                     }
@@ -186,6 +226,77 @@ public class DefaultWalker
     protected final int walkRecursive( int collCount, WalkerContext context, WalkerFilter filter,
                                        StorageCollectionItem coll )
         throws AccessDeniedException, IllegalOperationException, ItemNotFoundException, StorageException
+    {
+        return walkRecursive( collCount, context, filter, coll, context.getProcessors(), null );
+    }
+
+    /**
+     * Returns the parallelism to be used for walk: 1 unless parallel walks are enabled (globally or for this walk) and
+     * all the active processors are able to walk in parallel.
+     */
+    protected int getParallelism( WalkerContext context )
+    {
+        int parallelism = DEFAULT_PARALLELISM;
+
+        if ( context.getContext().get( WALKER_PARALLELISM ) instanceof Integer )
+        {
+            parallelism = (Integer) context.getContext().get( WALKER_PARALLELISM );
+        }
+
+        if ( parallelism > 1 )
+        {
+            for ( WalkerProcessor processor : context.getProcessors() )
+            {
+                if ( processor.isActive() && !( processor instanceof ParallelWalkerProcessor ) )
+                {
+                    if ( getLogger().isDebugEnabled() )
+                    {
+                        getLogger().debug(
+                            "Processor " + processor.getClass().getName()
+                                + " cannot walk in parallel, walking sequentially on repository "
+                                + context.getRepository().getId() );
+                    }
+
+                    return 1;
+                }
+            }
+        }
+
+        return parallelism;
+    }
+
+    protected final int walkParallel( int parallelism, WalkerContext context, WalkerFilter filter,
+                                      StorageCollectionItem coll )
+        throws AccessDeniedException, IllegalOperationException, ItemNotFoundException, StorageException
+    {
+        final ParallelWalk parallelWalk = new ParallelWalk( parallelism );
+
+        boolean completed = false;
+
+        try
+        {
+            final int collCount = walkRecursive( 0, context, filter, coll, context.getProcessors(), parallelWalk );
+
+            completed = true;
+
+            return collCount;
+        }
+        finally
+        {
+            if ( !completed && !context.isStopped() )
+            {
+                // make subtree walks bail out, the cause will be set by caller
+                context.stop( null );
+            }
+
+            parallelWalk.shutdown();
+        }
+    }
+
+    private int walkRecursive( int collCount, WalkerContext context, WalkerFilter filter,
+                               StorageCollectionItem coll, List<WalkerProcessor> processors,
+                               ParallelWalk parallelWalk )
+        throws AccessDeniedException, IllegalOperationException, ItemNotFoundException, StorageException
     {
         if ( context.isStopped() )
         {
@@ -204,7 +315,7 @@ public class DefaultWalker
         // user may call stop()
         if ( shouldProcess )
         {
-            onCollectionEnter( context, coll );
+            onCollectionEnter( context, coll, processors );
 
             collCount++;
         }
@@ -217,7 +328,7 @@ public class DefaultWalker
         // user may call stop()
         if ( shouldProcess )
         {
-            processItem( context, coll );
+            processItem( context, coll, processors );
         }
 
         if ( context.isStopped() )
@@ -227,6 +338,8 @@ public class DefaultWalker
 
         Collection<StorageItem> ls = null;
 
+        List<SubtreeWalk> subtreeWalks = null;
+
         if ( shouldProcessRecursively )
         {
             ls = context.getRepository().list( false, coll );
@@ -238,7 +351,7 @@ public class DefaultWalker
                     if ( filter.shouldProcess( context, i ) )
                     {
                         // user may call stop()
-                        processItem( context, i );
+                        processItem( context, i, processors );
                     }
 
                     if ( context.isStopped() )
@@ -249,8 +362,29 @@ public class DefaultWalker
 
                 if ( StorageCollectionItem.class.isAssignableFrom( i.getClass() ) )
                 {
-                    // user may call stop()
-                    collCount = walkRecursive( collCount, context, filter, (StorageCollectionItem) i );
+                    if ( parallelWalk != null && parallelWalk.tryFork() )
+                    {
+                        // there is an idle thread, let it walk this subtree
+                        final SubtreeWalk subtreeWalk =
+                            new SubtreeWalk( context, filter, (StorageCollectionItem) i,
+                                forkProcessors( context, processors ), parallelWalk );
+
+                        parallelWalk.execute( subtreeWalk );
+
+                        if ( subtreeWalks == null )
+                        {
+                            subtreeWalks = new ArrayList<SubtreeWalk>();
+                        }
+
+                        subtreeWalks.add( subtreeWalk );
+                    }
+                    else
+                    {
+                        // user may call stop()
+                        collCount =
+                            walkRecursive( collCount, context, filter, (StorageCollectionItem) i, processors,
+                                parallelWalk );
+                    }
 
                     if ( context.isStopped() )
                     {
@@ -260,10 +394,31 @@ public class DefaultWalker
             }
         }
 
+        if ( subtreeWalks != null )
+        {
+            // subtrees must be done before we exit the collection
+            for ( SubtreeWalk subtreeWalk : subtreeWalks )
+            {
+                collCount += subtreeWalk.join( context );
+
+                if ( context.isStopped() )
+                {
+                    return collCount;
+                }
+
+                joinProcessors( context, processors, subtreeWalk.getProcessors() );
+
+                if ( context.isStopped() )
+                {
+                    return collCount;
+                }
+            }
+        }
+
         // user may call stop()
         if ( shouldProcess )
         {
-            onCollectionExit( context, coll );
+            onCollectionExit( context, coll, processors );
         }
 
         return collCount;
@@ -293,10 +448,15 @@ public class DefaultWalker
     }
 
     protected void onCollectionEnter( WalkerContext context, StorageCollectionItem coll )
+    {
+        onCollectionEnter( context, coll, context.getProcessors() );
+    }
+
+    private void onCollectionEnter( WalkerContext context, StorageCollectionItem coll, List<WalkerProcessor> processors )
     {
         try
         {
-            for ( WalkerProcessor processor : context.getProcessors() )
+            for ( WalkerProcessor processor : processors )
             {
                 if ( processor.isActive() )
                 {
@@ -316,10 +476,15 @@ public class DefaultWalker
     }
 
     protected void processItem( WalkerContext context, StorageItem item )
+    {
+        processItem( context, item, context.getProcessors() );
+    }
+
+    private void processItem( WalkerContext context, StorageItem item, List<WalkerProcessor> processors )
     {
         try
         {
-            for ( WalkerProcessor processor : context.getProcessors() )
+            for ( WalkerProcessor processor : processors )
             {
                 if ( processor.isActive() )
                 {
@@ -339,10 +504,15 @@ public class DefaultWalker
     }
 
     protected void onCollectionExit( WalkerContext context, StorageCollectionItem coll )
+    {
+        onCollectionExit( context, coll, context.getProcessors() );
+    }
+
+    private void onCollectionExit( WalkerContext context, StorageCollectionItem coll, List<WalkerProcessor> processors )
     {
         try
         {
-            for ( WalkerProcessor processor : context.getProcessors() )
+            for ( WalkerProcessor processor : processors )
             {
                 if ( processor.isActive() )
                 {
@@ -384,4 +554,203 @@ public class DefaultWalker
         }
     }
 
+    private List<WalkerProcessor> forkProcessors( WalkerContext context, List<WalkerProcessor> processors )
+    {
+        final ArrayList<WalkerProcessor> forks = new ArrayList<WalkerProcessor>( processors.size() );
+
+        try
+        {
+            for ( WalkerProcessor processor : processors )
+            {
+                if ( processor.isActive() && processor instanceof ParallelWalkerProcessor )
+                {
+                    forks.add( ( (ParallelWalkerProcessor) processor ).fork( context ) );
+                }
+                else
+                {
+                    // inactive, will not be invoked
+                    forks.add( processor );
+                }
+            }
+        }
+        catch ( Exception e )
+        {
+            context.stop( e );
+        }
+
+        return forks;
+    }
+
+    private void joinProcessors( WalkerContext context, List<WalkerProcessor> processors, List<WalkerProcessor> forks )
+    {
+        try
+        {
+            for ( int i = 0; i < processors.size(); i++ )
+            {
+                if ( processors.get( i ) != forks.get( i ) )
+                {
+                    ( (ParallelWalkerProcessor) processors.get( i ) ).join( context,
+                        (ParallelWalkerProcessor) forks.get( i ) );
+                }
+            }
+        }
+        catch ( Exception e )
+        {
+            context.stop( e );
+        }
+    }
+
+    // ==
+
+    /**
+     * The state of one parallel walk: the threads walking subtrees, and the count of subtree walks in flight, that is
+     * kept below parallelism. Subtrees are handed over to other threads only when there is an idle one, otherwise the
+     * walking thread walks them itself.
+     */
+    private static class ParallelWalk
+    {
+        private final int maxSubtreeWalks;
+
+        private final AtomicInteger subtreeWalks;
+
+        private final ExecutorService executorService;
+
+        public ParallelWalk( final int parallelism )
+        {
+            // the invoking thread walks too
+            this.maxSubtreeWalks = parallelism - 1;
+
+            this.subtreeWalks = new AtomicInteger( 0 );
+
+            this.executorService =
+                new ThreadPoolExecutor( maxSubtreeWalks, maxSubtreeWalks, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new NexusThreadFactory( "walker", "Walker TPool" ) );
+        }
+
+        public boolean tryFork()
+        {
+            while ( true )
+            {
+                final int current = subtreeWalks.get();
+
+                if ( current >= maxSubtreeWalks )
+                {
+                    return false;
+                }
+
+                if ( subtreeWalks.compareAndSet( current, current + 1 ) )
+                {
+                    return true;
+                }
+            }
+        }
+
+        public void forkDone()
+        {
+            subtreeWalks.decrementAndGet();
+        }
+
+        public void execute( final Runnable runnable )
+        {
+            executorService.execute( runnable );
+        }
+
+        public void shutdown()
+        {
+            // not interrupting, subtree walks bail out when they see walk is done or stopped
+            executorService.shutdown();
+
+            try
+            {
+                executorService.awaitTermination( 1L, TimeUnit.MINUTES );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Walk of a subtree, with it's own processor forks.
+     */
+    private class SubtreeWalk
+        extends FutureTask<Integer>
+    {
+        private final List<WalkerProcessor> processors;
+
+        public SubtreeWalk( final WalkerContext context, final WalkerFilter filter, final StorageCollectionItem coll,
+                            final List<WalkerProcessor> processors, final ParallelWalk parallelWalk )
+        {
+            super( new Callable<Integer>()
+            {
+                @Override
+                public Integer call()
+                {
+                    try
+                    {
+                        return walkRecursive( 0, context, filter, coll, processors, parallelWalk );
+                    }
+                    catch ( Exception e )
+                    {
+                        context.stop( e );
+
+                        return 0;
+                    }
+                    finally
+                    {
+                        parallelWalk.forkDone();
+                    }
+                }
+            } );
+
+            this.processors = processors;
+        }
+
+        public List<WalkerProcessor> getProcessors()
+        {
+            return processors;
+        }
+
+        /**
+         * Waits for this subtree walk to finish, and returns the count of walked collections. If no thread started it
+         * yet, it is walked by the calling thread.
+         */
+        public int join( final WalkerContext context )
+        {
+            // no-op if already started by other thread
+            run();
+
+            while ( true )
+            {
+                try
+                {
+                    return get( 1L, TimeUnit.SECONDS );
+                }
+                catch ( TimeoutException e )
+                {
+                    // this also checks for task cancellation, when invoked on the thread running the task
+                    if ( context.isStopped() )
+                    {
+                        return 0;
+                    }
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+
+                    context.stop( e );
+
+                    return 0;
+                }
+                catch ( ExecutionException e )
+                {
+                    context.stop( e.getCause() );
+
+                    return 0;
+                }
+            }
+        }
+    }
+
 }
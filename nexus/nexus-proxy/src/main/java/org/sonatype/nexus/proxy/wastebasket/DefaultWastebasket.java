@@ -20,32 +20,70 @@ package org.sonatype.nexus.proxy.wastebasket;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Initializable;
 import org.sonatype.nexus.configuration.application.ApplicationConfiguration;
 import org.sonatype.nexus.logging.Slf4jPlexusLogger;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.events.RepositoryRegistryEventRemove;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.StorageCollectionItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.registry.RepositoryRegistry;
 import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.proxy.storage.local.LocalRepositoryStorage;
+import org.sonatype.nexus.proxy.walker.AbstractWalkerProcessor;
 import org.sonatype.nexus.proxy.walker.AffirmativeStoreWalkerFilter;
 import org.sonatype.nexus.proxy.walker.DefaultWalkerContext;
 import org.sonatype.nexus.proxy.walker.Walker;
+import org.sonatype.nexus.proxy.walker.WalkerContext;
+import org.sonatype.nexus.proxy.walker.WalkerException;
+import org.sonatype.nexus.threads.NexusThreadFactory;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
+import org.sonatype.plexus.appevents.ApplicationEventMulticaster;
+import org.sonatype.plexus.appevents.Event;
+import org.sonatype.plexus.appevents.EventListener;
 
 @Component( role = Wastebasket.class )
 public class DefaultWastebasket
-    implements SmartWastebasket
+    implements SmartWastebasket, EventListener, Initializable, Disposable
 {
     private static final String TRASH_PATH_PREFIX = "/.nexus/trash";
 
     private static final long ALL = -1L;
 
+    /**
+     * Key of system property setting the maximum size of wastebasket of a repository, in bytes. When exceeded, the
+     * items that are longest in the wastebasket are purged. Default is -1 (no limit).
+     * 
+     * @since 2.0
+     */
+    public static final String MAXIMUM_SIZE_KEY = "nexus.wastebasket.maximumSize";
+
+    private static final long MAXIMUM_SIZE = SystemPropertiesHelper.getLong( MAXIMUM_SIZE_KEY, -1L );
+
+    /**
+     * The key of working directory subpath where the wastebasket journals are kept.
+     */
+    private static final String JOURNAL_DIRECTORY_KEY = "wastebasket";
+
     private Logger logger = Slf4jPlexusLogger.getPlexusLogger( getClass() );
 
     protected Logger getLogger()
@@ -85,8 +123,24 @@ public class DefaultWastebasket
 
     // ==
 
+    @Requirement
+    private ApplicationEventMulticaster applicationEventMulticaster;
+
+    // ==
+
     private DeleteOperation deleteOperation = DeleteOperation.MOVE_TO_TRASH;
 
+    private volatile MaximumSizeConstraint maximumSizeConstraint =
+        MAXIMUM_SIZE > 0 ? new AbsoluteMaximumSizeConstraint( MAXIMUM_SIZE ) : null;
+
+    private final ConcurrentMap<String, WastebasketJournal> journals =
+        new ConcurrentHashMap<String, WastebasketJournal>();
+
+    private final Set<String> pendingEvictions = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+
+    private final ExecutorService evictionExecutor = Executors.newSingleThreadExecutor( new NexusThreadFactory(
+        "nxwastebasket", "Wastebasket Eviction" ) );
+
     // ==============================
     // Wastebasket iface
 
@@ -102,7 +156,7 @@ public class DefaultWastebasket
 
     public Long getTotalSize()
     {
-        Long totalSize = null;
+        long totalSize = 0;
 
         for ( Repository repository : getRepositoryRegistry().getRepositories() )
         {
@@ -113,7 +167,7 @@ public class DefaultWastebasket
                 totalSize += repoWBSize;
             }
         }
-        
+
         return totalSize;
     }
 
@@ -147,7 +201,20 @@ public class DefaultWastebasket
 
     public Long getSize( final Repository repository )
     {
-        return null;
+        try
+        {
+            final WastebasketJournal journal = getJournal( repository );
+
+            measureJournal( repository, journal );
+
+            return journal.getSize();
+        }
+        catch ( IOException e )
+        {
+            getLogger().warn( "Cannot read the wastebasket journal of repository " + repository.getId(), e );
+
+            return null;
+        }
     }
 
     public void purge( final Repository repository )
@@ -176,6 +243,8 @@ public class DefaultWastebasket
             {
                 // silent?
             }
+
+            getJournal( repository ).clear();
         }
         else
         {
@@ -186,6 +255,9 @@ public class DefaultWastebasket
 
                 req.setRequestLocalOnly( true );
 
+                // purge needs only the timestamps of the trashed items, do not load their attributes
+                req.setRequestLightweightListing( true );
+
                 DefaultWalkerContext ctx =
                     new DefaultWalkerContext( repository, req, new AffirmativeStoreWalkerFilter() );
 
@@ -193,6 +265,8 @@ public class DefaultWastebasket
 
                 getWalker().walk( ctx );
             }
+
+            reconcileJournal( repository, getJournal( repository ) );
         }
     }
 
@@ -224,6 +298,9 @@ public class DefaultWastebasket
                     new ResourceStoreRequest( getTrashPath( repository, request.getRequestPath() ) );
 
                 ls.moveItem( repository, request, trashed );
+
+                // the trashed item may be merged with what is already in the trash, it is measured when needed
+                trashed( repository, trashed.getRequestPath() );
             }
 
             ls.shredItem( repository, request );
@@ -254,6 +331,8 @@ public class DefaultWastebasket
             {
                 ls.moveItem( repository, trashed, untrashed );
 
+                untrashed( repository, trashed.getRequestPath() );
+
                 return true;
             }
         }
@@ -275,12 +354,326 @@ public class DefaultWastebasket
 
     public void setMaximumSizeConstraint( MaximumSizeConstraint constraint )
     {
-        // TODO Auto-generated method stub
+        this.maximumSizeConstraint = constraint;
+    }
+
+    // ==============================
+    // Initializable/Disposable iface
+
+    @Override
+    public void initialize()
+    {
+        applicationEventMulticaster.addEventListener( this );
+    }
+
+    @Override
+    public void dispose()
+    {
+        applicationEventMulticaster.removeEventListener( this );
+
+        evictionExecutor.shutdownNow();
+
+        for ( WastebasketJournal journal : journals.values() )
+        {
+            journal.close();
+        }
+
+        journals.clear();
+    }
+
+    // ==============================
+    // EventListener iface
+
+    @Override
+    public void onEvent( final Event<?> evt )
+    {
+        if ( evt instanceof RepositoryRegistryEventRemove )
+        {
+            final Repository repository = ( (RepositoryRegistryEventRemove) evt ).getRepository();
+
+            WastebasketJournal journal = journals.remove( repository.getId() );
 
+            if ( journal == null )
+            {
+                // not used since startup
+                journal = new WastebasketJournal( getJournalFile( repository ) );
+            }
+
+            try
+            {
+                // trash is not preserved
+                journal.delete();
+            }
+            catch ( IOException e )
+            {
+                getLogger().warn(
+                    "Cannot delete the wastebasket journal " + journal.getJournalFile().getAbsolutePath(), e );
+            }
+        }
     }
 
     // ==
 
+    /**
+     * Returns the opened journal of repository wastebasket. If journal does not exists yet (ie. on upgrade), it is
+     * created by walking the existing trash once.
+     */
+    protected WastebasketJournal getJournal( final Repository repository )
+        throws IOException
+    {
+        WastebasketJournal journal = journals.get( repository.getId() );
+
+        if ( journal == null )
+        {
+            final WastebasketJournal newJournal = new WastebasketJournal( getJournalFile( repository ) );
+
+            journal = journals.putIfAbsent( repository.getId(), newJournal );
+
+            if ( journal == null )
+            {
+                journal = newJournal;
+            }
+        }
+
+        synchronized ( journal )
+        {
+            if ( !journal.isOpen() && !journal.open() )
+            {
+                seedJournal( repository, journal );
+            }
+        }
+
+        return journal;
+    }
+
+    protected File getJournalFile( final Repository repository )
+    {
+        return new File( getApplicationConfiguration().getWorkingDirectory( JOURNAL_DIRECTORY_KEY ),
+            repository.getId() + ".journal" );
+    }
+
+    /**
+     * Records the items already present in the trash of repository into the journal, oldest first.
+     */
+    protected void seedJournal( final Repository repository, final WastebasketJournal journal )
+    {
+        final List<StorageFileItem> trashedFiles = new ArrayList<StorageFileItem>();
+
+        ResourceStoreRequest req = new ResourceStoreRequest( getTrashPath( repository, RepositoryItemUid.PATH_ROOT ) );
+
+        try
+        {
+            if ( repository.getLocalStorage().containsItem( repository, req ) )
+            {
+                req.setRequestGroupLocalOnly( true );
+
+                req.setRequestLocalOnly( true );
+
+                // seeding needs only the sizes and timestamps of the trashed items, do not load their attributes
+                req.setRequestLightweightListing( true );
+
+                DefaultWalkerContext ctx =
+                    new DefaultWalkerContext( repository, req, new AffirmativeStoreWalkerFilter() );
+
+                ctx.getProcessors().add( new AbstractWalkerProcessor()
+                {
+                    @Override
+                    public void processItem( WalkerContext context, StorageItem item )
+                        throws Exception
+                    {
+                        if ( item instanceof StorageFileItem )
+                        {
+                            trashedFiles.add( (StorageFileItem) item );
+                        }
+                    }
+                } );
+
+                getWalker().walk( ctx );
+            }
+
+            Collections.sort( trashedFiles, new Comparator<StorageFileItem>()
+            {
+                @Override
+                public int compare( final StorageFileItem o1, final StorageFileItem o2 )
+                {
+                    return o1.getModified() < o2.getModified() ? -1 : ( o1.getModified() == o2.getModified() ? 0 : 1 );
+                }
+            } );
+
+            for ( StorageFileItem item : trashedFiles )
+            {
+                journal.add( item.getPath(), Math.max( 0, item.getLength() ), item.getModified() );
+            }
+        }
+        catch ( IOException e )
+        {
+            getLogger().warn( "Cannot record the trash of repository " + repository.getId(), e );
+        }
+        catch ( WalkerException e )
+        {
+            getLogger().warn( "Cannot record the trash of repository " + repository.getId(), e );
+        }
+    }
+
+    /**
+     * Measures the trashed items recorded with unknown size. This is done lazily (when wastebasket size is needed),
+     * and not when item is trashed, to not slow down deletion and to account for merged trash content.
+     */
+    protected void measureJournal( final Repository repository, final WastebasketJournal journal )
+        throws IOException
+    {
+        for ( WastebasketJournal.Entry entry : journal.getUnsizedEntries() )
+        {
+            journal.setSize( entry, getTrashedSize( repository, entry.getPath() ) );
+        }
+    }
+
+    /**
+     * Removes the entries of items not in the trash anymore, and has the rest measured again.
+     */
+    protected void reconcileJournal( final Repository repository, final WastebasketJournal journal )
+        throws IOException
+    {
+        for ( WastebasketJournal.Entry entry : journal.getEntries() )
+        {
+            if ( repository.getLocalStorage().containsItem( repository,
+                new ResourceStoreRequest( entry.getPath(), true ) ) )
+            {
+                journal.setSize( entry, WastebasketJournal.UNKNOWN_SIZE );
+            }
+            else
+            {
+                journal.remove( entry );
+            }
+        }
+    }
+
+    protected long getTrashedSize( final Repository repository, final String path )
+        throws LocalStorageException
+    {
+        ResourceStoreRequest req = new ResourceStoreRequest( path, true );
+
+        req.setRequestLightweightListing( true );
+
+        long size = 0;
+
+        try
+        {
+            // lists the file itself if path is a file
+            for ( StorageItem item : repository.getLocalStorage().listItems( repository, req ) )
+            {
+                if ( item instanceof StorageFileItem )
+                {
+                    size += Math.max( 0, ( (StorageFileItem) item ).getLength() );
+                }
+                else if ( item instanceof StorageCollectionItem )
+                {
+                    size += getTrashedSize( repository, item.getPath() );
+                }
+            }
+        }
+        catch ( ItemNotFoundException e )
+        {
+            // gone meanwhile
+        }
+
+        return size;
+    }
+
+    protected void trashed( final Repository repository, final String path )
+    {
+        try
+        {
+            getJournal( repository ).add( path, WastebasketJournal.UNKNOWN_SIZE, System.currentTimeMillis() );
+        }
+        catch ( IOException e )
+        {
+            getLogger().warn( "Cannot record trashed item " + path + " of repository " + repository.getId(), e );
+        }
+
+        final MaximumSizeConstraint constraint = maximumSizeConstraint;
+
+        if ( constraint != null && pendingEvictions.add( repository.getId() ) )
+        {
+            evictionExecutor.execute( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    // items trashed from now on schedule another eviction
+                    pendingEvictions.remove( repository.getId() );
+
+                    evict( repository, constraint );
+                }
+            } );
+        }
+    }
+
+    protected void untrashed( final Repository repository, final String path )
+    {
+        try
+        {
+            getJournal( repository ).remove( path );
+        }
+        catch ( IOException e )
+        {
+            getLogger().warn( "Cannot record untrashed item " + path + " of repository " + repository.getId(), e );
+        }
+    }
+
+    /**
+     * Purges the items that are longest in the wastebasket (FIFO), until the constraint is satisfied.
+     */
+    protected void evict( final Repository repository, final MaximumSizeConstraint constraint )
+    {
+        if ( !getRepositoryRegistry().repositoryIdExists( repository.getId() ) )
+        {
+            // removed meanwhile
+            return;
+        }
+
+        try
+        {
+            final WastebasketJournal journal = getJournal( repository );
+
+            while ( constraint.isOverMaximum( this, repository ) )
+            {
+                final WastebasketJournal.Entry oldest = journal.getOldest();
+
+                if ( oldest == null )
+                {
+                    break;
+                }
+
+                shredTrashed( repository, journal, oldest );
+            }
+        }
+        catch ( IOException e )
+        {
+            getLogger().warn( "Cannot evict the wastebasket of repository " + repository.getId(), e );
+        }
+    }
+
+    protected void shredTrashed( final Repository repository, final WastebasketJournal journal,
+                                 final WastebasketJournal.Entry entry )
+        throws IOException
+    {
+        try
+        {
+            repository.getLocalStorage().shredItem( repository, new ResourceStoreRequest( entry.getPath(), true ) );
+        }
+        catch ( ItemNotFoundException e )
+        {
+            // silent
+        }
+        catch ( UnsupportedStorageOperationException e )
+        {
+            // silent?
+        }
+
+        journal.remove( entry );
+    }
+
     protected String getTrashPath( final Repository repository, final String path )
     {
         if ( path.startsWith( TRASH_PATH_PREFIX ) )
@@ -0,0 +1,622 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.wastebasket;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Append-only journal of items moved into the wastebasket of one repository. It records path, time and (once known)
+ * size of every trashed item, and keeps them in memory in the order they were trashed, making wastebasket size queries
+ * and FIFO eviction possible without walking the whole trash. The journal file is rewritten (compacted) when it
+ * accumulates too many records of already removed items. The compacted file is written aside and swapped in, keeping
+ * the previous journal file as backup until the swap is done, so a crash while compacting never loses the journal.
+ * <p>
+ * Entries never nest: as trashed collections are merged with what is already in the trash on same path, a collection
+ * absorbs the entries recorded below it, while an item trashed into an already recorded collection refreshes the entry
+ * of that collection (moving it to the end, and making its size unknown), so evicting an entry never removes items
+ * trashed after it.
+ * 
+ * @since 2.0
+ */
+public class WastebasketJournal
+{
+    /**
+     * Size of entries not measured yet.
+     */
+    public static final long UNKNOWN_SIZE = -1L;
+
+    private static final String ADDED = "+";
+
+    private static final String REMOVED = "-";
+
+    private static final String SIZED = "=";
+
+    private static final String SEPARATOR = "\t";
+
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    private final File journalFile;
+
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final TreeMap<String, Entry> entriesByPath;
+
+    private long size;
+
+    private int records;
+
+    private Writer writer;
+
+    public WastebasketJournal( final File journalFile )
+    {
+        this.journalFile = journalFile;
+        this.entries = new LinkedHashMap<String, Entry>();
+        this.entriesByPath = new TreeMap<String, Entry>();
+    }
+
+    public File getJournalFile()
+    {
+        return journalFile;
+    }
+
+    public synchronized boolean isOpen()
+    {
+        return writer != null;
+    }
+
+    /**
+     * Opens the journal, replaying the records of journal file if it exists.
+     * 
+     * @return {@code true} if journal file existed, {@code false} if it was created.
+     * @throws IOException
+     */
+    public synchronized boolean open()
+        throws IOException
+    {
+        if ( isOpen() )
+        {
+            return true;
+        }
+
+        recoverBackup();
+
+        final boolean existed = journalFile.isFile();
+
+        entries.clear();
+        entriesByPath.clear();
+        size = 0;
+        records = 0;
+
+        if ( existed )
+        {
+            replay();
+        }
+        else
+        {
+            journalFile.getParentFile().mkdirs();
+        }
+
+        writer = openWriter( journalFile, true );
+
+        if ( needsCompaction() )
+        {
+            compact();
+        }
+
+        return existed;
+    }
+
+    public synchronized void close()
+    {
+        IOUtil.close( writer );
+
+        writer = null;
+    }
+
+    /**
+     * Closes the journal and deletes the journal file.
+     * 
+     * @throws IOException
+     */
+    public synchronized void delete()
+        throws IOException
+    {
+        close();
+
+        entries.clear();
+        entriesByPath.clear();
+        size = 0;
+        records = 0;
+
+        getBackupFile().delete();
+
+        if ( !journalFile.delete() && journalFile.exists() )
+        {
+            throw new IOException( "Cannot delete wastebasket journal " + journalFile.getAbsolutePath() );
+        }
+    }
+
+    /**
+     * Records an item moved into the wastebasket. If an item on same path was already recorded, it is replaced. If
+     * the item was moved into an already recorded collection, that collection is recorded again instead.
+     * 
+     * @param path the path of item in the wastebasket
+     * @param itemSize the size of item in bytes (if collection, the sum of sizes of files it contains), or
+     *            {@link #UNKNOWN_SIZE} if not known
+     * @param time the time item was moved into the wastebasket
+     * @throws IOException
+     */
+    public synchronized void add( final String path, final long itemSize, final long time )
+        throws IOException
+    {
+        final Entry entry = doAdd( path, itemSize, time );
+
+        append( ADDED + SEPARATOR + time + SEPARATOR + entry.getSize() + SEPARATOR + entry.getPath() );
+    }
+
+    /**
+     * Records the measured size of entry. Nothing is recorded if entry was replaced or removed meanwhile.
+     * 
+     * @param entry the entry, as returned by this journal
+     * @param itemSize the size of item in bytes, or {@link #UNKNOWN_SIZE} to have it measured again
+     * @return {@code true} if size was recorded.
+     * @throws IOException
+     */
+    public synchronized boolean setSize( final Entry entry, final long itemSize )
+        throws IOException
+    {
+        if ( entries.get( entry.getPath() ) != entry )
+        {
+            return false;
+        }
+
+        doSetSize( entry.getPath(), itemSize );
+
+        append( SIZED + SEPARATOR + itemSize + SEPARATOR + entry.getPath() );
+
+        return true;
+    }
+
+    /**
+     * Records removal of an item from the wastebasket. The items recorded below it are removed too, while the
+     * recorded collection containing it (if any) gets its size to be measured again.
+     * 
+     * @param path the path of item in the wastebasket
+     * @return the removed entry or {@code null} if nothing was recorded on the path.
+     * @throws IOException
+     */
+    public synchronized Entry remove( final String path )
+        throws IOException
+    {
+        final Entry entry = entries.get( path );
+
+        if ( entry == null )
+        {
+            final Entry collection = getCollectionEntry( path );
+
+            if ( collection != null )
+            {
+                setSize( collection, UNKNOWN_SIZE );
+            }
+        }
+
+        if ( doRemove( path ) )
+        {
+            append( REMOVED + SEPARATOR + path );
+        }
+
+        return entry;
+    }
+
+    /**
+     * Records removal of the entry. Nothing is recorded if entry was replaced or removed meanwhile.
+     * 
+     * @param entry the entry, as returned by this journal
+     * @return {@code true} if entry was removed.
+     * @throws IOException
+     */
+    public synchronized boolean remove( final Entry entry )
+        throws IOException
+    {
+        if ( entries.get( entry.getPath() ) != entry )
+        {
+            return false;
+        }
+
+        remove( entry.getPath() );
+
+        return true;
+    }
+
+    /**
+     * Removes all the records, truncating the journal file.
+     * 
+     * @throws IOException
+     */
+    public synchronized void clear()
+        throws IOException
+    {
+        entries.clear();
+        entriesByPath.clear();
+        size = 0;
+
+        compact();
+    }
+
+    /**
+     * Returns the entry of item that is longest in the wastebasket, or {@code null} if journal is empty.
+     */
+    public synchronized Entry getOldest()
+    {
+        final Iterator<Entry> iterator = entries.values().iterator();
+
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * Returns all the entries, in the order they were moved into the wastebasket.
+     */
+    public synchronized List<Entry> getEntries()
+    {
+        return new ArrayList<Entry>( entries.values() );
+    }
+
+    /**
+     * Returns the entries which size is not known yet.
+     */
+    public synchronized List<Entry> getUnsizedEntries()
+    {
+        final ArrayList<Entry> result = new ArrayList<Entry>();
+
+        for ( Entry entry : entries.values() )
+        {
+            if ( !entry.isSized() )
+            {
+                result.add( entry );
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the sum of known sizes of recorded items, in bytes.
+     */
+    public synchronized long getSize()
+    {
+        return size;
+    }
+
+    public synchronized int getEntryCount()
+    {
+        return entries.size();
+    }
+
+    // ==
+
+    protected Entry doAdd( final String path, final long itemSize, final long time )
+    {
+        final Entry collection = getCollectionEntry( path );
+
+        final Entry entry;
+
+        if ( collection != null )
+        {
+            // item merged into collection, that is now as old as the item
+            entry = new Entry( collection.getPath(), UNKNOWN_SIZE, time );
+        }
+        else
+        {
+            entry = new Entry( path, itemSize, time );
+        }
+
+        // remove it (and all it absorbed) first, to have it moved to the end
+        doRemove( entry.getPath() );
+
+        entries.put( entry.getPath(), entry );
+        entriesByPath.put( entry.getPath(), entry );
+
+        size += Math.max( 0, entry.getSize() );
+
+        return entry;
+    }
+
+    protected void doSetSize( final String path, final long itemSize )
+    {
+        final Entry entry = entries.get( path );
+
+        if ( entry != null )
+        {
+            final Entry sized = new Entry( path, itemSize, entry.getTime() );
+
+            // keeps the order
+            entries.put( path, sized );
+            entriesByPath.put( path, sized );
+
+            size += Math.max( 0, sized.getSize() ) - Math.max( 0, entry.getSize() );
+        }
+    }
+
+    protected boolean doRemove( final String path )
+    {
+        boolean removed = false;
+
+        final Entry entry = entries.remove( path );
+
+        if ( entry != null )
+        {
+            entriesByPath.remove( path );
+
+            size -= Math.max( 0, entry.getSize() );
+
+            removed = true;
+        }
+
+        // the paths below, that sort between "path/" and "path0"
+        for ( Iterator<Entry> iterator = entriesByPath.subMap( path + "/", path + "0" ).values().iterator(); iterator
+            .hasNext(); )
+        {
+            final Entry child = iterator.next();
+
+            entries.remove( child.getPath() );
+
+            size -= Math.max( 0, child.getSize() );
+
+            iterator.remove();
+
+            removed = true;
+        }
+
+        return removed;
+    }
+
+    /**
+     * Returns the entry of a collection containing the path, or {@code null} if there is none.
+     */
+    protected Entry getCollectionEntry( final String path )
+    {
+        for ( int idx = path.lastIndexOf( '/' ); idx > 0; idx = path.lastIndexOf( '/', idx - 1 ) )
+        {
+            final Entry entry = entries.get( path.substring( 0, idx ) );
+
+            if ( entry != null )
+            {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+    protected void replay()
+        throws IOException
+    {
+        final BufferedReader reader =
+            new BufferedReader( new InputStreamReader( new FileInputStream( journalFile ), "UTF-8" ) );
+
+        try
+        {
+            String line;
+
+            while ( ( line = reader.readLine() ) != null )
+            {
+                records++;
+
+                try
+                {
+                    if ( line.startsWith( ADDED + SEPARATOR ) )
+                    {
+                        final String[] record = line.split( SEPARATOR, 4 );
+
+                        if ( record.length == 4 )
+                        {
+                            doAdd( record[3], Long.parseLong( record[2] ), Long.parseLong( record[1] ) );
+                        }
+                    }
+                    else if ( line.startsWith( SIZED + SEPARATOR ) )
+                    {
+                        final String[] record = line.split( SEPARATOR, 3 );
+
+                        if ( record.length == 3 )
+                        {
+                            doSetSize( record[2], Long.parseLong( record[1] ) );
+                        }
+                    }
+                    else if ( line.startsWith( REMOVED + SEPARATOR ) )
+                    {
+                        doRemove( line.substring( 2 ) );
+                    }
+                }
+                catch ( NumberFormatException e )
+                {
+                    // torn record, skip it
+                }
+            }
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+    }
+
+    protected boolean needsCompaction()
+    {
+        return records > COMPACTION_THRESHOLD && records > 2 * entries.size();
+    }
+
+    protected void compact()
+        throws IOException
+    {
+        journalFile.getParentFile().mkdirs();
+
+        final File compactedFile = new File( journalFile.getParentFile(), journalFile.getName() + ".tmp" );
+
+        final Writer compactedWriter = openWriter( compactedFile, false );
+
+        try
+        {
+            for ( Entry entry : entries.values() )
+            {
+                compactedWriter.write( ADDED + SEPARATOR + entry.getTime() + SEPARATOR + entry.getSize() + SEPARATOR
+                    + entry.getPath() + "\n" );
+            }
+        }
+        finally
+        {
+            IOUtil.close( compactedWriter );
+        }
+
+        close();
+
+        final File backupFile = getBackupFile();
+
+        // keep the old journal until the compacted one is in place, renaming over it is not portable
+        if ( journalFile.exists() && !journalFile.renameTo( backupFile ) )
+        {
+            writer = openWriter( journalFile, true );
+
+            throw new IOException( "Cannot back up wastebasket journal " + journalFile.getAbsolutePath() );
+        }
+
+        if ( !compactedFile.renameTo( journalFile ) )
+        {
+            // put the old one back, it still holds all the records
+            backupFile.renameTo( journalFile );
+
+            writer = openWriter( journalFile, true );
+
+            throw new IOException( "Cannot rename compacted wastebasket journal to " + journalFile.getAbsolutePath() );
+        }
+
+        backupFile.delete();
+
+        records = entries.size();
+
+        writer = openWriter( journalFile, true );
+    }
+
+    /**
+     * Finishes a compaction interrupted by a crash: restores the backup of journal if the compacted journal was not
+     * swapped in yet, or drops it if it was.
+     */
+    protected void recoverBackup()
+        throws IOException
+    {
+        final File backupFile = getBackupFile();
+
+        if ( backupFile.isFile() )
+        {
+            if ( journalFile.isFile() )
+            {
+                backupFile.delete();
+            }
+            else if ( !backupFile.renameTo( journalFile ) )
+            {
+                throw new IOException( "Cannot restore wastebasket journal from backup "
+                    + backupFile.getAbsolutePath() );
+            }
+        }
+    }
+
+    protected File getBackupFile()
+    {
+        return new File( journalFile.getParentFile(), journalFile.getName() + ".bak" );
+    }
+
+    protected void append( final String record )
+        throws IOException
+    {
+        if ( writer == null )
+        {
+            throw new IOException( "Wastebasket journal " + journalFile.getAbsolutePath() + " is not open!" );
+        }
+
+        writer.write( record + "\n" );
+        writer.flush();
+
+        records++;
+
+        if ( needsCompaction() )
+        {
+            compact();
+        }
+    }
+
+    protected Writer openWriter( final File file, final boolean append )
+        throws IOException
+    {
+        return new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file, append ), "UTF-8" ) );
+    }
+
+    // ==
+
+    public static class Entry
+    {
+        private final String path;
+
+        private final long size;
+
+        private final long time;
+
+        public Entry( final String path, final long size, final long time )
+        {
+            this.path = path;
+            this.size = size;
+            this.time = time;
+        }
+
+        public String getPath()
+        {
+            return path;
+        }
+
+        /**
+         * Returns the size of item in bytes, or {@link WastebasketJournal#UNKNOWN_SIZE} if not measured yet.
+         */
+        public long getSize()
+        {
+            return size;
+        }
+
+        public long getTime()
+        {
+            return time;
+        }
+
+        public boolean isSized()
+        {
+            return size != UNKNOWN_SIZE;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.access;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import junit.framework.Assert;
+
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.apache.shiro.subject.Subject;
+import org.easymock.IAnswer;
+import org.junit.Test;
+import org.sonatype.nexus.auth.NexusAuthorizationCacheClearEvent;
+import org.sonatype.nexus.proxy.access.DefaultNexusItemAuthorizer.TargetPermissionKey;
+import org.sonatype.plexus.appevents.Event;
+import org.sonatype.security.events.SecurityConfigurationChangedEvent;
+
+public class DefaultNexusItemAuthorizerTest
+{
+    private final TargetPermissionKey perm = new TargetPermissionKey( "target", "repo", Action.read );
+
+    @Test
+    public void testDecisionsAreRealmAware()
+    {
+        DefaultNexusItemAuthorizer authorizer = new DefaultNexusItemAuthorizer();
+
+        // same named users of two realms, having different permissions
+        Subject xmlBob = createSubject( new SimplePrincipalCollection( "bob", "xml" ), true );
+        Subject ldapBob = createSubject( new SimplePrincipalCollection( "bob", "ldap" ), false );
+
+        Assert.assertTrue( authorizer.isPermitted( xmlBob, perm ) );
+        Assert.assertFalse( authorizer.isPermitted( ldapBob, perm ) );
+        Assert.assertTrue( authorizer.isPermitted( xmlBob, perm ) );
+        Assert.assertFalse( authorizer.isPermitted( ldapBob, perm ) );
+
+        // each subject was asked once, the second checks were answered by the cache
+        verify( xmlBob, ldapBob );
+    }
+
+    @Test
+    public void testDecisionCacheClearedConcurrentlyWithCheck()
+    {
+        final DefaultNexusItemAuthorizer authorizer = new DefaultNexusItemAuthorizer();
+
+        // the cache is cleared while the (granting) decision is being made, that decision must not be reused
+        Subject subject = createMock( Subject.class );
+        expect( subject.getPrincipals() ).andReturn( new SimplePrincipalCollection( "bob", "ldap" ) ).anyTimes();
+        expect( subject.isPermitted( (Permission) anyObject() ) ).andAnswer( new IAnswer<Boolean>()
+        {
+            public Boolean answer()
+            {
+                authorizer.onEvent( new NexusAuthorizationCacheClearEvent( null ) );
+                return Boolean.TRUE;
+            }
+        } ).times( 1 ).andReturn( false ).times( 1 );
+        replay( subject );
+
+        Assert.assertTrue( authorizer.isPermitted( subject, perm ) );
+        Assert.assertFalse( authorizer.isPermitted( subject, perm ) );
+
+        verify( subject );
+    }
+
+    @Test
+    public void testDecisionCacheClearedOnSecurityConfigurationChange()
+    {
+        checkDecisionCacheCleared( new SecurityConfigurationChangedEvent( null ) );
+    }
+
+    @Test
+    public void testDecisionCacheClearedOnAuthorizationCacheClear()
+    {
+        checkDecisionCacheCleared( new NexusAuthorizationCacheClearEvent( null ) );
+    }
+
+    protected void checkDecisionCacheCleared( final Event<?> event )
+    {
+        DefaultNexusItemAuthorizer authorizer = new DefaultNexusItemAuthorizer();
+
+        // the permission is taken away from user after the first check
+        Subject subject = createMock( Subject.class );
+        expect( subject.getPrincipals() ).andReturn( new SimplePrincipalCollection( "bob", "ldap" ) ).anyTimes();
+        expect( subject.isPermitted( (Permission) anyObject() ) ).andReturn( true ).times( 1 ).andReturn( false ).times(
+            1 );
+        replay( subject );
+
+        Assert.assertTrue( authorizer.isPermitted( subject, perm ) );
+        // cached
+        Assert.assertTrue( authorizer.isPermitted( subject, perm ) );
+
+        authorizer.onEvent( event );
+
+        Assert.assertFalse( authorizer.isPermitted( subject, perm ) );
+
+        verify( subject );
+    }
+
+    protected Subject createSubject( final PrincipalCollection principals, final boolean permitted )
+    {
+        Subject subject = createMock( Subject.class );
+        expect( subject.getPrincipals() ).andReturn( principals ).anyTimes();
+        expect( subject.isPermitted( (Permission) anyObject() ) ).andReturn( permitted ).times( 1 );
+        replay( subject );
+        return subject;
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AttributeLogTest
+{
+    private File logFile;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        final File dir = new File( "target/" + getClass().getSimpleName() );
+        FileUtils.deleteDirectory( dir );
+        logFile = new File( dir, "repo.log" );
+    }
+
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        FileUtils.deleteDirectory( logFile.getParentFile() );
+    }
+
+    @Test
+    public void testPutGetRemoveAndReopen()
+        throws Exception
+    {
+        AttributeLog log = new AttributeLog( logFile, Long.MAX_VALUE );
+        log.open();
+
+        log.put( "/a.txt", "a1".getBytes( "UTF-8" ) );
+        log.put( "/b.txt", "b1".getBytes( "UTF-8" ) );
+        log.put( "/a.txt", "a2".getBytes( "UTF-8" ) );
+
+        Assert.assertEquals( "a2", new String( log.get( "/a.txt" ), "UTF-8" ) );
+        Assert.assertTrue( log.remove( "/b.txt" ) );
+        Assert.assertFalse( log.remove( "/b.txt" ) );
+        Assert.assertNull( log.get( "/b.txt" ) );
+        Assert.assertTrue( log.getGarbageLength() > 0 );
+
+        log.close();
+
+        log = new AttributeLog( logFile, Long.MAX_VALUE );
+        log.open();
+
+        Assert.assertEquals( 1, log.getEntryCount() );
+        Assert.assertEquals( "a2", new String( log.get( "/a.txt" ), "UTF-8" ) );
+        Assert.assertNull( log.get( "/b.txt" ) );
+
+        log.close();
+    }
+
+    @Test
+    public void testCompaction()
+        throws Exception
+    {
+        final AttributeLog log = new AttributeLog( logFile, 0 );
+        log.open();
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            log.put( "/a.txt", ( "a" + i ).getBytes( "UTF-8" ) );
+            log.put( "/b.txt", ( "b" + i ).getBytes( "UTF-8" ) );
+        }
+
+        // garbage never outweighs live data, as compaction kicks in
+        Assert.assertTrue( log.getGarbageLength() <= log.getLength() / 2 );
+        Assert.assertEquals( "a99", new String( log.get( "/a.txt" ), "UTF-8" ) );
+        Assert.assertEquals( "b99", new String( log.get( "/b.txt" ), "UTF-8" ) );
+
+        log.compact();
+
+        Assert.assertEquals( 0, log.getGarbageLength() );
+        Assert.assertEquals( logFile.length(), log.getLength() );
+        Assert.assertEquals( "a99", new String( log.get( "/a.txt" ), "UTF-8" ) );
+
+        log.close();
+    }
+
+    @Test
+    public void testTornTailIsTruncated()
+        throws Exception
+    {
+        AttributeLog log = new AttributeLog( logFile, Long.MAX_VALUE );
+        log.open();
+        log.put( "/a.txt", "a1".getBytes( "UTF-8" ) );
+        final long goodLength = log.getLength();
+        log.put( "/b.txt", "b1".getBytes( "UTF-8" ) );
+        log.close();
+
+        // simulate crash during the write of the last record
+        final RandomAccessFile raf = new RandomAccessFile( logFile, "rw" );
+        raf.setLength( raf.length() - 1 );
+        raf.close();
+
+        log = new AttributeLog( logFile, Long.MAX_VALUE );
+        log.open();
+
+        Assert.assertEquals( goodLength, log.getLength() );
+        Assert.assertEquals( goodLength, logFile.length() );
+        Assert.assertEquals( "a1", new String( log.get( "/a.txt" ), "UTF-8" ) );
+        Assert.assertNull( log.get( "/b.txt" ) );
+
+        // and is writable after recovery
+        log.put( "/b.txt", "b2".getBytes( "UTF-8" ) );
+        Assert.assertEquals( "b2", new String( log.get( "/b.txt" ), "UTF-8" ) );
+
+        log.close();
+    }
+
+    @Test
+    public void testCompactionRunsOnExecutor()
+        throws Exception
+    {
+        final List<Runnable> scheduled = new ArrayList<Runnable>();
+
+        final AttributeLog log = new AttributeLog( logFile, 0, new Executor()
+        {
+            @Override
+            public void execute( final Runnable command )
+            {
+                scheduled.add( command );
+            }
+        } );
+        log.open();
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            log.put( "/a.txt", ( "a" + i ).getBytes( "UTF-8" ) );
+        }
+
+        // writers do not compact, and compaction is scheduled only once
+        Assert.assertEquals( 1, scheduled.size() );
+        Assert.assertTrue( log.getGarbageLength() > log.getLength() / 2 );
+
+        scheduled.get( 0 ).run();
+
+        Assert.assertEquals( 0, log.getGarbageLength() );
+        Assert.assertEquals( logFile.length(), log.getLength() );
+        Assert.assertEquals( "a99", new String( log.get( "/a.txt" ), "UTF-8" ) );
+
+        // and is writable after compaction
+        log.put( "/b.txt", "b1".getBytes( "UTF-8" ) );
+        Assert.assertEquals( "b1", new String( log.get( "/b.txt" ), "UTF-8" ) );
+
+        log.close();
+    }
+
+    @Test
+    public void testLogMovedAsideIsRestored()
+        throws Exception
+    {
+        AttributeLog log = new AttributeLog( logFile, Long.MAX_VALUE );
+        log.open();
+        log.put( "/a.txt", "a1".getBytes( "UTF-8" ) );
+        log.close();
+
+        // simulate crash during compaction, after the log was moved aside but before compacted log was moved in
+        final File backupFile = new File( logFile.getParentFile(), logFile.getName() + ".old" );
+        final File compactFile = new File( logFile.getParentFile(), logFile.getName() + ".compact" );
+        Assert.assertTrue( logFile.renameTo( backupFile ) );
+        Assert.assertTrue( compactFile.createNewFile() );
+
+        log = new AttributeLog( logFile, Long.MAX_VALUE );
+        log.open();
+
+        Assert.assertEquals( "a1", new String( log.get( "/a.txt" ), "UTF-8" ) );
+        Assert.assertFalse( backupFile.exists() );
+        Assert.assertFalse( compactFile.exists() );
+
+        log.close();
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TriePathCacheTest
+{
+    @Test
+    public void testRemoveWithChildren()
+    {
+        PathCache c = new TriePathCache( "test", 100, 0 );
+
+        c.put( "/com", Boolean.TRUE );
+        c.put( "/com/sonatype", Boolean.TRUE );
+        c.put( "/com/sonatype/nexus", Boolean.TRUE );
+        c.put( "/com/sonatypex", Boolean.TRUE );
+        c.put( "/org/apache", Boolean.TRUE );
+
+        Assert.assertTrue( c.removeWithChildren( "/com/sonatype" ) );
+
+        Assert.assertTrue( c.contains( "/com" ) );
+        Assert.assertFalse( c.contains( "/com/sonatype" ) );
+        Assert.assertFalse( c.contains( "/com/sonatype/nexus" ) );
+        Assert.assertTrue( c.contains( "/com/sonatypex" ) );
+        Assert.assertTrue( c.contains( "/org/apache" ) );
+        Assert.assertEquals( 3, c.getStatistics().getSize() );
+
+        c.purge();
+
+        Assert.assertFalse( c.contains( "/com" ) );
+        Assert.assertFalse( c.contains( "/org/apache" ) );
+        Assert.assertEquals( 0, c.getStatistics().getSize() );
+        Assert.assertTrue( c.listKeysInCache().isEmpty() );
+    }
+
+    @Test
+    public void testLruEviction()
+    {
+        PathCache c = new TriePathCache( "test", 3, 0 );
+
+        c.put( "/a", Boolean.TRUE );
+        c.put( "/b", Boolean.TRUE );
+        c.put( "/c", Boolean.TRUE );
+
+        // touch "a", so "b" is least recently used
+        Assert.assertTrue( c.contains( "/a" ) );
+
+        c.put( "/d", Boolean.TRUE );
+
+        Assert.assertTrue( c.contains( "/a" ) );
+        Assert.assertFalse( c.contains( "/b" ) );
+        Assert.assertTrue( c.contains( "/c" ) );
+        Assert.assertTrue( c.contains( "/d" ) );
+
+        CacheStatistics stats = c.getStatistics();
+
+        Assert.assertEquals( 3, stats.getSize() );
+        Assert.assertEquals( 1, stats.getEvictions() );
+        Assert.assertEquals( 4, stats.getHits() );
+        Assert.assertEquals( 1, stats.getMisses() );
+    }
+
+    @Test
+    public void testExpiration()
+        throws Exception
+    {
+        PathCache c = new TriePathCache( "test", 100, 0 );
+
+        c.put( "/com/sonatype", Boolean.TRUE, 1 );
+        c.put( "/com/sonatype/nexus", Boolean.TRUE );
+
+        Assert.assertTrue( c.contains( "/com/sonatype" ) );
+
+        Thread.sleep( 1100 );
+
+        Assert.assertTrue( c.isExpired( "/com/sonatype" ) );
+        Assert.assertFalse( c.contains( "/com/sonatype" ) );
+        Assert.assertTrue( c.contains( "/com/sonatype/nexus" ) );
+
+        Collection<String> keys = c.listKeysInCache();
+
+        Assert.assertEquals( 1, keys.size() );
+        Assert.assertTrue( keys.contains( "com/sonatype/nexus" ) );
+    }
+
+    @Test
+    public void testSharedSizeBound()
+        throws Exception
+    {
+        List<TriePathCache> caches = new ArrayList<TriePathCache>();
+        TriePathCache.SizeBound bound = new TriePathCache.SizeBound( 3, caches );
+
+        TriePathCache c1 = new TriePathCache( "repo1", bound, 0 );
+        TriePathCache c2 = new TriePathCache( "repo2", bound, 0 );
+        caches.add( c1 );
+        caches.add( c2 );
+
+        // eviction across caches is by access time
+        c1.put( "/a", Boolean.TRUE );
+        Thread.sleep( 5 );
+        c2.put( "/a", Boolean.TRUE );
+        Thread.sleep( 5 );
+        c1.put( "/b", Boolean.TRUE );
+        Thread.sleep( 5 );
+
+        // touch "/a" of first cache, so "/a" of second one is least recently used of all
+        Assert.assertTrue( c1.contains( "/a" ) );
+
+        c1.put( "/c", Boolean.TRUE );
+
+        Assert.assertEquals( 3, bound.getSize() );
+        Assert.assertFalse( c2.contains( "/a" ) );
+        Assert.assertEquals( 0, c2.getStatistics().getSize() );
+        Assert.assertEquals( 1, c2.getStatistics().getEvictions() );
+        Assert.assertEquals( 3, c1.getStatistics().getSize() );
+
+        c1.purge();
+
+        Assert.assertEquals( 0, bound.getSize() );
+    }
+
+    @Test
+    public void testConcurrentUseKeepsSizeBound()
+        throws Exception
+    {
+        final List<TriePathCache> caches = new ArrayList<TriePathCache>();
+        final TriePathCache.SizeBound bound = new TriePathCache.SizeBound( 1000, caches );
+
+        for ( int i = 0; i < 4; i++ )
+        {
+            caches.add( new TriePathCache( "repo" + i, bound, 0 ) );
+        }
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Thread[] threads = new Thread[8];
+
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final int index = i;
+
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        PathCache cache = caches.get( index % caches.size() );
+
+                        for ( int j = 0; j < 5000; j++ )
+                        {
+                            String path = "/org/" + index + "/" + j % 700 + "/" + j;
+
+                            cache.put( path, Boolean.TRUE );
+                            cache.contains( path );
+
+                            if ( j % 10 == 0 )
+                            {
+                                cache.removeWithChildren( "/org/" + index + "/" + j % 700 );
+                            }
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        failure.set( e );
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        Assert.assertNull( failure.get() );
+
+        int size = 0;
+        for ( TriePathCache cache : caches )
+        {
+            size += cache.getStatistics().getSize();
+            Assert.assertEquals( cache.getStatistics().getSize(), cache.listKeysInCache().size() );
+        }
+
+        Assert.assertEquals( size, bound.getSize() );
+        // a put may skip eviction while an other thread is evicting
+        Assert.assertTrue( String.valueOf( size ), size <= bound.getMaximumSize() + threads.length );
+    }
+
+    @Test
+    public void testManagerHandsOutOneCachePerId()
+    {
+        TriePathCacheManager manager = new TriePathCacheManager();
+
+        PathCache c = manager.getPathCache( "repo1" );
+        c.put( "/a", Boolean.TRUE );
+
+        Assert.assertSame( c, manager.getPathCache( "repo1" ) );
+        Assert.assertTrue( manager.getPathCache( "repo1" ).contains( "/a" ) );
+        Assert.assertNotSame( c, manager.getPathCache( "repo2" ) );
+    }
+
+    @Test
+    public void testZeroExpirationIsEternal()
+        throws Exception
+    {
+        PathCache c = new TriePathCache( "test", 100, 1 );
+
+        c.put( "/eternal", Boolean.TRUE, 0 );
+        c.put( "/default", Boolean.TRUE );
+
+        Thread.sleep( 1100 );
+
+        Assert.assertFalse( c.isExpired( "/eternal" ) );
+        Assert.assertTrue( c.contains( "/eternal" ) );
+        Assert.assertFalse( c.contains( "/default" ) );
+    }
+}
@@ -181,4 +181,31 @@ public class RepositoryItemUidFactoryTest
 
         Assert.assertTrue( "We should have less than 10k in weak map: " + size, size <= 30000 && size > 0 );
     }
+
+    @Test
+    public void testLockStatistics()
+    {
+        final UidLockStatistics statistics = ( (DefaultRepositoryItemUidFactory) factory ).getLockStatistics();
+
+        final long created = statistics.getCreatedLockCount();
+        final long acquired = statistics.getLockAcquisitionCount();
+
+        RepositoryItemUid uid1 = factory.createUid( repository, "/some/statistics/poth" );
+        RepositoryItemUid uid2 = factory.createUid( repository, "/some/statistics/poth" );
+
+        RepositoryItemUidLock uidLock1 = uid1.getLock();
+        RepositoryItemUidLock uidLock2 = uid2.getLock();
+
+        uidLock1.lock( Action.read );
+        uidLock2.lock( Action.create );
+        uidLock2.unlock();
+        uidLock1.unlock();
+
+        Assert.assertEquals( "Shared lock should be created only once", created + 1,
+            statistics.getCreatedLockCount() );
+        Assert.assertEquals( "Both acquisitions should be counted", acquired + 2,
+            statistics.getLockAcquisitionCount() );
+        Assert.assertTrue( "Live locks should be tracked",
+            ( (DefaultRepositoryItemUidFactory) factory ).getLiveLockCount() > 0 );
+    }
 }
@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.maven;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.makeThreadSafe;
+import static org.easymock.EasyMock.replay;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.attributes.inspectors.DigestCalculatingInspector;
+import org.sonatype.nexus.proxy.events.RepositoryItemValidationEvent;
+import org.sonatype.nexus.proxy.item.AbstractStorageItem;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.StringContentLocator;
+import org.sonatype.nexus.proxy.repository.RepositoryKind;
+import org.sonatype.nexus.proxy.storage.remote.RemoteRepositoryStorage;
+
+public class ChecksumContentValidatorTest
+{
+    private static final String URL = "http://repo1.maven.org/maven2/";
+
+    private static final String PATH = "/org/foo/foo/1.0/foo-1.0.jar";
+
+    private static final String SHA1 = "da39a3ee5e6b4b0d3255bfef95601890afd80709";
+
+    private ChecksumContentValidator validator;
+
+    private MavenProxyRepository repository;
+
+    private AtomicInteger remoteRequests;
+
+    private CountDownLatch fetching;
+
+    private CountDownLatch release;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        validator = new ChecksumContentValidator( 1 );
+
+        remoteRequests = new AtomicInteger();
+
+        fetching = new CountDownLatch( 1 );
+
+        release = new CountDownLatch( 0 );
+
+        final RepositoryKind kind = createNiceMock( RepositoryKind.class );
+        expect( kind.isFacetAvailable( MavenProxyRepository.class ) ).andReturn( true ).anyTimes();
+        makeThreadSafe( kind, true );
+        replay( kind );
+
+        final RemoteRepositoryStorage remoteStorage = createMock( RemoteRepositoryStorage.class );
+        expect(
+            remoteStorage.retrieveItem( (MavenProxyRepository) anyObject(), (ResourceStoreRequest) anyObject(),
+                eq( URL ) ) ).andAnswer( new IAnswer<AbstractStorageItem>()
+        {
+            @Override
+            public AbstractStorageItem answer()
+                throws Throwable
+            {
+                remoteRequests.incrementAndGet();
+
+                fetching.countDown();
+
+                release.await( 5, TimeUnit.SECONDS );
+
+                final ResourceStoreRequest request = (ResourceStoreRequest) getCurrentArguments()[1];
+
+                return new DefaultStorageFileItem( repository, new ResourceStoreRequest( request.getRequestPath() ),
+                    true, true, new StringContentLocator( SHA1 ) );
+            }
+        } ).anyTimes();
+        makeThreadSafe( remoteStorage, true );
+        replay( remoteStorage );
+
+        repository = createNiceMock( MavenProxyRepository.class );
+        expect( repository.getId() ).andReturn( "central" ).anyTimes();
+        expect( repository.getRemoteUrl() ).andReturn( URL ).anyTimes();
+        expect( repository.getRepositoryKind() ).andReturn( kind ).anyTimes();
+        expect( repository.adaptToFacet( MavenProxyRepository.class ) ).andReturn( repository ).anyTimes();
+        expect( repository.getChecksumPolicy() ).andReturn( ChecksumPolicy.STRICT ).anyTimes();
+        expect( repository.getRemoteStorage() ).andReturn( remoteStorage ).anyTimes();
+        expect( repository.createUid( (String) anyObject() ) ).andAnswer( new IAnswer<RepositoryItemUid>()
+        {
+            @Override
+            public RepositoryItemUid answer()
+                throws Throwable
+            {
+                final String path = (String) getCurrentArguments()[0];
+
+                final RepositoryItemUid uid = createNiceMock( RepositoryItemUid.class );
+                expect( uid.getPath() ).andReturn( path ).anyTimes();
+                expect( uid.getRepository() ).andReturn( repository ).anyTimes();
+                makeThreadSafe( uid, true );
+                replay( uid );
+
+                return uid;
+            }
+        } ).anyTimes();
+        expect( repository.doCacheItem( (AbstractStorageItem) anyObject() ) ).andAnswer(
+            new IAnswer<AbstractStorageItem>()
+            {
+                @Override
+                public AbstractStorageItem answer()
+                    throws Throwable
+                {
+                    return (AbstractStorageItem) getCurrentArguments()[0];
+                }
+            } ).anyTimes();
+        makeThreadSafe( repository, true );
+        replay( repository );
+    }
+
+    @After
+    public void tearDown()
+    {
+        release.countDown();
+
+        validator.dispose();
+    }
+
+    @Test
+    public void testPrefetchedChecksumIsUsedOnce()
+        throws Exception
+    {
+        final ResourceStoreRequest request = new ResourceStoreRequest( PATH );
+        final int requestContextSize = request.getRequestContext().size();
+        final AbstractStorageItem item = item( request );
+
+        final Future<?> prefetch = validator.prefetchRemoteItemContentValidation( repository, request, item );
+
+        Assert.assertNotNull( prefetch );
+        prefetch.get( 5, TimeUnit.SECONDS );
+        Assert.assertEquals( 1, remoteRequests.get() );
+        // prefetch is tracked by the item, not by the request that is reused on retries
+        Assert.assertEquals( requestContextSize, request.getRequestContext().size() );
+
+        Assert.assertTrue( validator.isRemoteItemContentValid( repository, request, URL, item,
+            new ArrayList<RepositoryItemValidationEvent>() ) );
+        Assert.assertEquals( 1, remoteRequests.get() );
+
+        // prefetched checksum is handed out once, validating again fetches it again
+        Assert.assertTrue( validator.isRemoteItemContentValid( repository, request, URL, item,
+            new ArrayList<RepositoryItemValidationEvent>() ) );
+        Assert.assertEquals( 2, remoteRequests.get() );
+    }
+
+    @Test
+    public void testChecksumsAreNotPrefetched()
+    {
+        final ResourceStoreRequest request = new ResourceStoreRequest( PATH + ".sha1" );
+
+        Assert.assertNull( validator.prefetchRemoteItemContentValidation( repository, request, item( request ) ) );
+        Assert.assertEquals( 0, remoteRequests.get() );
+    }
+
+    @Test
+    public void testPrefetchIsDroppedWhenBusy()
+        throws Exception
+    {
+        release = new CountDownLatch( 1 );
+
+        final ResourceStoreRequest first = new ResourceStoreRequest( PATH );
+        final Future<?> prefetch = validator.prefetchRemoteItemContentValidation( repository, first, item( first ) );
+        Assert.assertNotNull( prefetch );
+        Assert.assertTrue( fetching.await( 5, TimeUnit.SECONDS ) );
+
+        // the only prefetch thread is busy, the prefetch is not queued nor run by caller
+        final ResourceStoreRequest second = new ResourceStoreRequest( "/org/foo/foo/1.0/foo-1.0.pom" );
+        final AbstractStorageItem secondItem = item( second );
+        Assert.assertNull( validator.prefetchRemoteItemContentValidation( repository, second, secondItem ) );
+        Assert.assertEquals( 1, remoteRequests.get() );
+
+        release.countDown();
+        prefetch.get( 5, TimeUnit.SECONDS );
+
+        // the checksum is fetched when validating instead
+        Assert.assertTrue( validator.isRemoteItemContentValid( repository, second, URL, secondItem,
+            new ArrayList<RepositoryItemValidationEvent>() ) );
+        Assert.assertEquals( 2, remoteRequests.get() );
+    }
+
+    // ==
+
+    private AbstractStorageItem item( final ResourceStoreRequest request )
+    {
+        final AbstractStorageItem item =
+            new DefaultStorageFileItem( repository, request, true, true, new StringContentLocator( "foo" ) );
+        item.getRepositoryItemAttributes().put( DigestCalculatingInspector.DIGEST_SHA1_KEY, SHA1 );
+        return item;
+    }
+}
@@ -33,10 +33,14 @@ import org.sonatype.nexus.proxy.EnvironmentBuilder;
 import org.sonatype.nexus.proxy.M2TestsuiteEnvironmentBuilder;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.StorageException;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.item.StringContentLocator;
+import org.sonatype.nexus.proxy.maven.maven2.M2GroupRepository;
 import org.sonatype.nexus.proxy.maven.metadata.operations.MetadataBuilder;
 import org.sonatype.nexus.proxy.maven.metadata.operations.ModelVersionUtility;
+import org.sonatype.nexus.proxy.repository.Repository;
 
 public class GroupMetadataMergeTest
     extends AbstractProxyTestEnvironment
@@ -363,6 +367,60 @@ public class GroupMetadataMergeTest
 
     }
 
+    @Test
+    public void testMergedMetadataCache()
+        throws Exception
+    {
+        String mdPath = "/md-merge/ga/maven-metadata.xml";
+
+        M2GroupRepository group = (M2GroupRepository) getRepositoryRegistry().getRepository( "test" );
+
+        // first retrieval fetches and caches the member items too
+        StorageItem item = getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test" + mdPath, false ) );
+        String merged = contentAsString( item );
+
+        long hits = group.getMergedMetadataCache().getHitCount();
+
+        // members unchanged, the same merge result is served from cache
+        item = getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test" + mdPath, false ) );
+        assertEquals( merged, contentAsString( item ) );
+        assertEquals( hits + 1, group.getMergedMetadataCache().getHitCount() );
+
+        // a member gets new metadata, merge result must reflect it
+        Repository inhouse = getRepositoryRegistry().getRepository( "inhouse" );
+        String inhouseMd =
+            "<metadata><groupId>org.sonatype.nexus</groupId><artifactId>nexus</artifactId><versioning>"
+                + "<release>1.5.0</release><versions><version>1.5.0</version></versions>"
+                + "<lastUpdated>20100520231210</lastUpdated></versioning></metadata>";
+        inhouse.storeItem( false, new DefaultStorageFileItem( inhouse, new ResourceStoreRequest( mdPath ), true, true,
+            new StringContentLocator( inhouseMd ) ) );
+
+        item = getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test" + mdPath, false ) );
+        Metadata md = parseMetadata( (StorageFileItem) item );
+        assertEquals( "1.5.0", md.getVersioning().getRelease() );
+        assertTrue( md.getVersioning().getVersions().contains( "1.5.0" ) );
+
+        // and digests must match the new merge result
+        File mdFile = createTempFile( "metadata", "tmp" );
+        try
+        {
+            saveItemToFile( ( (StorageFileItem) item ), mdFile );
+
+            StorageItem sha1Item =
+                getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test" + mdPath + ".sha1", false ) );
+
+            new Sha1Digester().verify( mdFile, contentAsString( sha1Item ) );
+        }
+        finally
+        {
+            mdFile.delete();
+        }
+
+        // expiring caches of group drops the merge results
+        group.expireCaches( new ResourceStoreRequest( "/" ) );
+        assertEquals( 0, group.getMergedMetadataCache().size() );
+    }
+
     protected Metadata parseMetadata( File file )
         throws Exception
     {
@@ -23,6 +23,8 @@ import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.codehaus.plexus.util.xml.Xpp3Dom;
@@ -142,6 +144,38 @@ public class DefaultRepositoryRegistryTest
         assertEquals( "B", repoMembers.get( 1 ).getId() );
         assertEquals( "C", repoMembers.get( 2 ).getId() );
 
+        // topology: add a group of groups
+        M2GroupRepository outerGroupRepository =
+            (M2GroupRepository) getContainer().lookup( GroupRepository.class, "maven2" );
+
+        CRepository outerGroupConf = new DefaultCRepository();
+
+        outerGroupConf.setProviderRole( GroupRepository.class.getName() );
+        outerGroupConf.setProviderHint( "maven2" );
+        outerGroupConf.setId( "OUTER" );
+
+        outerGroupConf.setLocalStorage( new CLocalStorage() );
+        outerGroupConf.getLocalStorage().setProvider( "file" );
+
+        Xpp3Dom exOuterGroupRepo = new Xpp3Dom( "externalConfiguration" );
+        outerGroupConf.setExternalConfiguration( exOuterGroupRepo );
+        M2GroupRepositoryConfiguration exOuterGroupRepoConf = new M2GroupRepositoryConfiguration( exOuterGroupRepo );
+        exOuterGroupRepoConf.setMemberRepositoryIds( Collections.singletonList( "ALL" ) );
+        exOuterGroupRepoConf.setMergeMetadata( true );
+
+        outerGroupRepository.configure( outerGroupConf );
+
+        repositoryRegistry.addRepository( outerGroupRepository );
+
+        assertEquals( Collections.singletonList( "ALL" ), repositoryRegistry.getGroupsOfRepository( "A" ) );
+        assertEquals( Arrays.asList( "ALL", "OUTER" ), repositoryRegistry.getTransitiveGroupsOfRepository( "A" ) );
+        assertEquals( Collections.singletonList( "OUTER" ), repositoryRegistry.getGroupsOfRepository( "ALL" ) );
+        assertTrue( repositoryRegistry.getGroupsOfRepository( "OUTER" ).isEmpty() );
+
+        repositoryRegistry.removeRepository( "OUTER" );
+
+        assertEquals( Collections.singletonList( "ALL" ), repositoryRegistry.getTransitiveGroupsOfRepository( "A" ) );
+
         // recheck the group
         GroupRepository group = repositoryRegistry.getRepositoryWithFacet( "ALL", GroupRepository.class );
 
@@ -0,0 +1,301 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.repository;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.junit.Assert;
+import org.junit.Test;
+import org.sonatype.nexus.configuration.model.CLocalStorage;
+import org.sonatype.nexus.configuration.model.CRemoteConnectionSettings;
+import org.sonatype.nexus.configuration.model.CRemoteStorage;
+import org.sonatype.nexus.configuration.model.CRepository;
+import org.sonatype.nexus.configuration.model.DefaultCRepository;
+import org.sonatype.nexus.proxy.AbstractNexusTestEnvironment;
+import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.RemoteStorageException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.AbstractStorageItem;
+import org.sonatype.nexus.proxy.item.ByteArrayContentLocator;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.maven.ChecksumPolicy;
+import org.sonatype.nexus.proxy.maven.RepositoryPolicy;
+import org.sonatype.nexus.proxy.maven.maven2.M2Repository;
+import org.sonatype.nexus.proxy.maven.maven2.M2RepositoryConfiguration;
+import org.sonatype.nexus.proxy.storage.remote.ConditionalRemoteRepositoryStorage;
+
+/**
+ * Tests that stale items are revalidated with one conditional retrieval, and that all outcomes of it (not modified,
+ * modified and not found) are handled.
+ */
+public class ConditionalRevalidationTest
+    extends AbstractNexusTestEnvironment
+{
+    private static final String ITEM_PATH = "/org/test/revalidated/1.0/revalidated-1.0.jar";
+
+    @Test
+    public void testNotModifiedKeepsLocalItem()
+        throws Exception
+    {
+        final ConditionalRemoteStorage remoteStorage = new ConditionalRemoteStorage( "first" );
+
+        final M2Repository repository = createProxyRepository( "revalidate-304", remoteStorage );
+
+        Assert.assertEquals( "first", retrieve( repository ) );
+        Assert.assertEquals( 1, remoteStorage.retrievals.get() );
+
+        repository.expireCaches( new ResourceStoreRequest( RepositoryItemUid.PATH_ROOT, true ) );
+
+        // remote answers "not modified"
+        remoteStorage.content = null;
+
+        Assert.assertEquals( "first", retrieve( repository ) );
+        Assert.assertEquals( "Revalidation must not do an unconditional retrieval", 1,
+            remoteStorage.retrievals.get() );
+        Assert.assertEquals( 1, remoteStorage.conditionalRetrievals.get() );
+        Assert.assertEquals( "first", remoteStorage.lastLocalContent );
+
+        // and the local item is fresh again
+        Assert.assertEquals( "first", retrieve( repository ) );
+        Assert.assertEquals( 1, remoteStorage.conditionalRetrievals.get() );
+    }
+
+    @Test
+    public void testModifiedReplacesLocalItem()
+        throws Exception
+    {
+        final ConditionalRemoteStorage remoteStorage = new ConditionalRemoteStorage( "first" );
+
+        final M2Repository repository = createProxyRepository( "revalidate-200", remoteStorage );
+
+        Assert.assertEquals( "first", retrieve( repository ) );
+
+        repository.expireCaches( new ResourceStoreRequest( RepositoryItemUid.PATH_ROOT, true ) );
+
+        // remote answers with new content
+        remoteStorage.content = "second";
+
+        Assert.assertEquals( "second", retrieve( repository ) );
+        Assert.assertEquals( 1, remoteStorage.retrievals.get() );
+        Assert.assertEquals( 1, remoteStorage.conditionalRetrievals.get() );
+
+        // new content is cached
+        Assert.assertEquals( "second", retrieve( repository ) );
+        Assert.assertEquals( 1, remoteStorage.conditionalRetrievals.get() );
+    }
+
+    @Test
+    public void testDeletedUpstreamKeepsLocalItem()
+        throws Exception
+    {
+        final ConditionalRemoteStorage remoteStorage = new ConditionalRemoteStorage( "first" );
+
+        final M2Repository repository = createProxyRepository( "revalidate-404", remoteStorage );
+
+        Assert.assertEquals( "first", retrieve( repository ) );
+
+        repository.expireCaches( new ResourceStoreRequest( RepositoryItemUid.PATH_ROOT, true ) );
+
+        // remote answers "not found", as a HEAD 404 did before conditional revalidation
+        remoteStorage.deleted = true;
+
+        Assert.assertEquals( "first", retrieve( repository ) );
+        Assert.assertEquals( 1, remoteStorage.conditionalRetrievals.get() );
+        Assert.assertTrue( "Local copy must be kept",
+            repository.getLocalStorage().containsItem( repository, new ResourceStoreRequest( ITEM_PATH ) ) );
+
+        // and the local item is marked as remotely checked, remote is not asked again
+        Assert.assertEquals( "first", retrieve( repository ) );
+        Assert.assertEquals( 1, remoteStorage.conditionalRetrievals.get() );
+        Assert.assertEquals( 1, remoteStorage.retrievals.get() );
+    }
+
+    // ==
+
+    protected String retrieve( final M2Repository repository )
+        throws Exception
+    {
+        final StorageItem item = repository.retrieveItem( new ResourceStoreRequest( ITEM_PATH ) );
+
+        return IOUtil.toString( ( (StorageFileItem) item ).getInputStream() );
+    }
+
+    protected M2Repository createProxyRepository( final String id, final ConditionalRemoteStorage remoteStorage )
+        throws Exception
+    {
+        final M2Repository repository = (M2Repository) lookup( Repository.class, "maven2" );
+
+        final CRepository repoConf = new DefaultCRepository();
+        repoConf.setProviderRole( Repository.class.getName() );
+        repoConf.setProviderHint( "maven2" );
+        repoConf.setId( id );
+        repoConf.setLocalStorage( new CLocalStorage() );
+        repoConf.getLocalStorage().setProvider( "file" );
+        repoConf.setRemoteStorage( new CRemoteStorage() );
+        repoConf.getRemoteStorage().setProvider( "mock" );
+        repoConf.getRemoteStorage().setUrl( ConditionalRemoteStorage.REMOTE_URL );
+        repoConf.getRemoteStorage().setConnectionSettings( new CRemoteConnectionSettings() );
+        repoConf.getRemoteStorage().getConnectionSettings().setRetrievalRetryCount( 0 );
+
+        final Xpp3Dom exRepo = new Xpp3Dom( "externalConfiguration" );
+        repoConf.setExternalConfiguration( exRepo );
+        final M2RepositoryConfiguration exRepoConf = new M2RepositoryConfiguration( exRepo );
+        exRepoConf.setRepositoryPolicy( RepositoryPolicy.RELEASE );
+        exRepoConf.setChecksumPolicy( ChecksumPolicy.IGNORE );
+
+        repository.configure( repoConf );
+        repository.getNotFoundCache().purge();
+        repository.setRemoteStorage( remoteStorage );
+
+        return repository;
+    }
+
+    /**
+     * Remote storage serving one item, that answers conditional retrievals with the current content, or with "not
+     * modified" when content is {@code null}, or with "not found" when deleted.
+     */
+    protected static class ConditionalRemoteStorage
+        implements ConditionalRemoteRepositoryStorage
+    {
+        static final String REMOTE_URL = "http://conditional-remote/";
+
+        final AtomicInteger retrievals = new AtomicInteger();
+
+        final AtomicInteger conditionalRetrievals = new AtomicInteger();
+
+        volatile String content;
+
+        volatile String lastLocalContent;
+
+        volatile boolean deleted;
+
+        public ConditionalRemoteStorage( final String content )
+        {
+            this.content = content;
+        }
+
+        public String getProviderId()
+        {
+            return "conditional";
+        }
+
+        public String getVersion()
+        {
+            return "1.0";
+        }
+
+        public boolean isReachable( ProxyRepository repository, ResourceStoreRequest request )
+        {
+            return true;
+        }
+
+        public URL getAbsoluteUrlFromBase( ProxyRepository repository, ResourceStoreRequest request )
+            throws RemoteStorageException
+        {
+            try
+            {
+                return new URL( REMOTE_URL + request.getRequestPath() );
+            }
+            catch ( MalformedURLException e )
+            {
+                throw new RemoteStorageException( e.getMessage(), e );
+            }
+        }
+
+        public void validateStorageUrl( String url )
+        {
+        }
+
+        public boolean containsItem( ProxyRepository repository, ResourceStoreRequest request )
+        {
+            return !deleted && ITEM_PATH.equals( request.getRequestPath() );
+        }
+
+        public boolean containsItem( long newerThen, ProxyRepository repository, ResourceStoreRequest request )
+        {
+            throw new UnsupportedOperationException( "Conditional retrieval should be used" );
+        }
+
+        public AbstractStorageItem retrieveItem( ProxyRepository repository, ResourceStoreRequest request,
+                                                 String baseUrl )
+            throws ItemNotFoundException
+        {
+            if ( deleted || !ITEM_PATH.equals( request.getRequestPath() ) )
+            {
+                throw new ItemNotFoundException( request, repository );
+            }
+
+            retrievals.incrementAndGet();
+
+            return newItem( repository, request, content );
+        }
+
+        public AbstractStorageItem retrieveItemIfModified( ProxyRepository repository, ResourceStoreRequest request,
+                                                           String baseUrl, StorageItem localItem )
+            throws ItemNotFoundException, RemoteStorageException
+        {
+            if ( deleted || !ITEM_PATH.equals( request.getRequestPath() ) )
+            {
+                throw new ItemNotFoundException( request, repository );
+            }
+
+            conditionalRetrievals.incrementAndGet();
+
+            try
+            {
+                lastLocalContent = IOUtil.toString( ( (StorageFileItem) localItem ).getInputStream() );
+            }
+            catch ( Exception e )
+            {
+                throw new RemoteStorageException( e.getMessage(), e );
+            }
+
+            if ( content == null )
+            {
+                return null;
+            }
+
+            return newItem( repository, request, content );
+        }
+
+        public void storeItem( ProxyRepository repository, StorageItem item )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public void deleteItem( ProxyRepository repository, ResourceStoreRequest request )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        protected AbstractStorageItem newItem( final ProxyRepository repository, final ResourceStoreRequest request,
+                                               final String content )
+        {
+            return new DefaultStorageFileItem( repository, request, true, false, new ByteArrayContentLocator(
+                content.getBytes(), "application/java-archive" ) );
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.repository;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+
+public class DefaultRepositoryStatusCheckerTest
+{
+    private static final String URL = "http://repo1.maven.org/maven2";
+
+    private long probeWaitTime;
+
+    private DefaultRepositoryStatusChecker checker;
+
+    private ExecutorService executor;
+
+    private CountDownLatch probing;
+
+    private CountDownLatch release;
+
+    private ResourceStoreRequest request;
+
+    @Before
+    public void setUp()
+    {
+        probeWaitTime = 10000;
+
+        checker = new DefaultRepositoryStatusChecker()
+        {
+            @Override
+            protected long getProbeWaitTime()
+            {
+                return probeWaitTime;
+            }
+        };
+
+        executor = Executors.newSingleThreadExecutor();
+
+        probing = new CountDownLatch( 1 );
+
+        release = new CountDownLatch( 1 );
+
+        request = new ResourceStoreRequest( RepositoryItemUid.PATH_ROOT );
+    }
+
+    @After
+    public void tearDown()
+    {
+        release.countDown();
+
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testProbeKeyIsSameForSameSettings()
+    {
+        Assert.assertEquals( key( "a", URL, null, null, null ), key( "b", URL + "/", null, null, null ) );
+        Assert.assertEquals( key( "a", URL, "token=x", auth( "user", "secret" ), proxy( 8080 ) ),
+            key( "b", URL, "token=x", auth( "user", "secret" ), proxy( 8080 ) ) );
+    }
+
+    @Test
+    public void testProbeKeyDiffersBySettings()
+    {
+        final String key = key( "a", URL, null, null, null );
+
+        Assert.assertFalse( key.equals( key( "b", "http://other.org/maven2", null, null, null ) ) );
+        Assert.assertFalse( key.equals( key( "b", URL, "token=x", null, null ) ) );
+        Assert.assertFalse( key.equals( key( "b", URL, null, auth( "user", "secret" ), null ) ) );
+        Assert.assertFalse( key.equals( key( "b", URL, null, null, proxy( 8080 ) ) ) );
+
+        Assert.assertFalse( key( "a", URL, null, auth( "user", "secret" ), null ).equals(
+            key( "b", URL, null, auth( "user", "other" ), null ) ) );
+        Assert.assertFalse( key( "a", URL, null, null, proxy( 8080 ) ).equals(
+            key( "b", URL, null, null, proxy( 3128 ) ) ) );
+    }
+
+    @Test
+    public void testProbeInProgressIsShared()
+        throws Exception
+    {
+        final Future<?> first = probeInBackground( blockingRepository( "a", RemoteStatus.AVAILABLE ) );
+
+        Assert.assertTrue( probing.await( 5, TimeUnit.SECONDS ) );
+
+        // second repository does not probe the remote peer, it gets the result of the probe in progress
+        final ProxyRepository second = repository( "b", URL, connection( null ), null, null, false );
+        second.applyRemoteStatus( request, RemoteStatus.AVAILABLE );
+        expectLastCall();
+        replay( second );
+
+        release.countDown();
+
+        final DefaultRepositoryStatusChecker.Probe probe = checker.checkRemoteStatus( second, request );
+
+        Assert.assertEquals( RemoteStatus.AVAILABLE, probe.getRemoteStatus() );
+        first.get( 5, TimeUnit.SECONDS );
+        verify( second );
+    }
+
+    @Test
+    public void testProbeInProgressIsWaitedForBoundedTime()
+        throws Exception
+    {
+        probeWaitTime = 100;
+
+        probeInBackground( blockingRepository( "a", RemoteStatus.AVAILABLE ) );
+
+        Assert.assertTrue( probing.await( 5, TimeUnit.SECONDS ) );
+
+        // probe in progress hangs, second repository probes the remote peer itself
+        final ProxyRepository second = repository( "b", URL, connection( null ), null, null, false );
+        expect( second.checkRemoteStatus( request ) ).andReturn( RemoteStatus.UNAVAILABLE );
+        replay( second );
+
+        final long started = System.currentTimeMillis();
+
+        final DefaultRepositoryStatusChecker.Probe probe = checker.checkRemoteStatus( second, request );
+
+        Assert.assertEquals( RemoteStatus.UNAVAILABLE, probe.getRemoteStatus() );
+        Assert.assertTrue( System.currentTimeMillis() - started < 5000 );
+        verify( second );
+    }
+
+    // ==
+
+    private Future<?> probeInBackground( final ProxyRepository repository )
+    {
+        return executor.submit( new Callable<Object>()
+        {
+            public Object call()
+            {
+                return checker.checkRemoteStatus( repository, request );
+            }
+        } );
+    }
+
+    private String key( final String id, final String url, final String queryString,
+                        final RemoteAuthenticationSettings authenticationSettings,
+                        final RemoteProxySettings proxySettings )
+    {
+        return checker.getProbeKey( repository( id, url, connection( queryString ), authenticationSettings,
+            proxySettings ) );
+    }
+
+    private ProxyRepository blockingRepository( final String id, final RemoteStatus remoteStatus )
+    {
+        final ProxyRepository repository = repository( id, URL, connection( null ), null, null, false );
+
+        expect( repository.checkRemoteStatus( request ) ).andAnswer( new IAnswer<RemoteStatus>()
+        {
+            public RemoteStatus answer()
+                throws Throwable
+            {
+                probing.countDown();
+
+                release.await( 5, TimeUnit.SECONDS );
+
+                return remoteStatus;
+            }
+        } );
+
+        replay( repository );
+
+        return repository;
+    }
+
+    private ProxyRepository repository( final String id, final String url,
+                                        final RemoteConnectionSettings connectionSettings,
+                                        final RemoteAuthenticationSettings authenticationSettings,
+                                        final RemoteProxySettings proxySettings )
+    {
+        final ProxyRepository repository = repository( id, url, connectionSettings, authenticationSettings,
+            proxySettings, true );
+
+        replay( repository );
+
+        return repository;
+    }
+
+    /**
+     * Creates a repository mock with settings recorded, but not replayed yet.
+     */
+    private ProxyRepository repository( final String id, final String url,
+                                        final RemoteConnectionSettings connectionSettings,
+                                        final RemoteAuthenticationSettings authenticationSettings,
+                                        final RemoteProxySettings proxySettings, final boolean nice )
+    {
+        final ProxyRepository repository =
+            nice ? createNiceMock( ProxyRepository.class ) : createMock( ProxyRepository.class );
+
+        expect( repository.getId() ).andReturn( id ).anyTimes();
+        expect( repository.getRemoteUrl() ).andReturn( url ).anyTimes();
+        expect( repository.getProxyMode() ).andReturn( ProxyMode.ALLOW ).anyTimes();
+        expect( repository.getRemoteStorage() ).andReturn( null ).anyTimes();
+        expect( repository.getRemoteConnectionSettings() ).andReturn( connectionSettings ).anyTimes();
+        expect( repository.getRemoteAuthenticationSettings() ).andReturn( authenticationSettings ).anyTimes();
+        expect( repository.getRemoteProxySettings() ).andReturn( proxySettings ).anyTimes();
+
+        return repository;
+    }
+
+    private RemoteConnectionSettings connection( final String queryString )
+    {
+        final DefaultRemoteConnectionSettings settings = new DefaultRemoteConnectionSettings();
+        settings.setQueryString( queryString );
+
+        return settings;
+    }
+
+    private RemoteAuthenticationSettings auth( final String username, final String password )
+    {
+        return new UsernamePasswordRemoteAuthenticationSettings( username, password );
+    }
+
+    private RemoteProxySettings proxy( final int port )
+    {
+        final DefaultRemoteProxySettings settings = new DefaultRemoteProxySettings();
+        settings.setHostname( "proxy.example.com" );
+        settings.setPort( port );
+
+        return settings;
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.repository;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.junit.Assert;
+import org.junit.Test;
+import org.sonatype.nexus.configuration.model.CLocalStorage;
+import org.sonatype.nexus.configuration.model.CRemoteConnectionSettings;
+import org.sonatype.nexus.configuration.model.CRemoteStorage;
+import org.sonatype.nexus.configuration.model.CRepository;
+import org.sonatype.nexus.configuration.model.DefaultCRepository;
+import org.sonatype.nexus.proxy.AbstractNexusTestEnvironment;
+import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.RemoteStorageException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.AbstractStorageItem;
+import org.sonatype.nexus.proxy.item.ByteArrayContentLocator;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.maven.ChecksumPolicy;
+import org.sonatype.nexus.proxy.maven.RepositoryPolicy;
+import org.sonatype.nexus.proxy.maven.maven2.M2Repository;
+import org.sonatype.nexus.proxy.maven.maven2.M2RepositoryConfiguration;
+import org.sonatype.nexus.proxy.storage.remote.RemoteRepositoryStorage;
+
+/**
+ * Tests that concurrent requests for same proxied item that is not cached yet are served by one remote retrieval.
+ */
+public class ProxyRetrievalCoalescingTest
+    extends AbstractNexusTestEnvironment
+{
+    private static final String ITEM_PATH = "/org/test/coalesced/1.0/coalesced-1.0.jar";
+
+    private static final String ITEM_CONTENT = "coalesced content";
+
+    private static final int REQUESTS = 5;
+
+    @Test
+    public void testConcurrentRequestsGoRemoteOnce()
+        throws Exception
+    {
+        final SlowRemoteStorage remoteStorage = new SlowRemoteStorage();
+
+        final M2Repository repository = createProxyRepository( "coalescing", remoteStorage );
+
+        final ExecutorService executor = Executors.newFixedThreadPool( REQUESTS );
+
+        try
+        {
+            final List<Future<String>> results = new ArrayList<Future<String>>();
+
+            for ( int i = 0; i < REQUESTS; i++ )
+            {
+                results.add( executor.submit( new Callable<String>()
+                {
+                    public String call()
+                        throws Exception
+                    {
+                        remoteStorage.callers.add( Thread.currentThread() );
+
+                        final StorageItem item = repository.retrieveItem( new ResourceStoreRequest( ITEM_PATH ) );
+
+                        return IOUtil.toString( ( (StorageFileItem) item ).getInputStream() );
+                    }
+                } ) );
+            }
+
+            for ( Future<String> result : results )
+            {
+                Assert.assertEquals( ITEM_CONTENT, result.get( 30, TimeUnit.SECONDS ) );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals( "Only one request should go remote", 1, remoteStorage.retrievals.get() );
+    }
+
+    // ==
+
+    protected M2Repository createProxyRepository( final String id, final RemoteRepositoryStorage remoteStorage )
+        throws Exception
+    {
+        final M2Repository repository = (M2Repository) lookup( Repository.class, "maven2" );
+
+        final CRepository repoConf = new DefaultCRepository();
+        repoConf.setProviderRole( Repository.class.getName() );
+        repoConf.setProviderHint( "maven2" );
+        repoConf.setId( id );
+        repoConf.setLocalStorage( new CLocalStorage() );
+        repoConf.getLocalStorage().setProvider( "file" );
+        repoConf.setRemoteStorage( new CRemoteStorage() );
+        repoConf.getRemoteStorage().setProvider( "mock" );
+        repoConf.getRemoteStorage().setUrl( SlowRemoteStorage.REMOTE_URL );
+        repoConf.getRemoteStorage().setConnectionSettings( new CRemoteConnectionSettings() );
+        repoConf.getRemoteStorage().getConnectionSettings().setRetrievalRetryCount( 0 );
+
+        final Xpp3Dom exRepo = new Xpp3Dom( "externalConfiguration" );
+        repoConf.setExternalConfiguration( exRepo );
+        final M2RepositoryConfiguration exRepoConf = new M2RepositoryConfiguration( exRepo );
+        exRepoConf.setRepositoryPolicy( RepositoryPolicy.RELEASE );
+        exRepoConf.setChecksumPolicy( ChecksumPolicy.IGNORE );
+
+        repository.configure( repoConf );
+        repository.getNotFoundCache().purge();
+        repository.setRemoteStorage( remoteStorage );
+
+        return repository;
+    }
+
+    /**
+     * Remote storage that holds the artifact retrieval until all other requesters are parked, and counts retrievals.
+     */
+    protected static class SlowRemoteStorage
+        implements RemoteRepositoryStorage
+    {
+        static final String REMOTE_URL = "http://coalescing-remote/";
+
+        final List<Thread> callers = new CopyOnWriteArrayList<Thread>();
+
+        final AtomicInteger retrievals = new AtomicInteger();
+
+        public String getProviderId()
+        {
+            return "slow";
+        }
+
+        public String getVersion()
+        {
+            return "1.0";
+        }
+
+        public boolean isReachable( ProxyRepository repository, ResourceStoreRequest request )
+        {
+            return true;
+        }
+
+        public URL getAbsoluteUrlFromBase( ProxyRepository repository, ResourceStoreRequest request )
+            throws RemoteStorageException
+        {
+            try
+            {
+                return new URL( REMOTE_URL + request.getRequestPath() );
+            }
+            catch ( IOException e )
+            {
+                throw new RemoteStorageException( e.getMessage(), e );
+            }
+        }
+
+        public void validateStorageUrl( String url )
+        {
+        }
+
+        public boolean containsItem( ProxyRepository repository, ResourceStoreRequest request )
+        {
+            return ITEM_PATH.equals( request.getRequestPath() );
+        }
+
+        public boolean containsItem( long newerThen, ProxyRepository repository, ResourceStoreRequest request )
+        {
+            return containsItem( repository, request );
+        }
+
+        public AbstractStorageItem retrieveItem( ProxyRepository repository, ResourceStoreRequest request,
+                                                 String baseUrl )
+            throws ItemNotFoundException, RemoteStorageException
+        {
+            if ( !ITEM_PATH.equals( request.getRequestPath() ) )
+            {
+                throw new ItemNotFoundException( request, repository );
+            }
+
+            retrievals.incrementAndGet();
+
+            awaitOtherCallersParked();
+
+            return new DefaultStorageFileItem( repository, request, true, false, new ByteArrayContentLocator(
+                ITEM_CONTENT.getBytes(), "application/java-archive" ) );
+        }
+
+        public void storeItem( ProxyRepository repository, StorageItem item )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public void deleteItem( ProxyRepository repository, ResourceStoreRequest request )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        protected void awaitOtherCallersParked()
+        {
+            final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( 10 );
+
+            while ( System.currentTimeMillis() < deadline )
+            {
+                int parked = 0;
+
+                for ( Thread caller : callers )
+                {
+                    if ( caller != Thread.currentThread()
+                        && ( caller.getState() == Thread.State.WAITING || caller.getState() == Thread.State.BLOCKED ) )
+                    {
+                        parked++;
+                    }
+                }
+
+                if ( parked == REQUESTS - 1 )
+                {
+                    return;
+                }
+
+                try
+                {
+                    Thread.sleep( 10 );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+
+                    return;
+                }
+            }
+        }
+    }
+}
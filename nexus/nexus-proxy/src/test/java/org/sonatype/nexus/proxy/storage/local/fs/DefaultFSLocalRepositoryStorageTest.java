@@ -24,6 +24,9 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
@@ -41,10 +44,14 @@ import org.sonatype.nexus.mime.MimeSupport;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.attributes.AttributeStorage;
+import org.sonatype.nexus.proxy.attributes.Attributes;
 import org.sonatype.nexus.proxy.attributes.AttributesHandler;
+import org.sonatype.nexus.proxy.attributes.internal.DefaultAttributes;
 import org.sonatype.nexus.proxy.item.AbstractStorageItem;
 import org.sonatype.nexus.proxy.item.ContentLocator;
 import org.sonatype.nexus.proxy.item.LinkPersister;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.repository.DefaultRepositoryKind;
 import org.sonatype.nexus.proxy.repository.HostedRepository;
@@ -167,4 +174,67 @@ public class DefaultFSLocalRepositoryStorageTest extends PlexusTestCaseSupport
         // expected to throw a ItemNotFoundException
         localRepositoryStorageUnderTest.retrieveItemFromFile( repository, new ResourceStoreRequest( "not-used" ), mockFile );
     }
+
+    /**
+     * Tests lightweight listing, the attributes of listed items should be loaded only when needed.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLightweightListingLoadsAttributesOnDemand()
+        throws Exception
+    {
+        File repoLocation = new File( getBasedir(), "target/" + getClass().getSimpleName() + "/repo/" );
+
+        File lightDir = new File( repoLocation, "light/" );
+        lightDir.mkdirs();
+        File lightFile = new File( lightDir, "light.txt" );
+        FileUtils.fileWrite( lightFile, "UTF-8", "something light" );
+        Collection<File> lightFileCollection = Arrays.asList( lightDir.listFiles() );
+
+        // Mocks
+        Wastebasket wastebasket = mock( Wastebasket.class );
+        LinkPersister linkPersister = mock( LinkPersister.class );
+        MimeSupport mimeUtil = mock( MimeSupport.class );
+        Map<String, Long> repositoryContexts = Maps.newHashMap();
+
+        FSPeer fsPeer = mock( FSPeer.class );
+        when( fsPeer.listItems( Mockito.any( Repository.class ), Mockito.any( ResourceStoreRequest.class ), eq( lightDir ) ) ).thenReturn( lightFileCollection );
+
+        // stored attributes, with a modified timestamp that should not win over the one of file
+        Attributes storedAttributes = new DefaultAttributes();
+        storedAttributes.put( "foo", "bar" );
+        storedAttributes.setModified( 1L );
+        AttributeStorage attributeStorage = mock( AttributeStorage.class );
+        when( attributeStorage.getAttributes( Mockito.any( RepositoryItemUid.class ) ) ).thenReturn( storedAttributes );
+
+        Repository repository = mock( Repository.class );
+        when( repository.getId() ).thenReturn( "mock" );
+        when( repository.getRepositoryKind() ).thenReturn( new DefaultRepositoryKind( HostedRepository.class, null ) );
+        when( repository.getLocalUrl() ).thenReturn( repoLocation.toURI().toURL().toString() );
+        AttributesHandler attributesHandler = mock( AttributesHandler.class );
+        when( attributesHandler.getAttributeStorage() ).thenReturn( attributeStorage );
+        when( repository.getAttributesHandler() ).thenReturn( attributesHandler );
+
+        DefaultFSLocalRepositoryStorage localRepositoryStorageUnderTest = new DefaultFSLocalRepositoryStorage( wastebasket, linkPersister, mimeUtil, repositoryContexts, fsPeer );
+
+        ResourceStoreRequest lightRequest = new ResourceStoreRequest( "light" );
+        lightRequest.setRequestLightweightListing( true );
+
+        Collection<StorageItem> items = localRepositoryStorageUnderTest.listItems( repository, lightRequest );
+        assertThat( items, hasSize( 1 ) );
+        StorageItem item = items.iterator().next();
+
+        // name and timestamps come from the file, attributes are not touched
+        assertThat( item.getName(), equalTo( "light.txt" ) );
+        assertThat( item.getModified(), equalTo( lightFile.lastModified() ) );
+        verify( attributesHandler, never() ).fetchAttributes( Mockito.any( StorageItem.class ) );
+        verify( attributeStorage, never() ).getAttributes( Mockito.any( RepositoryItemUid.class ) );
+
+        // stored attributes are loaded once, when needed
+        assertThat( item.getRepositoryItemAttributes().get( "foo" ), equalTo( "bar" ) );
+        assertThat( item.getRepositoryItemAttributes().containsKey( "foo" ), equalTo( true ) );
+        assertThat( item.getModified(), equalTo( lightFile.lastModified() ) );
+        verify( attributeStorage, times( 1 ) ).getAttributes( Mockito.any( RepositoryItemUid.class ) );
+    }
 }
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.target;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sonatype.nexus.proxy.maven.maven1.Maven1ContentClass;
+import org.sonatype.nexus.proxy.maven.maven2.Maven2ContentClass;
+import org.sonatype.nexus.proxy.registry.ContentClass;
+
+public class TargetMatcherIndexTest
+{
+    @Test
+    public void testLiteralPrefix()
+    {
+        Assert.assertEquals( "/org/apache/maven/", TargetMatcherIndex.getLiteralPrefix( "/org/apache/maven/.*" ) );
+        Assert.assertEquals( "/org", TargetMatcherIndex.getLiteralPrefix( "/org\\.apache\\.maven.*" ) );
+        Assert.assertEquals( "/com/fo", TargetMatcherIndex.getLiteralPrefix( "/com/foo?/.*" ) );
+        Assert.assertEquals( "/org/", TargetMatcherIndex.getLiteralPrefix( "^/org/(a|b)/.*" ) );
+        Assert.assertEquals( "", TargetMatcherIndex.getLiteralPrefix( "/org/a/.*|/com/b/.*" ) );
+        Assert.assertEquals( "/org/", TargetMatcherIndex.getLiteralPrefix( "/org/[a|b]/.*" ) );
+        Assert.assertEquals( "", TargetMatcherIndex.getLiteralPrefix( ".*" ) );
+        Assert.assertEquals( "", TargetMatcherIndex.getLiteralPrefix( "(?!.*-sources.*).*" ) );
+    }
+
+    @Test
+    public void testMatchesSameAsTarget()
+    {
+        ContentClass maven1 = new Maven1ContentClass();
+        ContentClass maven2 = new Maven2ContentClass();
+
+        Target t1 =
+            new Target( "maven2-public", "Maven2 (public)", maven2,
+                Arrays.asList( new String[] { "/org/apache/maven/((?!sources\\.).)*" } ) );
+        Target t2 =
+            new Target( "maven2-with-sources", "Maven2 sources", maven2,
+                Arrays.asList( new String[] { "/org/apache/maven/.*" } ) );
+        Target t3 = new Target( "maven1", "Maven1", maven1, Arrays.asList( new String[] { "/org\\.apache\\.maven.*" } ) );
+        Target t4 = new Target( "all", "All (maven2)", maven2, Arrays.asList( new String[] { ".*" } ) );
+        Target t5 =
+            new Target( "alternation", "Alternation", maven2,
+                Arrays.asList( new String[] { "/com/foo/.*|/org/apache/.*" } ) );
+
+        List<Target> targets = Arrays.asList( t1, t2, t3, t4, t5 );
+
+        TargetMatcherIndex index = new TargetMatcherIndex( targets );
+
+        String[] paths =
+            new String[] { "/org/apache/maven/maven-core/2.0.9/maven-core-2.0.9.pom",
+                "/org/apache/maven/maven-core/2.0.9/maven-core-2.0.9-sources.jar",
+                "/org.apache.maven/jars/maven-model-v3-2.0.jar", "/com/foo/bar/1.0/bar-1.0.jar", "/org", "/" };
+
+        for ( ContentClass contentClass : new ContentClass[] { maven1, maven2 } )
+        {
+            for ( String path : paths )
+            {
+                List<Target> result = index.getTargetsForPath( contentClass, path );
+
+                for ( Target target : targets )
+                {
+                    Assert.assertEquals( "Target " + target.getId() + " on path " + path,
+                        target.isPathContained( contentClass, path ), result.contains( target ) );
+                }
+            }
+        }
+    }
+}
@@ -104,6 +104,49 @@ public class WalkerTest
         Assert.assertEquals( 0, wp.links );
     }
 
+    @Test
+    public void testParallelWalker()
+        throws Exception
+    {
+        // fetch some content to have on walk on something
+        getRootRouter().retrieveItem(
+            new ResourceStoreRequest( "/groups/test/activemq/activemq-core/1.2/activemq-core-1.2.jar", false ) );
+        getRootRouter().retrieveItem(
+            new ResourceStoreRequest( "/groups/test/xstream/xstream/1.2.2/xstream-1.2.2.pom", false ) );
+        getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test/rome/rome/0.9/rome-0.9.pom", false ) );
+        getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test/repo3.txt", false ) );
+
+        TestParallelWalkerProcessor wp = new TestParallelWalkerProcessor();
+
+        // this is a group
+        WalkerContext wc =
+            new DefaultWalkerContext( getRepositoryRegistry().getRepository( "test" ), new ResourceStoreRequest(
+                RepositoryItemUid.PATH_ROOT, true ) );
+
+        wc.getContext().put( DefaultWalker.WALKER_PARALLELISM, 4 );
+
+        wc.getProcessors().add( wp );
+
+        walker.walk( wc );
+
+        assertFalse( "Should not be stopped!", wc.isStopped() );
+
+        if ( wc.getStopCause() != null )
+        {
+            wc.getStopCause().printStackTrace();
+
+            fail( "Should be no exception!" );
+        }
+
+        // same results as sequential walk, all forks are joined
+        Assert.assertEquals( 10, wp.collEnters );
+        Assert.assertEquals( 10, wp.collExits );
+        Assert.assertEquals( 10, wp.colls );
+        Assert.assertEquals( 4, wp.files );
+        Assert.assertEquals( 0, wp.links );
+        Assert.assertEquals( 10, wc.getContext().get( DefaultWalker.WALKER_WALKED_COLLECTION_COUNT ) );
+    }
+
     /**
      * Tests walking an out of service repo.  The walker should NOT not fail, but also NOT find any items.</BR>
      * Verifies fix for: NEXUS-4554 (which is more general then just fixing the Trash task)
@@ -189,4 +232,27 @@ public class WalkerTest
         }
     }
 
+    private class TestParallelWalkerProcessor
+        extends TestWalkerProcessor
+        implements ParallelWalkerProcessor
+    {
+        @Override
+        public ParallelWalkerProcessor fork( WalkerContext context )
+        {
+            return new TestParallelWalkerProcessor();
+        }
+
+        @Override
+        public void join( WalkerContext context, ParallelWalkerProcessor fork )
+        {
+            TestParallelWalkerProcessor other = (TestParallelWalkerProcessor) fork;
+
+            collEnters += other.collEnters;
+            collExits += other.collExits;
+            colls += other.colls;
+            files += other.files;
+            links += other.links;
+        }
+    }
+
 }
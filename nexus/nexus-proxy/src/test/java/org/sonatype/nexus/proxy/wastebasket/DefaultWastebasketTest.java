@@ -19,6 +19,7 @@
 
 package org.sonatype.nexus.proxy.wastebasket;
 
+import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.junit.Test;
 import org.sonatype.nexus.configuration.application.ApplicationConfiguration;
@@ -26,6 +27,9 @@ import org.sonatype.nexus.configuration.model.CLocalStorage;
 import org.sonatype.nexus.configuration.model.CRepository;
 import org.sonatype.nexus.configuration.model.DefaultCRepository;
 import org.sonatype.nexus.proxy.AbstractNexusTestEnvironment;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.StringContentLocator;
 import org.sonatype.nexus.proxy.maven.ChecksumPolicy;
 import org.sonatype.nexus.proxy.maven.RepositoryPolicy;
 import org.sonatype.nexus.proxy.maven.maven2.M2Repository;
@@ -35,6 +39,7 @@ import org.sonatype.nexus.proxy.repository.LocalStatus;
 import org.sonatype.nexus.proxy.repository.Repository;
 
 import java.io.File;
+import java.io.FileOutputStream;
 
 /**
  * Tests the {@link DefaultWastebasket} class.
@@ -43,7 +48,7 @@ public class DefaultWastebasketTest
     extends AbstractNexusTestEnvironment
 {
 
-    private void addRepository( String id )
+    private M2Repository addRepository( String id )
         throws Exception
     {
         // ading one hosted only
@@ -71,6 +76,31 @@ public class DefaultWastebasketTest
         lookup( ApplicationConfiguration.class ).getConfigurationModel().addRepository( repoConf );
 
         lookup( RepositoryRegistry.class ).addRepository( repo );
+
+        return repo;
+    }
+
+    private M2Repository addEmptyRepository( String id )
+        throws Exception
+    {
+        // trash of previous runs
+        FileUtils.deleteDirectory( new File( getBasedir(), "target/test-classes/" + id ) );
+
+        return addRepository( id );
+    }
+
+    private void storeAndDelete( M2Repository repo, String path, String content )
+        throws Exception
+    {
+        repo.storeItem( false, new DefaultStorageFileItem( repo, new ResourceStoreRequest( path ), true, true,
+            new StringContentLocator( content ) ) );
+
+        repo.deleteItem( false, new ResourceStoreRequest( path ) );
+    }
+
+    private File getTrashedFile( String id, String path )
+    {
+        return new File( getBasedir(), "target/test-classes/" + id + "/.nexus/trash" + path );
     }
 
     /**
@@ -95,4 +125,122 @@ public class DefaultWastebasketTest
         wastebasket.purgeAll( 1L );
     }
 
+    /**
+     * Tests that total size is summed up (and does not NPE) when wastebaskets are empty.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testTotalSizeOfEmptyWastebaskets()
+        throws Exception
+    {
+        this.addRepository( "empty-trash-repo" );
+
+        Wastebasket wastebasket = this.lookup( Wastebasket.class );
+
+        assertNotNull( wastebasket.getTotalSize() );
+    }
+
+    /**
+     * Tests that size of wastebasket follows the deletes, counting the trashed collections merged with what is already
+     * in the trash once.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSizeFollowsDeletes()
+        throws Exception
+    {
+        M2Repository repo = this.addEmptyRepository( "size-repo" );
+
+        Wastebasket wastebasket = this.lookup( Wastebasket.class );
+
+        assertEquals( Long.valueOf( 0 ), wastebasket.getSize( repo ) );
+
+        storeAndDelete( repo, "/org/foo/foo/1.0/foo-1.0.jar", "12345" );
+
+        assertEquals( Long.valueOf( 5 ), wastebasket.getSize( repo ) );
+
+        // a collection trashed into the trash already having some of its content
+        repo.storeItem( false, new DefaultStorageFileItem( repo, new ResourceStoreRequest(
+            "/org/foo/foo/1.0/foo-1.0.pom" ), true, true, new StringContentLocator( "123" ) ) );
+        repo.deleteItem( false, new ResourceStoreRequest( "/org/foo" ) );
+
+        assertEquals( Long.valueOf( 8 ), wastebasket.getSize( repo ) );
+
+        wastebasket.purge( repo );
+
+        assertEquals( Long.valueOf( 0 ), wastebasket.getSize( repo ) );
+    }
+
+    /**
+     * Tests that items longest in the wastebasket are evicted when it grows over the maximum size.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testEvictionOverMaximumSize()
+        throws Exception
+    {
+        M2Repository repo = this.addEmptyRepository( "eviction-repo" );
+
+        SmartWastebasket wastebasket = (SmartWastebasket) this.lookup( Wastebasket.class );
+
+        wastebasket.setMaximumSizeConstraint( new AbsoluteMaximumSizeConstraint( 8 ) );
+
+        try
+        {
+            storeAndDelete( repo, "/org/foo/foo/1.0/foo-1.0.jar", "12345" );
+            storeAndDelete( repo, "/org/foo/foo/1.0/foo-1.0.pom", "12345" );
+
+            // eviction is done in background
+            for ( int i = 0; i < 100 && wastebasket.getSize( repo ) > 8; i++ )
+            {
+                Thread.sleep( 50 );
+            }
+
+            assertEquals( Long.valueOf( 5 ), wastebasket.getSize( repo ) );
+            assertFalse( getTrashedFile( "eviction-repo", "/org/foo/foo/1.0/foo-1.0.jar" ).exists() );
+            assertTrue( getTrashedFile( "eviction-repo", "/org/foo/foo/1.0/foo-1.0.pom" ).exists() );
+        }
+        finally
+        {
+            wastebasket.setMaximumSizeConstraint( null );
+        }
+    }
+
+    /**
+     * Tests that purge by age removes the items modified before the age, including the ones trashed before wastebasket
+     * was tracking them.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testPurgeByAge()
+        throws Exception
+    {
+        M2Repository repo = this.addEmptyRepository( "age-repo" );
+
+        Wastebasket wastebasket = this.lookup( Wastebasket.class );
+
+        storeAndDelete( repo, "/org/foo/foo/1.0/foo-1.0.jar", "12345" );
+        storeAndDelete( repo, "/org/foo/foo/1.0/foo-1.0.pom", "123" );
+
+        File oldFile = getTrashedFile( "age-repo", "/org/foo/foo/1.0/foo-1.0.jar" );
+        assertTrue( oldFile.setLastModified( System.currentTimeMillis() - 2 * 60 * 60 * 1000L ) );
+
+        // trashed by hand, not known to wastebasket
+        File untracked = getTrashedFile( "age-repo", "/org/bar/bar-1.0.jar" );
+        untracked.getParentFile().mkdirs();
+        new FileOutputStream( untracked ).close();
+        assertTrue( untracked.setLastModified( System.currentTimeMillis() - 2 * 60 * 60 * 1000L ) );
+
+        wastebasket.purge( repo, 60 * 60 * 1000L );
+
+        assertFalse( oldFile.exists() );
+        assertFalse( untracked.exists() );
+        assertTrue( getTrashedFile( "age-repo", "/org/foo/foo/1.0/foo-1.0.pom" ).exists() );
+        assertEquals( Long.valueOf( 3 ), wastebasket.getSize( repo ) );
+    }
+
 }
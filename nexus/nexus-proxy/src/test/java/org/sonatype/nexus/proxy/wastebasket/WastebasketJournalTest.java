@@ -0,0 +1,232 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.wastebasket;
+
+import java.io.File;
+
+import org.codehaus.plexus.PlexusTestCase;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Tests the {@link WastebasketJournal} class.
+ */
+public class WastebasketJournalTest
+    extends PlexusTestCase
+{
+    private File journalFile;
+
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        journalFile = getTestFile( "target/wastebasket-journal/test.journal" );
+
+        FileUtils.deleteDirectory( journalFile.getParentFile() );
+    }
+
+    public void testSizeAndOrder()
+        throws Exception
+    {
+        WastebasketJournal journal = new WastebasketJournal( journalFile );
+
+        assertFalse( journal.open() );
+
+        journal.add( "/.nexus/trash/a.jar", 100, 1 );
+        journal.add( "/.nexus/trash/b", 200, 2 );
+        journal.add( "/.nexus/trash/c.jar", 50, 3 );
+
+        assertEquals( 350, journal.getSize() );
+        assertEquals( "/.nexus/trash/a.jar", journal.getOldest().getPath() );
+
+        // trashed again, moves to the end
+        journal.add( "/.nexus/trash/a.jar", 10, 4 );
+
+        assertEquals( 260, journal.getSize() );
+        assertEquals( "/.nexus/trash/b", journal.getOldest().getPath() );
+
+        journal.remove( "/.nexus/trash/b" );
+
+        assertEquals( 60, journal.getSize() );
+        assertEquals( 2, journal.getEntryCount() );
+    }
+
+    public void testCollectionsAbsorbEntriesBelow()
+        throws Exception
+    {
+        WastebasketJournal journal = new WastebasketJournal( journalFile );
+        journal.open();
+
+        journal.add( "/.nexus/trash/b/c.jar", 50, 1 );
+        journal.add( "/.nexus/trash/b/d/e.jar", 20, 2 );
+        journal.add( "/.nexus/trash/bb.jar", 5, 3 );
+
+        // collection merged with the items already in trash, its size covers them
+        journal.add( "/.nexus/trash/b", WastebasketJournal.UNKNOWN_SIZE, 4 );
+
+        assertEquals( 5, journal.getSize() );
+        assertEquals( 2, journal.getEntryCount() );
+        assertEquals( "/.nexus/trash/bb.jar", journal.getOldest().getPath() );
+        assertEquals( 1, journal.getUnsizedEntries().size() );
+
+        WastebasketJournal.Entry entry = journal.getUnsizedEntries().get( 0 );
+        assertTrue( journal.setSize( entry, 120 ) );
+        assertEquals( 125, journal.getSize() );
+
+        // stale entry is not sized
+        assertFalse( journal.setSize( entry, 1000 ) );
+        assertEquals( 125, journal.getSize() );
+    }
+
+    public void testItemsTrashedIntoCollectionRefreshIt()
+        throws Exception
+    {
+        WastebasketJournal journal = new WastebasketJournal( journalFile );
+        journal.open();
+
+        journal.add( "/.nexus/trash/b", 100, 1 );
+        journal.add( "/.nexus/trash/c.jar", 50, 2 );
+
+        // newer item merged into older collection, collection is not the oldest anymore
+        journal.add( "/.nexus/trash/b/d.jar", 20, 3 );
+
+        assertEquals( 50, journal.getSize() );
+        assertEquals( 2, journal.getEntryCount() );
+        assertEquals( "/.nexus/trash/c.jar", journal.getOldest().getPath() );
+        assertEquals( "/.nexus/trash/b", journal.getUnsizedEntries().get( 0 ).getPath() );
+        assertEquals( 3, journal.getUnsizedEntries().get( 0 ).getTime() );
+
+        // untrashing from within collection makes it measured again
+        journal.setSize( journal.getUnsizedEntries().get( 0 ), 120 );
+        journal.remove( "/.nexus/trash/b/d.jar" );
+
+        assertEquals( 50, journal.getSize() );
+        assertEquals( 1, journal.getUnsizedEntries().size() );
+
+        // removing entries below path
+        journal.add( "/.nexus/trash/e/f.jar", 10, 4 );
+        journal.add( "/.nexus/trash/e/g.jar", 10, 5 );
+        journal.remove( "/.nexus/trash/e" );
+
+        assertEquals( 2, journal.getEntryCount() );
+    }
+
+    public void testReplay()
+        throws Exception
+    {
+        WastebasketJournal journal = new WastebasketJournal( journalFile );
+        journal.open();
+        journal.add( "/.nexus/trash/a.jar", 100, 1 );
+        journal.add( "/.nexus/trash/b with space.jar", 200, 2 );
+        journal.add( "/.nexus/trash/c", WastebasketJournal.UNKNOWN_SIZE, 3 );
+        journal.add( "/.nexus/trash/d", WastebasketJournal.UNKNOWN_SIZE, 4 );
+        journal.setSize( journal.getUnsizedEntries().get( 1 ), 30 );
+        journal.remove( "/.nexus/trash/a.jar" );
+        journal.close();
+
+        journal = new WastebasketJournal( journalFile );
+
+        assertTrue( journal.open() );
+        assertEquals( 230, journal.getSize() );
+        assertEquals( 3, journal.getEntryCount() );
+        assertEquals( "/.nexus/trash/b with space.jar", journal.getOldest().getPath() );
+        assertEquals( "/.nexus/trash/c", journal.getUnsizedEntries().get( 0 ).getPath() );
+
+        journal.clear();
+        journal.close();
+
+        journal = new WastebasketJournal( journalFile );
+        journal.open();
+
+        assertEquals( 0, journal.getSize() );
+        assertNull( journal.getOldest() );
+    }
+
+    public void testCompaction()
+        throws Exception
+    {
+        WastebasketJournal journal = new WastebasketJournal( journalFile );
+        journal.open();
+
+        for ( int i = 0; i < 5000; i++ )
+        {
+            journal.add( "/.nexus/trash/a.jar", i, i );
+        }
+
+        journal.close();
+
+        // only the live entries are kept
+        assertTrue( journalFile.length() < 100000 );
+
+        journal = new WastebasketJournal( journalFile );
+        journal.open();
+
+        assertEquals( 4999, journal.getSize() );
+        assertEquals( 1, journal.getEntryCount() );
+
+        // the swap leaves nothing behind
+        assertEquals( 1, journalFile.getParentFile().list().length );
+
+        journal.delete();
+
+        assertFalse( journalFile.exists() );
+    }
+
+    public void testBackupRestoredAfterInterruptedCompaction()
+        throws Exception
+    {
+        WastebasketJournal journal = new WastebasketJournal( journalFile );
+        journal.open();
+        journal.add( "/.nexus/trash/a.jar", 100, 1 );
+        journal.add( "/.nexus/trash/b.jar", 200, 2 );
+        journal.close();
+
+        // crash after the journal was backed up, before the compacted one was swapped in
+        final File backupFile = new File( journalFile.getParentFile(), journalFile.getName() + ".bak" );
+        assertTrue( journalFile.renameTo( backupFile ) );
+
+        journal = new WastebasketJournal( journalFile );
+
+        assertTrue( journal.open() );
+        assertEquals( 300, journal.getSize() );
+        assertEquals( 2, journal.getEntryCount() );
+        assertFalse( backupFile.exists() );
+    }
+
+    public void testBackupDroppedAfterCompletedSwap()
+        throws Exception
+    {
+        WastebasketJournal journal = new WastebasketJournal( journalFile );
+        journal.open();
+        journal.add( "/.nexus/trash/a.jar", 100, 1 );
+        journal.close();
+
+        // crash after the compacted journal was swapped in, before the backup was deleted
+        final File backupFile = new File( journalFile.getParentFile(), journalFile.getName() + ".bak" );
+        FileUtils.fileWrite( backupFile.getAbsolutePath(), "UTF-8", "+\t2\t200\t/.nexus/trash/b.jar\n" );
+
+        journal = new WastebasketJournal( journalFile );
+
+        assertTrue( journal.open() );
+        assertEquals( 100, journal.getSize() );
+        assertEquals( 1, journal.getEntryCount() );
+        assertFalse( backupFile.exists() );
+    }
+}
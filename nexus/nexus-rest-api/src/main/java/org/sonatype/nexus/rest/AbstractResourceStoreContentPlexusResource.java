@@ -19,6 +19,8 @@
 package org.sonatype.nexus.rest;
 
 import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -26,7 +28,9 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -37,6 +41,7 @@ import org.codehaus.plexus.util.StringUtils;
 import org.restlet.Context;
 import org.restlet.data.ChallengeRequest;
 import org.restlet.data.ChallengeScheme;
+import org.restlet.data.Form;
 import org.restlet.data.MediaType;
 import org.restlet.data.Method;
 import org.restlet.data.Parameter;
@@ -70,6 +75,7 @@ import org.sonatype.nexus.proxy.item.uid.IsHiddenAttribute;
 import org.sonatype.nexus.proxy.item.uid.IsRemotelyAccessibleAttribute;
 import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
+import org.sonatype.nexus.rest.StorageFileItemRangeRepresentation.ByteRange;
 import org.sonatype.nexus.rest.model.ContentListDescribeRequestResource;
 import org.sonatype.nexus.rest.model.ContentListDescribeResource;
 import org.sonatype.nexus.rest.model.ContentListDescribeResourceResponse;
@@ -400,7 +406,7 @@ public abstract class AbstractResourceStoreContentPlexusResource
                 // this is a conditional GET
                 if ( file.getModified() > req.getConditions().getModifiedSince().getTime() )
                 {
-                    result = new StorageFileItemRepresentation( file );
+                    result = renderStorageFileItem( req, res, file );
                 }
                 else
                 {
@@ -416,7 +422,7 @@ public abstract class AbstractResourceStoreContentPlexusResource
                 if ( !file.getRepositoryItemAttributes().get( DigestCalculatingInspector.DIGEST_SHA1_KEY ).equals(
                     tag.getName() ) )
                 {
-                    result = new StorageFileItemRepresentation( file );
+                    result = renderStorageFileItem( req, res, file );
                 }
                 else
                 {
@@ -425,7 +431,7 @@ public abstract class AbstractResourceStoreContentPlexusResource
             }
             else
             {
-                result = new StorageFileItemRepresentation( file );
+                result = renderStorageFileItem( req, res, file );
             }
         }
         else if ( item instanceof StorageLinkItem )
@@ -516,6 +522,142 @@ public abstract class AbstractResourceStoreContentPlexusResource
         return result;
     }
 
+    /**
+     * Creates the representation of a file item. For file backed items the GET "Range" header is honored (single and
+     * multiple byte ranges, answered with HTTP 206), provided that "If-Range" (if present) matches the SHA1 ETag or
+     * last modified date of the item.
+     */
+    protected Representation renderStorageFileItem( final Request req, final Response res, final StorageFileItem file )
+        throws ResourceException
+    {
+        final StorageFileItemRepresentation result = new StorageFileItemRepresentation( file );
+
+        if ( result.getFileContentLocator() == null )
+        {
+            return result;
+        }
+
+        setResponseHeader( res, "Accept-Ranges", "bytes" );
+
+        final Form headers = (Form) req.getAttributes().get( "org.restlet.http.headers" );
+
+        if ( !Method.GET.equals( req.getMethod() ) || headers == null )
+        {
+            return result;
+        }
+
+        final String rangeHeader = headers.getFirstValue( "Range", true );
+
+        if ( rangeHeader == null )
+        {
+            return result;
+        }
+
+        final String ifRangeHeader = headers.getFirstValue( "If-Range", true );
+
+        if ( ifRangeHeader != null && !isIfRangeMatching( ifRangeHeader, file ) )
+        {
+            // entity changed, client needs it whole
+            return result;
+        }
+
+        final List<ByteRange> ranges = StorageFileItemRangeRepresentation.parseRanges( rangeHeader, file.getLength() );
+
+        if ( ranges == null )
+        {
+            // invalid or unsupported ranges are ignored
+            return result;
+        }
+
+        if ( ranges.isEmpty() )
+        {
+            setResponseHeader( res, "Content-Range", "bytes */" + file.getLength() );
+
+            throw new ResourceException( Status.CLIENT_ERROR_REQUESTED_RANGE_NOT_SATISFIABLE,
+                "Requested range not satisfiable." );
+        }
+
+        final StorageFileItemRangeRepresentation partial = new StorageFileItemRangeRepresentation( file, ranges );
+
+        if ( partial.getContentRange() != null )
+        {
+            setResponseHeader( res, "Content-Range", partial.getContentRange() );
+        }
+
+        res.setStatus( Status.SUCCESS_PARTIAL_CONTENT );
+
+        return partial;
+    }
+
+    /**
+     * If-Range holds either an entity tag, that has to strongly match the SHA1 ETag, or a HTTP date, that has to match
+     * the last modified date of the item.
+     */
+    protected boolean isIfRangeMatching( final String ifRangeHeader, final StorageFileItem file )
+    {
+        final String value = ifRangeHeader.trim();
+
+        if ( value.startsWith( "W/" ) )
+        {
+            // weak validators are not usable for ranges
+            return false;
+        }
+        else if ( value.startsWith( "\"" ) )
+        {
+            final String sha1 = file.getRepositoryItemAttributes().get( DigestCalculatingInspector.DIGEST_SHA1_KEY );
+
+            if ( sha1 == null || value.length() < 2 || !value.endsWith( "\"" ) )
+            {
+                return false;
+            }
+
+            final String tag = value.substring( 1, value.length() - 1 );
+
+            return tag.equals( String.format( "{SHA1{%s}}", sha1 ) ) || tag.equals( sha1 );
+        }
+        else
+        {
+            final SimpleDateFormat format = new SimpleDateFormat( "EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US );
+
+            format.setTimeZone( TimeZone.getTimeZone( "GMT" ) );
+
+            try
+            {
+                return format.parse( value ).getTime() / 1000 == file.getModified() / 1000;
+            }
+            catch ( ParseException e )
+            {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Sets a response header that Restlet does not support setting, directly on servlet response if possible.
+     */
+    protected void setResponseHeader( final Response res, final String name, final String value )
+    {
+        final Request req = res.getRequest();
+
+        if ( req instanceof HttpRequest && ( (HttpRequest) req ).getHttpCall() instanceof ServletCall )
+        {
+            ( (ServletCall) ( (HttpRequest) req ).getHttpCall() ).getResponse().setHeader( name, value );
+        }
+        else
+        {
+            Form responseHeaders = (Form) res.getAttributes().get( "org.restlet.http.headers" );
+
+            if ( responseHeaders == null )
+            {
+                responseHeaders = new Form();
+
+                res.getAttributes().put( "org.restlet.http.headers", responseHeaders );
+            }
+
+            responseHeaders.set( name, value, true );
+        }
+    }
+
     private String getResourceUri( Request req, ContentListResource resource, StorageItem child )
     {
         // NEXUS-4244: simply force both baseURLs, coming from nexus.xml and extracted from current request
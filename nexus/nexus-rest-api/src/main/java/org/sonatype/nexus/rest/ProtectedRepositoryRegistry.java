@@ -58,6 +58,11 @@ public class ProtectedRepositoryRegistry
         return this.defaultRepositoryRegistry.getGroupsOfRepository( repository );
     }
 
+    public List<String> getTransitiveGroupsOfRepository( String repositoryId )
+    {
+        return this.defaultRepositoryRegistry.getTransitiveGroupsOfRepository( repositoryId );
+    }
+
     public List<Repository> getRepositories()
     {
         return this.filterRepositoriesList( this.defaultRepositoryRegistry.getRepositories() );
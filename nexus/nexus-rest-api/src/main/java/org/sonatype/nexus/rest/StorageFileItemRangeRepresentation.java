@@ -0,0 +1,345 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.rest;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import org.restlet.data.MediaType;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+
+/**
+ * Partial (HTTP 206) representation of a file backed item: a single byte range, or multiple ranges as
+ * "multipart/byteranges". Ranges are read by seeking in the file, the bytes preceding them are never read.
+ * 
+ * @since 2.0
+ */
+public class StorageFileItemRangeRepresentation
+    extends StorageFileItemRepresentation
+{
+    /**
+     * Requests with more ranges than this are served as whole, to not be abused for amplification.
+     */
+    public static final int MAX_RANGES = 16;
+
+    private static final String CRLF = "\r\n";
+
+    private final List<ByteRange> ranges;
+
+    private final String boundary;
+
+    private final List<byte[]> partHeaders;
+
+    private final byte[] closingBoundary;
+
+    public StorageFileItemRangeRepresentation( final StorageFileItem file, final List<ByteRange> ranges )
+    {
+        super( file );
+
+        this.ranges = Collections.unmodifiableList( new ArrayList<ByteRange>( ranges ) );
+
+        if ( ranges.size() == 1 )
+        {
+            this.boundary = null;
+            this.partHeaders = null;
+            this.closingBoundary = null;
+
+            setSize( ranges.get( 0 ).getLength() );
+        }
+        else
+        {
+            this.boundary = UUID.randomUUID().toString().replace( "-", "" );
+            this.partHeaders = new ArrayList<byte[]>( ranges.size() );
+
+            long size = 0;
+
+            for ( ByteRange range : ranges )
+            {
+                final byte[] partHeader =
+                    toBytes( CRLF + "--" + boundary + CRLF + "Content-Type: " + file.getMimeType() + CRLF
+                        + "Content-Range: " + range.getContentRange( file.getLength() ) + CRLF + CRLF );
+
+                partHeaders.add( partHeader );
+
+                size += partHeader.length + range.getLength();
+            }
+
+            this.closingBoundary = toBytes( CRLF + "--" + boundary + "--" + CRLF );
+
+            setSize( size + closingBoundary.length );
+
+            setMediaType( new MediaType( "multipart/byteranges; boundary=" + boundary ) );
+        }
+    }
+
+    public List<ByteRange> getRanges()
+    {
+        return ranges;
+    }
+
+    /**
+     * Returns the value of "Content-Range" header for single range response, {@code null} for multipart response
+     * (parts carry their own).
+     */
+    public String getContentRange()
+    {
+        if ( boundary == null )
+        {
+            return ranges.get( 0 ).getContentRange( getStorageItem().getLength() );
+        }
+
+        return null;
+    }
+
+    @Override
+    protected void writeContent( final FileChannel source, final WritableByteChannel target )
+        throws IOException
+    {
+        if ( boundary == null )
+        {
+            final ByteRange range = ranges.get( 0 );
+
+            writeRegion( source, range.getFirst(), range.getLength(), target );
+        }
+        else
+        {
+            for ( int i = 0; i < ranges.size(); i++ )
+            {
+                final ByteRange range = ranges.get( i );
+
+                writeFully( ByteBuffer.wrap( partHeaders.get( i ) ), target );
+
+                writeRegion( source, range.getFirst(), range.getLength(), target );
+            }
+
+            writeFully( ByteBuffer.wrap( closingBoundary ), target );
+        }
+    }
+
+    // ==
+
+    /**
+     * Parses the value of a "Range" header against the entity length. Returns {@code null} if the header is not a
+     * valid (or supported) bytes range set, in which case it should be ignored and the whole entity served. Returns
+     * an empty list if none of the ranges is satisfiable (HTTP 416). Returned ranges are sorted, and overlapping or
+     * adjacent ones are merged, so no byte of the entity is sent twice.
+     */
+    public static List<ByteRange> parseRanges( final String rangeHeader, final long length )
+    {
+        if ( rangeHeader == null )
+        {
+            return null;
+        }
+
+        final String value = rangeHeader.trim();
+
+        if ( !value.startsWith( "bytes=" ) )
+        {
+            return null;
+        }
+
+        final String[] specs = value.substring( "bytes=".length() ).split( "," );
+
+        if ( specs.length > MAX_RANGES )
+        {
+            return null;
+        }
+
+        final List<ByteRange> result = new ArrayList<ByteRange>( specs.length );
+
+        try
+        {
+            for ( String rawSpec : specs )
+            {
+                final String spec = rawSpec.trim();
+
+                final int dash = spec.indexOf( '-' );
+
+                if ( dash < 0 )
+                {
+                    return null;
+                }
+
+                final String firstStr = spec.substring( 0, dash ).trim();
+
+                final String lastStr = spec.substring( dash + 1 ).trim();
+
+                if ( firstStr.length() == 0 )
+                {
+                    // suffix range: last N bytes
+                    final long suffixLength = Long.parseLong( lastStr );
+
+                    if ( suffixLength < 0 )
+                    {
+                        return null;
+                    }
+
+                    if ( suffixLength > 0 && length > 0 )
+                    {
+                        result.add( new ByteRange( Math.max( 0, length - suffixLength ), length - 1 ) );
+                    }
+                }
+                else
+                {
+                    final long first = Long.parseLong( firstStr );
+
+                    final boolean openEnded = lastStr.length() == 0;
+
+                    final long last = openEnded ? length - 1 : Long.parseLong( lastStr );
+
+                    if ( first < 0 || ( !openEnded && last < first ) )
+                    {
+                        return null;
+                    }
+
+                    if ( first < length )
+                    {
+                        result.add( new ByteRange( first, Math.min( last, length - 1 ) ) );
+                    }
+                }
+            }
+        }
+        catch ( NumberFormatException e )
+        {
+            return null;
+        }
+
+        return mergeRanges( result );
+    }
+
+    /**
+     * Sorts the ranges and merges the overlapping and adjacent ones.
+     */
+    protected static List<ByteRange> mergeRanges( final List<ByteRange> ranges )
+    {
+        if ( ranges.size() < 2 )
+        {
+            return ranges;
+        }
+
+        final List<ByteRange> sorted = new ArrayList<ByteRange>( ranges );
+
+        Collections.sort( sorted, new Comparator<ByteRange>()
+        {
+            @Override
+            public int compare( final ByteRange o1, final ByteRange o2 )
+            {
+                return o1.getFirst() < o2.getFirst() ? -1 : ( o1.getFirst() == o2.getFirst() ? 0 : 1 );
+            }
+        } );
+
+        final List<ByteRange> result = new ArrayList<ByteRange>( sorted.size() );
+
+        ByteRange current = sorted.get( 0 );
+
+        for ( int i = 1; i < sorted.size(); i++ )
+        {
+            final ByteRange next = sorted.get( i );
+
+            if ( next.getFirst() <= current.getLast() + 1 )
+            {
+                current = new ByteRange( current.getFirst(), Math.max( current.getLast(), next.getLast() ) );
+            }
+            else
+            {
+                result.add( current );
+
+                current = next;
+            }
+        }
+
+        result.add( current );
+
+        return result;
+    }
+
+    private static void writeFully( final ByteBuffer buffer, final WritableByteChannel target )
+        throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            target.write( buffer );
+        }
+    }
+
+    private static byte[] toBytes( final String str )
+    {
+        try
+        {
+            return str.getBytes( "ISO-8859-1" );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            // will not happen
+            throw new IllegalStateException( e );
+        }
+    }
+
+    // ==
+
+    /**
+     * An inclusive, satisfiable byte range.
+     */
+    public static class ByteRange
+    {
+        private final long first;
+
+        private final long last;
+
+        public ByteRange( final long first, final long last )
+        {
+            this.first = first;
+            this.last = last;
+        }
+
+        public long getFirst()
+        {
+            return first;
+        }
+
+        public long getLast()
+        {
+            return last;
+        }
+
+        public long getLength()
+        {
+            return last - first + 1;
+        }
+
+        public String getContentRange( final long entityLength )
+        {
+            return "bytes " + first + "-" + last + "/" + entityLength;
+        }
+
+        @Override
+        public String toString()
+        {
+            return first + "-" + last;
+        }
+    }
+}
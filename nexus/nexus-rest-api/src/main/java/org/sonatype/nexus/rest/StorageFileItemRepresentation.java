@@ -18,20 +18,42 @@
  */
 package org.sonatype.nexus.rest;
 
+import java.io.EOFException;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
 
 import org.codehaus.plexus.util.IOUtil;
 import org.restlet.data.MediaType;
 import org.restlet.data.Tag;
 import org.sonatype.nexus.proxy.attributes.inspectors.DigestCalculatingInspector;
+import org.sonatype.nexus.proxy.item.ContentLocator;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.storage.local.fs.FileContentLocator;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 
 public class StorageFileItemRepresentation
     extends StorageItemRepresentation
 {
+    /**
+     * Size of buffers used to pump file backed content into output streams.
+     */
+    private static final int BUFFER_SIZE = SystemPropertiesHelper.getInteger( "nexus.download.bufferSize", 65536 );
+
+    /**
+     * Pool of heap buffers, to not allocate a new one for every download. Heap buffers are handed to the output stream
+     * as they are, while content of a direct one would be copied to heap anyway.
+     */
+    private static final ArrayBlockingQueue<ByteBuffer> BUFFER_POOL = new ArrayBlockingQueue<ByteBuffer>(
+        SystemPropertiesHelper.getInteger( "nexus.download.bufferPoolSize", 32 ) );
+
     public StorageFileItemRepresentation( StorageFileItem file )
     {
         super( MediaType.valueOf( file.getMimeType() ), file );
@@ -73,6 +95,15 @@ public class StorageFileItemRepresentation
     public void write( OutputStream outputStream )
         throws IOException
     {
+        final FileContentLocator fileContentLocator = getFileContentLocator();
+
+        if ( fileContentLocator != null )
+        {
+            writeFile( fileContentLocator, new OutputStreamChannel( outputStream ) );
+
+            return;
+        }
+
         InputStream is = null;
 
         try
@@ -83,23 +114,230 @@ public class StorageFileItemRepresentation
         }
         catch ( IOException e )
         {
-            if ( "EofException".equals( e.getClass().getSimpleName() ) )
+            handleWriteException( e );
+        }
+        finally
+        {
+            IOUtil.close( is );
+        }
+    }
+
+    @Override
+    public void write( WritableByteChannel writableChannel )
+        throws IOException
+    {
+        final FileContentLocator fileContentLocator = getFileContentLocator();
+
+        if ( fileContentLocator != null )
+        {
+            writeFile( fileContentLocator, writableChannel );
+        }
+        else
+        {
+            super.write( writableChannel );
+        }
+    }
+
+    // ==
+
+    /**
+     * Returns the locator if content is a plain file on local storage (ie. cached or hosted artifact), {@code null}
+     * otherwise.
+     */
+    protected FileContentLocator getFileContentLocator()
+    {
+        final ContentLocator contentLocator = getStorageItem().getContentLocator();
+
+        if ( contentLocator instanceof FileContentLocator )
+        {
+            return (FileContentLocator) contentLocator;
+        }
+
+        return null;
+    }
+
+    /**
+     * Writes the file content to the channel. If connector hands over a channel, the transfer is left to the OS
+     * (sendfile), otherwise the content is pumped through a pooled heap buffer.
+     */
+    protected void writeFile( final FileContentLocator fileContentLocator, final WritableByteChannel target )
+        throws IOException
+    {
+        FileInputStream fis = null;
+
+        try
+        {
+            fis = new FileInputStream( fileContentLocator.getFile() );
+
+            writeContent( fis.getChannel(), target );
+        }
+        catch ( IOException e )
+        {
+            handleWriteException( e );
+        }
+        finally
+        {
+            IOUtil.close( fis );
+        }
+    }
+
+    protected void writeContent( final FileChannel source, final WritableByteChannel target )
+        throws IOException
+    {
+        writeRegion( source, 0, source.size(), target );
+    }
+
+    /**
+     * Writes {@code count} bytes of file starting at {@code position} to the channel, reading nothing before the
+     * position.
+     */
+    protected void writeRegion( final FileChannel source, final long position, final long count,
+                                final WritableByteChannel target )
+        throws IOException
+    {
+        if ( isZeroCopyTarget( target ) )
+        {
+            long written = 0;
+
+            while ( written < count )
             {
-                // This is for Jetty's org.eclipse.jetty.io.EofException
-                // https://issues.sonatype.org/browse/NEXUS-217
+                final long transferred = source.transferTo( position + written, count - written, target );
+
+                if ( transferred <= 0 && position + written >= source.size() )
+                {
+                    throw new EOFException( "File shrunk while being written out!" );
+                }
+
+                written += transferred;
             }
-            else if ( e instanceof SocketException )
+        }
+        else
+        {
+            pump( source, position, count, target );
+        }
+    }
+
+    protected void handleWriteException( final IOException e )
+        throws IOException
+    {
+        if ( "EofException".equals( e.getClass().getSimpleName() ) )
+        {
+            // This is for Jetty's org.eclipse.jetty.io.EofException
+            // https://issues.sonatype.org/browse/NEXUS-217
+        }
+        else if ( e instanceof SocketException )
+        {
+            // https://issues.sonatype.org/browse/NEXUS-217
+        }
+        else
+        {
+            throw e;
+        }
+    }
+
+    // ==
+
+    /**
+     * Only file and socket channels receive zero-copy transfers, transferTo into any other channel (ie. one wrapping
+     * an output stream) would go through small temporary buffers.
+     */
+    private static boolean isZeroCopyTarget( final WritableByteChannel target )
+    {
+        return target instanceof FileChannel || target instanceof SocketChannel;
+    }
+
+    private static void pump( final FileChannel source, final long position, final long count,
+                              final WritableByteChannel target )
+        throws IOException
+    {
+        ByteBuffer buffer = BUFFER_POOL.poll();
+
+        if ( buffer == null )
+        {
+            buffer = ByteBuffer.allocate( BUFFER_SIZE );
+        }
+
+        try
+        {
+            long written = 0;
+
+            while ( written < count )
             {
-                // https://issues.sonatype.org/browse/NEXUS-217
+                buffer.clear();
+
+                buffer.limit( (int) Math.min( buffer.capacity(), count - written ) );
+
+                if ( source.read( buffer, position + written ) == -1 )
+                {
+                    throw new EOFException( "File shrunk while being written out!" );
+                }
+
+                buffer.flip();
+
+                while ( buffer.hasRemaining() )
+                {
+                    written += target.write( buffer );
+                }
+            }
+        }
+        finally
+        {
+            // if pool is full, buffer is simply dropped
+            BUFFER_POOL.offer( buffer );
+        }
+    }
+
+    /**
+     * Channel writing heap buffers directly into the stream, unlike {@code Channels.newChannel(OutputStream)} that
+     * copies them into a buffer of its own first.
+     */
+    private static class OutputStreamChannel
+        implements WritableByteChannel
+    {
+        private final OutputStream outputStream;
+
+        private boolean open = true;
+
+        public OutputStreamChannel( final OutputStream outputStream )
+        {
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public int write( final ByteBuffer src )
+            throws IOException
+        {
+            final int count = src.remaining();
+
+            if ( src.hasArray() )
+            {
+                outputStream.write( src.array(), src.arrayOffset() + src.position(), count );
+
+                src.position( src.limit() );
             }
             else
             {
-                throw e;
+                final byte[] bytes = new byte[count];
+
+                src.get( bytes );
+
+                outputStream.write( bytes );
             }
+
+            return count;
         }
-        finally
+
+        @Override
+        public boolean isOpen()
         {
-            IOUtil.close( is );
+            return open;
+        }
+
+        @Override
+        public void close()
+        {
+            // the stream is owned by the caller
+            open = false;
         }
     }
 }
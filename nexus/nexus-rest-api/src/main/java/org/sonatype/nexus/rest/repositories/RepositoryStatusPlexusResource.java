@@ -29,6 +29,7 @@ import javax.ws.rs.Produces;
 
 import org.codehaus.enunciate.contract.jaxrs.ResourceMethodSignature;
 import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Requirement;
 import org.restlet.Context;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
@@ -40,6 +41,8 @@ import org.sonatype.nexus.proxy.repository.LocalStatus;
 import org.sonatype.nexus.proxy.repository.ProxyMode;
 import org.sonatype.nexus.proxy.repository.ProxyRepository;
 import org.sonatype.nexus.proxy.repository.Repository;
+import org.sonatype.nexus.proxy.repository.RepositoryStatusCheck;
+import org.sonatype.nexus.proxy.repository.RepositoryStatusChecker;
 import org.sonatype.nexus.proxy.repository.ShadowRepository;
 import org.sonatype.nexus.rest.NoSuchRepositoryAccessException;
 import org.sonatype.nexus.rest.model.RepositoryDependentStatusResource;
@@ -58,6 +61,9 @@ public class RepositoryStatusPlexusResource
 {
     public static final String RESOURCE_URI = "/repositories/{" + REPOSITORY_ID_KEY + "}/status"; 
 
+    @Requirement
+    private RepositoryStatusChecker repositoryStatusChecker;
+
     public RepositoryStatusPlexusResource()
     {
         this.setModifiable( true );
@@ -118,6 +124,17 @@ public class RepositoryStatusPlexusResource
                 resource.setRemoteStatus( getRestRepoRemoteStatus( prepo, request, response ) );
 
                 resource.setProxyMode( prepo.getProxyMode().toString() );
+
+                RepositoryStatusCheck check = repositoryStatusChecker.getRepositoryStatusCheck( repo.getId() );
+
+                if ( check != null )
+                {
+                    resource.setRemoteStatusLastChecked( check.getLastCheckTime() );
+
+                    resource.setRemoteStatusCheckLatency( check.getLastCheckLatency() );
+
+                    resource.setRemoteStatusNextCheck( check.getNextCheckTime() );
+                }
             }
 
             result = new RepositoryStatusResourceResponse();
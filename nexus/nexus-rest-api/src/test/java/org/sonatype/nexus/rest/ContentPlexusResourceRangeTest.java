@@ -0,0 +1,269 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.restlet.data.Form;
+import org.restlet.data.Method;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.resource.Representation;
+import org.restlet.resource.ResourceException;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.attributes.inspectors.DigestCalculatingInspector;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.router.RepositoryRouter;
+import org.sonatype.nexus.proxy.storage.local.fs.FileContentLocator;
+
+/**
+ * Checks the responses of content resource to requests having "Range" and "If-Range" headers.
+ */
+public class ContentPlexusResourceRangeTest
+{
+    private static final String HEADERS_KEY = "org.restlet.http.headers";
+
+    private static final String SHA1 = "0123456789abcdef0123456789abcdef01234567";
+
+    private static final long MODIFIED = 1300000000000L;
+
+    private byte[] content;
+
+    private File file;
+
+    private ContentPlexusResource resource;
+
+    private DefaultStorageFileItem item;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        content = new byte[1000];
+        for ( int i = 0; i < content.length; i++ )
+        {
+            content[i] = (byte) ( 'a' + i % 26 );
+        }
+
+        file = File.createTempFile( "range", ".bin" );
+        FileOutputStream fos = new FileOutputStream( file );
+        try
+        {
+            fos.write( content );
+        }
+        finally
+        {
+            fos.close();
+        }
+
+        item =
+            new DefaultStorageFileItem( (RepositoryRouter) null, new ResourceStoreRequest( "/some/file.bin" ), true,
+                true, new FileContentLocator( file, "application/octet-stream" ) );
+        item.setLength( content.length );
+        item.setModified( MODIFIED );
+        item.getRepositoryItemAttributes().put( DigestCalculatingInspector.DIGEST_SHA1_KEY, SHA1 );
+
+        resource = new ContentPlexusResource();
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Test
+    public void testNoRange()
+        throws Exception
+    {
+        Response res = render( null, null );
+
+        Assert.assertEquals( Status.SUCCESS_OK, res.getStatus() );
+        Assert.assertEquals( "bytes", getResponseHeader( res, "Accept-Ranges" ) );
+        Assert.assertNull( getResponseHeader( res, "Content-Range" ) );
+        Assert.assertEquals( new String( content, "ISO-8859-1" ), write( res ) );
+    }
+
+    @Test
+    public void testSingleRange()
+        throws Exception
+    {
+        Response res = render( "bytes=10-19", null );
+
+        Assert.assertEquals( Status.SUCCESS_PARTIAL_CONTENT, res.getStatus() );
+        Assert.assertEquals( "bytes 10-19/1000", getResponseHeader( res, "Content-Range" ) );
+        Assert.assertEquals( 10, res.getEntity().getSize() );
+        Assert.assertEquals( new String( content, 10, 10, "ISO-8859-1" ), write( res ) );
+
+        // suffix range
+        res = render( "bytes=-5", null );
+
+        Assert.assertEquals( Status.SUCCESS_PARTIAL_CONTENT, res.getStatus() );
+        Assert.assertEquals( "bytes 995-999/1000", getResponseHeader( res, "Content-Range" ) );
+        Assert.assertEquals( new String( content, 995, 5, "ISO-8859-1" ), write( res ) );
+    }
+
+    @Test
+    public void testMultipleRanges()
+        throws Exception
+    {
+        Response res = render( "bytes=0-1,26-28", null );
+
+        Assert.assertEquals( Status.SUCCESS_PARTIAL_CONTENT, res.getStatus() );
+        // parts carry their own ranges
+        Assert.assertNull( getResponseHeader( res, "Content-Range" ) );
+        Assert.assertTrue( res.getEntity().getMediaType().toString().startsWith( "multipart/byteranges" ) );
+
+        String body = write( res );
+
+        Assert.assertEquals( res.getEntity().getSize(), body.length() );
+        Assert.assertTrue( body, body.contains( "Content-Range: bytes 0-1/1000\r\n\r\nab\r\n--" ) );
+        Assert.assertTrue( body, body.contains( "Content-Range: bytes 26-28/1000\r\n\r\nabc\r\n--" ) );
+        Assert.assertTrue( body, body.indexOf( "bytes 0-1/1000" ) < body.indexOf( "bytes 26-28/1000" ) );
+        Assert.assertTrue( body, body.endsWith( "--\r\n" ) );
+    }
+
+    @Test
+    public void testUnsatisfiableRange()
+        throws Exception
+    {
+        Request req = createRequest( "bytes=1000-", null );
+        Response res = new Response( req );
+
+        try
+        {
+            resource.renderItem( null, req, res, null, null, item );
+
+            Assert.fail( "Range is not satisfiable" );
+        }
+        catch ( ResourceException e )
+        {
+            Assert.assertEquals( Status.CLIENT_ERROR_REQUESTED_RANGE_NOT_SATISFIABLE, e.getStatus() );
+        }
+
+        Assert.assertEquals( "bytes */1000", getResponseHeader( res, "Content-Range" ) );
+    }
+
+    @Test
+    public void testInvalidRangeIgnored()
+        throws Exception
+    {
+        Response res = render( "bytes=20-10", null );
+
+        Assert.assertEquals( Status.SUCCESS_OK, res.getStatus() );
+        Assert.assertEquals( new String( content, "ISO-8859-1" ), write( res ) );
+    }
+
+    @Test
+    public void testIfRange()
+        throws Exception
+    {
+        // matching ETag
+        Response res = render( "bytes=10-19", "\"{SHA1{" + SHA1 + "}}\"" );
+        Assert.assertEquals( Status.SUCCESS_PARTIAL_CONTENT, res.getStatus() );
+        Assert.assertEquals( new String( content, 10, 10, "ISO-8859-1" ), write( res ) );
+
+        // matching date
+        res = render( "bytes=10-19", formatDate( MODIFIED ) );
+        Assert.assertEquals( Status.SUCCESS_PARTIAL_CONTENT, res.getStatus() );
+    }
+
+    @Test
+    public void testIfRangeMismatch()
+        throws Exception
+    {
+        // changed entity is sent whole
+        Response res = render( "bytes=10-19", "\"{SHA1{0000000000000000000000000000000000000000}}\"" );
+        Assert.assertEquals( Status.SUCCESS_OK, res.getStatus() );
+        Assert.assertNull( getResponseHeader( res, "Content-Range" ) );
+        Assert.assertEquals( new String( content, "ISO-8859-1" ), write( res ) );
+
+        res = render( "bytes=10-19", formatDate( MODIFIED - 60000L ) );
+        Assert.assertEquals( Status.SUCCESS_OK, res.getStatus() );
+        Assert.assertEquals( new String( content, "ISO-8859-1" ), write( res ) );
+
+        // weak validators are never matching
+        res = render( "bytes=10-19", "W/\"{SHA1{" + SHA1 + "}}\"" );
+        Assert.assertEquals( Status.SUCCESS_OK, res.getStatus() );
+    }
+
+    // ==
+
+    protected Request createRequest( final String range, final String ifRange )
+    {
+        Request req = new Request( Method.GET, "http://localhost:8081/nexus/content/some/file.bin" );
+
+        Form headers = new Form();
+        if ( range != null )
+        {
+            headers.add( "Range", range );
+        }
+        if ( ifRange != null )
+        {
+            headers.add( "If-Range", ifRange );
+        }
+        req.getAttributes().put( HEADERS_KEY, headers );
+
+        return req;
+    }
+
+    protected Response render( final String range, final String ifRange )
+        throws Exception
+    {
+        Request req = createRequest( range, ifRange );
+        Response res = new Response( req );
+
+        res.setEntity( (Representation) resource.renderItem( null, req, res, null, null, item ) );
+
+        return res;
+    }
+
+    protected String getResponseHeader( final Response res, final String name )
+    {
+        Form headers = (Form) res.getAttributes().get( HEADERS_KEY );
+
+        return headers != null ? headers.getFirstValue( name ) : null;
+    }
+
+    protected String write( final Response res )
+        throws Exception
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        res.getEntity().write( bos );
+        return new String( bos.toByteArray(), "ISO-8859-1" );
+    }
+
+    protected String formatDate( final long time )
+    {
+        SimpleDateFormat format = new SimpleDateFormat( "EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US );
+        format.setTimeZone( TimeZone.getTimeZone( "GMT" ) );
+        return format.format( new Date( time ) );
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.rest;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sonatype.nexus.rest.StorageFileItemRangeRepresentation.ByteRange;
+
+public class StorageFileItemRangeRepresentationTest
+{
+    @Test
+    public void testParseRanges()
+    {
+        List<ByteRange> ranges = StorageFileItemRangeRepresentation.parseRanges( "bytes=0-99", 1000 );
+        Assert.assertEquals( 1, ranges.size() );
+        Assert.assertEquals( 0, ranges.get( 0 ).getFirst() );
+        Assert.assertEquals( 100, ranges.get( 0 ).getLength() );
+        Assert.assertEquals( "bytes 0-99/1000", ranges.get( 0 ).getContentRange( 1000 ) );
+
+        // open ended, suffix and clamped ranges
+        ranges = StorageFileItemRangeRepresentation.parseRanges( "bytes=900-949, -10, 0-2000", 1000 );
+        Assert.assertEquals( 1, ranges.size() );
+        Assert.assertEquals( "0-999", ranges.get( 0 ).toString() );
+        ranges = StorageFileItemRangeRepresentation.parseRanges( "bytes=-50, 10-19", 1000 );
+        Assert.assertEquals( 2, ranges.size() );
+        Assert.assertEquals( "10-19", ranges.get( 0 ).toString() );
+        Assert.assertEquals( "950-999", ranges.get( 1 ).toString() );
+
+        // unsatisfiable
+        Assert.assertTrue( StorageFileItemRangeRepresentation.parseRanges( "bytes=1000-", 1000 ).isEmpty() );
+
+        // invalid ones are ignored
+        Assert.assertNull( StorageFileItemRangeRepresentation.parseRanges( "items=0-1", 1000 ) );
+        Assert.assertNull( StorageFileItemRangeRepresentation.parseRanges( "bytes=5-1", 1000 ) );
+        Assert.assertNull( StorageFileItemRangeRepresentation.parseRanges( "bytes=a-b", 1000 ) );
+        Assert.assertNull( StorageFileItemRangeRepresentation.parseRanges( "bytes=0-1,2-3,4-5,6-7,8-9,10-11,12-13,"
+            + "14-15,16-17,18-19,20-21,22-23,24-25,26-27,28-29,30-31,32-33", 1000 ) );
+    }
+
+    @Test
+    public void testOverlappingRangesAreMerged()
+    {
+        // repeated whole entity is sent once
+        List<ByteRange> ranges =
+            StorageFileItemRangeRepresentation.parseRanges( "bytes=0-,0-,0-,0-,0-,0-,0-,0-,0-,0-", 1000 );
+        Assert.assertEquals( 1, ranges.size() );
+        Assert.assertEquals( "0-999", ranges.get( 0 ).toString() );
+
+        // unordered, overlapping and adjacent ones are merged, disjoint ones are kept sorted
+        ranges =
+            StorageFileItemRangeRepresentation.parseRanges( "bytes=500-599, 100-199, 150-299, 300-349, 700-", 1000 );
+        Assert.assertEquals( 3, ranges.size() );
+        Assert.assertEquals( "100-349", ranges.get( 0 ).toString() );
+        Assert.assertEquals( "500-599", ranges.get( 1 ).toString() );
+        Assert.assertEquals( "700-999", ranges.get( 2 ).toString() );
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.ByteArrayContentLocator;
+import org.sonatype.nexus.proxy.item.ContentLocator;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.router.RepositoryRouter;
+import org.sonatype.nexus.proxy.storage.local.fs.FileContentLocator;
+
+public class StorageFileItemRepresentationTest
+{
+    private byte[] content;
+
+    private File file;
+
+    private File target;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        // spans multiple pumped buffers, and does not end on buffer boundary
+        content = new byte[3 * 65536 + 123];
+        new Random( 1234 ).nextBytes( content );
+
+        file = File.createTempFile( "representation", ".bin" );
+        FileOutputStream fos = new FileOutputStream( file );
+        try
+        {
+            fos.write( content );
+        }
+        finally
+        {
+            fos.close();
+        }
+
+        target = File.createTempFile( "representation", ".out" );
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+        target.delete();
+    }
+
+    @Test
+    public void testFileBackedToOutputStream()
+        throws Exception
+    {
+        StorageFileItemRepresentation representation = createRepresentation( createFileLocator() );
+        Assert.assertNotNull( representation.getFileContentLocator() );
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        representation.write( bos );
+
+        Assert.assertArrayEquals( content, bos.toByteArray() );
+    }
+
+    @Test
+    public void testFileBackedToFileChannel()
+        throws Exception
+    {
+        // zero-copy transfer
+        StorageFileItemRepresentation representation = createRepresentation( createFileLocator() );
+
+        FileOutputStream fos = new FileOutputStream( target );
+        try
+        {
+            representation.write( fos.getChannel() );
+        }
+        finally
+        {
+            fos.close();
+        }
+
+        FileInputStream fis = new FileInputStream( target );
+        try
+        {
+            Assert.assertArrayEquals( content, IOUtil.toByteArray( fis ) );
+        }
+        finally
+        {
+            fis.close();
+        }
+    }
+
+    @Test
+    public void testFileBackedToOtherChannel()
+        throws Exception
+    {
+        // pumped through heap buffers, twice to reuse pooled buffer
+        StorageFileItemRepresentation representation = createRepresentation( createFileLocator() );
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            representation.write( Channels.newChannel( bos ) );
+
+            Assert.assertArrayEquals( content, bos.toByteArray() );
+        }
+    }
+
+    @Test
+    public void testNotFileBacked()
+        throws Exception
+    {
+        // stream copied
+        StorageFileItemRepresentation representation =
+            createRepresentation( new ByteArrayContentLocator( content, "application/octet-stream" ) );
+        Assert.assertNull( representation.getFileContentLocator() );
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        representation.write( bos );
+
+        Assert.assertArrayEquals( content, bos.toByteArray() );
+
+        bos = new ByteArrayOutputStream();
+        representation.write( Channels.newChannel( bos ) );
+
+        Assert.assertArrayEquals( content, bos.toByteArray() );
+    }
+
+    // ==
+
+    protected ContentLocator createFileLocator()
+    {
+        return new FileContentLocator( file, "application/octet-stream" );
+    }
+
+    protected StorageFileItemRepresentation createRepresentation( final ContentLocator locator )
+    {
+        DefaultStorageFileItem item =
+            new DefaultStorageFileItem( (RepositoryRouter) null, new ResourceStoreRequest( "/some/file.bin" ), true,
+                true, locator );
+        item.setLength( content.length );
+
+        return new StorageFileItemRepresentation( item );
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A simple, thread safe, size bounded cache with least-recently-used eviction and optional time-to-live of entries.
+ * Meant for small memoization caches on hot paths, where critical sections are tiny. Keeps hit, miss and eviction
+ * counters.
+ * 
+ * @param <K>
+ * @param <V>
+ */
+public class LruCache<K, V>
+{
+    private final int maximumSize;
+
+    private final long timeToLiveMillis;
+
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache with no time-to-live, entries are evicted only by size bound (or explicitly).
+     * 
+     * @param maximumSize
+     */
+    public LruCache( final int maximumSize )
+    {
+        this( maximumSize, 0 );
+    }
+
+    /**
+     * Creates a cache bounded by size, and having entries expiring after given time-to-live. A non-positive TTL means
+     * entries never expire.
+     * 
+     * @param maximumSize
+     * @param timeToLiveMillis
+     */
+    public LruCache( final int maximumSize, final long timeToLiveMillis )
+    {
+        if ( maximumSize < 1 )
+        {
+            throw new IllegalArgumentException( "Maximum size must be positive, but is " + maximumSize );
+        }
+
+        this.maximumSize = maximumSize;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.entries = new LinkedHashMap<K, Entry<V>>( 16, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<K, Entry<V>> eldest )
+            {
+                if ( size() > LruCache.this.maximumSize )
+                {
+                    evictions.incrementAndGet();
+
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value for key, or {@code null} if not present or expired.
+     * 
+     * @param key
+     * @return
+     */
+    public V get( final K key )
+    {
+        synchronized ( entries )
+        {
+            final Entry<V> entry = entries.get( key );
+
+            if ( entry != null )
+            {
+                if ( !entry.isExpired( timeToLiveMillis ) )
+                {
+                    hits.incrementAndGet();
+
+                    return entry.value;
+                }
+
+                entries.remove( key );
+
+                evictions.incrementAndGet();
+            }
+        }
+
+        misses.incrementAndGet();
+
+        return null;
+    }
+
+    public void put( final K key, final V value )
+    {
+        synchronized ( entries )
+        {
+            entries.put( key, new Entry<V>( value ) );
+        }
+    }
+
+    public V remove( final K key )
+    {
+        synchronized ( entries )
+        {
+            final Entry<V> entry = entries.remove( key );
+
+            return entry != null ? entry.value : null;
+        }
+    }
+
+    public void clear()
+    {
+        synchronized ( entries )
+        {
+            entries.clear();
+        }
+    }
+
+    public int size()
+    {
+        synchronized ( entries )
+        {
+            return entries.size();
+        }
+    }
+
+    public int getMaximumSize()
+    {
+        return maximumSize;
+    }
+
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    public long getEvictionCount()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the hit ratio (0..1) of this cache, or 0 if cache was not queried yet.
+     * 
+     * @return
+     */
+    public double getHitRatio()
+    {
+        final long h = hits.get();
+        final long total = h + misses.get();
+
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    // ==
+
+    private static final class Entry<V>
+    {
+        private final V value;
+
+        private final long created;
+
+        private Entry( final V value )
+        {
+            this.value = value;
+            this.created = System.currentTimeMillis();
+        }
+
+        private boolean isExpired( final long timeToLiveMillis )
+        {
+            return timeToLiveMillis > 0 && System.currentTimeMillis() - created > timeToLiveMillis;
+        }
+    }
+}